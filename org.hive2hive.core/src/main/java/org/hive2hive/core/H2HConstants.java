@@ -7,8 +7,11 @@ import net.tomp2p.dht.StorageMemory;
 import net.tomp2p.peers.Number160;
 
 import org.apache.commons.io.FileUtils;
+import org.hive2hive.core.model.FileVersion.ChunkCipher;
+import org.hive2hive.core.network.data.ReadConsistency;
 import org.hive2hive.core.security.EncryptionUtil.AES_KEYLENGTH;
 import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.hive2hive.core.security.EncryptionUtil.SIGNATURE_SCHEME;
 
 public interface H2HConstants {
 
@@ -28,6 +31,27 @@ public interface H2HConstants {
 	// store data onto slow peers (e.g. Android devices) or not
 	public static final boolean STORE_DATA_SLOW_PEERS = false;
 
+	/**
+	 * Latency-aware slow peer detection (see PeerLatencyTracker)
+	 */
+	// whether peers that are measured as slow are excluded from puts and gets. Every replica is timed from the
+	// request to its own response.
+	public static final boolean ENABLE_SLOW_PEER_TRACKING = true;
+	// a peer is slow if its average round trip time exceeds this value
+	public static final long SLOW_PEER_RTT_MS = 3000;
+	// a peer is slow if its average failure rate exceeds this value
+	public static final double SLOW_PEER_FAILURE_RATE = 0.5;
+	// a slow peer recovers when both averages fall below this factor times their limits
+	public static final double SLOW_PEER_RECOVERY_FACTOR = 0.5;
+	// the weight of a new sample in the moving averages
+	public static final double SLOW_PEER_EWMA_WEIGHT = 0.2;
+	// the number of samples before a peer can be classified
+	public static final int SLOW_PEER_MIN_SAMPLES = 5;
+	// slow peers are contacted again after this time to give them a chance to recover
+	public static final long SLOW_PEER_PROBATION_MS = 2 * 60 * 1000;
+	// the maximum number of peers that are tracked
+	public static final int SLOW_PEER_MAX_TRACKED = 10000;
+
 	// standard timeout for discovery
 	public static final long DISCOVERY_TIMEOUT_MS = 10000;
 	// standard timeout for bootstrapping
@@ -44,13 +68,61 @@ public interface H2HConstants {
 	// configurations for network messages
 	public static final int MAX_MESSAGE_SENDING = 5;
 	public static final int MAX_MESSAGE_SENDING_DIRECT = 3;
+	// a message answered with a busy reply is re-sent after a random delay of up to this base, doubled with
+	// every attempt and limited by the maximum
+	public static final long MESSAGE_BUSY_BACKOFF_MS = 200;
+	public static final long MESSAGE_BUSY_BACKOFF_MAX_MS = 5000;
+
+	// after the first (asymmetrically encrypted and signed) message, the messages between two users are only
+	// encrypted symmetrically. The session key is renewed after this time or this number of messages.
+	public static final long MESSAGE_SESSION_LIFETIME_MS = 10 * 60 * 1000;
+	public static final long MESSAGE_SESSION_MAX_MESSAGES = 100000;
+
+	// the received messages are handled by this many threads, queued fairly per sender. A message is answered
+	// with a busy reply if its sender or all senders together have too many queued messages.
+	public static final int MESSAGE_HANDLING_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+	public static final int MESSAGE_QUEUE_PER_SENDER = 64;
+	public static final int MESSAGE_QUEUE_CAPACITY = 1024;
+	// responses to own requests are handled by separate threads, such that handlers waiting for a response do
+	// not block them. A response is answered with a busy reply if too many of them are queued.
+	public static final int MESSAGE_RESPONSE_THREADS = 4;
+	public static final int MESSAGE_RESPONSE_QUEUE_CAPACITY = 256;
 
 	// maximal numbers of versions kept in the DHT (see versionKey)
 	public static final int MAX_VERSIONS_HISTORY = 5;
 
+	// compress the serialized user profile (and its shards) before encrypting it. Older profiles remain
+	// readable, but clients without compression support cannot read compressed profiles. Thus, a user should
+	// only enable it once all of its clients have been updated. The size and latency gains can be measured
+	// with the UserProfileCompressionBenchmark.
+	public static final boolean USER_PROFILE_COMPRESSION = false;
+	// store only a seed and the public key of new file keys in the user profile instead of the full key pair.
+	// The private key is derived when needed, which costs as much as generating a key pair.
+	public static final boolean DERIVED_FILE_KEYS = false;
+	// maximum number of derived key pairs which are cached
+	public static final int DERIVED_KEYS_CACHE_SIZE = 1000;
+	// store each top-level folder of the user profile as a separate shard, such that modifications only re-put
+	// the affected shards. All clients of a user must use the same setting.
+	public static final boolean USER_PROFILE_SHARDING = false;
+	// maximum number of queued user profile modifications that are applied to the same version and put at once
+	public static final int USER_PROFILE_MAX_BATCH = 256;
+	// the first (jittered) wait window after a version fork of the user profile, doubled at every fork
+	public static final long USER_PROFILE_FORK_BACKOFF_MS = 100;
+	// the maximum wait window after a version fork of the user profile
+	public static final long USER_PROFILE_FORK_MAX_BACKOFF_MS = 3000;
+	// interval in which the digest is polled to see the competing version while waiting after a fork
+	public static final long USER_PROFILE_FORK_POLL_MS = 50;
+	// time until a group of modifications must be put, else it fails (well below the waiting time of the caller)
+	public static final long USER_PROFILE_PUT_DEADLINE_MS = AWAIT_NETWORK_OPERATION_MS;
+	// maximum age of the last known user profile that is returned by reads allowing stale versions
+	public static final long USER_PROFILE_MAX_STALENESS_MS = 30000;
+	// age after which a stale read triggers a revalidation of the last known user profile in the background
+	public static final long USER_PROFILE_REVALIDATE_MS = 5000;
+
 	// DHT content keys - these are used to distinguish the different data types
 	// stored for a given key
 	public static final String USER_PROFILE = "USER_PROFILE";
+	public static final String USER_PROFILE_SHARD = "USER_PROFILE_SHARD";
 	public static final String USER_LOCATIONS = "USER_LOCATIONS";
 	public static final String USER_PUBLIC_KEY = "USER_PUBLIC_KEY";
 	public static final String FILE_CHUNK = "FILE_CHUNK";
@@ -96,34 +168,103 @@ public interface H2HConstants {
 	// key length for asymmetric protection / authentication keys
 	public static final RSA_KEYLENGTH KEYLENGTH_PROTECTION = RSA_KEYLENGTH.BIT_1024;
 
+	// signature scheme of newly generated protection keys. Peers verify both schemes, but older versions only
+	// know RSA. Thus, a network should only switch to ECDSA once all its peers have been updated.
+	public static final SIGNATURE_SCHEME PROTECTION_SIGNATURE_SCHEME = SIGNATURE_SCHEME.RSA;
+
 	// key length for symmetric user profile encryption
 	public static final AES_KEYLENGTH KEYLENGTH_USER_PROFILE = AES_KEYLENGTH.BIT_256;
 
 	// key length for symmetric part of hybrid encryption
 	public static final AES_KEYLENGTH KEYLENGTH_HYBRID_AES = AES_KEYLENGTH.BIT_256;
 
+	// encrypt all chunks of a file version with one content key, which is encrypted with the chunk keys once
+	// and stored in the meta file. Else, every chunk is encrypted hybrid with its own key. Clients read both
+	// formats, but older versions cannot download the files uploaded with a content key. Thus, a user should
+	// only switch once all of its clients (and the clients of the users it shares folders with) are updated.
+	public static final boolean CHUNK_CONTENT_KEY = false;
+
+	// key length for the symmetric content key of the chunks of a file version
+	public static final AES_KEYLENGTH KEYLENGTH_CHUNK_CONTENT = AES_KEYLENGTH.BIT_256;
+
+	// key length for the symmetric session key of the messages between two users
+	public static final AES_KEYLENGTH KEYLENGTH_MESSAGE_SESSION = AES_KEYLENGTH.BIT_256;
+
+	// encryption of the chunks with the content key, thus only used if CHUNK_CONTENT_KEY is enabled (and the same
+	// switch-over applies). GCM authenticates the chunks while decrypting them.
+	public static final ChunkCipher CHUNK_CIPHER = ChunkCipher.AES_GCM;
+
+	// maximum number of RSA key pairs which are generated in advance per key length (0 disables the pool)
+	public static final int KEY_PAIR_POOL_MAX_DEPTH = 8;
+
+	// the pool depth shrinks again if no key pair of a length has been taken for this time
+	public static final long KEY_PAIR_POOL_IDLE_MS = 60000;
+
 	/**
 	 * Replication
 	 */
 	public static final boolean ENABLE_REPLICATION = true;
 	public static final int REPLICATION_FACTOR = 5;
+	// the initial interval, it adapts to the churn when using the digest strategy
 	public static final int REPLICATION_INTERVAL_MS = 30 * 1000;
-	public static final String REPLICATION_STRATEGY = "nRoot"; // or 0Root
+	public static final long REPLICATION_MIN_INTERVAL_MS = 10 * 1000;
+	public static final long REPLICATION_MAX_INTERVAL_MS = 5 * 60 * 1000;
+	// the maximum size of a message transferring entries to a replica (digest strategy)
+	public static final long REPLICATION_MAX_PUSH_BYTES = 4 * 1024 * 1024;
+	// replicas of an entry whose expiration differs by less than this are considered equal (digest strategy),
+	// because every peer starts the validity of an entry when it receives it
+	public static final long REPLICATION_EXPIRATION_GRANULARITY_MS = 60 * 60 * 1000;
+	public static final String REPLICATION_STRATEGY = "nRoot"; // or 0Root or digest
 	public static final boolean REPLICATE_TO_SLOW_PEERS = STORE_DATA_SLOW_PEERS;
 
+	/**
+	 * Read consistency (see DataManager#setReadConsistency)
+	 */
+	public static final ReadConsistency READ_CONSISTENCY = ReadConsistency.QUORUM;
+	// the number of consistent answers a get of mutable content waits for (majority of the replicas)
+	public static final int READ_QUORUM = REPLICATION_FACTOR / 2 + 1;
+	// the number of failed replica requests until a get gives up
+	public static final int READ_MAX_FAILURES = REPLICATION_FACTOR;
+	// whether all replicas are asked for the latest versions in the background after an early completed get, which
+	// only detects forks (for monitoring) at the cost of a second request to every replica
+	public static final boolean READ_BACKGROUND_FORK_CHECK = false;
+
 	/**
 	 * TTL of Data in Network
 	 */
 	// period in milliseconds between successive ttl check task executions
 	public static final int TTL_CHECK_INTERVAL_MS = StorageMemory.DEFAULT_STORAGE_CHECK_INTERVAL;
 
+	/**
+	 * Persistent and Off-Heap Storage (see NetworkConfiguration#setStorageDirectory and
+	 * NetworkConfiguration#setOffHeapStorage)
+	 */
+	// maximum number of bytes a peer stores for the network by default
+	public static final long DEFAULT_STORAGE_CAPACITY = 10 * 1024 * MEGABYTES.longValue(); // 10 GB
+	// size of a single direct buffer the off-heap payloads are allocated in
+	public static final int OFF_HEAP_SEGMENT_SIZE = 16 * MEGABYTES.intValue();
+	// largest payload stored off-heap (a chunk plus the encryption and serialization overhead)
+	public static final int OFF_HEAP_MAX_SLOT_SIZE = 2 * MEGABYTES.intValue();
+
 	/**
 	 * TTL Refreshment Management
 	 */
-	// delay in milliseconds before first ttl refreshment task is to be executed
-	public static final int TTL_REFRESHMENT_DELAY = 500;
-	// period in milliseconds between successive ttl refreshment task executions
-	public static final int TTL_REFRESHMENT_PERIOD = 1000;
+	// whether the time-to-live of the own files is refreshed while the user is logged in
+	public static final boolean ENABLE_TTL_REFRESH = true;
+	// delay in milliseconds before the first file is refreshed
+	public static final long TTL_REFRESH_DELAY_MS = 30000;
+	// the maximum delay in milliseconds between two refreshed files
+	public static final long TTL_REFRESH_MAX_INTERVAL_MS = 10 * 60 * 1000;
+	// a pass over all files takes this fraction of the shortest time-to-live
+	public static final double TTL_REFRESH_PASS_FRACTION = 0.1;
+	// a file is refreshed when this fraction of its time-to-live has elapsed
+	public static final double TTL_REFRESH_FRACTION = 0.5;
+	// a file is reported as expiring when less than this fraction of its time-to-live remains
+	public static final double TTL_EXPIRY_WARNING_FRACTION = 0.1;
+	// the number of concurrent meta puts when refreshing a file
+	public static final int TTL_REFRESH_BATCH_SIZE = 10;
+	// the maximum number of meta puts per second
+	public static final int TTL_REFRESH_MAX_PUTS_PER_S = 20;
 
 	/**
 	 * Download Manager
@@ -134,4 +275,23 @@ public interface H2HConstants {
 	public static final int DOWNLOAD_LOCATIONS_INTERVAL_S = 120;
 	// the maximum count the download of a chunk is retried
 	public static final int MAX_RETRIES_DOWNLOAD_SAME_CHUNK = 10;
+
+	/**
+	 * Local cache for immutable content (chunks, public keys, meta files at a given version)
+	 */
+	public static final boolean ENABLE_CONTENT_CACHE = true;
+	// maximum number of (serialized) bytes kept in memory
+	public static final long CONTENT_CACHE_MAX_BYTES = 32 * MEGABYTES.longValue();
+	// maximum number of bytes spilled to the cache of the file agent (0 to disable spilling)
+	public static final long CONTENT_CACHE_MAX_SPILL_BYTES = 256 * MEGABYTES.longValue();
+
+	/**
+	 * Metrics (see IH2HNode#getMetrics)
+	 */
+	// whether metrics are recorded initially (can be changed at runtime)
+	public static final boolean ENABLE_METRICS = true;
+	// whether the metrics are exposed through JMX
+	public static final boolean ENABLE_METRICS_JMX = true;
+	// the maximum number of distinct metric names per kind (further tags are aggregated)
+	public static final int METRICS_MAX_NAMES = 500;
 }
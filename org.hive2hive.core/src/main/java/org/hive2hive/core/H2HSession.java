@@ -5,9 +5,11 @@ import java.security.KeyPair;
 
 import org.hive2hive.core.file.IFileAgent;
 import org.hive2hive.core.network.data.PublicKeyManager;
+import org.hive2hive.core.network.data.TTLRefreshManager;
 import org.hive2hive.core.network.data.UserProfileManager;
 import org.hive2hive.core.network.data.download.DownloadManager;
 import org.hive2hive.core.network.data.vdht.LocationsManager;
+import org.hive2hive.core.network.messages.MessageSessionManager;
 import org.hive2hive.core.processes.login.SessionParameters;
 import org.hive2hive.core.security.UserCredentials;
 
@@ -17,14 +19,18 @@ public class H2HSession {
 	private final LocationsManager locationsManager;
 	private final PublicKeyManager keyManager;
 	private final DownloadManager downloadManager;
+	private final TTLRefreshManager ttlRefreshManager;
 	private final IFileAgent fileAgent;
+	private final MessageSessionManager messageSessionManager;
 
 	public H2HSession(SessionParameters params) {
 		this.profileManager = params.getProfileManager();
 		this.locationsManager = params.getLocationsManager();
 		this.keyManager = params.getKeyManager();
 		this.downloadManager = params.getDownloadManager();
+		this.ttlRefreshManager = params.getTTLRefreshManager();
 		this.fileAgent = params.getFileAgent();
+		this.messageSessionManager = new MessageSessionManager();
 	}
 
 	public UserProfileManager getProfileManager() {
@@ -73,10 +79,26 @@ public class H2HSession {
 		return downloadManager;
 	}
 
+	/**
+	 * Returns the TTL refresh manager, responsible for keeping the own files alive
+	 * 
+	 * @return the TTL refresh manager or <code>null</code> if the refreshment is disabled
+	 */
+	public TTLRefreshManager getTTLRefreshManager() {
+		return ttlRefreshManager;
+	}
+
 	/**
 	 * @return the file agent
 	 */
 	public IFileAgent getFileAgent() {
 		return fileAgent;
 	}
+
+	/**
+	 * @return the symmetric sessions of the messages between this user and others
+	 */
+	public MessageSessionManager getMessageSessionManager() {
+		return messageSessionManager;
+	}
 }
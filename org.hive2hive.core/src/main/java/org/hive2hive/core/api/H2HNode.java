@@ -7,6 +7,7 @@ import org.hive2hive.core.api.interfaces.IFileManager;
 import org.hive2hive.core.api.interfaces.IH2HNode;
 import org.hive2hive.core.api.interfaces.INetworkConfiguration;
 import org.hive2hive.core.api.interfaces.IUserManager;
+import org.hive2hive.core.metrics.H2HMetrics;
 import org.hive2hive.core.network.NetworkManager;
 import org.hive2hive.core.security.H2HDefaultEncryption;
 import org.hive2hive.core.security.IH2HEncryption;
@@ -109,4 +110,9 @@ public class H2HNode implements IH2HNode {
 	public PeerDHT getPeer() {
 		return networkManager.getConnection().getPeer();
 	}
+
+	@Override
+	public H2HMetrics getMetrics() {
+		return networkManager.getMetrics();
+	}
 }
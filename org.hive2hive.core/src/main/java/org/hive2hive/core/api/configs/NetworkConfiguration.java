@@ -1,5 +1,6 @@
 package org.hive2hive.core.api.configs;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.util.UUID;
 
@@ -28,6 +29,9 @@ public class NetworkConfiguration implements INetworkConfiguration {
 	private int bootstrapPort = H2HConstants.H2H_PORT;
 	private boolean isFirewalled = false;
 	private boolean tryUpnp = false;
+	private File storageDirectory = null;
+	private boolean isOffHeapStorage = false;
+	private long storageCapacity = H2HConstants.DEFAULT_STORAGE_CAPACITY;
 
 	/**
 	 * @param nodeID defines the location of the peer in the DHT. Should not be null
@@ -120,6 +124,41 @@ public class NetworkConfiguration implements INetworkConfiguration {
 		return this;
 	}
 
+	/**
+	 * Persist the data this peer stores for the network, such that it survives a restart.
+	 * 
+	 * @param storageDirectory the directory where the data is persisted or <code>null</code> to keep the data
+	 *            in memory only
+	 * @return this instance
+	 */
+	public NetworkConfiguration setStorageDirectory(File storageDirectory) {
+		this.storageDirectory = storageDirectory;
+		return this;
+	}
+
+	/**
+	 * Keep the data this peer stores for the network outside of the Java heap. Make sure the JVM allows
+	 * enough direct memory (<code>-XX:MaxDirectMemorySize</code>) for the storage capacity.
+	 * 
+	 * @param isOffHeapStorage the flag whether the payloads are stored off-heap
+	 * @return this instance
+	 */
+	public NetworkConfiguration setOffHeapStorage(boolean isOffHeapStorage) {
+		this.isOffHeapStorage = isOffHeapStorage;
+		return this;
+	}
+
+	/**
+	 * @param storageCapacity the maximum number of bytes to store for the network when the data is
+	 *            persisted or stored off-heap (see {@link #setStorageDirectory(File)} and
+	 *            {@link #setOffHeapStorage(boolean)})
+	 * @return this instance
+	 */
+	public NetworkConfiguration setStorageCapacity(long storageCapacity) {
+		this.storageCapacity = storageCapacity;
+		return this;
+	}
+
 	/**
 	 * Create network configuration for initial peer with random node id
 	 * 
@@ -245,4 +284,19 @@ public class NetworkConfiguration implements INetworkConfiguration {
 	public boolean tryUPnP() {
 		return tryUpnp;
 	}
+
+	@Override
+	public File getStorageDirectory() {
+		return storageDirectory;
+	}
+
+	@Override
+	public boolean isOffHeapStorage() {
+		return isOffHeapStorage;
+	}
+
+	@Override
+	public long getStorageCapacity() {
+		return storageCapacity;
+	}
 }
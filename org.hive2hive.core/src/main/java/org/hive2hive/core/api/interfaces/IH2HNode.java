@@ -3,6 +3,8 @@ package org.hive2hive.core.api.interfaces;
 import net.tomp2p.dht.PeerDHT;
 import net.tomp2p.rpc.ObjectDataReply;
 
+import org.hive2hive.core.metrics.H2HMetrics;
+
 /**
  * This interface represents the entry point of Hive2Hive and exposes the managers necessary for interaction.
  * 
@@ -86,4 +88,12 @@ public interface IH2HNode {
 	 *         returns null.
 	 */
 	PeerDHT getPeer();
+
+	/**
+	 * Returns the {@link H2HMetrics} of this node, containing latency histograms and counters of the DHT and
+	 * messaging operations. The metrics are also exposed through JMX while the node is connected.
+	 * 
+	 * @return the metrics of this node
+	 */
+	H2HMetrics getMetrics();
 }
@@ -1,5 +1,6 @@
 package org.hive2hive.core.api.interfaces;
 
+import java.io.File;
 import java.net.InetAddress;
 
 import net.tomp2p.p2p.Peer;
@@ -82,4 +83,29 @@ public interface INetworkConfiguration {
 	 * @return <code>true</code> if the peer should try to use UPnP for port-forwarding.
 	 */
 	boolean tryUPnP();
+
+	/**
+	 * The directory where the data this peer stores for the network is persisted. If it is <code>null</code>,
+	 * the data is kept in memory only and is lost when the peer shuts down.
+	 * 
+	 * @return the storage directory or <code>null</code> for an in-memory storage
+	 */
+	File getStorageDirectory();
+
+	/**
+	 * Whether the data this peer stores for the network is kept outside of the Java heap. This reduces the
+	 * garbage collection pauses of peers storing a lot of data. Does not apply to a persistent storage (see
+	 * {@link #getStorageDirectory()}).
+	 * 
+	 * @return <code>true</code> if the payloads are stored off-heap
+	 */
+	boolean isOffHeapStorage();
+
+	/**
+	 * The maximum number of bytes this peer stores for the network. Only applies to a persistent storage
+	 * (see {@link #getStorageDirectory()}) or an off-heap storage (see {@link #isOffHeapStorage()}).
+	 * 
+	 * @return the storage capacity in bytes
+	 */
+	long getStorageCapacity();
 }
@@ -15,6 +15,7 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.hive2hive.core.file.FileUtil;
 import org.hive2hive.core.model.FileIndex;
 import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.IIndexVisitor;
 import org.hive2hive.core.model.Index;
 import org.hive2hive.core.model.versioned.UserProfile;
 import org.hive2hive.core.security.HashUtil;
@@ -153,21 +154,24 @@ public class FileSynchronizer {
 	 * @return a list of files that has been added remotely
 	 */
 	public List<Index> getAddedRemotely() {
-		List<Index> addedRemotely = new ArrayList<Index>();
+		final List<Index> addedRemotely = new ArrayList<Index>();
 
 		// visit all files in the tree and compare to disk
-		List<Index> indexList = Index.getIndexList(profileRootNode);
-		indexList.remove(profileRootNode);
-
-		for (Index index : indexList) {
-			if (now.containsKey(index.getFullPath())) {
-				// was here before and is still here --> nothing to add
-				logger.trace("File '{}' was already here.", index.getFullPath());
-			} else {
-				logger.debug("File '{}' has been added remotely during absence.", index.getFullPath());
-				addedRemotely.add(index);
+		profileRootNode.walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				if (index == profileRootNode) {
+					// skip the root
+				} else if (now.containsKey(index.getFullPath())) {
+					// was here before and is still here --> nothing to add
+					logger.trace("File '{}' was already here.", index.getFullPath());
+				} else {
+					logger.debug("File '{}' has been added remotely during absence.", index.getFullPath());
+					addedRemotely.add(index);
+				}
+				return true;
 			}
-		}
+		});
 
 		sortNodesPreorder(addedRemotely);
 		logger.info("Found {} files/folders that have been added remotely during absence.", addedRemotely.size());
@@ -222,27 +226,30 @@ public class FileSynchronizer {
 	 * @return a list of files that has been updated remotely
 	 */
 	public List<FileIndex> getUpdatedRemotely() {
-		List<FileIndex> updatedRemotely = new ArrayList<FileIndex>();
+		final List<FileIndex> updatedRemotely = new ArrayList<FileIndex>();
 
 		// visit all files in the tree and compare to disk
-		List<Index> indexList = Index.getIndexList(profileRootNode);
-		for (Index index : indexList) {
-			if (index.isFolder()) {
-				// folder cannot be modified
-				continue;
-			}
+		profileRootNode.walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				if (index.isFolder()) {
+					// folder cannot be modified
+					return true;
+				}
 
-			FileIndex fileIndex = (FileIndex) index;
-			String path = fileIndex.getFullPath();
-			if (before.containsKey(path) && now.containsKey(path)) {
-				if (!HashUtil.compare(fileIndex.getHash(), now.get(path))
-						&& !HashUtil.compare(fileIndex.getHash(), before.get(path))) {
-					// different hashes than 'before' and 'now'
-					logger.debug("File '{}' has been updated remotely during absence.", path);
-					updatedRemotely.add(fileIndex);
+				FileIndex fileIndex = (FileIndex) index;
+				String path = fileIndex.getFullPath();
+				if (before.containsKey(path) && now.containsKey(path)) {
+					if (!HashUtil.compare(fileIndex.getHash(), now.get(path))
+							&& !HashUtil.compare(fileIndex.getHash(), before.get(path))) {
+						// different hashes than 'before' and 'now'
+						logger.debug("File '{}' has been updated remotely during absence.", path);
+						updatedRemotely.add(fileIndex);
+					}
 				}
+				return true;
 			}
-		}
+		});
 
 		logger.info("Found {} files/folders that have been updated remotely during absence.", updatedRemotely.size());
 		return updatedRemotely;
@@ -10,6 +10,7 @@ import java.util.List;
 
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.network.data.PublicKeyManager;
+import org.hive2hive.core.network.data.TTLRefreshManager;
 import org.hive2hive.core.serializer.IH2HSerialize;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,21 @@ public class FileUtil {
 	 */
 	public static void writePersistentMetaData(IFileAgent fileAgent, PublicKeyManager keyManager, IH2HSerialize serializer)
 			throws IOException {
+		writePersistentMetaData(fileAgent, keyManager, null, serializer);
+	}
+
+	/**
+	 * Writes the meta data (used to synchronize) to the disk
+	 * 
+	 * @param fileAgent the file agent
+	 * @param keyManager the key manager
+	 * @param ttlRefreshManager the refresh manager of which the refresh times are stored, can be
+	 *            <code>null</code>
+	 * @param serializer the serializer to use
+	 * @throws IOException if the data cannot be serialized or stored
+	 */
+	public static void writePersistentMetaData(IFileAgent fileAgent, PublicKeyManager keyManager,
+			TTLRefreshManager ttlRefreshManager, IH2HSerialize serializer) throws IOException {
 		// generate the new persistent meta data
 		PersistentMetaData metaData = new PersistentMetaData();
 
@@ -40,6 +56,11 @@ public class FileUtil {
 			metaData.setPublicKeyCache(keyManager.getCachedPublicKeys());
 		}
 
+		// add the refresh times
+		if (ttlRefreshManager != null) {
+			metaData.setTTLRefreshTimes(ttlRefreshManager.getRefreshTimes());
+		}
+
 		byte[] encoded = serializer.serialize(metaData);
 		fileAgent.writeCache(H2HConstants.META_FILE_NAME, encoded);
 	}
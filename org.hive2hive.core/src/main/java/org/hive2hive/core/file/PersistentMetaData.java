@@ -17,9 +17,12 @@ public class PersistentMetaData implements Serializable {
 	private static final long serialVersionUID = -1069468683019402537L;
 
 	private Map<String, PublicKey> publicKeyCache;
+	// the last time-to-live refresh of the files by this client
+	private Map<PublicKey, Long> ttlRefreshTimes;
 
 	public PersistentMetaData() {
 		publicKeyCache = new HashMap<String, PublicKey>(0);
+		ttlRefreshTimes = new HashMap<PublicKey, Long>(0);
 	}
 
 	public Map<String, PublicKey> getPublicKeyCache() {
@@ -29,4 +32,13 @@ public class PersistentMetaData implements Serializable {
 	public void setPublicKeyCache(Map<String, PublicKey> publicKeyCache) {
 		this.publicKeyCache = publicKeyCache;
 	}
-}
\ No newline at end of file
+
+	public Map<PublicKey, Long> getTTLRefreshTimes() {
+		// not present in meta data written by older versions
+		return ttlRefreshTimes == null ? new HashMap<PublicKey, Long>(0) : ttlRefreshTimes;
+	}
+
+	public void setTTLRefreshTimes(Map<PublicKey, Long> ttlRefreshTimes) {
+		this.ttlRefreshTimes = ttlRefreshTimes;
+	}
+}
@@ -0,0 +1,203 @@
+package org.hive2hive.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hive2hive.core.H2HConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects counters, gauges and latency histograms of a node. The metrics are named by the operation (e.g.
+ * <code>dht.put</code>) and tagged by the content key and the {@link Outcome}, e.g.
+ * <code>dht.put{USER_PROFILE,OK}</code>.<br>
+ * The metrics can be pulled with {@link #snapshot()} (see {@link org.hive2hive.core.api.interfaces.IH2HNode})
+ * or through JMX. When disabled, recording returns immediately.
+ */
+public class H2HMetrics implements H2HMetricsMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(H2HMetrics.class);
+
+	// the tag used when too many different tags have been recorded
+	private static final String OTHER_TAG = "OTHER";
+
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, IGauge> gauges = new ConcurrentHashMap<String, IGauge>();
+
+	private volatile boolean enabled;
+	private ObjectName objectName;
+
+	public H2HMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Records the latency of an operation
+	 *
+	 * @param operation the name of the operation
+	 * @param tag the tag, usually the content key (can be <code>null</code>)
+	 * @param outcome the outcome of the operation
+	 * @param startNanos the start of the operation, as given by {@link System#nanoTime()}
+	 */
+	public void recordLatency(String operation, String tag, Outcome outcome, long startNanos) {
+		if (!enabled) {
+			return;
+		}
+
+		String name = name(operation, tag, outcome, histograms);
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = histograms.putIfAbsent(name, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		histogram.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Increments a counter
+	 *
+	 * @param operation the name of the operation
+	 * @param tag the tag, usually the content key (can be <code>null</code>)
+	 * @param outcome the outcome of the operation
+	 */
+	public void increment(String operation, String tag, Outcome outcome) {
+		if (!enabled) {
+			return;
+		}
+
+		String name = name(operation, tag, outcome, counters);
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counter = new AtomicLong();
+			AtomicLong existing = counters.putIfAbsent(name, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Registers a gauge that is read when the metrics are pulled
+	 *
+	 * @param name the name of the gauge
+	 * @param gauge the gauge
+	 */
+	public void registerGauge(String name, IGauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Takes a snapshot of all metrics. For histograms, the count, the mean, the 50th, 90th and 99th percentile
+	 * and the maximum (in milliseconds) are returned with the suffixes <code>.count</code>, <code>.mean</code>,
+	 * <code>.p50</code>, <code>.p90</code>, <code>.p99</code> and <code>.max</code>.
+	 *
+	 * @return the values sorted by name
+	 */
+	public SortedMap<String, Double> snapshot() {
+		SortedMap<String, Double> snapshot = new TreeMap<String, Double>();
+		for (Entry<String, AtomicLong> counter : counters.entrySet()) {
+			snapshot.put(counter.getKey(), (double) counter.getValue().get());
+		}
+		for (Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			snapshot.put(entry.getKey() + ".count", (double) histogram.getCount());
+			snapshot.put(entry.getKey() + ".mean", histogram.getMeanMillis());
+			snapshot.put(entry.getKey() + ".p50", histogram.getPercentileMillis(0.5));
+			snapshot.put(entry.getKey() + ".p90", histogram.getPercentileMillis(0.9));
+			snapshot.put(entry.getKey() + ".p99", histogram.getPercentileMillis(0.99));
+			snapshot.put(entry.getKey() + ".max", histogram.getMaxMillis());
+		}
+		for (Entry<String, IGauge> gauge : gauges.entrySet()) {
+			try {
+				snapshot.put(gauge.getKey(), gauge.getValue().getValue());
+			} catch (RuntimeException e) {
+				logger.warn("Cannot read gauge '{}'.", gauge.getKey(), e);
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public Map<String, Double> getValues() {
+		return snapshot();
+	}
+
+	@Override
+	public void reset() {
+		for (AtomicLong counter : counters.values()) {
+			counter.set(0);
+		}
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Registers the metrics at the platform MBean server
+	 *
+	 * @param nodeId the id of the node, used to distinguish multiple nodes in the same JVM
+	 */
+	public synchronized void registerJMX(String nodeId) {
+		if (objectName != null) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("org.hive2hive:type=Metrics,node=" + ObjectName.quote(String.valueOf(nodeId)));
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+				objectName = name;
+			}
+		} catch (JMException e) {
+			logger.warn("Cannot register the metrics at JMX.", e);
+		}
+	}
+
+	public synchronized void unregisterJMX() {
+		if (objectName == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			logger.warn("Cannot unregister the metrics from JMX.", e);
+		}
+		objectName = null;
+	}
+
+	private static String name(String operation, String tag, Outcome outcome, Map<String, ?> existing) {
+		String name = operation + "{" + tag + "," + outcome + "}";
+		if (existing.size() >= H2HConstants.METRICS_MAX_NAMES && !existing.containsKey(name)) {
+			// limit the number of metrics if many different tags are used
+			return operation + "{" + OTHER_TAG + "," + outcome + "}";
+		}
+		return name;
+	}
+}
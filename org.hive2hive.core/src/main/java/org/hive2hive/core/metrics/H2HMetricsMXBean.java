@@ -0,0 +1,23 @@
+package org.hive2hive.core.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view on the {@link H2HMetrics}.
+ */
+public interface H2HMetricsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return all values (see {@link H2HMetrics#snapshot()})
+	 */
+	Map<String, Double> getValues();
+
+	/**
+	 * Resets all counters and histograms
+	 */
+	void reset();
+}
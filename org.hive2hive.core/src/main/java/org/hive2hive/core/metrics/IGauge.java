@@ -0,0 +1,12 @@
+package org.hive2hive.core.metrics;
+
+/**
+ * A value that is read when the metrics are pulled.
+ */
+public interface IGauge {
+
+	/**
+	 * @return the current value
+	 */
+	double getValue();
+}
@@ -0,0 +1,107 @@
+package org.hive2hive.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets (similar to an HDR histogram). Each power of two is
+ * split into 16 linear sub-buckets, thus a percentile is accurate to about 6%. The values are recorded in
+ * microseconds, the memory footprint is constant (about 8 KB).
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a single latency
+	 * 
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(index(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+
+		long currentMax = max.get();
+		while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+			currentMax = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean latency in milliseconds
+	 */
+	public double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / 1000.0 / n;
+	}
+
+	/**
+	 * @return the maximum latency in milliseconds
+	 */
+	public double getMaxMillis() {
+		return max.get() / 1000.0;
+	}
+
+	/**
+	 * @param quantile the quantile between 0 and 1 (e.g. 0.99)
+	 * @return the (upper bound of the) latency in milliseconds below which the given quantile of the recorded
+	 *         latencies are
+	 */
+	public double getPercentileMillis(double quantile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(quantile * n));
+		long cumulated = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulated += counts.get(i);
+			if (cumulated >= target) {
+				return Math.min(upperBound(i), max.get()) / 1000.0;
+			}
+		}
+		return getMaxMillis();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int index(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,15 @@
+package org.hive2hive.core.metrics;
+
+/**
+ * The outcome of a measured operation, used as a tag of the metrics.
+ */
+public enum Outcome {
+	/** the operation succeeded */
+	OK,
+	/** the operation (or a part of it) has been retried */
+	RETRY,
+	/** a version fork (or delay) has been detected */
+	FORK,
+	/** the operation failed */
+	FAIL
+}
@@ -0,0 +1,39 @@
+package org.hive2hive.core.model;
+
+/**
+ * Holds the compressed serialization of another {@link BaseNetworkContent}. It is used as the plain text of
+ * encrypted content, such that the format can be recognized when decrypting. Content without this wrapper has
+ * been stored uncompressed.
+ */
+public class CompressedContent extends BaseNetworkContent {
+
+	private static final long serialVersionUID = -6201739912938408470L;
+
+	/**
+	 * The data is compressed with <code>Deflate</code>
+	 */
+	public static final byte FORMAT_DEFLATE = 1;
+
+	private final byte format;
+	private final byte[] data;
+	private final int timeToLive;
+
+	public CompressedContent(byte format, byte[] data, int timeToLive) {
+		this.format = format;
+		this.data = data;
+		this.timeToLive = timeToLive;
+	}
+
+	public byte getFormat() {
+		return format;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	@Override
+	public int getTimeToLive() {
+		return timeToLive;
+	}
+}
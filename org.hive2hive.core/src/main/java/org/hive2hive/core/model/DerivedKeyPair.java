@@ -0,0 +1,69 @@
+package org.hive2hive.core.model;
+
+import java.io.Serializable;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+
+import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.hive2hive.core.security.KeyDerivationUtil;
+
+/**
+ * Compact representation of the file keys of an {@link Index}. Only the seed and the public key are stored,
+ * the private key is derived when needed (see {@link KeyDerivationUtil}).
+ */
+public class DerivedKeyPair implements Serializable {
+
+	private static final long serialVersionUID = 2617049937365224093L;
+
+	private final byte[] seed;
+	private final RSA_KEYLENGTH keyLength;
+	private final PublicKey publicKey;
+	private transient KeyPair keyPair;
+
+	/**
+	 * Creates a new key pair from a fresh seed
+	 *
+	 * @param keyLength the length of the RSA keys
+	 * @return the new key pair
+	 * @throws GeneralSecurityException if the key pair cannot be derived
+	 */
+	public static DerivedKeyPair create(RSA_KEYLENGTH keyLength) throws GeneralSecurityException {
+		byte[] seed = KeyDerivationUtil.generateSeed();
+		KeyPair keyPair = KeyDerivationUtil.deriveRSAKeyPair(seed, keyLength);
+		DerivedKeyPair derived = new DerivedKeyPair(seed, keyLength, keyPair.getPublic());
+		derived.keyPair = keyPair;
+		return derived;
+	}
+
+	public DerivedKeyPair(byte[] seed, RSA_KEYLENGTH keyLength, PublicKey publicKey) {
+		this.seed = seed;
+		this.keyLength = keyLength;
+		this.publicKey = publicKey;
+	}
+
+	public PublicKey getPublic() {
+		return publicKey;
+	}
+
+	/**
+	 * Returns the full key pair, which is derived at the first call.
+	 *
+	 * @return the key pair
+	 * @throws IllegalStateException if the key pair cannot be derived or does not match the stored public key
+	 */
+	public KeyPair getKeyPair() {
+		if (keyPair == null) {
+			try {
+				KeyPair derived = KeyDerivationUtil.deriveRSAKeyPair(seed, keyLength);
+				if (!derived.getPublic().equals(publicKey)) {
+					throw new IllegalStateException("The derived key pair does not match the public key.");
+				}
+				keyPair = derived;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException("Cannot derive the key pair.", e);
+			}
+		}
+		return keyPair;
+	}
+}
@@ -31,13 +31,27 @@ public class FileIndex extends Index {
 		this.latestVersionHash = latestVersionHash;
 	}
 
+	/**
+	 * Constructor for child nodes of type 'file' having compact file keys
+	 * 
+	 * @param parent the parent folder
+	 * @param derivedKeys the file keys
+	 * @param name the name of the file
+	 * @param latestVersionHash the hash of the latest version
+	 */
+	public FileIndex(FolderIndex parent, DerivedKeyPair derivedKeys, String name, byte[] latestVersionHash) {
+		super(derivedKeys, name, parent);
+		assert parent != null;
+		this.latestVersionHash = latestVersionHash;
+	}
+
 	/**
 	 * Copy constructor
 	 * 
 	 * @param fileIndex the index to copy
 	 */
 	public FileIndex(FileIndex fileIndex) {
-		super(fileIndex.fileKeys, fileIndex.name, fileIndex.parent);
+		super(fileIndex.fileKeys, fileIndex.derivedKeys, fileIndex.name, fileIndex.parent);
 		this.latestVersionHash = fileIndex.latestVersionHash;
 		this.metaFileHash = fileIndex.metaFileHash;
 	}
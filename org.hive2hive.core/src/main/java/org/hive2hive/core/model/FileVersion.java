@@ -6,6 +6,8 @@ import java.text.DateFormat;
 import java.util.Date;
 import java.util.List;
 
+import org.hive2hive.core.model.versioned.HybridEncryptedContent;
+
 /**
  * A version of a file in the DHT. A version contains several chunks (depending on the file size and the
  * settings).
@@ -20,16 +22,39 @@ public class FileVersion implements Serializable, IFileVersion {
 	private final BigInteger size; // size of the version in bytes
 	private final long date; // date when it's created
 	private final List<MetaChunk> metaChunks; // the chunk id's to find the chunks
+	private final HybridEncryptedContent contentKey; // the key of all chunks, encrypted with the chunk keys
+	private final ChunkCipher chunkCipher; // how the chunks are encrypted with the content key
+
+	/**
+	 * The symmetric encryption of the chunks with the content key of a version
+	 */
+	public enum ChunkCipher {
+		AES_CBC,
+		// authenticated, no separate hash is needed to detect modified chunks
+		AES_GCM
+	}
 
 	public FileVersion(int index, long size, long date, List<MetaChunk> metaChunks) {
-		this(index, BigInteger.valueOf(size), date, metaChunks);
+		this(index, BigInteger.valueOf(size), date, metaChunks, null, null);
+	}
+
+	public FileVersion(int index, long size, long date, List<MetaChunk> metaChunks, HybridEncryptedContent contentKey,
+			ChunkCipher chunkCipher) {
+		this(index, BigInteger.valueOf(size), date, metaChunks, contentKey, chunkCipher);
 	}
 
 	public FileVersion(int index, BigInteger size, long date, List<MetaChunk> metaChunks) {
+		this(index, size, date, metaChunks, null, null);
+	}
+
+	public FileVersion(int index, BigInteger size, long date, List<MetaChunk> metaChunks,
+			HybridEncryptedContent contentKey, ChunkCipher chunkCipher) {
 		this.index = index;
 		this.size = size;
 		this.date = date;
 		this.metaChunks = metaChunks;
+		this.contentKey = contentKey;
+		this.chunkCipher = chunkCipher;
 	}
 
 	/**
@@ -42,6 +67,25 @@ public class FileVersion implements Serializable, IFileVersion {
 		return metaChunks;
 	}
 
+	/**
+	 * Get the symmetric key all chunks of this version are encrypted with. It is encrypted with the public
+	 * chunk key of the meta file.
+	 * 
+	 * @return the encrypted content key or <code>null</code> if every chunk is encrypted hybrid on its own
+	 */
+	public HybridEncryptedContent getEncryptedContentKey() {
+		return contentKey;
+	}
+
+	/**
+	 * Get the encryption of the chunks with the content key.
+	 * 
+	 * @return the chunk cipher, versions stored without it use {@link ChunkCipher#AES_CBC}
+	 */
+	public ChunkCipher getChunkCipher() {
+		return chunkCipher == null ? ChunkCipher.AES_CBC : chunkCipher;
+	}
+
 	@Override
 	public int getIndex() {
 		return index;
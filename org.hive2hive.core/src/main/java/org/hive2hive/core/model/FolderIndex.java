@@ -2,8 +2,11 @@ package org.hive2hive.core.model;
 
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import org.hive2hive.core.file.FileUtil;
@@ -24,6 +27,13 @@ public class FolderIndex extends Index {
 	private KeyPair protectionKeys = null;
 	private boolean isShared = false;
 
+	// lookup of the children by their case-folded name, built lazily (e.g. after deserialization)
+	private transient volatile Map<String, Index> childrenByName;
+	// lookup of all indexes in this tree by their id, only maintained at the top folder of a tree
+	private transient volatile Map<PublicKey, Index> indexById;
+	// loads the children on first access, only set as long as they have not been loaded
+	private transient volatile IChildrenLoader childrenLoader;
+
 	/**
 	 * Constructor for the root folder.
 	 * 
@@ -44,15 +54,26 @@ public class FolderIndex extends Index {
 		super(keyPair, name, parent);
 	}
 
+	/**
+	 * Constructor for child nodes of type 'folder' having compact file keys
+	 * 
+	 * @param parent the parent folder
+	 * @param derivedKeys the folder's keys
+	 * @param name the name of the folder
+	 */
+	public FolderIndex(FolderIndex parent, DerivedKeyPair derivedKeys, String name) {
+		super(derivedKeys, name, parent);
+	}
+
 	/**
 	 * Copy constructor
 	 * 
 	 * @param folderIndex the folder to copy
 	 */
 	public FolderIndex(FolderIndex folderIndex) {
-		super(folderIndex.fileKeys, folderIndex.name, folderIndex.parent);
+		super(folderIndex.fileKeys, folderIndex.derivedKeys, folderIndex.name, folderIndex.parent);
 		this.children = new HashSet<Index>();
-		for (Index child : folderIndex.children) {
+		for (Index child : folderIndex.children()) {
 			if (child.isFolder()) {
 				this.children.add(new FolderIndex((FolderIndex) child));
 			} else {
@@ -82,7 +103,28 @@ public class FolderIndex extends Index {
 	 * @return all childrens of this node
 	 */
 	public Set<Index> getChildren() {
-		return children;
+		return children();
+	}
+
+	/**
+	 * Lets the children of this folder be loaded when they are accessed the first time, e.g. the subtree of a
+	 * top-level folder of a sharded user profile. Has no effect if the folder already has children.
+	 * 
+	 * @param childrenLoader the loader of the children
+	 */
+	public synchronized void setChildrenLoader(IChildrenLoader childrenLoader) {
+		if (children.isEmpty()) {
+			this.childrenLoader = childrenLoader;
+		}
+	}
+
+	/**
+	 * Returns whether the children of this folder are available without loading them
+	 * 
+	 * @return <code>false</code> if the children are loaded on the next access
+	 */
+	public boolean isLoaded() {
+		return childrenLoader == null;
 	}
 
 	/**
@@ -93,7 +135,9 @@ public class FolderIndex extends Index {
 	public void addChild(Index child) {
 		// only add once
 		if (getChildByName(child.getName()) == null) {
-			children.add(child);
+			children().add(child);
+			getChildrenByName().put(toKey(child.getName()), child);
+			registerIds(child);
 		}
 	}
 
@@ -103,10 +147,22 @@ public class FolderIndex extends Index {
 	 * @param child the child to remove (file or folder)
 	 */
 	public void removeChild(Index child) {
-		if (!children.remove(child)) {
+		Index removed = child;
+		if (!children().remove(child)) {
 			// remove by name
-			children.remove(getChildByName(child.getName()));
+			removed = getChildByName(child.getName());
+			if (removed == null || !children().remove(removed)) {
+				return;
+			}
 		}
+
+		Map<String, Index> byName = getChildrenByName();
+		if (byName.get(toKey(removed.getName())) == removed) {
+			byName.remove(toKey(removed.getName()));
+		} else {
+			byName.values().remove(removed);
+		}
+		unregisterIds(removed);
 	}
 
 	/**
@@ -117,14 +173,173 @@ public class FolderIndex extends Index {
 	 */
 	public Index getChildByName(String name) {
 		if (name != null) {
-			String withoutSeparator = name.replace(FileUtil.getFileSep(), "");
+			String key = toKey(name.replace(FileUtil.getFileSep(), ""));
+			Map<String, Index> byName = getChildrenByName();
+			Index child = byName.get(key);
+			if ((child != null && !children().contains(child)) || (child == null && byName.size() != children().size())) {
+				// the children have been changed directly, rebuild
+				childrenByName = null;
+				child = getChildrenByName().get(key);
+			}
+			return child;
+		}
+		return null;
+	}
+
+	/**
+	 * Finds an index in the tree below this folder (including itself) by its id. The lookup is maintained
+	 * when called at the top folder of a tree (usually the root), else the tree is searched.
+	 * 
+	 * @param fileId the public key of the file keys
+	 * @return the index or <code>null</code> if not found
+	 */
+	public Index getIndexById(final PublicKey fileId) {
+		if (parent != null) {
+			final Index[] found = new Index[1];
+			walkPreorder(new IIndexVisitor() {
+				@Override
+				public boolean visit(Index index) {
+					if (index.getFilePublicKey().equals(fileId)) {
+						found[0] = index;
+						return false;
+					}
+					return true;
+				}
+			});
+			return found[0];
+		}
+
+		Map<PublicKey, Index> ids = indexById;
+		if (ids == null) {
+			final Map<PublicKey, Index> built = new HashMap<PublicKey, Index>();
+			walkPreorder(new IIndexVisitor() {
+				@Override
+				public boolean visit(Index index) {
+					built.put(index.getFilePublicKey(), index);
+					return true;
+				}
+			});
+			indexById = built;
+			ids = built;
+		}
+		return ids.get(fileId);
+	}
+
+	@Override
+	public void setParent(FolderIndex parent) {
+		super.setParent(parent);
+		// not the top folder anymore, the id lookup is maintained above
+		indexById = null;
+	}
+
+	@Override
+	public void decoupleFromParent() {
+		super.decoupleFromParent();
+		indexById = null;
+	}
+
+	@Override
+	protected void invalidatePath() {
+		super.invalidatePath();
+		// the children are not initialized yet while the folder is constructed, children which have not been
+		// loaded yet compute their path when loaded
+		if (children != null) {
 			for (Index child : children) {
-				if (child.getName().equalsIgnoreCase(withoutSeparator)) {
-					return child;
+				child.invalidatePath();
+			}
+		}
+	}
+
+	/**
+	 * Updates the name lookup after a child has been renamed
+	 */
+	void onChildRenamed(Index child, String oldName) {
+		if (childrenByName == null || !children.contains(child)) {
+			return;
+		}
+		if (oldName != null && childrenByName.get(toKey(oldName)) == child) {
+			childrenByName.remove(toKey(oldName));
+		}
+		childrenByName.put(toKey(child.getName()), child);
+	}
+
+	private Set<Index> children() {
+		if (childrenLoader != null) {
+			// readers of a shared snapshot may access the folder concurrently, load only once
+			synchronized (this) {
+				IChildrenLoader loader = childrenLoader;
+				if (loader != null) {
+					Set<Index> loaded = new HashSet<Index>();
+					for (Index child : loader.loadChildren(this)) {
+						child.setParent(this);
+						loaded.add(child);
+					}
+					children = loaded;
+					childrenByName = null;
+					childrenLoader = null;
+					for (Index child : loaded) {
+						registerIds(child);
+					}
 				}
 			}
 		}
-		return null;
+		return children;
+	}
+
+	private Map<String, Index> getChildrenByName() {
+		Map<String, Index> byName = childrenByName;
+		if (byName == null) {
+			// build completely before publishing, readers of a shared snapshot may build it concurrently
+			Set<Index> current = children();
+			byName = new HashMap<String, Index>(current.size() * 2);
+			for (Index child : current) {
+				byName.put(toKey(child.getName()), child);
+			}
+			childrenByName = byName;
+		}
+		return byName;
+	}
+
+	private void registerIds(Index child) {
+		FolderIndex top = getTopFolder();
+		if (top.indexById != null) {
+			updateIds(top.indexById, child, true);
+		}
+	}
+
+	private void unregisterIds(Index child) {
+		FolderIndex top = getTopFolder();
+		if (top.indexById != null) {
+			updateIds(top.indexById, child, false);
+		}
+	}
+
+	private static void updateIds(Map<PublicKey, Index> ids, Index index, boolean add) {
+		if (add) {
+			ids.put(index.getFilePublicKey(), index);
+		} else if (ids.get(index.getFilePublicKey()) == index) {
+			ids.remove(index.getFilePublicKey());
+		}
+
+		// the children are not initialized yet while a new folder adds itself to its parent
+		if (index.isFolder() && ((FolderIndex) index).children != null) {
+			for (Index child : ((FolderIndex) index).children) {
+				updateIds(ids, child, add);
+			}
+		}
+	}
+
+	private FolderIndex getTopFolder() {
+		FolderIndex top = this;
+		while (top.parent != null) {
+			top = top.parent;
+		}
+		return top;
+	}
+
+	private static String toKey(String name) {
+		// case-folded, the file names are case insensitive
+		return name == null ? null : name.toLowerCase(Locale.ENGLISH);
 	}
 
 	/**
@@ -0,0 +1,19 @@
+package org.hive2hive.core.model;
+
+import java.util.Set;
+
+/**
+ * Loads the children of a {@link FolderIndex} when they are accessed the first time (see
+ * {@link FolderIndex#setChildrenLoader(IChildrenLoader)}).
+ */
+public interface IChildrenLoader {
+
+	/**
+	 * Loads the children of the folder. The parent of the returned children is replaced by the folder.
+	 *
+	 * @param folder the folder whose children are accessed
+	 * @return the children of the folder
+	 * @throws IllegalStateException if the children cannot be loaded
+	 */
+	Set<Index> loadChildren(FolderIndex folder);
+}
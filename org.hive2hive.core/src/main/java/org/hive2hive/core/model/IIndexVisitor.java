@@ -0,0 +1,16 @@
+package org.hive2hive.core.model;
+
+/**
+ * Visitor for the traversal of an {@link Index} tree (see {@link Index#walkPreorder(IIndexVisitor)} and
+ * {@link Index#walkPostorder(IIndexVisitor)}).
+ */
+public interface IIndexVisitor {
+
+	/**
+	 * Called for every visited index.
+	 * 
+	 * @param index the current index
+	 * @return <code>true</code> to continue the traversal, <code>false</code> to stop it
+	 */
+	boolean visit(Index index);
+}
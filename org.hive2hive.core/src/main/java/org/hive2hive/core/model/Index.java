@@ -16,9 +16,13 @@ public abstract class Index implements Comparable<Index>, Serializable {
 
 	private static final long serialVersionUID = -2643129713985680901L;
 	protected final KeyPair fileKeys;
+	protected final DerivedKeyPair derivedKeys;
 	protected String name;
 	protected FolderIndex parent;
 
+	// the cached full path, invalidated when this index or a parent is renamed or moved
+	private transient String fullPath;
+
 	/**
 	 * Constructor for root node.
 	 * 
@@ -29,10 +33,26 @@ public abstract class Index implements Comparable<Index>, Serializable {
 	}
 
 	public Index(KeyPair fileKeys, String name, FolderIndex parent) {
-		if (fileKeys == null) {
+		this(fileKeys, null, name, parent);
+	}
+
+	/**
+	 * Constructor for an index having compact file keys (see {@link DerivedKeyPair}).
+	 * 
+	 * @param derivedKeys the file keys
+	 * @param name the name of the file
+	 * @param parent the parent folder
+	 */
+	public Index(DerivedKeyPair derivedKeys, String name, FolderIndex parent) {
+		this(null, derivedKeys, name, parent);
+	}
+
+	protected Index(KeyPair fileKeys, DerivedKeyPair derivedKeys, String name, FolderIndex parent) {
+		if (fileKeys == null && derivedKeys == null) {
 			throw new IllegalArgumentException("File keys can't be null.");
 		}
 		this.fileKeys = fileKeys;
+		this.derivedKeys = derivedKeys;
 		this.name = name;
 		this.parent = parent;
 		if (parent != null) {
@@ -46,15 +66,31 @@ public abstract class Index implements Comparable<Index>, Serializable {
 	 * @return the keypair
 	 */
 	public KeyPair getFileKeys() {
+		if (fileKeys == null) {
+			// derive the private key only when it is needed
+			return derivedKeys.getKeyPair();
+		}
 		return fileKeys;
 	}
 
+	/**
+	 * Returns the compact representation of the file keys, if used.
+	 * 
+	 * @return the derived file keys or <code>null</code> if this index holds a full key pair
+	 */
+	public DerivedKeyPair getDerivedFileKeys() {
+		return derivedKeys;
+	}
+
 	/**
 	 * Convenience method that returns the public key of the file keys
 	 * 
 	 * @return the public key
 	 */
 	public PublicKey getFilePublicKey() {
+		if (fileKeys == null) {
+			return derivedKeys.getPublic();
+		}
 		return fileKeys.getPublic();
 	}
 
@@ -73,7 +109,13 @@ public abstract class Index implements Comparable<Index>, Serializable {
 	 * @param name the name of the index
 	 */
 	public void setName(String name) {
+		String oldName = this.name;
 		this.name = name;
+		invalidatePath();
+		if (parent != null) {
+			// keep the name lookup of the parent up to date
+			parent.onChildRenamed(this, oldName);
+		}
 	}
 
 	/**
@@ -86,10 +128,12 @@ public abstract class Index implements Comparable<Index>, Serializable {
 			throw new IllegalArgumentException("Parent can't be null.");
 		}
 		this.parent = parent;
+		invalidatePath();
 	}
 
 	public void decoupleFromParent() {
 		this.parent = null;
+		invalidatePath();
 	}
 
 	/**
@@ -141,15 +185,15 @@ public abstract class Index implements Comparable<Index>, Serializable {
 			// is not shared and is of type 'file'
 			return false;
 		} else {
-			// is of type 'folder', check all subfolders
-			List<Index> children = getIndexList(this);
-			for (Index child : children) {
-				if (child.isFolder()) {
-					FolderIndex subfolder = (FolderIndex) child;
-					if (subfolder.getSharedFlag()) {
-						return true;
-					}
+			// is of type 'folder', check all subfolders (the traversal stops at the first shared one)
+			boolean completed = walkPreorder(new IIndexVisitor() {
+				@Override
+				public boolean visit(Index index) {
+					return !index.isFolder() || !((FolderIndex) index).getSharedFlag();
 				}
+			});
+			if (!completed) {
+				return true;
 			}
 		}
 
@@ -163,15 +207,25 @@ public abstract class Index implements Comparable<Index>, Serializable {
 	 * @return the full path, whereas names are separated with the operating systems file separator
 	 */
 	public String getFullPath() {
-		if (parent == null) {
-			return "";
-		} else {
-			if (isFile()) {
-				return parent.getFullPath() + name;
+		String path = fullPath;
+		if (path == null) {
+			if (parent == null) {
+				path = "";
+			} else if (isFile()) {
+				path = parent.getFullPath() + name;
 			} else {
-				return parent.getFullPath() + name + FileUtil.getFileSep();
+				path = parent.getFullPath() + name + FileUtil.getFileSep();
 			}
+			fullPath = path;
 		}
+		return path;
+	}
+
+	/**
+	 * Discards the cached full path (of the whole subtree)
+	 */
+	protected void invalidatePath() {
+		fullPath = null;
 	}
 
 	/**
@@ -250,10 +304,16 @@ public abstract class Index implements Comparable<Index>, Serializable {
 			return getFullPath().equals(otherPath);
 		} else if (obj instanceof KeyPair) {
 			KeyPair otherKey = (KeyPair) obj;
+			if (fileKeys == null) {
+				return getFilePublicKey().equals(otherKey.getPublic());
+			}
 			return fileKeys.equals(otherKey);
 		} else if (obj instanceof Index) {
 			Index otherIndex = (Index) obj;
-			return fileKeys.equals(otherIndex.getFileKeys());
+			if (fileKeys == null || otherIndex.fileKeys == null) {
+				return getFilePublicKey().equals(otherIndex.getFilePublicKey());
+			}
+			return fileKeys.equals(otherIndex.fileKeys);
 		}
 		return false;
 	}
@@ -262,6 +322,8 @@ public abstract class Index implements Comparable<Index>, Serializable {
 	public int hashCode() {
 		if (fileKeys != null) {
 			return fileKeys.hashCode();
+		} else if (derivedKeys != null) {
+			return derivedKeys.getPublic().hashCode();
 		}
 		return super.hashCode();
 	}
@@ -276,20 +338,54 @@ public abstract class Index implements Comparable<Index>, Serializable {
 	 * @return The digest in preorder
 	 */
 	public static List<Index> getIndexList(Index node) {
-		List<Index> digest = new ArrayList<Index>();
-
-		// add self
-		digest.add(node);
+		final List<Index> digest = new ArrayList<Index>();
+		node.walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				digest.add(index);
+				return true;
+			}
+		});
+		return digest;
+	}
 
-		// add children
-		if (node.isFolder()) {
-			FolderIndex folder = (FolderIndex) node;
-			for (Index child : folder.getChildren()) {
-				digest.addAll(getIndexList(child));
+	/**
+	 * Visits this index and all indexes below in preorder (parents before their children).
+	 * 
+	 * @param visitor the visitor
+	 * @return <code>true</code> if all indexes have been visited, <code>false</code> if the visitor stopped
+	 *         the traversal
+	 */
+	public boolean walkPreorder(IIndexVisitor visitor) {
+		if (!visitor.visit(this)) {
+			return false;
+		}
+		if (isFolder()) {
+			for (Index child : ((FolderIndex) this).getChildren()) {
+				if (!child.walkPreorder(visitor)) {
+					return false;
+				}
 			}
 		}
+		return true;
+	}
 
-		return digest;
+	/**
+	 * Visits this index and all indexes below in postorder (children before their parents).
+	 * 
+	 * @param visitor the visitor
+	 * @return <code>true</code> if all indexes have been visited, <code>false</code> if the visitor stopped
+	 *         the traversal
+	 */
+	public boolean walkPostorder(IIndexVisitor visitor) {
+		if (isFolder()) {
+			for (Index child : ((FolderIndex) this).getChildren()) {
+				if (!child.walkPostorder(visitor)) {
+					return false;
+				}
+			}
+		}
+		return visitor.visit(this);
 	}
 
 }
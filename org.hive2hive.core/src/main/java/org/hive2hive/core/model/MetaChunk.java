@@ -35,8 +35,8 @@ public class MetaChunk implements Serializable {
 	}
 
 	/**
-	 * The hash of the chunk. In a 'small' file, this hash is generated by TomP2P and required here to re-key
-	 * a chunk at sharing. In a 'large' file, this hash is used to verify the data sent from another peer.
+	 * The hash of the chunk data. It is used to verify the data downloaded from the DHT ('small' file) or sent
+	 * from another peer ('large' file). Chunks stored before may not have a hash.
 	 * 
 	 * @return the hash
 	 */
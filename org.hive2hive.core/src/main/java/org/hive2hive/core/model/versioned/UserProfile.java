@@ -5,7 +5,9 @@ import java.security.KeyPair;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hive2hive.core.TimeToLiveStore;
 import org.hive2hive.core.model.FolderIndex;
@@ -26,6 +28,8 @@ public class UserProfile extends BaseVersionedNetworkContent {
 	private final String userId;
 	private final KeyPair encryptionKeys;
 	private final FolderIndex root;
+	// the shards of the top-level folders, only used when the profile is sharded
+	private Map<String, UserProfileShard.Reference> shards;
 
 	public UserProfile(String userId, KeyPair encryptionKeys, KeyPair protectionKeys) {
 		assert userId != null;
@@ -54,6 +58,19 @@ public class UserProfile extends BaseVersionedNetworkContent {
 		return root;
 	}
 
+	/**
+	 * Returns the references to the shards of a sharded user profile (see {@link UserProfileShard}). The map is
+	 * empty if the profile is not sharded.
+	 * 
+	 * @return the references by shard id
+	 */
+	public Map<String, UserProfileShard.Reference> getShards() {
+		if (shards == null) {
+			shards = new HashMap<String, UserProfileShard.Reference>();
+		}
+		return shards;
+	}
+
 	@Override
 	public int getTimeToLive() {
 		return TimeToLiveStore.getInstance().getUserProfile();
@@ -65,26 +82,7 @@ public class UserProfile extends BaseVersionedNetworkContent {
 	}
 
 	public Index getFileById(PublicKey fileId) {
-		return findById(root, fileId);
-	}
-
-	private Index findById(Index current, PublicKey fileId) {
-		if (current.getFilePublicKey().equals(fileId)) {
-			return current;
-		}
-
-		Index found = null;
-		if (current instanceof FolderIndex) {
-			FolderIndex folder = (FolderIndex) current;
-			for (Index child : folder.getChildren()) {
-				found = findById(child, fileId);
-				if (found != null) {
-					return found;
-				}
-			}
-		}
-
-		return found;
+		return root.getIndexById(fileId);
 	}
 
 	public Index getFileByPath(File file, File root) {
@@ -0,0 +1,68 @@
+package org.hive2hive.core.model.versioned;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import net.tomp2p.peers.Number160;
+
+import org.hive2hive.core.TimeToLiveStore;
+
+/**
+ * A part of a sharded {@link UserProfile}. A shard contains a top-level folder with its whole subtree and is
+ * stored separately, such that modifications only need to re-put the shards they touch. The user profile
+ * itself keeps the top-level folder without its children and a {@link Reference} to the version of each
+ * shard.<br>
+ * The folder is kept serialized, such that the hash in the reference covers exactly the stored bytes.
+ */
+public class UserProfileShard extends BaseVersionedNetworkContent {
+
+	private static final long serialVersionUID = -3563394296245087124L;
+
+	private final byte[] folder;
+
+	/**
+	 * @param folder the serialized top-level folder (without parent) including its subtree
+	 */
+	public UserProfileShard(byte[] folder) {
+		this.folder = folder;
+	}
+
+	public byte[] getFolder() {
+		return folder;
+	}
+
+	@Override
+	public int getTimeToLive() {
+		return TimeToLiveStore.getInstance().getUserProfile();
+	}
+
+	@Override
+	protected int getContentHash() {
+		return Arrays.hashCode(folder);
+	}
+
+	/**
+	 * References a version of a shard. The hash of the serialized folder is used to detect whether the shard
+	 * needs to be put again and to verify the loaded shard.
+	 */
+	public static class Reference implements Serializable {
+
+		private static final long serialVersionUID = 5470325394771012095L;
+
+		private final Number160 versionKey;
+		private final byte[] hash;
+
+		public Reference(Number160 versionKey, byte[] hash) {
+			this.versionKey = versionKey;
+			this.hash = hash;
+		}
+
+		public Number160 getVersionKey() {
+			return versionKey;
+		}
+
+		public byte[] getHash() {
+			return hash;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package org.hive2hive.core.network;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 
@@ -9,6 +10,7 @@ import net.tomp2p.connection.ChannelServerConfiguration;
 import net.tomp2p.connection.Ports;
 import net.tomp2p.dht.PeerBuilderDHT;
 import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.dht.Storage;
 import net.tomp2p.dht.StorageMemory;
 import net.tomp2p.futures.FutureBootstrap;
 import net.tomp2p.futures.FutureDiscover;
@@ -41,9 +43,12 @@ public class Connection implements IPeerHolder {
 	private static final Logger logger = LoggerFactory.getLogger(Connection.class);
 
 	private final MessageReplyHandler messageReplyHandler;
+	private final IH2HSerialize serializer;
 	private PeerDHT peerDHT;
+	private DigestReplication digestReplication;
 
 	public Connection(NetworkManager networkManager, IH2HSerialize serializer) {
+		this.serializer = serializer;
 		this.messageReplyHandler = new MessageReplyHandler(networkManager, serializer);
 	}
 
@@ -61,8 +66,7 @@ public class Connection implements IPeerHolder {
 		}
 
 		if (networkConfiguration.isLocal()) {
-			return connectInternal(networkConfiguration.getNodeID(), networkConfiguration.getPort(),
-					networkConfiguration.getBootstapPeer());
+			return connectInternal(networkConfiguration);
 		} else {
 			boolean success = createPeer(networkConfiguration);
 			// bootstrap if not initial peer
@@ -76,11 +80,10 @@ public class Connection implements IPeerHolder {
 
 	private boolean createPeer(INetworkConfiguration networkConfiguration) {
 		try {
-			H2HStorageMemory storageMemory = new H2HStorageMemory();
+			Storage storage = createStorage(networkConfiguration);
 			peerDHT = new PeerBuilderDHT(
 					preparePeerBuilder(networkConfiguration.getNodeID(), networkConfiguration.getPort()).start())
-					.storage(new StorageMemory(H2HConstants.TTL_CHECK_INTERVAL_MS, H2HConstants.MAX_VERSIONS_HISTORY))
-					.storageLayer(storageMemory).start();
+					.storage(storage).storageLayer(new H2HStorageMemory(storage)).start();
 
 			// set the firewall-flag or take the default value if not set
 			if (networkConfiguration.isFirewalled()) {
@@ -104,6 +107,23 @@ public class Connection implements IPeerHolder {
 		return true;
 	}
 
+	/**
+	 * Creates the storage for the data this peer stores for the network. It is persisted if a storage
+	 * directory is configured, else it is kept in memory (optionally outside of the heap).
+	 */
+	private Storage createStorage(INetworkConfiguration networkConfiguration) throws IOException {
+		File storageDirectory = networkConfiguration.getStorageDirectory();
+		if (storageDirectory != null) {
+			logger.debug("Using a persistent storage in '{}'.", storageDirectory);
+			return new H2HPersistentStorage(storageDirectory, networkConfiguration.getStorageCapacity());
+		} else if (networkConfiguration.isOffHeapStorage()) {
+			logger.debug("Using an off-heap storage with a capacity of {} bytes.", networkConfiguration.getStorageCapacity());
+			return new H2HOffHeapStorage(networkConfiguration.getStorageCapacity());
+		} else {
+			return new StorageMemory();
+		}
+	}
+
 	private PeerBuilder preparePeerBuilder(String nodeID, int port) {
 		int bindPort = port < 0 ? NetworkUtils.searchFreePort() : port;
 
@@ -157,7 +177,13 @@ public class Connection implements IPeerHolder {
 	}
 
 	private void startReplication() {
-		if (H2HConstants.ENABLE_REPLICATION) {
+		if (H2HConstants.ENABLE_REPLICATION && H2HConstants.REPLICATION_STRATEGY.equals("digest")) {
+			digestReplication = new DigestReplication(peerDHT, serializer, H2HConstants.REPLICATION_FACTOR);
+			messageReplyHandler.setDigestReplication(digestReplication);
+			digestReplication.start();
+
+			logger.trace("Started digest replication with factor {}.", H2HConstants.REPLICATION_FACTOR);
+		} else if (H2HConstants.ENABLE_REPLICATION) {
 			IndirectReplication replication = new IndirectReplication(peerDHT);
 			// set replication factor
 			replication.replicationFactor(H2HConstants.REPLICATION_FACTOR);
@@ -185,13 +211,14 @@ public class Connection implements IPeerHolder {
 	 * Create a local peer. Bootstrap to local master peer. Replication is not started!<br>
 	 * <b>Important:</b> This is only for testing purposes!
 	 * 
-	 * @param nodeId the id of the network node (should be unique among the network)
-	 * @param masterPeer
-	 *            the newly created peer bootstraps to given local master peer. Can be <code>null</code> to
-	 *            create a new network.
+	 * @param networkConfiguration the network configuration. The newly created peer bootstraps to the given
+	 *            local master peer. It can be <code>null</code> to create a new network.
 	 * @return <code>true</code> if everything went ok, <code>false</code> otherwise
 	 */
-	private boolean connectInternal(String nodeId, int port, Peer masterPeer) {
+	private boolean connectInternal(INetworkConfiguration networkConfiguration) {
+		String nodeId = networkConfiguration.getNodeID();
+		Peer masterPeer = networkConfiguration.getBootstapPeer();
+
 		// disable peer verification (faster mutual acceptance)
 		PeerMapConfiguration peerMapConfiguration = new PeerMapConfiguration(Number160.createHash(nodeId));
 		peerMapConfiguration.peerVerification(false);
@@ -203,10 +230,9 @@ public class Connection implements IPeerHolder {
 		PeerMap peerMap = new PeerMap(peerMapConfiguration);
 
 		try {
-			H2HStorageMemory storageMemory = new H2HStorageMemory();
-			peerDHT = new PeerBuilderDHT(preparePeerBuilder(nodeId, port).masterPeer(masterPeer).peerMap(peerMap).start())
-					.storage(new StorageMemory(H2HConstants.TTL_CHECK_INTERVAL_MS, H2HConstants.MAX_VERSIONS_HISTORY))
-					.storageLayer(storageMemory).start();
+			Storage storage = createStorage(networkConfiguration);
+			peerDHT = new PeerBuilderDHT(preparePeerBuilder(nodeId, networkConfiguration.getPort()).masterPeer(masterPeer)
+					.peerMap(peerMap).start()).storage(storage).storageLayer(new H2HStorageMemory(storage)).start();
 		} catch (IOException e) {
 			logger.error("Exception while creating a local peer: ", e);
 			return false;
@@ -271,6 +297,13 @@ public class Connection implements IPeerHolder {
 	 */
 	public boolean disconnect() {
 		boolean isDisconnected = true;
+		if (digestReplication != null) {
+			digestReplication.shutdown();
+			messageReplyHandler.setDigestReplication(null);
+			digestReplication = null;
+		}
+		messageReplyHandler.shutdown();
+
 		if (isConnected()) {
 			// notify neighbors about shutdown
 			peerDHT.peer().announceShutdown().start().awaitUninterruptibly(H2HConstants.DISCONNECT_TIMEOUT_MS);
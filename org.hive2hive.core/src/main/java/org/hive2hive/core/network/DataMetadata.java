@@ -0,0 +1,185 @@
+package org.hive2hive.core.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.tomp2p.message.SignatureCodec;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.H2HSignatureCodec;
+import org.hive2hive.core.security.H2HSignatureFactory;
+
+/**
+ * The metadata of a stored {@link Data} object, detached from its payload. Used by the storage backends that
+ * keep the payload somewhere else than on the heap (see {@link H2HPersistentStorage} and
+ * {@link H2HOffHeapStorage}).
+ */
+final class DataMetadata {
+
+	private static final Number160[] NO_BASED_ON = new Number160[0];
+	private static final H2HSignatureFactory signatureFactory = new H2HSignatureFactory();
+
+	private final long validFromMillis;
+	private final int ttlSeconds;
+	private final boolean prepared;
+	private final boolean protectedEntry;
+	private final Number160[] basedOn;
+	private final PublicKey publicKey;
+	private final byte[] signature;
+
+	private DataMetadata(long validFromMillis, int ttlSeconds, boolean prepared, boolean protectedEntry,
+			Number160[] basedOn, PublicKey publicKey, byte[] signature) {
+		this.validFromMillis = validFromMillis;
+		this.ttlSeconds = ttlSeconds;
+		this.prepared = prepared;
+		this.protectedEntry = protectedEntry;
+		this.basedOn = basedOn;
+		this.publicKey = publicKey;
+		this.signature = signature;
+	}
+
+	/**
+	 * Extracts the metadata of the given data
+	 */
+	static DataMetadata of(Data data) throws IOException {
+		Set<Number160> basedOnSet = data.basedOnSet();
+		Number160[] basedOn = basedOnSet.isEmpty() ? NO_BASED_ON : basedOnSet.toArray(new Number160[basedOnSet.size()]);
+		SignatureCodec signatureCodec = data.signature();
+		return new DataMetadata(data.validFromMillis(), data.ttlSeconds(), data.hasPrepareFlag(),
+				data.isProtectedEntry(), basedOn, data.publicKey(), signatureCodec == null ? null
+						: signatureCodec.encode());
+	}
+
+	/**
+	 * Creates a new {@link Data} object with the given payload and this metadata
+	 */
+	Data toData(byte[] payload) throws IOException {
+		Data data = new Data(payload);
+		data.validFromMillis(validFromMillis);
+		data.ttlSeconds(ttlSeconds);
+		for (Number160 number : basedOn) {
+			data.addBasedOn(number);
+		}
+		if (prepared) {
+			data.prepareFlag();
+		}
+		if (protectedEntry) {
+			data.protectEntry();
+		}
+		if (publicKey != null) {
+			data.publicKey(publicKey);
+		}
+		if (signature != null) {
+			data.signature(new H2HSignatureCodec(signature));
+		}
+		return data;
+	}
+
+	/**
+	 * @return the point in time when the data expires or {@link Long#MAX_VALUE} if it never expires
+	 */
+	long expirationMillis() {
+		return ttlSeconds <= 0 ? Long.MAX_VALUE : validFromMillis + ttlSeconds * 1000L;
+	}
+
+	/**
+	 * Adds the fields in which two replicas of the same entry can differ to the given digest: the keys it is
+	 * based on, the expiration (in steps of {@link H2HConstants#REPLICATION_EXPIRATION_GRANULARITY_MS}), the
+	 * public key and the flags.
+	 */
+	void digest(MessageDigest digest) {
+		for (Number160 number : new TreeSet<Number160>(Arrays.asList(basedOn))) {
+			digest.update(number.toByteArray());
+		}
+		long expiration = expirationMillis();
+		if (expiration != Long.MAX_VALUE) {
+			expiration /= H2HConstants.REPLICATION_EXPIRATION_GRANULARITY_MS;
+		}
+		digest.update(ByteBuffer.allocate(8).putLong(expiration).array());
+		digest.update((byte) ((prepared ? 1 : 0) | (protectedEntry ? 2 : 0)));
+		if (publicKey != null) {
+			digest.update(publicKey.getEncoded());
+		}
+	}
+
+	/**
+	 * Checks whether a replica with the given metadata is more up-to-date than the one with this metadata. A
+	 * confirmed entry replaces a prepared one and an entry that expires later (e.g. because its time-to-live has
+	 * been refreshed) replaces one that expires earlier.
+	 */
+	boolean isOutdatedBy(DataMetadata other) {
+		if (prepared != other.prepared) {
+			return prepared;
+		} else if (protectedEntry != other.protectedEntry
+				|| !Arrays.equals(encoded(publicKey), encoded(other.publicKey))) {
+			// the protection is checked separately
+			return true;
+		}
+		return other.expirationMillis() > expirationMillis();
+	}
+
+	private static byte[] encoded(PublicKey key) {
+		return key == null ? null : key.getEncoded();
+	}
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeLong(validFromMillis);
+		out.writeInt(ttlSeconds);
+		out.writeBoolean(prepared);
+		out.writeBoolean(protectedEntry);
+		out.writeInt(basedOn.length);
+		for (Number160 number : basedOn) {
+			out.write(number.toByteArray());
+		}
+		writeBytes(out, publicKey == null ? null : publicKey.getEncoded());
+		writeBytes(out, signature);
+	}
+
+	static DataMetadata read(DataInputStream in) throws IOException {
+		long validFromMillis = in.readLong();
+		int ttlSeconds = in.readInt();
+		boolean prepared = in.readBoolean();
+		boolean protectedEntry = in.readBoolean();
+
+		int basedOnCount = in.readInt();
+		Number160[] basedOn = basedOnCount == 0 ? NO_BASED_ON : new Number160[basedOnCount];
+		for (int i = 0; i < basedOnCount; i++) {
+			byte[] number = new byte[Number160.BYTE_ARRAY_SIZE];
+			in.readFully(number);
+			basedOn[i] = new Number160(number);
+		}
+
+		byte[] encodedKey = readBytes(in);
+		PublicKey publicKey = encodedKey == null ? null : signatureFactory.decodePublicKey(encodedKey);
+		byte[] signature = readBytes(in);
+		return new DataMetadata(validFromMillis, ttlSeconds, prepared, protectedEntry, basedOn, publicKey, signature);
+	}
+
+	static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
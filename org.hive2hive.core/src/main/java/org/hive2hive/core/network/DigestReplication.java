@@ -0,0 +1,771 @@
+package org.hive2hive.core.network;
+
+import io.netty.buffer.Unpooled;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.dht.StorageLayer;
+import net.tomp2p.futures.FutureDirect;
+import net.tomp2p.message.Buffer;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMap;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.H2HSignatureFactory;
+import org.hive2hive.core.serializer.IH2HSerialize;
+import org.hive2hive.core.serializer.SerializerUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Anti-entropy replication between the peers responsible for the same location keys. Instead of sending the
+ * whole data set to the other replicas in every round (as the <code>IndirectReplication</code> of TomP2P
+ * does), the replicas first compare a hash tree of their data:
+ * <ol>
+ * <li>The location keys are grouped into buckets (by their first byte). The initiator sends the hash of each
+ * bucket it shares with a replica; the replica answers with the buckets that differ.</li>
+ * <li>For the differing buckets, the initiator sends the hash of each location key; the replica answers with
+ * the fingerprints of its entries below the differing locations.</li>
+ * <li>The initiator pushes only the entries the replica does not have.</li>
+ * </ol>
+ * The fingerprint of an entry covers its key and the keys it is based on, which identifies a version in
+ * Hive2Hive (chunks are content-addressed, versioned content gets new version keys), and its metadata (see
+ * {@link DataMetadata#digest(MessageDigest)}), such that a replica that missed a time-to-live refresh or a
+ * change of the protection key is repaired as well. A pushed entry never replaces a more up-to-date one. The
+ * digest is created from the metadata only, the payloads are not read. Thus, in a stable network, a round
+ * costs a single message with at most 256 hashes per replica.<br>
+ * The interval adapts to the observed churn: it is halved when the replica sets changed or entries needed to
+ * be transferred, and it grows slowly while the replicas are in sync.<br>
+ * The requests of other replicas are answered from the latest snapshot of the local digest. The digest is only
+ * created on the replication thread, as are the pushed entries stored. A pushed entry is only accepted from a
+ * replica of its location key, and a protected entry must be signed with the key it is protected with on this
+ * peer (see {@link H2HStorageMemory#isProtectedByOthers(Number640, java.security.PublicKey)}).
+ */
+public class DigestReplication {
+
+	private static final Logger logger = LoggerFactory.getLogger(DigestReplication.class);
+
+	private static final double INTERVAL_GROWTH = 1.5;
+
+	private final PeerDHT peerDHT;
+	private final IH2HSerialize serializer;
+	private final int replicationFactor;
+	private final H2HSignatureFactory signatureFactory = new H2HSignatureFactory();
+
+	private ScheduledExecutorService executor;
+	private long intervalMs = H2HConstants.REPLICATION_INTERVAL_MS;
+	private Set<PeerAddress> lastReplicas = new HashSet<PeerAddress>();
+
+	// the digest of the local data, used to answer the requests of other replicas
+	private volatile LocalDigest localDigest;
+	private boolean digestScheduled = false;
+	// the size of the pushed entries that wait to be stored
+	private final AtomicLong pendingPushBytes = new AtomicLong();
+
+	public DigestReplication(PeerDHT peerDHT, IH2HSerialize serializer, int replicationFactor) {
+		this.peerDHT = peerDHT;
+		this.serializer = serializer;
+		this.replicationFactor = replicationFactor;
+	}
+
+	public synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Digest-Replication");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.schedule(new ReplicationTask(), intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return the current interval between two replication rounds
+	 */
+	public synchronized long getIntervalMs() {
+		return intervalMs;
+	}
+
+	/**
+	 * Waits until the replication thread has processed the work submitted so far (used for testing)
+	 *
+	 * @return <code>false</code> if the work did not finish in time
+	 */
+	boolean awaitIdle(long timeoutMs) throws InterruptedException {
+		Future<?> marker;
+		synchronized (this) {
+			if (executor == null) {
+				return true;
+			}
+			marker = executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					// marks the end of the submitted work
+				}
+			});
+		}
+
+		try {
+			marker.get(timeoutMs, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (ExecutionException | TimeoutException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Executes the given task on the replication thread
+	 *
+	 * @return <code>false</code> if the replication is not running
+	 */
+	private synchronized boolean submit(Runnable task) {
+		if (executor == null) {
+			return false;
+		}
+		try {
+			executor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	private class ReplicationTask implements Runnable {
+
+		@Override
+		public void run() {
+			boolean changed;
+			try {
+				changed = replicate();
+			} catch (RuntimeException e) {
+				logger.error("Replication round failed.", e);
+				changed = true;
+			}
+
+			synchronized (DigestReplication.this) {
+				if (changed) {
+					intervalMs = Math.max(H2HConstants.REPLICATION_MIN_INTERVAL_MS, intervalMs / 2);
+				} else {
+					intervalMs = Math.min(H2HConstants.REPLICATION_MAX_INTERVAL_MS,
+							(long) (intervalMs * INTERVAL_GROWTH));
+				}
+
+				if (executor != null && !peerDHT.peer().isShutdown()) {
+					executor.schedule(new ReplicationTask(), intervalMs, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes a replication round with all replicas of the locally stored location keys
+	 *
+	 * @return <code>true</code> if the replica sets changed or entries had to be transferred
+	 */
+	boolean replicate() {
+		LocalDigest digest = refreshLocalDigest();
+
+		// group the locations by the replicas they are shared with
+		Map<PeerAddress, Set<Number160>> sharedLocations = new HashMap<PeerAddress, Set<Number160>>();
+		for (Number160 locationKey : digest.locations.keySet()) {
+			List<PeerAddress> replicas = digest.replicas.get(locationKey);
+			if (!replicas.contains(peerDHT.peerAddress())) {
+				// not responsible (anymore), the data is kept but not replicated
+				continue;
+			}
+
+			for (PeerAddress replica : replicas) {
+				if (replica.equals(peerDHT.peerAddress())) {
+					continue;
+				}
+				Set<Number160> locations = sharedLocations.get(replica);
+				if (locations == null) {
+					locations = new HashSet<Number160>();
+					sharedLocations.put(replica, locations);
+				}
+				locations.add(locationKey);
+			}
+		}
+
+		Set<PeerAddress> replicas = sharedLocations.keySet();
+		boolean changed = !replicas.equals(lastReplicas);
+		lastReplicas = new HashSet<PeerAddress>(replicas);
+
+		int transferred = 0;
+		for (Entry<PeerAddress, Set<Number160>> entry : sharedLocations.entrySet()) {
+			transferred += synchronize(entry.getKey(), entry.getValue(), digest);
+		}
+
+		logger.debug("Replication round with {} replicas finished. {} entries transferred. Replica set changed: {}.",
+				replicas.size(), transferred, changed);
+		return changed || transferred > 0;
+	}
+
+	/**
+	 * Synchronizes the given locations with a single replica
+	 *
+	 * @return the number of transferred entries
+	 */
+	private int synchronize(PeerAddress replica, Set<Number160> locations, LocalDigest digest) {
+		// 1. compare the buckets
+		BucketDigest bucketDigest = new BucketDigest(digest.bucketHashes(locations));
+		Object bucketReply = request(replica, bucketDigest);
+		if (!(bucketReply instanceof BucketDigest)) {
+			logger.warn("Replica {} did not answer the bucket digest.", replica);
+			return 0;
+		}
+
+		Set<Integer> differing = ((BucketDigest) bucketReply).hashes.keySet();
+		if (differing.isEmpty()) {
+			return 0;
+		}
+
+		// 2. compare the locations within the differing buckets
+		Map<Number160, Number160> locationHashes = new HashMap<Number160, Number160>();
+		for (Number160 locationKey : locations) {
+			if (differing.contains(bucket(locationKey))) {
+				locationHashes.put(locationKey, digest.locations.get(locationKey).hash);
+			}
+		}
+
+		Object locationReply = request(replica, new LocationDigest(locationHashes));
+		if (!(locationReply instanceof EntryDigest)) {
+			logger.warn("Replica {} did not answer the location digest.", replica);
+			return 0;
+		}
+
+		// 3. push the entries the replica does not have
+		Map<Number640, Number160> remoteEntries = ((EntryDigest) locationReply).fingerprints;
+		List<Number640> missing = new ArrayList<Number640>();
+		for (Number160 locationKey : ((EntryDigest) locationReply).locations) {
+			for (Entry<Number640, Number160> local : digest.locations.get(locationKey).entries.entrySet()) {
+				if (!local.getValue().equals(remoteEntries.get(local.getKey()))) {
+					missing.add(local.getKey());
+				}
+			}
+		}
+
+		return push(replica, missing);
+	}
+
+	private int push(PeerAddress replica, List<Number640> keys) {
+		StorageLayer storageLayer = peerDHT.storageLayer();
+		int pushed = 0;
+		List<byte[]> batch = new ArrayList<byte[]>();
+		long batchBytes = 0;
+		for (Number640 key : keys) {
+			Data data = storageLayer.get(key);
+			if (data == null) {
+				// expired in the meantime
+				continue;
+			}
+
+			try {
+				byte[] encoded = encodeEntry(key, data);
+				batch.add(encoded);
+				batchBytes += encoded.length;
+			} catch (IOException e) {
+				logger.error("Cannot encode the entry {} for replication.", key, e);
+				continue;
+			}
+
+			if (batchBytes >= H2HConstants.REPLICATION_MAX_PUSH_BYTES) {
+				pushed += pushBatch(replica, batch);
+				batch = new ArrayList<byte[]>();
+				batchBytes = 0;
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			pushed += pushBatch(replica, batch);
+		}
+		return pushed;
+	}
+
+	private int pushBatch(PeerAddress replica, List<byte[]> entries) {
+		Object reply = request(replica, new EntryPush(entries));
+		if (reply instanceof Integer) {
+			return (Integer) reply;
+		}
+		logger.warn("Replica {} did not accept the pushed entries.", replica);
+		return 0;
+	}
+
+	/**
+	 * Handles a replication request of another replica. This is called by the network thread, thus it only
+	 * answers from the latest digest snapshot and hands the storing of pushed entries to the replication
+	 * thread.
+	 *
+	 * @param sender the requesting replica
+	 * @param request the request
+	 * @return the reply
+	 */
+	public Serializable handle(PeerAddress sender, ReplicationMessage request) {
+		if (request instanceof BucketDigest) {
+			Map<Integer, Number160> remote = ((BucketDigest) request).hashes;
+			LocalDigest digest = getLocalDigest();
+			if (digest == null) {
+				// not known yet, the sender pushes the entries of all buckets once
+				return new BucketDigest(remote);
+			}
+
+			// the locations this peer shares with the sender
+			Set<Number160> shared = new HashSet<Number160>();
+			for (Entry<Number160, List<PeerAddress>> location : digest.replicas.entrySet()) {
+				if (remote.containsKey(bucket(location.getKey())) && location.getValue().contains(sender)) {
+					shared.add(location.getKey());
+				}
+			}
+
+			Map<Integer, Number160> local = digest.bucketHashes(shared);
+			Map<Integer, Number160> differing = new HashMap<Integer, Number160>();
+			for (Entry<Integer, Number160> bucket : remote.entrySet()) {
+				if (!bucket.getValue().equals(local.get(bucket.getKey()))) {
+					differing.put(bucket.getKey(), local.get(bucket.getKey()));
+				}
+			}
+			return new BucketDigest(differing);
+		} else if (request instanceof LocationDigest) {
+			LocalDigest digest = getLocalDigest();
+			Set<Number160> differing = new HashSet<Number160>();
+			Map<Number640, Number160> fingerprints = new HashMap<Number640, Number160>();
+			for (Entry<Number160, Number160> location : ((LocationDigest) request).hashes.entrySet()) {
+				LocationEntries local = digest == null ? null : digest.locations.get(location.getKey());
+				if (local == null) {
+					differing.add(location.getKey());
+				} else if (!local.hash.equals(location.getValue())) {
+					differing.add(location.getKey());
+					fingerprints.putAll(local.entries);
+				}
+			}
+			return new EntryDigest(differing, fingerprints);
+		} else if (request instanceof EntryPush) {
+			return enqueue(sender, ((EntryPush) request).entries);
+		} else {
+			logger.warn("Received unknown replication request {}.", request);
+			return null;
+		}
+	}
+
+	/**
+	 * Hands the pushed entries to the replication thread. The pending pushes are limited to the size of one push
+	 * per replica.
+	 *
+	 * @return the number of entries that will be stored (if they are accepted)
+	 */
+	private Integer enqueue(final PeerAddress sender, final List<byte[]> entries) {
+		long bytes = 0;
+		for (byte[] encoded : entries) {
+			bytes += encoded.length;
+		}
+
+		final long pushBytes = bytes;
+		if (pendingPushBytes.addAndGet(pushBytes) > replicationFactor * H2HConstants.REPLICATION_MAX_PUSH_BYTES) {
+			pendingPushBytes.addAndGet(-pushBytes);
+			logger.warn("Too many pushed entries are pending. Denying the push of {}.", sender);
+			return 0;
+		}
+
+		boolean submitted = submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					store(sender, entries);
+				} finally {
+					pendingPushBytes.addAndGet(-pushBytes);
+				}
+			}
+		});
+		if (!submitted) {
+			pendingPushBytes.addAndGet(-pushBytes);
+			return 0;
+		}
+		return entries.size();
+	}
+
+	private int store(PeerAddress sender, List<byte[]> entries) {
+		StorageLayer storageLayer = peerDHT.storageLayer();
+		int stored = 0;
+		for (byte[] encoded : entries) {
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+				Number640 key = readKey(in);
+				DataMetadata metadata = DataMetadata.read(in);
+				byte[] payload = DataMetadata.readBytes(in);
+				Data data = metadata.toData(payload);
+				if (!isAccepted(sender, key, data) || !isNewer(key, metadata)) {
+					continue;
+				}
+
+				Enum<?> status = storageLayer.put(key, data, data.publicKey(), false, false, false);
+				if (status == StorageLayer.PutStatus.OK) {
+					stored++;
+				}
+			} catch (IOException e) {
+				logger.warn("Cannot decode a replicated entry from {}.", sender, e);
+			}
+		}
+
+		if (stored > 0) {
+			scheduleLocalDigest();
+		}
+		logger.debug("Stored {} of {} replicated entries from {}.", stored, entries.size(), sender);
+		return stored;
+	}
+
+	/**
+	 * A pushed entry is not covered by a message signed by its owner (as a put is), thus the sender must be a
+	 * replica of the entry and a protected entry must be signed by its protection key. That key must not
+	 * differ from the key the entry and its domain are protected with on this peer.
+	 */
+	private boolean isAccepted(PeerAddress sender, Number640 key, Data data) {
+		List<PeerAddress> replicas = replicas(key.locationKey());
+		if (!replicas.contains(sender) || !replicas.contains(peerDHT.peerAddress())) {
+			logger.warn("Replica {} pushed the entry {}, but it is not a shared replica of it.", sender, key);
+			return false;
+		}
+
+		if (data.isProtectedEntry() || data.signature() != null) {
+			if (data.publicKey() == null || data.signature() == null) {
+				logger.warn("Replica {} pushed the protected entry {} without a signature.", sender, key);
+				return false;
+			}
+			try {
+				if (!data.verify(data.publicKey(), signatureFactory)) {
+					logger.warn("Replica {} pushed the entry {} with an invalid signature.", sender, key);
+					return false;
+				}
+			} catch (InvalidKeyException | SignatureException e) {
+				logger.warn("Cannot verify the signature of the entry {} pushed by {}.", key, sender, e);
+				return false;
+			}
+		}
+
+		StorageLayer storageLayer = peerDHT.storageLayer();
+		if (!(storageLayer instanceof H2HStorageMemory)
+				|| ((H2HStorageMemory) storageLayer).isProtectedByOthers(key, data.publicKey())) {
+			logger.warn("Replica {} pushed the entry {}, which is protected by another key here.", sender, key);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A pushed entry must not replace a local one which is at least as up-to-date, e.g. because its
+	 * time-to-live has been refreshed on this peer only.
+	 */
+	private boolean isNewer(Number640 key, DataMetadata pushed) {
+		DataMetadata local = ((H2HStorageMemory) peerDHT.storageLayer()).metadata(key);
+		return local == null || local.isOutdatedBy(pushed);
+	}
+
+	private Object request(PeerAddress replica, ReplicationMessage message) {
+		try {
+			Buffer buffer = new Buffer(Unpooled.wrappedBuffer(serializer.serialize(message)));
+			FutureDirect futureDirect = peerDHT.peer().sendDirect(replica).buffer(buffer).start();
+			futureDirect.awaitUninterruptibly(H2HConstants.AWAIT_NETWORK_OPERATION_MS);
+			if (futureDirect.isFailed() || futureDirect.buffer() == null || futureDirect.buffer().buffer() == null) {
+				return null;
+			}
+			return serializer.deserialize(SerializerUtil.convertToByteArray(futureDirect.buffer().buffer()));
+		} catch (IOException | ClassNotFoundException e) {
+			logger.warn("Replication request to {} failed.", replica, e);
+			return null;
+		}
+	}
+
+	/**
+	 * The peers responsible for the given location key, including this peer if it is responsible
+	 */
+	private List<PeerAddress> replicas(Number160 locationKey) {
+		PeerMap peerMap = peerDHT.peer().peerBean().peerMap();
+		TreeSet<PeerAddress> closest = new TreeSet<PeerAddress>(PeerMap.createComparator(locationKey));
+		closest.addAll(peerMap.closePeers(locationKey, replicationFactor));
+		closest.add(peerDHT.peerAddress());
+
+		List<PeerAddress> replicas = new ArrayList<PeerAddress>(replicationFactor);
+		for (PeerAddress peerAddress : closest) {
+			if (replicas.size() == replicationFactor) {
+				break;
+			}
+			replicas.add(peerAddress);
+		}
+		return replicas;
+	}
+
+	/**
+	 * The latest digest, which is never created on the calling thread. An outdated digest is returned as it is,
+	 * while a new one is created on the replication thread.
+	 *
+	 * @return the digest or <code>null</code> if none has been created yet
+	 */
+	private LocalDigest getLocalDigest() {
+		LocalDigest digest = localDigest;
+		if (digest == null || digest.isOutdated()) {
+			scheduleLocalDigest();
+		}
+		return digest;
+	}
+
+	private void scheduleLocalDigest() {
+		synchronized (this) {
+			if (digestScheduled) {
+				return;
+			}
+			digestScheduled = true;
+		}
+
+		boolean submitted = submit(new Runnable() {
+			@Override
+			public void run() {
+				refreshLocalDigest();
+			}
+		});
+		if (!submitted) {
+			synchronized (this) {
+				digestScheduled = false;
+			}
+		}
+	}
+
+	private LocalDigest refreshLocalDigest() {
+		synchronized (this) {
+			// changes from now on need another digest
+			digestScheduled = false;
+		}
+
+		LocalDigest digest = LocalDigest.create(peerDHT.storageLayer());
+		for (Number160 locationKey : digest.locations.keySet()) {
+			digest.replicas.put(locationKey, replicas(locationKey));
+		}
+		localDigest = digest;
+		return digest;
+	}
+
+	private static int bucket(Number160 locationKey) {
+		return locationKey.toByteArray()[0] & 0xFF;
+	}
+
+	private static byte[] encodeEntry(Number640 key, Data data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length() + 256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(key.locationKey().toByteArray());
+		out.write(key.domainKey().toByteArray());
+		out.write(key.contentKey().toByteArray());
+		out.write(key.versionKey().toByteArray());
+		DataMetadata.of(data).write(out);
+		DataMetadata.writeBytes(out, data.toBytes());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Number640 readKey(DataInputStream in) throws IOException {
+		Number160[] parts = new Number160[4];
+		for (int i = 0; i < parts.length; i++) {
+			byte[] part = new byte[Number160.BYTE_ARRAY_SIZE];
+			in.readFully(part);
+			parts[i] = new Number160(part);
+		}
+		return new Number640(parts[0], parts[1], parts[2], parts[3]);
+	}
+
+	/**
+	 * A snapshot of the fingerprints of all locally stored entries, grouped by location key, and of the replicas
+	 * of each location key
+	 */
+	private static final class LocalDigest {
+
+		private final NavigableMap<Number160, LocationEntries> locations;
+		private final Map<Number160, List<PeerAddress>> replicas = new HashMap<Number160, List<PeerAddress>>();
+		private final long createdAt;
+
+		private LocalDigest(NavigableMap<Number160, LocationEntries> locations) {
+			this.locations = locations;
+			this.createdAt = System.currentTimeMillis();
+		}
+
+		static LocalDigest create(StorageLayer storageLayer) {
+			MessageDigest sha1;
+			try {
+				sha1 = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-1 is not available.", e);
+			}
+
+			NavigableMap<Number160, LocationEntries> locations = new TreeMap<Number160, LocationEntries>();
+			if (!(storageLayer instanceof H2HStorageMemory)) {
+				logger.warn("Cannot enumerate the entries of the storage layer {}.", storageLayer.getClass());
+				return new LocalDigest(locations);
+			}
+
+			// the digest is created from the keys and the metadata, the payloads are not read
+			long now = System.currentTimeMillis();
+			NavigableMap<Number640, DataMetadata> metadata = ((H2HStorageMemory) storageLayer).metadataMap();
+			for (Entry<Number640, DataMetadata> entry : metadata.entrySet()) {
+				if (entry.getValue().expirationMillis() < now) {
+					// removed soon, not worth to replicate
+					continue;
+				}
+				Number640 key = entry.getKey();
+				LocationEntries location = locations.get(key.locationKey());
+				if (location == null) {
+					location = new LocationEntries();
+					locations.put(key.locationKey(), location);
+				}
+				location.add(key, fingerprint(sha1, key, entry.getValue()));
+			}
+			return new LocalDigest(locations);
+		}
+
+		boolean isOutdated() {
+			return System.currentTimeMillis() - createdAt > H2HConstants.REPLICATION_MIN_INTERVAL_MS;
+		}
+
+		/**
+		 * Combines the hashes of the given locations per bucket
+		 */
+		Map<Integer, Number160> bucketHashes(Set<Number160> locationKeys) {
+			Map<Integer, Number160> buckets = new HashMap<Integer, Number160>();
+			for (Number160 locationKey : locationKeys) {
+				LocationEntries location = locations.get(locationKey);
+				if (location == null) {
+					continue;
+				}
+				int bucket = bucket(locationKey);
+				Number160 hash = buckets.get(bucket);
+				buckets.put(bucket, hash == null ? location.hash : hash.xor(location.hash));
+			}
+			return buckets;
+		}
+
+		private static Number160 fingerprint(MessageDigest sha1, Number640 key, DataMetadata metadata) {
+			sha1.update(key.locationKey().toByteArray());
+			sha1.update(key.domainKey().toByteArray());
+			sha1.update(key.contentKey().toByteArray());
+			sha1.update(key.versionKey().toByteArray());
+			metadata.digest(sha1);
+			return new Number160(sha1.digest());
+		}
+	}
+
+	/**
+	 * The fingerprints of the entries below a location key and their combined hash
+	 */
+	private static final class LocationEntries {
+
+		private final Map<Number640, Number160> entries = new HashMap<Number640, Number160>();
+		private Number160 hash = Number160.ZERO;
+
+		void add(Number640 key, Number160 fingerprint) {
+			entries.put(key, fingerprint);
+			// xor is independent of the order
+			hash = hash.xor(fingerprint);
+		}
+	}
+
+	/**
+	 * Base class of the messages exchanged between the replicas
+	 */
+	public abstract static class ReplicationMessage implements Serializable {
+
+		private static final long serialVersionUID = -4466233893196218052L;
+	}
+
+	/**
+	 * The hashes per bucket. As a reply, it contains the differing buckets only.
+	 */
+	private static final class BucketDigest extends ReplicationMessage {
+
+		private static final long serialVersionUID = 1808460370325373958L;
+		private final HashMap<Integer, Number160> hashes;
+
+		BucketDigest(Map<Integer, Number160> hashes) {
+			this.hashes = new HashMap<Integer, Number160>(hashes);
+		}
+	}
+
+	/**
+	 * The hashes per location key
+	 */
+	private static final class LocationDigest extends ReplicationMessage {
+
+		private static final long serialVersionUID = 3546032539117452361L;
+		private final HashMap<Number160, Number160> hashes;
+
+		LocationDigest(Map<Number160, Number160> hashes) {
+			this.hashes = new HashMap<Number160, Number160>(hashes);
+		}
+	}
+
+	/**
+	 * The differing location keys and the fingerprints of the entries stored below them
+	 */
+	private static final class EntryDigest extends ReplicationMessage {
+
+		private static final long serialVersionUID = -7420468302585307402L;
+		private final HashSet<Number160> locations;
+		private final HashMap<Number640, Number160> fingerprints;
+
+		EntryDigest(Set<Number160> locations, Map<Number640, Number160> fingerprints) {
+			this.locations = new HashSet<Number160>(locations);
+			this.fingerprints = new HashMap<Number640, Number160>(fingerprints);
+		}
+	}
+
+	/**
+	 * Entries to store, each encoded as key, metadata and payload
+	 */
+	private static final class EntryPush extends ReplicationMessage {
+
+		private static final long serialVersionUID = 6205713373806361842L;
+		private final ArrayList<byte[]> entries;
+
+		EntryPush(List<byte[]> entries) {
+			this.entries = new ArrayList<byte[]>(entries);
+		}
+	}
+}
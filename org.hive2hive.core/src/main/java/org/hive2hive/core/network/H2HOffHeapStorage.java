@@ -0,0 +1,272 @@
+package org.hive2hive.core.network;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.tomp2p.dht.StorageMemory;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A storage backend that keeps the payloads outside of the Java heap, such that a peer storing gigabytes of
+ * chunks does not suffer from long garbage collection pauses. Only the keys and the (small) metadata are kept
+ * on the heap, the payloads are copied into the slots of a {@link SlabAllocator}. Payloads larger than the
+ * largest slot are split into several slots. {@link Data} objects are created on demand when they are read.
+ * Puts exceeding the capacity are denied.<br>
+ * Note that the JVM needs to allow enough direct memory (<code>-XX:MaxDirectMemorySize</code>) for the
+ * configured capacity.<br>
+ * Timeouts, protections and responsibilities are kept by the underlying {@link StorageMemory}.
+ */
+public class H2HOffHeapStorage extends StorageMemory implements IBoundedStorage, IMetadataStorage {
+
+	private static final Logger logger = LoggerFactory.getLogger(H2HOffHeapStorage.class);
+
+	private final NavigableMap<Number640, StoredEntry> entries = new ConcurrentSkipListMap<Number640, StoredEntry>();
+	private final SlabAllocator allocator;
+
+	// readers hold the read lock while copying a payload, such that its slot is not reused in the meantime
+	private final ReadWriteLock slotLock = new ReentrantReadWriteLock();
+
+	/**
+	 * @param capacity the maximum number of bytes allocated outside of the heap
+	 */
+	public H2HOffHeapStorage(long capacity) {
+		this(new SlabAllocator(capacity, H2HConstants.OFF_HEAP_SEGMENT_SIZE, H2HConstants.OFF_HEAP_MAX_SLOT_SIZE));
+	}
+
+	public H2HOffHeapStorage(SlabAllocator allocator) {
+		this.allocator = allocator;
+	}
+
+	/**
+	 * Stores the value. The slots of a replaced entry are released without reading them, thus the replaced
+	 * data is not returned (the storage layer does not use it).
+	 * 
+	 * @return always <code>null</code>
+	 */
+	@Override
+	public Data put(Number640 key, Data value) {
+		StoredEntry newEntry;
+		try {
+			newEntry = store(value);
+		} catch (IOException e) {
+			logger.error("Cannot store the data with key {}.", key, e);
+			return null;
+		}
+
+		slotLock.writeLock().lock();
+		try {
+			StoredEntry oldEntry = entries.put(key, newEntry);
+			if (oldEntry != null) {
+				release(oldEntry);
+			}
+		} finally {
+			slotLock.writeLock().unlock();
+		}
+		return null;
+	}
+
+	@Override
+	public Data get(Number640 key) {
+		slotLock.readLock().lock();
+		try {
+			StoredEntry entry = entries.get(key);
+			return entry == null ? null : load(entry);
+		} finally {
+			slotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(Number640 key) {
+		return entries.containsKey(key);
+	}
+
+	@Override
+	public Data remove(Number640 key, boolean returnData) {
+		slotLock.writeLock().lock();
+		try {
+			StoredEntry entry = entries.remove(key);
+			if (entry == null) {
+				return null;
+			}
+			Data removed = returnData ? load(entry) : null;
+			release(entry);
+			return removed;
+		} finally {
+			slotLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a range of entries one by one, such that all slots are released.
+	 */
+	public NavigableMap<Number640, Data> remove(Number640 from, Number640 to, boolean returnData) {
+		NavigableMap<Number640, Data> removed = new TreeMap<Number640, Data>();
+		for (Number640 key : entries.subMap(from, true, to, true).keySet()) {
+			Data data = remove(key, returnData);
+			if (returnData && data != null) {
+				removed.put(key, data);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes a range of entries one by one, such that all slots are released.
+	 */
+	public NavigableMap<Number640, Data> remove(Number640 from, Number640 to) {
+		return remove(from, to, true);
+	}
+
+	@Override
+	public NavigableMap<Number640, Data> subMap(Number640 from, Number640 to, int limit, boolean ascending) {
+		NavigableMap<Number640, StoredEntry> range = entries.subMap(from, true, to, true);
+		if (!ascending) {
+			range = range.descendingMap();
+		}
+
+		NavigableMap<Number640, Data> result = new TreeMap<Number640, Data>();
+		slotLock.readLock().lock();
+		try {
+			for (Entry<Number640, StoredEntry> entry : range.entrySet()) {
+				if (limit >= 0 && result.size() >= limit) {
+					break;
+				}
+				result.put(entry.getKey(), load(entry.getValue()));
+			}
+		} finally {
+			slotLock.readLock().unlock();
+		}
+		return ascending ? result : result.descendingMap();
+	}
+
+	@Override
+	public NavigableMap<Number640, Data> map() {
+		NavigableMap<Number640, Data> result = new TreeMap<Number640, Data>();
+		slotLock.readLock().lock();
+		try {
+			for (Map.Entry<Number640, StoredEntry> entry : entries.entrySet()) {
+				result.put(entry.getKey(), load(entry.getValue()));
+			}
+		} finally {
+			slotLock.readLock().unlock();
+		}
+		return result;
+	}
+
+	@Override
+	public NavigableMap<Number640, DataMetadata> metadataMap() {
+		NavigableMap<Number640, DataMetadata> result = new TreeMap<Number640, DataMetadata>();
+		for (Entry<Number640, StoredEntry> entry : entries.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().metadata);
+		}
+		return result;
+	}
+
+	@Override
+	public DataMetadata metadata(Number640 key) {
+		StoredEntry entry = entries.get(key);
+		return entry == null ? null : entry.metadata;
+	}
+
+	@Override
+	public boolean canStore(Number640 key, Data data) {
+		// the slots of a replaced entry are only released after the new ones have been allocated
+		return allocator.canAllocate(data.length());
+	}
+
+	@Override
+	public long getStoredBytes() {
+		return allocator.getUsedBytes();
+	}
+
+	@Override
+	public long getCapacity() {
+		return allocator.getCapacity();
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private StoredEntry store(Data data) throws IOException {
+		DataMetadata metadata = DataMetadata.of(data);
+		byte[] payload = data.toBytes();
+
+		int maxSlotSize = allocator.getMaxSlotSize();
+		long[] handles = new long[(payload.length + maxSlotSize - 1) / maxSlotSize];
+		for (int i = 0; i < handles.length; i++) {
+			int offset = i * maxSlotSize;
+			int length = Math.min(maxSlotSize, payload.length - offset);
+			handles[i] = allocator.allocate(payload, offset, length);
+			if (handles[i] < 0) {
+				// the capacity is exhausted, undo the allocations so far
+				release(handles, i, payload.length);
+				throw new IOException("Cannot allocate " + payload.length + " bytes outside the heap");
+			}
+		}
+		return new StoredEntry(metadata, handles, payload.length);
+	}
+
+	private Data load(StoredEntry entry) {
+		byte[] payload = new byte[entry.length];
+		int maxSlotSize = allocator.getMaxSlotSize();
+		for (int i = 0; i < entry.handles.length; i++) {
+			int offset = i * maxSlotSize;
+			allocator.read(entry.handles[i], payload, offset, Math.min(maxSlotSize, entry.length - offset));
+		}
+
+		try {
+			return entry.metadata.toData(payload);
+		} catch (IOException e) {
+			logger.error("Cannot restore the metadata of a stored entry.", e);
+			return null;
+		}
+	}
+
+	private void release(StoredEntry entry) {
+		release(entry.handles, entry.handles.length, entry.length);
+	}
+
+	/**
+	 * Releases the first slots of a payload
+	 */
+	private void release(long[] handles, int count, int payloadLength) {
+		int maxSlotSize = allocator.getMaxSlotSize();
+		for (int i = 0; i < count; i++) {
+			int offset = i * maxSlotSize;
+			allocator.free(handles[i], Math.min(maxSlotSize, payloadLength - offset));
+		}
+	}
+
+	/**
+	 * The on-heap part of a stored entry
+	 */
+	private static final class StoredEntry {
+
+		private final DataMetadata metadata;
+		// the slots holding the payload, in order
+		private final long[] handles;
+		private final int length;
+
+		public StoredEntry(DataMetadata metadata, long[] handles, int length) {
+			this.metadata = metadata;
+			this.handles = handles;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,822 @@
+package org.hive2hive.core.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import net.tomp2p.dht.StorageMemory;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number320;
+import net.tomp2p.peers.Number480;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.H2HSignatureFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A storage backend that survives restarts of the peer. All modifications (puts, removals and protections)
+ * are appended to a log file in the given directory. Only the keys, the (small) metadata and the position of
+ * each payload in the log are kept on the heap, the payloads are read from the log on demand. At startup,
+ * the log is scanned to rebuild this index, skipping entries that expired in the meantime, such that the peer
+ * is immediately able to serve its former responsibilities without waiting for the replication.<br>
+ * The log is compacted in the background as soon as it contains mostly overwritten or removed entries. A torn
+ * write at the end of the log (e.g. because of a crash) is detected by a checksum and cut off.<br>
+ * Timeouts, protections and responsibilities are kept by the underlying {@link StorageMemory}.
+ */
+public class H2HPersistentStorage extends StorageMemory implements IBoundedStorage, IMetadataStorage {
+
+	private static final Logger logger = LoggerFactory.getLogger(H2HPersistentStorage.class);
+
+	private static final String LOG_FILE_NAME = "h2h-storage.log";
+	private static final String COMPACTION_FILE_NAME = "h2h-storage.compact";
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_REMOVE = 2;
+	private static final byte RECORD_PROTECT_ENTRY = 3;
+	private static final byte RECORD_PROTECT_DOMAIN = 4;
+
+	// length and checksum in front of every record
+	private static final int RECORD_HEADER_SIZE = 8;
+	// compact when the log is that many times larger than the live data
+	private static final int COMPACTION_FACTOR = 2;
+	// do not compact small logs
+	private static final long MIN_COMPACTION_SIZE = 4 * H2HConstants.MEGABYTES.longValue();
+
+	private final File logFile;
+	private final File compactionFile;
+	private final long capacity;
+	private final int maxVersions;
+	private final H2HSignatureFactory signatureFactory = new H2HSignatureFactory();
+
+	private final NavigableMap<Number640, StoredEntry> entries = new ConcurrentSkipListMap<Number640, StoredEntry>();
+	// protections are kept to be able to write them again when compacting
+	private final Map<Number480, PublicKey> entryProtections = new ConcurrentHashMap<Number480, PublicKey>();
+	private final Map<Number320, PublicKey> domainProtections = new ConcurrentHashMap<Number320, PublicKey>();
+
+	// readers and writers hold the read lock, such that the log is not exchanged by a compaction meanwhile
+	private final ReadWriteLock logLock = new ReentrantReadWriteLock();
+	// orders the appends to the log
+	private final Object appendMonitor = new Object();
+	// only one compaction at a time
+	private final Object compactionMonitor = new Object();
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+	private final ThreadPoolExecutor compactionExecutor;
+
+	private FileChannel log;
+	private long logBytes = 0;
+	private long storedBytes = 0;
+
+	/**
+	 * Opens (or creates) a persistent storage in the given directory
+	 *
+	 * @param directory the directory where the log is stored. It is created if it does not exist.
+	 * @param capacity the maximum number of payload bytes to store
+	 * @throws IOException if the log cannot be opened or recovered
+	 */
+	public H2HPersistentStorage(File directory, long capacity) throws IOException {
+		super(H2HConstants.TTL_CHECK_INTERVAL_MS, H2HConstants.MAX_VERSIONS_HISTORY);
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the storage directory " + directory.getAbsolutePath());
+		}
+
+		this.logFile = new File(directory, LOG_FILE_NAME);
+		this.compactionFile = new File(directory, COMPACTION_FILE_NAME);
+		this.capacity = capacity;
+		this.maxVersions = H2HConstants.MAX_VERSIONS_HISTORY;
+
+		compactionExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "Storage-Compaction");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		compactionExecutor.allowCoreThreadTimeOut(true);
+
+		this.log = openLog();
+		recover();
+	}
+
+	@Override
+	public Data put(Number640 key, Data value) {
+		DataMetadata metadata;
+		byte[] payload = value.toBytes();
+		try {
+			metadata = DataMetadata.of(value);
+		} catch (IOException e) {
+			logger.error("Cannot store the data with key {}.", key, e);
+			return null;
+		}
+
+		StoredEntry oldEntry;
+		Data oldData = null;
+		logLock.readLock().lock();
+		try {
+			synchronized (appendMonitor) {
+				byte[] record = encodePut(key, metadata, payload);
+				long recordOffset = appendRecord(record);
+				if (recordOffset < 0) {
+					return null;
+				}
+
+				StoredEntry newEntry = new StoredEntry(metadata, payloadOffset(recordOffset, record, payload),
+						payload.length);
+				oldEntry = entries.put(key, newEntry);
+				if (oldEntry != null) {
+					storedBytes -= oldEntry.length;
+				}
+				storedBytes += payload.length;
+			}
+			if (oldEntry != null) {
+				oldData = load(oldEntry);
+			}
+		} finally {
+			logLock.readLock().unlock();
+		}
+
+		pruneVersions(key);
+		scheduleCompaction();
+		return oldData;
+	}
+
+	@Override
+	public Data get(Number640 key) {
+		logLock.readLock().lock();
+		try {
+			StoredEntry entry = entries.get(key);
+			return entry == null ? null : load(entry);
+		} finally {
+			logLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(Number640 key) {
+		return entries.containsKey(key);
+	}
+
+	@Override
+	public Data remove(Number640 key, boolean returnData) {
+		StoredEntry entry;
+		Data removed = null;
+		logLock.readLock().lock();
+		try {
+			synchronized (appendMonitor) {
+				entry = entries.remove(key);
+				if (entry == null) {
+					return null;
+				}
+				storedBytes -= entry.length;
+				appendRecord(encodeKeyRecord(RECORD_REMOVE, key));
+			}
+			if (returnData) {
+				// the payload stays in the log until the next compaction
+				removed = load(entry);
+			}
+		} finally {
+			logLock.readLock().unlock();
+		}
+
+		scheduleCompaction();
+		return removed;
+	}
+
+	/**
+	 * Removes a range of entries one by one, such that every removal is persisted.
+	 */
+	public NavigableMap<Number640, Data> remove(Number640 from, Number640 to, boolean returnData) {
+		NavigableMap<Number640, Data> removed = new TreeMap<Number640, Data>();
+		for (Number640 key : entries.subMap(from, true, to, true).keySet()) {
+			Data data = remove(key, returnData);
+			if (returnData && data != null) {
+				removed.put(key, data);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes a range of entries one by one, such that every removal is persisted.
+	 */
+	public NavigableMap<Number640, Data> remove(Number640 from, Number640 to) {
+		return remove(from, to, true);
+	}
+
+	@Override
+	public NavigableMap<Number640, Data> subMap(Number640 from, Number640 to, int limit, boolean ascending) {
+		NavigableMap<Number640, StoredEntry> range = entries.subMap(from, true, to, true);
+		if (!ascending) {
+			range = range.descendingMap();
+		}
+
+		NavigableMap<Number640, Data> result = new TreeMap<Number640, Data>();
+		logLock.readLock().lock();
+		try {
+			for (Entry<Number640, StoredEntry> entry : range.entrySet()) {
+				if (limit >= 0 && result.size() >= limit) {
+					break;
+				}
+				Data data = load(entry.getValue());
+				if (data != null) {
+					result.put(entry.getKey(), data);
+				}
+			}
+		} finally {
+			logLock.readLock().unlock();
+		}
+		return ascending ? result : result.descendingMap();
+	}
+
+	@Override
+	public NavigableMap<Number640, Data> map() {
+		NavigableMap<Number640, Data> result = new TreeMap<Number640, Data>();
+		logLock.readLock().lock();
+		try {
+			for (Entry<Number640, StoredEntry> entry : entries.entrySet()) {
+				Data data = load(entry.getValue());
+				if (data != null) {
+					result.put(entry.getKey(), data);
+				}
+			}
+		} finally {
+			logLock.readLock().unlock();
+		}
+		return result;
+	}
+
+	@Override
+	public boolean protectEntry(Number480 key, PublicKey publicKey) {
+		boolean protectedEntry = super.protectEntry(key, publicKey);
+		if (protectedEntry && publicKey != null) {
+			entryProtections.put(key, publicKey);
+			appendRecord(encodeProtectEntry(key, publicKey));
+		}
+		return protectedEntry;
+	}
+
+	@Override
+	public boolean protectDomain(Number320 key, PublicKey publicKey) {
+		boolean protectedDomain = super.protectDomain(key, publicKey);
+		if (protectedDomain && publicKey != null) {
+			domainProtections.put(key, publicKey);
+			appendRecord(encodeProtectDomain(key, publicKey));
+		}
+		return protectedDomain;
+	}
+
+	@Override
+	public NavigableMap<Number640, DataMetadata> metadataMap() {
+		NavigableMap<Number640, DataMetadata> result = new TreeMap<Number640, DataMetadata>();
+		for (Entry<Number640, StoredEntry> entry : entries.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().metadata);
+		}
+		return result;
+	}
+
+	@Override
+	public DataMetadata metadata(Number640 key) {
+		StoredEntry entry = entries.get(key);
+		return entry == null ? null : entry.metadata;
+	}
+
+	@Override
+	public boolean canStore(Number640 key, Data data) {
+		StoredEntry existing = entries.get(key);
+		long freed = existing == null ? 0 : existing.length;
+		synchronized (appendMonitor) {
+			return storedBytes - freed + data.length() <= capacity;
+		}
+	}
+
+	@Override
+	public long getStoredBytes() {
+		synchronized (appendMonitor) {
+			return storedBytes;
+		}
+	}
+
+	@Override
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the current size of the log file in bytes
+	 */
+	public long getLogBytes() {
+		synchronized (appendMonitor) {
+			return logBytes;
+		}
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void close() {
+		// not interrupted, an interrupt would close the log channel
+		compactionExecutor.shutdown();
+		logLock.writeLock().lock();
+		try {
+			synchronized (appendMonitor) {
+				if (log != null) {
+					try {
+						log.close();
+					} catch (IOException e) {
+						logger.warn("Cannot close the storage log. reason = '{}'", e.getMessage());
+					}
+					log = null;
+				}
+			}
+		} finally {
+			logLock.writeLock().unlock();
+		}
+		super.close();
+	}
+
+	/**
+	 * Rewrites the log such that it only contains the currently stored entries and protections. The entries
+	 * are copied without blocking the storage, only the records appended in the meantime are copied while the
+	 * storage is locked, before the compacted log replaces the old one.
+	 *
+	 * @throws IOException if the compacted log cannot be written
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionMonitor) {
+			long snapshotEnd;
+			Map<Number640, StoredEntry> snapshot;
+			Map<Number480, PublicKey> entryProtectionSnapshot;
+			Map<Number320, PublicKey> domainProtectionSnapshot;
+			synchronized (appendMonitor) {
+				if (log == null) {
+					return;
+				}
+				snapshotEnd = logBytes;
+				snapshot = new TreeMap<Number640, StoredEntry>(entries);
+				entryProtectionSnapshot = new HashMap<Number480, PublicKey>(entryProtections);
+				domainProtectionSnapshot = new HashMap<Number320, PublicKey>(domainProtections);
+			}
+
+			// copy the live entries, the storage can be modified meanwhile
+			Map<StoredEntry, StoredEntry> moved = new IdentityHashMap<StoredEntry, StoredEntry>();
+			RandomAccessFile target = new RandomAccessFile(compactionFile, "rw");
+			try {
+				target.setLength(0);
+				FileChannel targetChannel = target.getChannel();
+				long compactedBytes = 0;
+				for (Entry<Number320, PublicKey> entry : domainProtectionSnapshot.entrySet()) {
+					compactedBytes += writeRecord(targetChannel, encodeProtectDomain(entry.getKey(), entry.getValue()));
+				}
+				for (Entry<Number480, PublicKey> entry : entryProtectionSnapshot.entrySet()) {
+					compactedBytes += writeRecord(targetChannel, encodeProtectEntry(entry.getKey(), entry.getValue()));
+				}
+				for (Entry<Number640, StoredEntry> entry : snapshot.entrySet()) {
+					StoredEntry storedEntry = entry.getValue();
+					byte[] payload;
+					logLock.readLock().lock();
+					try {
+						payload = readPayload(storedEntry);
+					} finally {
+						logLock.readLock().unlock();
+					}
+
+					byte[] record = encodePut(entry.getKey(), storedEntry.metadata, payload);
+					long offset = payloadOffset(compactedBytes, record, payload);
+					compactedBytes += writeRecord(targetChannel, record);
+					moved.put(storedEntry, new StoredEntry(storedEntry.metadata, offset, storedEntry.length));
+				}
+
+				// append the records written meanwhile and switch to the compacted log
+				logLock.writeLock().lock();
+				try {
+					synchronized (appendMonitor) {
+						if (log == null) {
+							return;
+						}
+
+						long tailBytes = logBytes - snapshotEnd;
+						long transferred = 0;
+						while (transferred < tailBytes) {
+							transferred += log.transferTo(snapshotEnd + transferred, tailBytes - transferred,
+									targetChannel);
+						}
+						targetChannel.force(false);
+						target.close();
+
+						log.close();
+						try {
+							Files.move(compactionFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+									StandardCopyOption.ATOMIC_MOVE);
+						} finally {
+							// either the compacted or still the old log
+							log = openLog();
+						}
+						logger.debug("Compacted the storage log from {} to {} bytes.", logBytes, compactedBytes
+								+ tailBytes);
+						logBytes = compactedBytes + tailBytes;
+
+						// point the index to the compacted log
+						long shift = compactedBytes - snapshotEnd;
+						for (Entry<Number640, StoredEntry> entry : entries.entrySet()) {
+							StoredEntry current = entry.getValue();
+							StoredEntry movedEntry = moved.get(current);
+							if (movedEntry != null) {
+								entries.put(entry.getKey(), movedEntry);
+							} else if (current.offset >= snapshotEnd) {
+								entries.put(entry.getKey(), new StoredEntry(current.metadata, current.offset + shift,
+										current.length));
+							} else {
+								logger.error("Lost track of the entry {} while compacting.", entry.getKey());
+							}
+						}
+					}
+				} finally {
+					logLock.writeLock().unlock();
+				}
+			} finally {
+				target.close();
+			}
+		}
+	}
+
+	/**
+	 * Compacts the log in the background if it contains mostly garbage
+	 */
+	private void scheduleCompaction() {
+		synchronized (appendMonitor) {
+			if (logBytes <= MIN_COMPACTION_SIZE || logBytes <= COMPACTION_FACTOR * storedBytes) {
+				return;
+			}
+		}
+
+		if (compactionScheduled.compareAndSet(false, true)) {
+			try {
+				compactionExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							compact();
+						} catch (IOException e) {
+							logger.error("Cannot compact the storage log.", e);
+						} finally {
+							compactionScheduled.set(false);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// closed
+				compactionScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest versions of the same content key, like the underlying {@link StorageMemory} does
+	 */
+	private void pruneVersions(Number640 key) {
+		if (maxVersions <= 0) {
+			return;
+		}
+
+		NavigableMap<Number640, StoredEntry> versions = entries.subMap(new Number640(key.locationKey(),
+				key.domainKey(), key.contentKey(), Number160.ZERO), true, new Number640(key.locationKey(),
+				key.domainKey(), key.contentKey(), Number160.MAX_VALUE), true);
+		while (!versions.isEmpty()
+				&& versions.firstKey().versionKey().timestamp() + maxVersions <= versions.lastKey().versionKey()
+						.timestamp()) {
+			Number640 oldest = versions.firstKey();
+			remove(oldest, false);
+			removeTimeout(oldest);
+		}
+	}
+
+	private FileChannel openLog() throws IOException {
+		FileChannel channel = new RandomAccessFile(logFile, "rw").getChannel();
+		channel.position(channel.size());
+		return channel;
+	}
+
+	/**
+	 * Rebuilds the index from the log. Must be called before anything else is written to the log.
+	 */
+	private void recover() throws IOException {
+		long fileLength = log.size();
+		if (fileLength == 0) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		long position = 0;
+		int records = 0;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		while (position + RECORD_HEADER_SIZE <= fileLength) {
+			header.clear();
+			readFully(log, header, position);
+			header.flip();
+			int length = header.getInt();
+			int checksum = header.getInt();
+			if (length <= 0 || length > fileLength - position - RECORD_HEADER_SIZE) {
+				// a torn write or a corrupt length field
+				logger.warn("Found an invalid record length in the storage log. Cutting it off.");
+				break;
+			}
+
+			byte[] record = new byte[length];
+			readFully(log, ByteBuffer.wrap(record), position + RECORD_HEADER_SIZE);
+			if (checksum(record) != checksum) {
+				logger.warn("Found a corrupt record in the storage log. Cutting it off.");
+				break;
+			}
+
+			replay(record, position);
+			position += RECORD_HEADER_SIZE + length;
+			records++;
+		}
+
+		if (position < fileLength) {
+			// cut off the corrupt tail such that new records are appended to a valid log
+			log.truncate(position);
+			log.position(position);
+		}
+
+		logBytes = position;
+		logger.debug("Recovered {} records ({} bytes stored) from the storage log in {} ms.", records, storedBytes,
+				System.currentTimeMillis() - start);
+	}
+
+	private void replay(byte[] record, long recordOffset) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(record);
+		DataInputStream in = new DataInputStream(bytes);
+		byte type = in.readByte();
+		switch (type) {
+			case RECORD_PUT: {
+				Number640 key = readKey(in);
+				DataMetadata metadata = DataMetadata.read(in);
+				int payloadLength = in.readInt();
+				// the payload is the remainder of the record, it stays on disk
+				long payloadOffset = recordOffset + RECORD_HEADER_SIZE + record.length - bytes.available();
+				if (payloadLength != bytes.available()) {
+					logger.warn("Skipping a malformed put record in the storage log.");
+					break;
+				}
+
+				StoredEntry oldEntry = entries.remove(key);
+				if (oldEntry != null) {
+					storedBytes -= oldEntry.length;
+				}
+				if (metadata.expirationMillis() < System.currentTimeMillis()) {
+					// expired while the peer was offline
+					removeTimeout(key);
+				} else {
+					entries.put(key, new StoredEntry(metadata, payloadOffset, payloadLength));
+					storedBytes += payloadLength;
+					addTimeout(key, metadata.expirationMillis());
+				}
+				break;
+			}
+			case RECORD_REMOVE: {
+				Number640 key = readKey(in);
+				StoredEntry oldEntry = entries.remove(key);
+				if (oldEntry != null) {
+					storedBytes -= oldEntry.length;
+				}
+				removeTimeout(key);
+				break;
+			}
+			case RECORD_PROTECT_ENTRY: {
+				Number480 key = new Number480(readNumber(in), readNumber(in), readNumber(in));
+				PublicKey publicKey = signatureFactory.decodePublicKey(DataMetadata.readBytes(in));
+				if (super.protectEntry(key, publicKey)) {
+					entryProtections.put(key, publicKey);
+				}
+				break;
+			}
+			case RECORD_PROTECT_DOMAIN: {
+				Number320 key = new Number320(readNumber(in), readNumber(in));
+				PublicKey publicKey = signatureFactory.decodePublicKey(DataMetadata.readBytes(in));
+				if (super.protectDomain(key, publicKey)) {
+					domainProtections.put(key, publicKey);
+				}
+				break;
+			}
+			default:
+				logger.warn("Skipping unknown record type {} in the storage log.", type);
+		}
+	}
+
+	/**
+	 * Appends a record to the log
+	 *
+	 * @return the offset of the record in the log or -1 if it could not be written
+	 */
+	private long appendRecord(byte[] record) {
+		synchronized (appendMonitor) {
+			if (log == null) {
+				logger.error("Cannot persist a modification. The storage is closed.");
+				return -1;
+			}
+
+			try {
+				long offset = logBytes;
+				logBytes += writeRecord(log, record);
+				return offset;
+			} catch (IOException e) {
+				logger.error("Cannot persist a modification to the storage log.", e);
+				return -1;
+			}
+		}
+	}
+
+	private Data load(StoredEntry entry) {
+		try {
+			return entry.metadata.toData(readPayload(entry));
+		} catch (IOException e) {
+			logger.error("Cannot read a stored entry from the storage log.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the payload of an entry. The caller must hold the read lock.
+	 */
+	private byte[] readPayload(StoredEntry entry) throws IOException {
+		FileChannel channel = log;
+		if (channel == null) {
+			throw new IOException("The storage is closed");
+		}
+		byte[] payload = new byte[entry.length];
+		readFully(channel, ByteBuffer.wrap(payload), entry.offset);
+		return payload;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of the storage log");
+			}
+		}
+	}
+
+	/**
+	 * Writes a record at the current position of the channel
+	 *
+	 * @return the number of written bytes
+	 */
+	private static int writeRecord(FileChannel channel, byte[] record) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		header.putInt(record.length).putInt(checksum(record)).flip();
+		ByteBuffer[] buffers = new ByteBuffer[] { header, ByteBuffer.wrap(record) };
+		while (buffers[1].hasRemaining()) {
+			channel.write(buffers);
+		}
+		return record.length + RECORD_HEADER_SIZE;
+	}
+
+	/**
+	 * @return the position of the payload in the log, given the position of its put record
+	 */
+	private static long payloadOffset(long recordOffset, byte[] record, byte[] payload) {
+		// the payload is at the end of the record
+		return recordOffset + RECORD_HEADER_SIZE + record.length - payload.length;
+	}
+
+	private static int checksum(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] encodePut(Number640 key, DataMetadata metadata, byte[] payload) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_PUT);
+			writeKey(out, key);
+			metadata.write(out);
+			DataMetadata.writeBytes(out, payload);
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] encodeKeyRecord(byte type, Number640 key) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + 4 * Number160.BYTE_ARRAY_SIZE);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(type);
+			writeKey(out, key);
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] encodeProtectEntry(Number480 key, PublicKey publicKey) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_PROTECT_ENTRY);
+			writeNumber(out, key.locationKey());
+			writeNumber(out, key.domainKey());
+			writeNumber(out, key.contentKey());
+			DataMetadata.writeBytes(out, publicKey.getEncoded());
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] encodeProtectDomain(Number320 key, PublicKey publicKey) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_PROTECT_DOMAIN);
+			writeNumber(out, key.locationKey());
+			writeNumber(out, key.domainKey());
+			DataMetadata.writeBytes(out, publicKey.getEncoded());
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeKey(DataOutputStream out, Number640 key) throws IOException {
+		writeNumber(out, key.locationKey());
+		writeNumber(out, key.domainKey());
+		writeNumber(out, key.contentKey());
+		writeNumber(out, key.versionKey());
+	}
+
+	private static Number640 readKey(DataInputStream in) throws IOException {
+		return new Number640(readNumber(in), readNumber(in), readNumber(in), readNumber(in));
+	}
+
+	private static void writeNumber(DataOutputStream out, Number160 number) throws IOException {
+		out.write(number.toByteArray());
+	}
+
+	private static Number160 readNumber(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[Number160.BYTE_ARRAY_SIZE];
+		in.readFully(bytes);
+		return new Number160(bytes);
+	}
+
+	/**
+	 * The on-heap part of a stored entry
+	 */
+	private static final class StoredEntry {
+
+		private final DataMetadata metadata;
+		// the position of the payload in the log
+		private final long offset;
+		private final int length;
+
+		public StoredEntry(DataMetadata metadata, long offset, int length) {
+			this.metadata = metadata;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -1,11 +1,14 @@
 package org.hive2hive.core.network;
 
+import java.io.IOException;
 import java.security.PublicKey;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 
+import net.tomp2p.dht.Storage;
 import net.tomp2p.dht.StorageLayer;
 import net.tomp2p.dht.StorageMemory;
 import net.tomp2p.peers.Number640;
@@ -16,8 +19,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Allows to deny data and/or return manipulated data. <b>Important:</b> This features are used only for
- * testing purposes.
+ * The storage layer of every peer. It denies puts that would exceed the capacity of an {@link IBoundedStorage}
+ * backend. Furthermore, it allows to deny data and/or return manipulated data. <b>Important:</b> The put and
+ * get modes are used only for testing purposes.
  * 
  * @author Seppi, Nico
  */
@@ -41,13 +45,23 @@ public class H2HStorageMemory extends StorageLayer {
 		MANIPULATED
 	}
 
+	private final Storage backend;
 	private NavigableMap<Number640, Data> manipulatedMap;
 
 	private StorageMemoryPutMode putMode;
 	private StorageMemoryGetMode getMode;
 
 	public H2HStorageMemory() {
-		super(new StorageMemory());
+		this(new StorageMemory());
+	}
+
+	/**
+	 * @param backend the storage holding the data. If it implements {@link IBoundedStorage}, puts exceeding
+	 *            its capacity are denied.
+	 */
+	public H2HStorageMemory(Storage backend) {
+		super(backend);
+		this.backend = backend;
 		this.putMode = StorageMemoryPutMode.STANDARD;
 		this.getMode = StorageMemoryGetMode.STANDARD;
 	}
@@ -71,6 +85,10 @@ public class H2HStorageMemory extends StorageLayer {
 			boolean sendSelf) {
 		switch (putMode) {
 			case STANDARD: {
+				if (!hasCapacity(key, newData)) {
+					logger.warn("Storage capacity exceeded. Denying the put request.");
+					return PutStatus.FAILED;
+				}
 				return super.put(key, newData, publicKey, putIfAbsent, domainProtection, sendSelf);
 			}
 			case DENY_ALL: {
@@ -89,6 +107,15 @@ public class H2HStorageMemory extends StorageLayer {
 			boolean domainProtection, boolean sendSelf) {
 		switch (putMode) {
 			case STANDARD: {
+				if (backend instanceof IBoundedStorage) {
+					// one by one, such that the capacity is checked including the previous entries
+					Map<Number640, Enum<?>> result = new HashMap<>(dataMap.size());
+					for (Map.Entry<Number640, Data> entry : dataMap.entrySet()) {
+						result.put(entry.getKey(),
+								put(entry.getKey(), entry.getValue(), publicKey, putIfAbsent, domainProtection, sendSelf));
+					}
+					return result;
+				}
 				return super.putAll(dataMap, publicKey, putIfAbsent, domainProtection, sendSelf);
 			}
 			case DENY_ALL: {
@@ -102,6 +129,66 @@ public class H2HStorageMemory extends StorageLayer {
 		}
 	}
 
+	/**
+	 * Checks whether the domain or the entry of the given key is protected by another key than the given one.
+	 * 
+	 * @param key the key of the entry
+	 * @param publicKey the key the entry is protected with, can be <code>null</code> for unprotected entries
+	 * @return <code>true</code> if the entry cannot be stored with the given key
+	 */
+	public boolean isProtectedByOthers(Number640 key, PublicKey publicKey) {
+		return backend.isDomainProtectedByOthers(key.locationAndDomainKey(), publicKey)
+				|| backend.isEntryProtectedByOthers(key.locationAndDomainAndContentKey(), publicKey);
+	}
+
+	/**
+	 * Enumerates the metadata of the stored entries. Backends that keep the metadata apart are not asked for
+	 * the payloads (see {@link IMetadataStorage}).
+	 * 
+	 * @return the metadata of all stored entries
+	 */
+	NavigableMap<Number640, DataMetadata> metadataMap() {
+		if (backend instanceof IMetadataStorage) {
+			return ((IMetadataStorage) backend).metadataMap();
+		}
+
+		// the entries are on the heap anyway
+		NavigableMap<Number640, DataMetadata> result = new TreeMap<Number640, DataMetadata>();
+		for (Map.Entry<Number640, Data> entry : backend.map().entrySet()) {
+			try {
+				result.put(entry.getKey(), DataMetadata.of(entry.getValue()));
+			} catch (IOException e) {
+				logger.error("Cannot read the metadata of the entry {}.", entry.getKey(), e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param key the key of the entry
+	 * @return the metadata of the stored entry or <code>null</code> if it is not stored
+	 */
+	DataMetadata metadata(Number640 key) {
+		if (backend instanceof IMetadataStorage) {
+			return ((IMetadataStorage) backend).metadata(key);
+		}
+
+		Data data = backend.get(key);
+		try {
+			return data == null ? null : DataMetadata.of(data);
+		} catch (IOException e) {
+			logger.error("Cannot read the metadata of the entry {}.", key, e);
+			return null;
+		}
+	}
+
+	private boolean hasCapacity(Number640 key, Data newData) {
+		if (backend instanceof IBoundedStorage) {
+			return ((IBoundedStorage) backend).canStore(key, newData);
+		}
+		return true;
+	}
+
 	private Map<Number640, Enum<?>> buildReturnMap(Set<Number640> keys, PutStatus status) {
 		HashMap<Number640, Enum<?>> result = new HashMap<>(keys.size());
 		for (Number640 key : keys) {
@@ -0,0 +1,31 @@
+package org.hive2hive.core.network;
+
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+/**
+ * A storage backend with a limited capacity. The {@link H2HStorageMemory} rejects all puts that would exceed
+ * it.
+ */
+public interface IBoundedStorage {
+
+	/**
+	 * Checks whether the given data fits into the storage. An existing entry at the same key is considered to
+	 * be replaced.
+	 * 
+	 * @param key the key of the data to store
+	 * @param data the data to store
+	 * @return <code>true</code> if the capacity is not exceeded after storing the data
+	 */
+	boolean canStore(Number640 key, Data data);
+
+	/**
+	 * @return the number of payload bytes currently stored
+	 */
+	long getStoredBytes();
+
+	/**
+	 * @return the maximum number of payload bytes that can be stored
+	 */
+	long getCapacity();
+}
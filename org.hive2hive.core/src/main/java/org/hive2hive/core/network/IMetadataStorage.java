@@ -0,0 +1,23 @@
+package org.hive2hive.core.network;
+
+import java.util.NavigableMap;
+
+import net.tomp2p.peers.Number640;
+
+/**
+ * A storage backend that keeps the metadata of its entries apart from the payloads, such that the entries can
+ * be enumerated without reading the payloads (see {@link DigestReplication}).
+ */
+interface IMetadataStorage {
+
+	/**
+	 * @return the metadata of all stored entries
+	 */
+	NavigableMap<Number640, DataMetadata> metadataMap();
+
+	/**
+	 * @param key the key of the entry
+	 * @return the metadata of the entry or <code>null</code> if it is not stored
+	 */
+	DataMetadata metadata(Number640 key);
+}
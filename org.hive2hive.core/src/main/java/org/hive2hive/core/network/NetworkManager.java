@@ -2,12 +2,14 @@ package org.hive2hive.core.network;
 
 import net.tomp2p.dht.PeerDHT;
 
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
 import org.hive2hive.core.api.interfaces.INetworkConfiguration;
 import org.hive2hive.core.events.EventBus;
 import org.hive2hive.core.exceptions.NoPeerConnectionException;
 import org.hive2hive.core.exceptions.NoSessionException;
+import org.hive2hive.core.metrics.H2HMetrics;
 import org.hive2hive.core.network.data.DataManager;
 import org.hive2hive.core.network.data.download.DownloadManager;
 import org.hive2hive.core.network.messages.MessageManager;
@@ -24,6 +26,7 @@ public class NetworkManager {
 	private final Connection connection;
 	private final DataManager dataManager;
 	private final MessageManager messageManager;
+	private final H2HMetrics metrics;
 	private String nodeID;
 	private H2HSession session;
 
@@ -32,8 +35,9 @@ public class NetworkManager {
 
 	public NetworkManager(IH2HEncryption encryption, IH2HSerialize serializer, IFileConfiguration fileConfig) {
 		this.encryption = encryption;
+		metrics = new H2HMetrics(H2HConstants.ENABLE_METRICS);
 		connection = new Connection(this, serializer);
-		dataManager = new DataManager(connection, serializer, encryption);
+		dataManager = new DataManager(connection, serializer, encryption, metrics);
 		messageManager = new MessageManager(this, serializer);
 		downloadManager = new DownloadManager(this, fileConfig);
 	}
@@ -47,6 +51,7 @@ public class NetworkManager {
 	public boolean connect(INetworkConfiguration networkConfiguration) {
 		this.eventBus = new EventBus();
 		this.nodeID = networkConfiguration.getNodeID();
+		registerMetrics();
 		return connection.connect(networkConfiguration);
 	}
 
@@ -60,6 +65,7 @@ public class NetworkManager {
 	public boolean connect(PeerDHT peer, boolean startReplication) {
 		this.eventBus = new EventBus();
 		this.nodeID = peer.peerID().toString();
+		registerMetrics();
 		return connection.connect(peer, startReplication);
 	}
 
@@ -77,11 +83,19 @@ public class NetworkManager {
 			if (session.getDownloadManager() != null) {
 				session.getDownloadManager().stopBackgroundProcesses();
 			}
+			if (session.getTTLRefreshManager() != null) {
+				session.getTTLRefreshManager().stop();
+			}
 		}
 
 		eventBus.shutdown();
 		logger.debug("Eventbus stopped");
 
+		metrics.unregisterJMX();
+
+		encryption.shutdown();
+		logger.debug("Encryption stopped");
+
 		return connection.disconnect();
 	}
 
@@ -98,6 +112,19 @@ public class NetworkManager {
 		return nodeID;
 	}
 
+	/**
+	 * @return the metrics of this node
+	 */
+	public H2HMetrics getMetrics() {
+		return metrics;
+	}
+
+	private void registerMetrics() {
+		if (H2HConstants.ENABLE_METRICS_JMX) {
+			metrics.registerJMX(nodeID);
+		}
+	}
+
 	public Connection getConnection() {
 		return connection;
 	}
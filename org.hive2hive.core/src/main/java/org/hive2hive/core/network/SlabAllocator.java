@@ -0,0 +1,289 @@
+package org.hive2hive.core.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocates memory outside of the Java heap for payloads. The memory is organized in size classes, each
+ * having fixed-size slots that are cut out of large direct buffers (segments). The slot sizes grow by a
+ * constant factor, such that at most a quarter of a slot is wasted. Freed slots are reused by the same size
+ * class; segments are allocated lazily until the capacity is reached and are never returned.<br>
+ * A payload is addressed by a handle, which encodes the size class and the slot. Payloads larger than the
+ * largest slot are split by the caller into several slots (see {@link #getMaxSlotSize()}).
+ */
+public class SlabAllocator {
+
+	private static final int MIN_SLOT_SIZE = 256;
+	private static final double GROWTH_FACTOR = 1.25;
+
+	private final SizeClass[] sizeClasses;
+	private final int segmentSize;
+	private final long capacity;
+	private long reservedBytes = 0;
+	private long usedBytes = 0;
+
+	/**
+	 * @param capacity the maximum number of bytes allocated outside of the heap
+	 * @param segmentSize the size of a single direct buffer. Slots larger than a segment get their own one.
+	 * @param maxSlotSize the size of the largest slot
+	 */
+	public SlabAllocator(long capacity, int segmentSize, int maxSlotSize) {
+		assert capacity > 0;
+		assert segmentSize >= MIN_SLOT_SIZE;
+		this.capacity = capacity;
+		this.segmentSize = segmentSize;
+
+		List<SizeClass> classes = new ArrayList<SizeClass>();
+		int slotSize = MIN_SLOT_SIZE;
+		while (slotSize < maxSlotSize) {
+			classes.add(new SizeClass(slotSize));
+			slotSize = (int) Math.ceil(slotSize * GROWTH_FACTOR);
+		}
+		classes.add(new SizeClass(maxSlotSize));
+		this.sizeClasses = classes.toArray(new SizeClass[classes.size()]);
+	}
+
+	/**
+	 * Copies the payload into a free slot.
+	 *
+	 * @param payload the payload to store
+	 * @return the handle of the slot or <code>-1</code> if the payload is too large or the capacity is
+	 *         exhausted
+	 */
+	public long allocate(byte[] payload) {
+		return allocate(payload, 0, payload.length);
+	}
+
+	/**
+	 * Copies a part of the payload into a free slot.
+	 *
+	 * @param payload the payload to store
+	 * @param offset the start of the part to store
+	 * @param length the length of the part to store
+	 * @return the handle of the slot or <code>-1</code> if the part is too large or the capacity is exhausted
+	 */
+	public long allocate(byte[] payload, int offset, int length) {
+		int classIndex = findSizeClass(length);
+		if (classIndex < 0) {
+			return -1;
+		}
+
+		SizeClass sizeClass = sizeClasses[classIndex];
+		int slot;
+		synchronized (this) {
+			slot = sizeClass.takeSlot();
+			if (slot < 0) {
+				return -1;
+			}
+			usedBytes += length;
+		}
+
+		// the slot is exclusively owned now, thus the copy does not need to be synchronized
+		ByteBuffer buffer = sizeClass.slice(slot);
+		buffer.put(payload, offset, length);
+		return ((long) classIndex << 32) | slot;
+	}
+
+	/**
+	 * Copies the payload out of the slot.
+	 *
+	 * @param handle the handle returned by {@link #allocate(byte[])}
+	 * @param length the length of the payload
+	 * @return a copy of the payload
+	 */
+	public byte[] read(long handle, int length) {
+		byte[] payload = new byte[length];
+		read(handle, payload, 0, length);
+		return payload;
+	}
+
+	/**
+	 * Copies the payload out of the slot into the given array.
+	 *
+	 * @param handle the handle returned by {@link #allocate(byte[], int, int)}
+	 * @param target the array to copy the payload to
+	 * @param offset the position in the target array
+	 * @param length the length of the payload
+	 */
+	public void read(long handle, byte[] target, int offset, int length) {
+		ByteBuffer buffer = sizeClasses[classIndex(handle)].slice(slotIndex(handle));
+		buffer.get(target, offset, length);
+	}
+
+	/**
+	 * Releases the slot such that it can be reused.
+	 *
+	 * @param handle the handle returned by {@link #allocate(byte[])}
+	 * @param length the length of the payload
+	 */
+	public synchronized void free(long handle, int length) {
+		sizeClasses[classIndex(handle)].releaseSlot(slotIndex(handle));
+		usedBytes -= length;
+	}
+
+	/**
+	 * Checks whether a payload of the given length can be allocated without exceeding the capacity. A payload
+	 * larger than the largest slot is considered to be split into slots of the largest size and a remainder.
+	 *
+	 * @param length the length of the payload
+	 * @return <code>true</code> if there are enough free slots or new segments can be allocated
+	 */
+	public synchronized boolean canAllocate(int length) {
+		if (length <= 0) {
+			return true;
+		}
+
+		int largest = sizeClasses.length - 1;
+		int maxSlotSize = sizeClasses[largest].slotSize;
+		int fullSlots = length / maxSlotSize;
+		int remainder = length % maxSlotSize;
+		int remainderClass = remainder == 0 ? -1 : findSizeClass(remainder);
+		if (remainderClass == largest) {
+			fullSlots++;
+			remainderClass = -1;
+		}
+
+		long additionalBytes = sizeClasses[largest].missingBytes(fullSlots);
+		if (remainderClass >= 0) {
+			additionalBytes += sizeClasses[remainderClass].missingBytes(1);
+		}
+		return reservedBytes + additionalBytes <= capacity;
+	}
+
+	/**
+	 * @return the largest payload that fits into a single slot
+	 */
+	public int getMaxSlotSize() {
+		return sizeClasses[sizeClasses.length - 1].slotSize;
+	}
+
+	/**
+	 * @return the number of payload bytes currently stored
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return the number of bytes allocated outside of the heap (including free and partially used slots)
+	 */
+	public synchronized long getReservedBytes() {
+		return reservedBytes;
+	}
+
+	/**
+	 * @return the maximum number of bytes allocated outside of the heap
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	private int findSizeClass(int length) {
+		// binary search for the smallest slot size fitting the length
+		int low = 0;
+		int high = sizeClasses.length - 1;
+		if (length > sizeClasses[high].slotSize) {
+			return -1;
+		}
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sizeClasses[mid].slotSize < length) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int classIndex(long handle) {
+		return (int) (handle >>> 32);
+	}
+
+	private static int slotIndex(long handle) {
+		return (int) handle;
+	}
+
+	/**
+	 * The slots of a single size. Guarded by the lock of the allocator, except {@link #slice(int)}.
+	 */
+	private class SizeClass {
+
+		private final int slotSize;
+		private final int slotsPerSegment;
+		private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+		// stack of free slot indices
+		private int[] freeSlots = new int[16];
+		private int freeCount = 0;
+		private int totalSlots = 0;
+
+		public SizeClass(int slotSize) {
+			this.slotSize = slotSize;
+			this.slotsPerSegment = Math.max(1, segmentSize / slotSize);
+		}
+
+		public int segmentBytes() {
+			return slotsPerSegment * slotSize;
+		}
+
+		/**
+		 * @return the number of bytes of the segments to allocate until the given number of slots is free
+		 */
+		public long missingBytes(int slots) {
+			int missing = slots - freeCount;
+			if (missing <= 0) {
+				return 0;
+			}
+			int newSegments = (missing + slotsPerSegment - 1) / slotsPerSegment;
+			return (long) newSegments * segmentBytes();
+		}
+
+		public int takeSlot() {
+			if (freeCount == 0 && !addSegment()) {
+				return -1;
+			}
+			return freeSlots[--freeCount];
+		}
+
+		public void releaseSlot(int slot) {
+			if (freeCount == freeSlots.length) {
+				int[] grown = new int[freeSlots.length * 2];
+				System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+				freeSlots = grown;
+			}
+			freeSlots[freeCount++] = slot;
+		}
+
+		/**
+		 * @return a view on the slot, positioned at its start
+		 */
+		public ByteBuffer slice(int slot) {
+			ByteBuffer segment;
+			synchronized (SlabAllocator.this) {
+				segment = segments.get(slot / slotsPerSegment);
+			}
+			// a duplicate has its own position and limit, thus concurrent accesses do not interfere
+			ByteBuffer view = segment.duplicate();
+			int offset = (slot % slotsPerSegment) * slotSize;
+			view.limit(offset + slotSize);
+			view.position(offset);
+			return view;
+		}
+
+		private boolean addSegment() {
+			int bytes = segmentBytes();
+			if (reservedBytes + bytes > capacity) {
+				return false;
+			}
+
+			segments.add(ByteBuffer.allocateDirect(bytes));
+			reservedBytes += bytes;
+			for (int i = totalSlots + slotsPerSegment - 1; i >= totalSlots; i--) {
+				releaseSlot(i);
+			}
+			totalSlots += slotsPerSegment;
+			return true;
+		}
+	}
+}
@@ -3,18 +3,34 @@ package org.hive2hive.core.network.data;
 import java.io.IOException;
 import java.security.KeyPair;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.tomp2p.dht.DigestBuilder;
+import net.tomp2p.dht.FutureDHT;
 import net.tomp2p.dht.FutureDigest;
 import net.tomp2p.dht.FutureGet;
 import net.tomp2p.dht.FuturePut;
 import net.tomp2p.dht.FutureRemove;
+import net.tomp2p.dht.GetBuilder;
 import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.BaseFuture;
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.p2p.RequestP2PConfiguration;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.rpc.DigestResult;
 import net.tomp2p.storage.Data;
 
 import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.metrics.H2HMetrics;
+import org.hive2hive.core.metrics.IGauge;
+import org.hive2hive.core.metrics.Outcome;
 import org.hive2hive.core.model.BaseNetworkContent;
 import org.hive2hive.core.network.IPeerHolder;
 import org.hive2hive.core.network.data.futures.FutureChangeProtectionListener;
@@ -45,12 +61,51 @@ public class DataManager {
 	private final IH2HSerialize serializer;
 	private final IPeerHolder peerHolder;
 	private final IH2HEncryption encryption;
-	private final H2HSlowPeerFilter slowPeerFilter = new H2HSlowPeerFilter();
+	private final PeerLatencyTracker latencyTracker = new PeerLatencyTracker();
+	private final H2HSlowPeerFilter slowPeerFilter = new H2HSlowPeerFilter(
+			H2HConstants.ENABLE_SLOW_PEER_TRACKING ? latencyTracker : null);
+	private final ImmutableContentCache contentCache;
+	private final H2HMetrics metrics;
+	private final AtomicLong detectedForks = new AtomicLong();
+	private volatile ReadConsistency readConsistency = H2HConstants.READ_CONSISTENCY;
 
 	public DataManager(IPeerHolder peerHolder, IH2HSerialize serializer, IH2HEncryption encryption) {
+		this(peerHolder, serializer, encryption, new H2HMetrics(false));
+	}
+
+	public DataManager(IPeerHolder peerHolder, IH2HSerialize serializer, IH2HEncryption encryption, H2HMetrics metrics) {
 		this.peerHolder = peerHolder;
 		this.serializer = serializer;
 		this.encryption = encryption;
+		this.metrics = metrics;
+
+		if (H2HConstants.ENABLE_CONTENT_CACHE) {
+			this.contentCache = new ImmutableContentCache(H2HConstants.CONTENT_CACHE_MAX_BYTES,
+					H2HConstants.CONTENT_CACHE_MAX_SPILL_BYTES);
+		} else {
+			this.contentCache = null;
+		}
+
+		metrics.registerGauge("dht.forks.detected", new IGauge() {
+			@Override
+			public double getValue() {
+				return detectedForks.get();
+			}
+		});
+		if (contentCache != null) {
+			metrics.registerGauge("cache.hitRate", new IGauge() {
+				@Override
+				public double getValue() {
+					return contentCache.getHitRate();
+				}
+			});
+			metrics.registerGauge("cache.evictions", new IGauge() {
+				@Override
+				public double getValue() {
+					return contentCache.getEvictions();
+				}
+			});
+		}
 	}
 
 	public IH2HEncryption getEncryption() {
@@ -61,10 +116,56 @@ public class DataManager {
 		return serializer;
 	}
 
+	/**
+	 * @return the local cache for immutable content or <code>null</code> if caching is disabled
+	 */
+	public ImmutableContentCache getContentCache() {
+		return contentCache;
+	}
+
+	/**
+	 * @return the metrics of the node
+	 */
+	public H2HMetrics getMetrics() {
+		return metrics;
+	}
+
 	private PeerDHT getPeer() {
 		return peerHolder.getPeer();
 	}
 
+	/**
+	 * @return the round trip times and failure rates of the contacted peers
+	 */
+	public PeerLatencyTracker getLatencyTracker() {
+		return latencyTracker;
+	}
+
+	public ReadConsistency getReadConsistency() {
+		return readConsistency;
+	}
+
+	/**
+	 * Defines how many replicas need to answer a get before it returns. Gets of immutable content (see
+	 * {@link ImmutableContentCache#isImmutable(String, boolean)}) complete after the first answer unless
+	 * {@link ReadConsistency#ALL} is set. Digests of the latest versions always wait for all replicas (see
+	 * {@link #getDigestLatestUnblocked(IParameters)}).
+	 * 
+	 * @param readConsistency the read consistency
+	 */
+	public void setReadConsistency(ReadConsistency readConsistency) {
+		assert readConsistency != null;
+		this.readConsistency = readConsistency;
+	}
+
+	/**
+	 * @return the number of version forks or delays that have been detected by the background checks after
+	 *         early completed gets
+	 */
+	public long getDetectedForks() {
+		return detectedForks.get();
+	}
+
 	public boolean changeProtectionKey(IParameters parameters) {
 		FuturePut putFuture = changeProtectionKeyUnblocked(parameters);
 		if (putFuture == null) {
@@ -78,8 +179,24 @@ public class DataManager {
 
 	public FuturePut changeProtectionKeyUnblocked(IParameters parameters) {
 		logger.debug("Change content protection key. {}", parameters.toString());
-		// create dummy object to change the protection key
-		Data data = new Data().protectEntry(parameters.getNewProtectionKeys());
+		return putMetaUnblocked(parameters, parameters.getNewProtectionKeys());
+	}
+
+	/**
+	 * Resets the time-to-live of already stored content to {@link IParameters#getTTL()} without uploading the
+	 * content again. The content stays protected by {@link IParameters#getProtectionKeys()}.
+	 * 
+	 * @param parameters the parameters of the content to refresh
+	 * @return the future of the meta put
+	 */
+	public FuturePut refreshTTLUnblocked(IParameters parameters) {
+		logger.debug("Refresh time-to-live. {}", parameters.toString());
+		return putMetaUnblocked(parameters, parameters.getProtectionKeys());
+	}
+
+	private FuturePut putMetaUnblocked(IParameters parameters, KeyPair newProtectionKeys) {
+		// create dummy object to change the meta data
+		Data data = new Data().protectEntry(newProtectionKeys);
 		if (parameters.getTTL() != -1) {
 			data.ttlSeconds(parameters.getTTL());
 		}
@@ -87,21 +204,35 @@ public class DataManager {
 		// create meta data
 		data = data.duplicateMeta();
 
-		// change the protection key through a put meta
+		// change the protection key and the ttl through a put meta
 		return getPeer().put(parameters.getLKey()).domainKey(parameters.getDKey()).putMeta()
 				.data(parameters.getCKey(), data).versionKey(parameters.getVersionKey())
 				.addPostRoutingFilter(slowPeerFilter).keyPair(parameters.getProtectionKeys()).start();
 	}
 
 	public H2HPutStatus put(IParameters parameters) {
+		long start = System.nanoTime();
 		FuturePut putFuture = putUnblocked(parameters);
 		if (putFuture == null) {
+			metrics.recordLatency("dht.put", parameters.getContentKey(), Outcome.FAIL, start);
 			return H2HPutStatus.FAILED;
 		}
 
 		FuturePutListener listener = new FuturePutListener(parameters, this);
 		putFuture.addListener(listener);
-		return listener.await();
+		H2HPutStatus status = listener.await();
+		metrics.recordLatency("dht.put", parameters.getContentKey(), toOutcome(status), start);
+		return status;
+	}
+
+	private static Outcome toOutcome(H2HPutStatus status) {
+		if (status == H2HPutStatus.OK) {
+			return Outcome.OK;
+		} else if (status == H2HPutStatus.VERSION_FORK) {
+			return Outcome.FORK;
+		} else {
+			return Outcome.FAIL;
+		}
 	}
 
 	public H2HPutStatus putUserProfileTask(String userId, Number160 contentKey, BaseNetworkContent content,
@@ -129,6 +260,9 @@ public class DataManager {
 			if (parameters.getBasedOnKey() != null) {
 				data.addBasedOn(parameters.getBasedOnKey());
 			}
+			for (Number160 basedOnKey : parameters.getAdditionalBasedOnKeys()) {
+				data.addBasedOn(basedOnKey);
+			}
 			if (parameters.hasPrepareFlag()) {
 				data.prepareFlag();
 			}
@@ -141,9 +275,11 @@ public class DataManager {
 			// cache data
 			parameters.setData(data);
 
-			return getPeer().put(parameters.getLKey()).data(parameters.getCKey(), data).domainKey(parameters.getDKey())
-					.addPostRoutingFilter(slowPeerFilter).versionKey(parameters.getVersionKey())
-					.keyPair(parameters.getProtectionKeys()).start();
+			FuturePut futurePut = getPeer().put(parameters.getLKey()).data(parameters.getCKey(), data)
+					.domainKey(parameters.getDKey()).addPostRoutingFilter(slowPeerFilter)
+					.versionKey(parameters.getVersionKey()).keyPair(parameters.getProtectionKeys()).start();
+			trackLatency(futurePut);
+			return futurePut;
 		} catch (IOException e) {
 			logger.error("Put failed. {}.", parameters.toString(), e);
 			return null;
@@ -158,6 +294,9 @@ public class DataManager {
 		if (parameters.getBasedOnKey() != null) {
 			data.addBasedOn(parameters.getBasedOnKey());
 		}
+		for (Number160 basedOnKey : parameters.getAdditionalBasedOnKeys()) {
+			data.addBasedOn(basedOnKey);
+		}
 
 		// check if data to put is content protected
 		if (parameters.getProtectionKeys() != null) {
@@ -170,17 +309,71 @@ public class DataManager {
 	}
 
 	public BaseNetworkContent get(IParameters parameters) {
+		long start = System.nanoTime();
+		BaseNetworkContent cached = getFromCache(parameters, false);
+		if (cached != null) {
+			metrics.recordLatency("dht.get.cached", parameters.getContentKey(), Outcome.OK, start);
+			return cached;
+		}
+
 		FutureGet futureGet = getUnblocked(parameters);
 		FutureGetListener listener = new FutureGetListener(parameters, serializer);
 		futureGet.addListener(listener);
-		return listener.awaitAndGet();
+		BaseNetworkContent result = listener.awaitAndGet();
+		putToCache(parameters, false, listener.getSerializedResult());
+		metrics.recordLatency("dht.get", parameters.getContentKey(), result == null ? Outcome.FAIL : Outcome.OK, start);
+		return result;
 	}
 
 	public BaseNetworkContent getVersion(IParameters parameters) {
+		long start = System.nanoTime();
+		BaseNetworkContent cached = getFromCache(parameters, true);
+		if (cached != null) {
+			metrics.recordLatency("dht.get.cached", parameters.getContentKey(), Outcome.OK, start);
+			return cached;
+		}
+
 		FutureGet futureGet = getVersionUnblocked(parameters);
 		FutureGetListener listener = new FutureGetListener(parameters, serializer);
 		futureGet.addListener(listener);
-		return listener.awaitAndGet();
+		BaseNetworkContent result = listener.awaitAndGet();
+		putToCache(parameters, true, listener.getSerializedResult());
+		metrics.recordLatency("dht.getVersion", parameters.getContentKey(), result == null ? Outcome.FAIL : Outcome.OK,
+				start);
+		return result;
+	}
+
+	private BaseNetworkContent getFromCache(IParameters parameters, boolean atVersion) {
+		if (contentCache == null || !ImmutableContentCache.isImmutable(parameters.getContentKey(), atVersion)) {
+			return null;
+		}
+
+		byte[] cached = contentCache.get(parameters.getKey());
+		if (cached == null) {
+			return null;
+		}
+
+		try {
+			logger.debug("Got from local cache. {}", parameters.toString());
+			return (BaseNetworkContent) serializer.deserialize(cached);
+		} catch (IOException | ClassNotFoundException e) {
+			logger.warn("Cannot deserialize the cached content. Fetching it from the network. {}", parameters.toString());
+			contentCache.invalidate(parameters.getLKey(), parameters.getDKey(), parameters.getCKey());
+			return null;
+		}
+	}
+
+	private void putToCache(IParameters parameters, boolean atVersion, byte[] serialized) {
+		if (contentCache != null && serialized != null
+				&& ImmutableContentCache.isImmutable(parameters.getContentKey(), atVersion)) {
+			contentCache.put(parameters.getKey(), serialized);
+		}
+	}
+
+	private void invalidateCache(IParameters parameters) {
+		if (contentCache != null) {
+			contentCache.invalidate(parameters.getLKey(), parameters.getDKey(), parameters.getCKey());
+		}
 	}
 
 	public BaseNetworkContent getUserProfileTask(String userId) {
@@ -196,10 +389,20 @@ public class DataManager {
 
 	public FutureGet getUnblocked(IParameters parameters) {
 		logger.debug("Get. {}", parameters.toString());
-		return getPeer().get(parameters.getLKey())
+		GetBuilder builder = getPeer().get(parameters.getLKey())
 				.from(new Number640(parameters.getLKey(), parameters.getDKey(), parameters.getCKey(), Number160.ZERO))
 				.to(new Number640(parameters.getLKey(), parameters.getDKey(), parameters.getCKey(), Number160.MAX_VALUE))
-				.descending().returnNr(1).fastGet(false).addPostRoutingFilter(slowPeerFilter).start();
+				.descending().returnNr(1).addPostRoutingFilter(slowPeerFilter);
+		RequestP2PConfiguration readConfiguration = createReadConfiguration(ImmutableContentCache.isImmutable(
+				parameters.getContentKey(), false));
+		if (readConfiguration == null) {
+			builder.fastGet(false);
+		} else {
+			builder.requestP2PConfiguration(readConfiguration).fastGet(true);
+		}
+		FutureGet futureGet = builder.start();
+		trackLatency(futureGet);
+		return futureGet;
 	}
 
 	public FutureGet getVersionUnblocked(IParameters parameters) {
@@ -208,17 +411,41 @@ public class DataManager {
 				.versionKey(parameters.getVersionKey()).addPostRoutingFilter(slowPeerFilter).start();
 	}
 
-	public FutureGet getLatestUnblocked(IParameters parameters) {
+	public FutureGet getLatestUnblocked(final IParameters parameters) {
 		logger.debug("Get latest version. {}", parameters.toString());
-		return getPeer().get(parameters.getLKey()).domainKey(parameters.getDKey()).contentKey(parameters.getCKey())
-				.getLatest().withDigest().fastGet(false).addPostRoutingFilter(slowPeerFilter).start();
+		GetBuilder builder = getPeer().get(parameters.getLKey()).domainKey(parameters.getDKey())
+				.contentKey(parameters.getCKey()).getLatest().withDigest().addPostRoutingFilter(slowPeerFilter);
+		RequestP2PConfiguration readConfiguration = createReadConfiguration(false);
+		if (readConfiguration == null) {
+			FutureGet futureGet = builder.fastGet(false).start();
+			trackLatency(futureGet);
+			return futureGet;
+		}
+
+		FutureGet futureGet = builder.requestP2PConfiguration(readConfiguration).fastGet(true).start();
+		trackLatency(futureGet);
+		if (H2HConstants.READ_BACKGROUND_FORK_CHECK) {
+			// the replicas that did not answer yet may know other versions
+			futureGet.addListener(new BaseFutureAdapter<FutureGet>() {
+				@Override
+				public void operationComplete(FutureGet future) throws Exception {
+					if (future.isSuccess()) {
+						checkForkInBackground(parameters, latestVersionKeys(future.rawDigest()));
+					}
+				}
+			});
+		}
+		return futureGet;
 	}
 
 	public boolean remove(IParameters parameters) {
+		long start = System.nanoTime();
 		FutureRemove futureRemove = removeUnblocked(parameters);
 		FutureRemoveListener listener = new FutureRemoveListener(parameters, false, this);
 		futureRemove.addListener(listener);
-		return listener.await();
+		boolean success = listener.await();
+		metrics.recordLatency("dht.remove", parameters.getContentKey(), success ? Outcome.OK : Outcome.FAIL, start);
+		return success;
 	}
 
 	public boolean removeVersion(IParameters parameters) {
@@ -239,6 +466,7 @@ public class DataManager {
 
 	public FutureRemove removeUnblocked(IParameters parameters) {
 		logger.debug("Remove. {}", parameters.toString());
+		invalidateCache(parameters);
 		return getPeer().remove(parameters.getLKey())
 				.from(new Number640(parameters.getLKey(), parameters.getDKey(), parameters.getCKey(), Number160.ZERO))
 				.to(new Number640(parameters.getLKey(), parameters.getDKey(), parameters.getCKey(), Number160.MAX_VALUE))
@@ -247,6 +475,7 @@ public class DataManager {
 
 	public FutureRemove removeVersionUnblocked(IParameters parameters) {
 		logger.debug("Remove version. {}", parameters.toString());
+		invalidateCache(parameters);
 		return getPeer().remove(parameters.getLKey()).domainKey(parameters.getDKey()).contentKey(parameters.getCKey())
 				.versionKey(parameters.getVersionKey()).keyPair(parameters.getProtectionKeys())
 				.addPostRoutingFilter(slowPeerFilter).start();
@@ -259,12 +488,130 @@ public class DataManager {
 		return listener.awaitAndGet();
 	}
 
+	/**
+	 * Asks all replicas for their latest versions, regardless of the read consistency. The version managers
+	 * detect forks by comparing these versions, thus a replica that did not answer could hide a fork.
+	 */
 	public FutureDigest getDigestLatestUnblocked(IParameters parameters) {
 		logger.debug("Get digest (latest). {}", parameters.toString());
+		return createDigestLatestBuilder(parameters).fastGet(false).start();
+	}
+
+	private DigestBuilder createDigestLatestBuilder(IParameters parameters) {
 		return getPeer().digest(parameters.getLKey())
 				.from(new Number640(parameters.getLKey(), parameters.getDKey(), parameters.getCKey(), Number160.ZERO))
 				.to(new Number640(parameters.getLKey(), parameters.getDKey(), parameters.getCKey(), Number160.MAX_VALUE))
-				.descending().returnNr(1).fastGet(false).addPostRoutingFilter(slowPeerFilter).start();
+				.descending().returnNr(1).addPostRoutingFilter(slowPeerFilter);
+	}
+
+	/**
+	 * @return the routing configuration for an early completing get or <code>null</code> if all replicas
+	 *         need to answer
+	 */
+	private RequestP2PConfiguration createReadConfiguration(boolean immutable) {
+		switch (readConsistency) {
+			case ONE:
+				return new RequestP2PConfiguration(1, H2HConstants.READ_MAX_FAILURES, 0);
+			case QUORUM:
+				// immutable content cannot be outdated, the first answer is as good as all others
+				return new RequestP2PConfiguration(immutable ? 1 : H2HConstants.READ_QUORUM,
+						H2HConstants.READ_MAX_FAILURES, 0);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Asks all replicas for their latest version keys and compares them with the ones of an early completed
+	 * get. Differences are only logged and counted (see {@link #getDetectedForks()}), they are resolved by the
+	 * next get of the version manager that sees them. Note that this doubles the number of requests of every
+	 * early completed get of the latest version, thus it is enabled by
+	 * {@link H2HConstants#READ_BACKGROUND_FORK_CHECK} only.
+	 */
+	private void checkForkInBackground(final IParameters parameters, final Set<Number160> earlyVersionKeys) {
+		FutureDigest futureDigest = createDigestLatestBuilder(parameters).fastGet(false).start();
+		futureDigest.addListener(new BaseFutureAdapter<FutureDigest>() {
+			@Override
+			public void operationComplete(FutureDigest future) throws Exception {
+				if (future.isFailed()) {
+					return;
+				}
+
+				Set<Number160> allVersionKeys = latestVersionKeys(future.rawDigest());
+				allVersionKeys.addAll(earlyVersionKeys);
+				if (allVersionKeys.size() > 1) {
+					detectedForks.incrementAndGet();
+					metrics.increment("dht.get.background", parameters.getContentKey(), Outcome.FORK);
+					logger.warn("Late replies revealed {} different latest versions. {}", allVersionKeys.size(),
+							parameters.toString());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Feeds the {@link PeerLatencyTracker} with the round trip times of the replicas of a put. Replicas that
+	 * have been contacted but did not answer count as failures.
+	 */
+	private void trackLatency(FuturePut futurePut) {
+		trackLatency(futurePut, true);
+	}
+
+	/**
+	 * Feeds the {@link PeerLatencyTracker} with the round trip times of the replicas of a get. Gets may complete
+	 * early and cancel the remaining requests, thus requests without an answer are not counted as failures.
+	 */
+	private void trackLatency(FutureGet futureGet) {
+		trackLatency(futureGet, false);
+	}
+
+	/**
+	 * Times every request to a replica individually, from the moment the requests are sent (when the routing
+	 * completed) to the completion of its own response. Thus, a fast replica is not charged with the round trip
+	 * of a slow one.
+	 */
+	private void trackLatency(final FutureDHT<?> futureDHT, final boolean countFailures) {
+		futureDHT.futureRouting().addListener(new BaseFutureAdapter<BaseFuture>() {
+			@Override
+			public void operationComplete(BaseFuture routing) throws Exception {
+				// the requests are sent as soon as the routing completed
+				if (routing.isFailed() || futureDHT.futureRequests() == null) {
+					return;
+				}
+
+				final long start = System.currentTimeMillis();
+				final PeerAddress self = getPeer().peerAddress();
+				for (FutureResponse futureResponse : futureDHT.futureRequests().completed()) {
+					futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+						@Override
+						public void operationComplete(FutureResponse response) throws Exception {
+							PeerAddress replica = response.request().recipient();
+							if (replica.equals(self)) {
+								return;
+							} else if (response.isSuccess()) {
+								latencyTracker.recordSuccess(replica, System.currentTimeMillis() - start);
+							} else if (countFailures) {
+								latencyTracker.recordFailure(replica);
+							}
+						}
+					});
+				}
+			}
+		});
+	}
+
+	private static Set<Number160> latestVersionKeys(Map<PeerAddress, DigestResult> rawDigest) {
+		Set<Number160> versionKeys = new HashSet<Number160>();
+		if (rawDigest == null) {
+			return versionKeys;
+		}
+		for (DigestResult digestResult : rawDigest.values()) {
+			NavigableMap<Number640, Collection<Number160>> keyDigest = digestResult.keyDigest();
+			if (keyDigest != null && !keyDigest.isEmpty()) {
+				versionKeys.add(keyDigest.lastKey().versionKey());
+			}
+		}
+		return versionKeys;
 	}
 
 	public FutureDigest getDigestUnblocked(IParameters parameters) {
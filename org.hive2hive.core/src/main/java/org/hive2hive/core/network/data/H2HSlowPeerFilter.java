@@ -8,7 +8,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A {@link SlowPeerFilter} that can be set inactive and logs if requests are rejected.
+ * A {@link SlowPeerFilter} that can be set inactive and logs if requests are rejected. Besides the peers that
+ * announce themselves as slow, it rejects the peers that are measured as slow by a {@link PeerLatencyTracker}.
  * 
  * @author Nico
  *
@@ -18,10 +19,22 @@ public class H2HSlowPeerFilter extends SlowPeerFilter {
 	private static final Logger logger = LoggerFactory.getLogger(H2HSlowPeerFilter.class);
 
 	private final boolean active = !H2HConstants.STORE_DATA_SLOW_PEERS;
+	private final PeerLatencyTracker latencyTracker;
+
+	public H2HSlowPeerFilter() {
+		this(null);
+	}
+
+	/**
+	 * @param latencyTracker the measured latencies of the peers, can be <code>null</code>
+	 */
+	public H2HSlowPeerFilter(PeerLatencyTracker latencyTracker) {
+		this.latencyTracker = latencyTracker;
+	}
 
 	@Override
 	public boolean rejectDirectHit(PeerAddress peerAddress) {
-		boolean reject = super.rejectDirectHit(peerAddress) && active;
+		boolean reject = (super.rejectDirectHit(peerAddress) && active) || isMeasuredSlow(peerAddress);
 		if (reject && logger.isTraceEnabled()) {
 			logger.trace("Rejecting direct hit {}", peerAddress);
 		}
@@ -30,10 +43,14 @@ public class H2HSlowPeerFilter extends SlowPeerFilter {
 
 	@Override
 	public boolean rejectPotentialHit(PeerAddress peerAddress) {
-		boolean reject = super.rejectPotentialHit(peerAddress) && active;
+		boolean reject = (super.rejectPotentialHit(peerAddress) && active) || isMeasuredSlow(peerAddress);
 		if (reject && logger.isTraceEnabled()) {
 			logger.trace("Rejecting potential hit {}", peerAddress);
 		}
 		return reject;
 	}
+
+	private boolean isMeasuredSlow(PeerAddress peerAddress) {
+		return latencyTracker != null && latencyTracker.isSlow(peerAddress);
+	}
 }
@@ -7,7 +7,9 @@ public interface IUserProfileModification {
 
 	/**
 	 * Modify the user profile in this method. If a version fork occurs, this method could be called multiple
-	 * times, thus make sure that slow operations like key generation happen before.
+	 * times, thus make sure that slow operations like key generation happen before.<br>
+	 * The method is called by the queue worker of the {@link UserProfileManager}, thus it must not read or
+	 * modify the user profile through the manager again (this fails with an {@link IllegalStateException}).
 	 * 
 	 * @param userProfile the user profile
 	 * @throws AbortModifyException if the modification fails and the Userprofile should not be put
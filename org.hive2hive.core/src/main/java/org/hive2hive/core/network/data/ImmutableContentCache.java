@@ -0,0 +1,339 @@
+package org.hive2hive.core.network.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.file.IFileAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local read-through cache for content in the DHT that never changes once it has been written. Chunks and
+ * public keys are immutable at any version, meta files only when they are requested at a specific version
+ * key (see {@link #isImmutable(String, boolean)}).<br>
+ * The entries are kept in serialized form, thus the memory consumption is bounded exactly and every hit
+ * returns a fresh copy that the caller may modify. When the memory bound is reached, the least recently used
+ * entries are evicted and (if a {@link IFileAgent} is attached) spilled to its persistent cache.
+ */
+public class ImmutableContentCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImmutableContentCache.class);
+
+	private static final String SPILL_PREFIX = "dht-cache-";
+
+	private final long maxMemoryBytes;
+	private final long maxSpillBytes;
+
+	// access-ordered, thus iterating starts at the least recently used entry
+	private final Map<Number640, byte[]> memory = new LinkedHashMap<Number640, byte[]>(16, 0.75f, true);
+	private final Map<Number640, Integer> spilled = new LinkedHashMap<Number640, Integer>(16, 0.75f, true);
+	private long memoryBytes = 0;
+	private long spilledBytes = 0;
+
+	private volatile IFileAgent fileAgent;
+
+	// statistics
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxMemoryBytes the maximum number of bytes kept on the heap
+	 * @param maxSpillBytes the maximum number of bytes spilled to the file agent's cache. Use 0 to disable
+	 *            spilling.
+	 */
+	public ImmutableContentCache(long maxMemoryBytes, long maxSpillBytes) {
+		assert maxMemoryBytes > 0;
+		assert maxSpillBytes >= 0;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxSpillBytes = maxSpillBytes;
+	}
+
+	/**
+	 * Checks whether the content with the given content key can be cached.
+	 *
+	 * @param contentKey the non-hashed content key (can be <code>null</code>)
+	 * @param atVersion <code>true</code> if the content is requested at a specific version key,
+	 *            <code>false</code> if the latest version is requested
+	 * @return <code>true</code> if the content never changes once written
+	 */
+	public static boolean isImmutable(String contentKey, boolean atVersion) {
+		if (contentKey == null) {
+			return false;
+		} else if (H2HConstants.FILE_CHUNK.equals(contentKey) || H2HConstants.USER_PUBLIC_KEY.equals(contentKey)) {
+			return true;
+		} else {
+			// a meta file is only immutable for a given version key
+			return atVersion && H2HConstants.META_FILE.equals(contentKey);
+		}
+	}
+
+	/**
+	 * Attaches a file agent to spill evicted entries to. Use <code>null</code> to detach the current one.
+	 *
+	 * @param fileAgent the file agent of the currently logged in user or <code>null</code>
+	 */
+	public void setFileAgent(IFileAgent fileAgent) {
+		if (fileAgent == null) {
+			synchronized (this) {
+				spilled.clear();
+				spilledBytes = 0;
+			}
+		}
+		this.fileAgent = fileAgent;
+	}
+
+	/**
+	 * Returns the serialized content stored under the given key.
+	 *
+	 * @param key the full key of the content
+	 * @return the serialized content or <code>null</code> if it is not cached
+	 */
+	public byte[] get(Number640 key) {
+		synchronized (this) {
+			byte[] cached = memory.get(key);
+			if (cached != null) {
+				memoryHits.incrementAndGet();
+				return cached;
+			} else if (!spilled.containsKey(key)) {
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+
+		byte[] fromDisk = readSpilled(key);
+		if (fromDisk == null) {
+			synchronized (this) {
+				Integer size = spilled.remove(key);
+				if (size != null) {
+					spilledBytes -= size;
+				}
+			}
+			misses.incrementAndGet();
+			return null;
+		}
+
+		diskHits.incrementAndGet();
+		// promote it back to the memory
+		put(key, fromDisk);
+		return fromDisk;
+	}
+
+	/**
+	 * Caches the serialized content. Content that is larger than the memory bound is ignored.
+	 *
+	 * @param key the full key of the content
+	 * @param serialized the serialized content
+	 */
+	public void put(Number640 key, byte[] serialized) {
+		if (serialized == null || serialized.length == 0 || serialized.length > maxMemoryBytes) {
+			return;
+		}
+
+		List<Entry<Number640, byte[]>> evicted = new ArrayList<Entry<Number640, byte[]>>();
+		synchronized (this) {
+			byte[] previous = memory.put(key, serialized);
+			if (previous != null) {
+				memoryBytes -= previous.length;
+			}
+			memoryBytes += serialized.length;
+
+			Iterator<Entry<Number640, byte[]>> iterator = memory.entrySet().iterator();
+			while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+				Entry<Number640, byte[]> eldest = iterator.next();
+				iterator.remove();
+				memoryBytes -= eldest.getValue().length;
+				evictions.incrementAndGet();
+				evicted.add(eldest);
+			}
+		}
+
+		// file operations are done outside of the lock
+		for (Entry<Number640, byte[]> entry : evicted) {
+			spill(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Removes all cached versions of the given content (e.g. because it has been removed from the DHT)
+	 *
+	 * @param locationKey the location key
+	 * @param domainKey the domain key
+	 * @param contentKey the content key
+	 */
+	public void invalidate(Number160 locationKey, Number160 domainKey, Number160 contentKey) {
+		List<Number640> removedFromDisk = new ArrayList<Number640>();
+		synchronized (this) {
+			Iterator<Entry<Number640, byte[]>> memoryIterator = memory.entrySet().iterator();
+			while (memoryIterator.hasNext()) {
+				Entry<Number640, byte[]> entry = memoryIterator.next();
+				if (matches(entry.getKey(), locationKey, domainKey, contentKey)) {
+					memoryBytes -= entry.getValue().length;
+					memoryIterator.remove();
+				}
+			}
+
+			Iterator<Entry<Number640, Integer>> spillIterator = spilled.entrySet().iterator();
+			while (spillIterator.hasNext()) {
+				Entry<Number640, Integer> entry = spillIterator.next();
+				if (matches(entry.getKey(), locationKey, domainKey, contentKey)) {
+					spilledBytes -= entry.getValue();
+					spillIterator.remove();
+					removedFromDisk.add(entry.getKey());
+				}
+			}
+		}
+
+		for (Number640 key : removedFromDisk) {
+			deleteSpilled(key);
+		}
+	}
+
+	private static boolean matches(Number640 key, Number160 locationKey, Number160 domainKey, Number160 contentKey) {
+		return key.locationKey().equals(locationKey) && key.domainKey().equals(domainKey)
+				&& key.contentKey().equals(contentKey);
+	}
+
+	private void spill(Number640 key, byte[] serialized) {
+		IFileAgent agent = fileAgent;
+		if (agent == null || maxSpillBytes <= 0 || serialized.length > maxSpillBytes) {
+			return;
+		}
+
+		try {
+			agent.writeCache(toFileName(key), serialized);
+		} catch (IOException e) {
+			logger.warn("Cannot spill the cached content to the disk. reason = '{}'", e.getMessage());
+			return;
+		}
+
+		List<Number640> dropped = new ArrayList<Number640>();
+		synchronized (this) {
+			Integer previous = spilled.put(key, serialized.length);
+			if (previous != null) {
+				spilledBytes -= previous;
+			}
+			spilledBytes += serialized.length;
+
+			Iterator<Entry<Number640, Integer>> iterator = spilled.entrySet().iterator();
+			while (spilledBytes > maxSpillBytes && iterator.hasNext()) {
+				Entry<Number640, Integer> eldest = iterator.next();
+				iterator.remove();
+				spilledBytes -= eldest.getValue();
+				dropped.add(eldest.getKey());
+			}
+		}
+
+		for (Number640 droppedKey : dropped) {
+			deleteSpilled(droppedKey);
+		}
+	}
+
+	private byte[] readSpilled(Number640 key) {
+		IFileAgent agent = fileAgent;
+		if (agent == null) {
+			return null;
+		}
+
+		try {
+			byte[] data = agent.readCache(toFileName(key));
+			if (data == null || data.length == 0) {
+				return null;
+			}
+			return data;
+		} catch (IOException e) {
+			logger.warn("Cannot read the spilled content from the disk. reason = '{}'", e.getMessage());
+			return null;
+		}
+	}
+
+	private void deleteSpilled(Number640 key) {
+		IFileAgent agent = fileAgent;
+		if (agent == null) {
+			return;
+		}
+
+		try {
+			// the file agent has no delete operation, overwriting with an empty array frees the space
+			agent.writeCache(toFileName(key), new byte[0]);
+		} catch (IOException e) {
+			logger.warn("Cannot delete the spilled content. reason = '{}'", e.getMessage());
+		}
+	}
+
+	private static String toFileName(Number640 key) {
+		return SPILL_PREFIX + Number160.createHash(key.toString()).toString();
+	}
+
+	/**
+	 * @return the number of requests served from the memory
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	/**
+	 * @return the number of requests served from the spilled entries on the disk
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * @return the number of requests that needed to go to the network
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries that were evicted from the memory
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the ratio of requests served by the cache (memory or disk), between 0 and 1
+	 */
+	public double getHitRate() {
+		long hits = memoryHits.get() + diskHits.get();
+		long total = hits + misses.get();
+		if (total == 0) {
+			return 0.0;
+		}
+		return (double) hits / (double) total;
+	}
+
+	/**
+	 * @return the number of bytes currently held in the memory
+	 */
+	public synchronized long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	/**
+	 * @return the number of bytes currently spilled to the disk
+	 */
+	public synchronized long getSpilledBytes() {
+		return spilledBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"ImmutableContentCache [memory = %s bytes, spilled = %s bytes, hits = %s, disk hits = %s, misses = %s]",
+				getMemoryBytes(), getSpilledBytes(), getMemoryHits(), getDiskHits(), getMisses());
+	}
+}
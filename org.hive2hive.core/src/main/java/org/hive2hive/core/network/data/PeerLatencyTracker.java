@@ -0,0 +1,158 @@
+package org.hive2hive.core.network.data;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+
+import org.hive2hive.core.H2HConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the round trip times and failure rates of other peers (both as exponentially weighted moving
+ * averages). A peer is classified as slow when one of them exceeds its limit (see
+ * {@link H2HConstants#SLOW_PEER_RTT_MS} and {@link H2HConstants#SLOW_PEER_FAILURE_RATE}). To avoid flapping, it
+ * is only classified as fast again when both fall below {@link H2HConstants#SLOW_PEER_RECOVERY_FACTOR} times
+ * the limits. Since slow peers are not contacted anymore (and thus do not produce new samples), they are put on
+ * probation after {@link H2HConstants#SLOW_PEER_PROBATION_MS}: they may be contacted again and their averages
+ * decide whether they are demoted again.
+ */
+public class PeerLatencyTracker {
+
+	private static final Logger logger = LoggerFactory.getLogger(PeerLatencyTracker.class);
+
+	private final ConcurrentHashMap<Number160, PeerStatistic> statistics = new ConcurrentHashMap<Number160, PeerStatistic>();
+
+	/**
+	 * Records a successful request
+	 *
+	 * @param peerAddress the contacted peer
+	 * @param rttMillis the round trip time of the request
+	 */
+	public void recordSuccess(PeerAddress peerAddress, long rttMillis) {
+		getStatistic(peerAddress).update(rttMillis, false);
+	}
+
+	/**
+	 * Records a failed (or timed out) request
+	 *
+	 * @param peerAddress the contacted peer
+	 */
+	public void recordFailure(PeerAddress peerAddress) {
+		getStatistic(peerAddress).update(-1, true);
+	}
+
+	/**
+	 * @param peerAddress the peer to check
+	 * @return <code>true</code> if the peer is consistently slow or failing and not on probation
+	 */
+	public boolean isSlow(PeerAddress peerAddress) {
+		PeerStatistic statistic = statistics.get(peerAddress.peerId());
+		return statistic != null && statistic.isSlow();
+	}
+
+	/**
+	 * @param peerAddress the peer
+	 * @return the average round trip time in milliseconds or <code>-1</code> if unknown
+	 */
+	public double getAverageRtt(PeerAddress peerAddress) {
+		PeerStatistic statistic = statistics.get(peerAddress.peerId());
+		return statistic == null ? -1 : statistic.getAverageRtt();
+	}
+
+	/**
+	 * @param peerAddress the peer
+	 * @return the average failure rate (between 0 and 1) or <code>-1</code> if unknown
+	 */
+	public double getFailureRate(PeerAddress peerAddress) {
+		PeerStatistic statistic = statistics.get(peerAddress.peerId());
+		return statistic == null ? -1 : statistic.getFailureRate();
+	}
+
+	private PeerStatistic getStatistic(PeerAddress peerAddress) {
+		PeerStatistic statistic = statistics.get(peerAddress.peerId());
+		if (statistic == null) {
+			if (statistics.size() >= H2HConstants.SLOW_PEER_MAX_TRACKED) {
+				evictIdle();
+			}
+			statistic = new PeerStatistic(peerAddress);
+			PeerStatistic existing = statistics.putIfAbsent(peerAddress.peerId(), statistic);
+			if (existing != null) {
+				statistic = existing;
+			}
+		}
+		return statistic;
+	}
+
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+		Iterator<PeerStatistic> iterator = statistics.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().lastUpdate > H2HConstants.SLOW_PEER_PROBATION_MS) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class PeerStatistic {
+
+		private final PeerAddress peerAddress;
+		private double averageRtt = -1;
+		private double failureRate = 0;
+		private int samples = 0;
+		private boolean slow = false;
+		private long slowSince = 0;
+		private volatile long lastUpdate = System.currentTimeMillis();
+
+		public PeerStatistic(PeerAddress peerAddress) {
+			this.peerAddress = peerAddress;
+		}
+
+		public synchronized void update(long rttMillis, boolean failed) {
+			double alpha = H2HConstants.SLOW_PEER_EWMA_WEIGHT;
+			failureRate = alpha * (failed ? 1 : 0) + (1 - alpha) * failureRate;
+			if (rttMillis >= 0) {
+				averageRtt = averageRtt < 0 ? rttMillis : alpha * rttMillis + (1 - alpha) * averageRtt;
+			}
+			samples++;
+			lastUpdate = System.currentTimeMillis();
+
+			if (samples < H2HConstants.SLOW_PEER_MIN_SAMPLES) {
+				return;
+			}
+
+			if (!slow && exceeds(1)) {
+				slow = true;
+				slowSince = lastUpdate;
+				logger.debug("Classified peer {} as slow. RTT = {} ms, failure rate = {}.", peerAddress, averageRtt,
+						failureRate);
+			} else if (slow && !exceeds(H2HConstants.SLOW_PEER_RECOVERY_FACTOR)) {
+				slow = false;
+				logger.debug("Peer {} recovered. RTT = {} ms, failure rate = {}.", peerAddress, averageRtt, failureRate);
+			} else if (slow) {
+				// still slow after the probation, start a new one
+				slowSince = lastUpdate;
+			}
+		}
+
+		private boolean exceeds(double factor) {
+			return averageRtt > H2HConstants.SLOW_PEER_RTT_MS * factor
+					|| failureRate > H2HConstants.SLOW_PEER_FAILURE_RATE * factor;
+		}
+
+		public synchronized boolean isSlow() {
+			// slow peers are contacted again after the probation to get new samples
+			return slow && System.currentTimeMillis() - slowSince < H2HConstants.SLOW_PEER_PROBATION_MS;
+		}
+
+		public synchronized double getAverageRtt() {
+			return averageRtt;
+		}
+
+		public synchronized double getFailureRate() {
+			return failureRate;
+		}
+	}
+}
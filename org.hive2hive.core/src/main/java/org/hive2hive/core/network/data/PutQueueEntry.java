@@ -5,69 +5,93 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.exceptions.AbortModifyException;
+import org.hive2hive.core.exceptions.GetFailedException;
 import org.hive2hive.core.exceptions.PutFailedException;
 
 class PutQueueEntry extends QueueEntry {
 
 	private final String pid;
-	private final AtomicBoolean readyToPut = new AtomicBoolean(false);
+	private final IUserProfileModification modifier;
 	private final AtomicBoolean abort = new AtomicBoolean(false);
 	private final CountDownLatch putWaiter = new CountDownLatch(1);
 
-	private PutFailedException putFailedException;
+	private volatile GetFailedException getFailedException;
+	private volatile PutFailedException putFailedException;
+	private volatile AbortModifyException abortModifyException;
 
-	public PutQueueEntry(String pid) {
+	public PutQueueEntry(String pid, IUserProfileModification modifier) {
 		this.pid = pid;
+		this.modifier = modifier;
 	}
 
 	public String getPid() {
 		return pid;
 	}
 
-	public boolean isReadyToPut() {
-		return readyToPut.get();
-	}
-
-	public void readyToPut() {
-		readyToPut.set(true);
+	public IUserProfileModification getModifier() {
+		return modifier;
 	}
 
 	public boolean isAborted() {
 		return abort.get();
 	}
 
-	public void abort() {
+	/**
+	 * Aborts the modification, it won't be applied (anymore)
+	 *
+	 * @param reason the reason or <code>null</code> if the waiting process gave up
+	 */
+	public void abort(AbortModifyException reason) {
+		this.abortModifyException = reason;
 		abort.set(true);
 	}
 
-	public void notifyPut() {
+	@Override
+	public void setGetError(GetFailedException error) {
+		super.setGetError(error);
+		this.getFailedException = error;
 		putWaiter.countDown();
 	}
 
-	public void waitForPut() throws PutFailedException {
-		if (putFailedException != null) {
-			throw putFailedException;
-		}
+	public void setPutError(PutFailedException error) {
+		this.putFailedException = error;
+	}
 
+	public void notifyPut() {
+		putWaiter.countDown();
+	}
+
+	/**
+	 * Waits (blocking) until the modification has been applied and the user profile has been put
+	 *
+	 * @throws GetFailedException if the user profile could not be fetched
+	 * @throws PutFailedException if the user profile could not be put or the timeout elapsed
+	 * @throws AbortModifyException if the modifier aborted the modification
+	 */
+	public void waitForPut() throws GetFailedException, PutFailedException, AbortModifyException {
 		try {
-			boolean success = putWaiter.await(H2HConstants.AWAIT_NETWORK_OPERATION_MS * H2HConstants.PUT_RETRIES,
+			boolean success = putWaiter.await(H2HConstants.AWAIT_NETWORK_OPERATION_MS * (H2HConstants.PUT_RETRIES + 1),
 					TimeUnit.MILLISECONDS);
 			if (!success) {
+				// don't apply the modification anymore if not done yet
+				abort(null);
 				putFailedException = new PutFailedException("Timeout while putting occurred");
 			}
 		} catch (InterruptedException e) {
+			abort(null);
 			putFailedException = new PutFailedException("Could not wait to put the user profile");
 		}
 
-		if (putFailedException != null) {
+		if (getFailedException != null) {
+			throw getFailedException;
+		} else if (abortModifyException != null) {
+			throw abortModifyException;
+		} else if (putFailedException != null) {
 			throw putFailedException;
 		}
 	}
 
-	public void setPutError(PutFailedException error) {
-		this.putFailedException = error;
-	}
-
 	@Override
 	public int hashCode() {
 		return getPid().hashCode();
@@ -86,4 +110,4 @@ class PutQueueEntry extends QueueEntry {
 		}
 		return false;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package org.hive2hive.core.network.data;
+
+/**
+ * Defines how many replicas need to answer before a get from the DHT returns.
+ */
+public enum ReadConsistency {
+	/** wait for the answers of all replicas (the latency is defined by the slowest replica) */
+	ALL,
+
+	/**
+	 * return after {@link org.hive2hive.core.H2HConstants#READ_QUORUM} answers. Immutable content returns after
+	 * the first answer.
+	 */
+	QUORUM,
+
+	/** return after the first answer */
+	ONE
+}
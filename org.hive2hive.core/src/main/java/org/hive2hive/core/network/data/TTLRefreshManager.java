@@ -1,133 +1,368 @@
 package org.hive2hive.core.network.data;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.dht.FutureGet;
+import net.tomp2p.dht.FuturePut;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.storage.Data;
 
 import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.TimeToLiveStore;
+import org.hive2hive.core.exceptions.GetFailedException;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FileVersion;
+import org.hive2hive.core.model.IIndexVisitor;
+import org.hive2hive.core.model.Index;
+import org.hive2hive.core.model.MetaChunk;
+import org.hive2hive.core.model.versioned.BaseMetaFile;
+import org.hive2hive.core.model.versioned.HybridEncryptedContent;
+import org.hive2hive.core.model.versioned.MetaFileSmall;
+import org.hive2hive.core.model.versioned.UserProfile;
+import org.hive2hive.core.network.data.futures.FutureChangeProtectionListener;
+import org.hive2hive.core.network.data.parameters.IParameters;
+import org.hive2hive.core.network.data.parameters.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Provides methods to start and stop a periodical task to refresh the time-to-live value of data which has
- * been stored in the network.
- * 
+ * Periodically refreshes the time-to-live value of the meta files and chunks of the logged in user, such that
+ * they do not expire as long as the user is active.<br>
+ * The user profile is walked incrementally: at the beginning of each pass, the files are collected in a
+ * random order (thus, short sessions cover different files) and then processed one by one, spread over
+ * {@link H2HConstants#TTL_REFRESH_PASS_FRACTION} of the shortest time-to-live. A file is only refreshed when
+ * {@link H2HConstants#TTL_REFRESH_FRACTION} of its time-to-live has elapsed. The refresh uses meta-only puts,
+ * thus no content is uploaded again, and is rate-limited to {@link H2HConstants#TTL_REFRESH_MAX_PUTS_PER_S}.
+ * <br>
+ * The storage peers do not report how long ago an object has been written, thus the age of a file is
+ * estimated from the dates of its versions (when the objects were uploaded) and the time of the last refresh
+ * by this client (see {@link #getRefreshTimes()}, persisted across sessions). Refreshes by other clients of
+ * the same user are not known, such that a file may be refreshed earlier than necessary, but never later.
+ * <br>
+ * Files that are about to expire (or could not be found anymore) are reported through
+ * {@link #getExpiringFiles()}.
+ *
  * @author Seppi
  */
-@Deprecated
 public class TTLRefreshManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(TTLRefreshManager.class);
 
-	private Timer timer;
-	private RefreshTask task;
+	private final UserProfileManager profileManager;
+	private final DataManager dataManager;
+
+	private final Queue<FileIndex> pendingFiles = new LinkedList<FileIndex>();
+	private final Map<String, Long> expiringFiles = new ConcurrentHashMap<String, Long>();
+	// the time of the last successful refresh per file (by its public key)
+	private final Map<PublicKey, Long> refreshTimes = new ConcurrentHashMap<PublicKey, Long>();
 
-	// private final UserProfileManager profileManager;
-	// private final DataManager dataManager;
+	private ScheduledExecutorService executor;
+	private long nextPermitNanos = 0;
 
 	public TTLRefreshManager(UserProfileManager profileManager, DataManager dataManager) {
-		// this.profileManager = profileManager;
-		// this.dataManager = dataManager;
+		this.profileManager = profileManager;
+		this.dataManager = dataManager;
 	}
 
-	public void start() {
+	public synchronized void start() {
+		if (executor != null) {
+			logger.warn("TTL refresh manager is already running.");
+			return;
+		}
+
 		logger.debug("Starting TTL refresh manager.");
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "TTL-Refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.schedule(new RefreshTask(), H2HConstants.TTL_REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (executor == null) {
+			return;
+		}
 
-		// create a new timer thread
-		timer = new Timer();
-		// create a new timer task
-		task = new RefreshTask();
-		// start refreshment task periodically
-		timer.scheduleAtFixedRate(task, H2HConstants.TTL_REFRESHMENT_DELAY, H2HConstants.TTL_REFRESHMENT_PERIOD);
+		logger.debug("Stopping TTL refresh manager.");
+		executor.shutdownNow();
+		executor = null;
+		pendingFiles.clear();
+	}
 
-		logger.debug("TTL refresh manager started.");
+	/**
+	 * Returns the files of which the meta file or the chunks are close to expiry (see
+	 * {@link H2HConstants#TTL_EXPIRY_WARNING_FRACTION}) or already expired. A file is removed from the report as
+	 * soon as it has been refreshed.
+	 *
+	 * @return the path of the file and its estimated expiration time (in milliseconds since the epoch)
+	 */
+	public Map<String, Long> getExpiringFiles() {
+		return Collections.unmodifiableMap(new HashMap<String, Long>(expiringFiles));
 	}
 
-	public void stop() {
-		logger.debug("Stopping TTL refresh manager.");
+	/**
+	 * @return the time of the last refresh of each file by this client, to be persisted across sessions
+	 */
+	public Map<PublicKey, Long> getRefreshTimes() {
+		return new HashMap<PublicKey, Long>(refreshTimes);
+	}
 
-		// cancel the task
-		task.cancel();
-		// cancel the timer
-		timer.cancel();
-		// remove all cancelled tasks from this timer's task queu
-		timer.purge();
+	/**
+	 * Restores the refresh times of a previous session
+	 *
+	 * @param times the times returned by {@link #getRefreshTimes()}
+	 */
+	public void setRefreshTimes(Map<PublicKey, Long> times) {
+		refreshTimes.putAll(times);
+	}
 
-		logger.debug("TTL refresh manager stopped.");
+	private synchronized void scheduleNext(long delayMs) {
+		if (executor != null) {
+			executor.schedule(new RefreshTask(), delayMs, TimeUnit.MILLISECONDS);
+		}
 	}
 
-	private class RefreshTask extends TimerTask {
+	private class RefreshTask implements Runnable {
 
 		@Override
 		public void run() {
-			// // load the user profile
-			// UserProfile profile = null;
-			// try {
-			// String randomPID = UUID.randomUUID().toString();
-			// profile = profileManager.getUserProfile(randomPID, false);
-			// } catch (GetFailedException e) {
-			// logger.error(String.format("Could not get user profile. reason = '%s'", e.getMessage()));
-			// return;
-			// }
-			//
-			// // get all file/folder indexes stored in the profile
-			// List<Index> indexes = Index.getIndexList(profile.getRoot());
-			//
-			// // remove all folder indexes
-			// Iterator<Index> iterator = indexes.iterator();
-			// while (iterator.hasNext()) {
-			// Index index = iterator.next();
-			//
-			// if (index.isFolder())
-			// iterator.remove();
-			// }
-			//
-			// // select a random file index
-			// Random random = new Random();
-			// Index randomIndex = indexes.get(random.nextInt(indexes.size()));
-			//
-			// // load meta file from network
-			// MetaFile metaFile = getMetaFile(randomIndex);
-			//
-			// for (FileVersion fileVersion : metaFile.getVersions()) {
-			// for (String chunkId : fileVersion.getChunkIds()) {
-			// NetworkContent content = dataManager.get(chunkId, H2HConstants.FILE_CHUNK);
-			// HybridEncryptedContent encrypted = (HybridEncryptedContent) content;
-			// try {
-			// NetworkContent decrypted = H2HEncryptionUtil.decryptHybrid(encrypted, metaFile
-			// .getChunkKey().getPrivate());
-			// Chunk chunk = (Chunk) decrypted;
-			// } catch (ClassNotFoundException | InvalidKeyException | DataLengthException
-			// | IllegalBlockSizeException | BadPaddingException | IllegalStateException
-			// | InvalidCipherTextException | IllegalArgumentException | IOException e) {
-			// logger.error(String.format("Could not decypt chunk. reason = '%s'", e.getMessage()));
-			// }
-			// }
-			// }
-		}
-
-		// private MetaFile getMetaFile(Index index) {
-		// // get the encrypted meta file
-		// KeyPair keyPair = index.getFileKeys();
-		// NetworkContent loadedContent = dataManager.get(H2HEncryptionUtil.key2String(keyPair.getPublic()),
-		// H2HConstants.META_FILE);
-		//
-		// // decrypt meta file
-		// HybridEncryptedContent encryptedContent = (HybridEncryptedContent) loadedContent;
-		// NetworkContent decryptedContent = null;
-		// try {
-		// decryptedContent = H2HEncryptionUtil.decryptHybrid(encryptedContent, keyPair.getPrivate());
-		// } catch (InvalidKeyException | DataLengthException | IllegalBlockSizeException
-		// | BadPaddingException | IllegalStateException | InvalidCipherTextException
-		// | ClassNotFoundException | IOException e) {
-		// logger.error(String.format("Could not decrypt meta document. reason = '%s'", e.getMessage()));
-		// }
-		// MetaFile metaFile = (MetaFile) decryptedContent;
-		// //metaFile.setVersionKey(loadedContent.getVersionKey());
-		// //metaFile.setBasedOnKey(loadedContent.getBasedOnKey());
-		//
-		// return metaFile;
-		// }
+			boolean startPass;
+			synchronized (TTLRefreshManager.this) {
+				startPass = pendingFiles.isEmpty();
+			}
+
+			// reading the user profile takes a network round-trip, thus it is not done while holding the lock
+			List<FileIndex> files = startPass ? collectFiles() : null;
 
+			FileIndex next;
+			int remaining;
+			synchronized (TTLRefreshManager.this) {
+				if (executor == null) {
+					// stopped in the meantime
+					return;
+				}
+				if (files != null && pendingFiles.isEmpty()) {
+					pendingFiles.addAll(files);
+					logger.debug("Started a TTL refresh pass over {} files.", files.size());
+				}
+				next = pendingFiles.poll();
+				remaining = pendingFiles.size();
+			}
+
+			if (next == null) {
+				// nothing to refresh (or the profile could not be read), try again later
+				scheduleNext(H2HConstants.TTL_REFRESH_MAX_INTERVAL_MS);
+				return;
+			}
+
+			try {
+				refreshFile(next, false);
+			} catch (RuntimeException e) {
+				logger.error("Cannot refresh the time-to-live of '{}'.", next.getFullPath(), e);
+			}
+
+			// spread the files over the pass duration
+			long delay = passDurationMs() / (remaining + 1);
+			delay = Math.min(H2HConstants.TTL_REFRESH_MAX_INTERVAL_MS, Math.max(0, delay));
+			scheduleNext(delay);
+		}
 	}
 
+	/**
+	 * Collects all files of the user profile in a random order. Must not hold the lock.
+	 * 
+	 * @return the files or <code>null</code> if the user profile could not be read
+	 */
+	private List<FileIndex> collectFiles() {
+		UserProfile userProfile;
+		try {
+			userProfile = profileManager.readUserProfile();
+		} catch (GetFailedException e) {
+			logger.warn("Cannot read the user profile to refresh the time-to-live. Reason = '{}'.", e.getMessage());
+			return null;
+		}
+
+		final List<FileIndex> files = new ArrayList<FileIndex>();
+		userProfile.getRoot().walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				if (index.isFile()) {
+					files.add((FileIndex) index);
+				}
+				return true;
+			}
+		});
+
+		// forget the files which do not exist anymore
+		Set<PublicKey> fileKeys = new HashSet<PublicKey>(files.size());
+		for (FileIndex file : files) {
+			fileKeys.add(file.getFilePublicKey());
+		}
+		refreshTimes.keySet().retainAll(fileKeys);
+
+		Collections.shuffle(files);
+		return files;
+	}
+
+	/**
+	 * Refreshes the meta file and the chunks of the given file if it is due.
+	 *
+	 * @param file the file to refresh
+	 * @param force whether the file should be refreshed even though it is not due yet
+	 * @return the number of refreshed objects, 0 if the file is not due and -1 if the refresh failed
+	 */
+	int refreshFile(FileIndex file, boolean force) {
+		KeyPair fileKeys = file.getFileKeys();
+		IParameters metaParameters = new Parameters().setLocationKey(fileKeys.getPublic())
+				.setContentKey(H2HConstants.META_FILE);
+
+		FutureGet futureGet = dataManager.getUnblocked(metaParameters);
+		futureGet.awaitUninterruptibly(H2HConstants.AWAIT_NETWORK_OPERATION_MS);
+		if (futureGet.isFailed() || futureGet.isEmpty() || futureGet.data() == null) {
+			logger.warn("Meta file of '{}' not found. It may have expired.", file.getFullPath());
+			expiringFiles.put(file.getFullPath(), System.currentTimeMillis());
+			return -1;
+		}
+
+		Data data = futureGet.data();
+		Number160 versionKey = futureGet.dataMap().keySet().iterator().next().versionKey();
+		BaseMetaFile metaFile;
+		try {
+			HybridEncryptedContent encrypted = (HybridEncryptedContent) dataManager.getSerializer().deserialize(
+					data.toBytes());
+			metaFile = (BaseMetaFile) dataManager.getEncryption().decryptHybrid(encrypted, fileKeys.getPrivate());
+		} catch (ClassNotFoundException | IOException | GeneralSecurityException | ClassCastException e) {
+			logger.error("Cannot read the meta file of '{}'.", file.getFullPath(), e);
+			return -1;
+		}
+
+		long now = System.currentTimeMillis();
+		int metaTTL = TimeToLiveStore.getInstance().getMetaFile();
+		int chunkTTL = TimeToLiveStore.getInstance().getChunk();
+		long shortestTTLMs = metaTTL * 1000L;
+
+		// the objects were written when uploaded or refreshed, whatever happened last
+		Long lastRefresh = refreshTimes.get(file.getFilePublicKey());
+		long lastWrite = lastRefresh == null ? 0 : lastRefresh;
+		List<MetaChunk> chunks = new ArrayList<MetaChunk>();
+		if (metaFile.isSmall()) {
+			MetaFileSmall metaFileSmall = (MetaFileSmall) metaFile;
+			long newest = 0;
+			long oldest = Long.MAX_VALUE;
+			for (FileVersion version : metaFileSmall.getVersions()) {
+				chunks.addAll(version.getMetaChunks());
+				newest = Math.max(newest, version.getDate());
+				oldest = Math.min(oldest, version.getDate());
+			}
+
+			if (chunks.isEmpty()) {
+				// the meta file has been written with the newest version
+				lastWrite = Math.max(lastWrite, newest);
+			} else {
+				// the chunks of the oldest version are the oldest objects
+				shortestTTLMs = Math.min(shortestTTLMs, chunkTTL * 1000L);
+				lastWrite = Math.max(lastWrite, oldest);
+			}
+		}
+
+		long expiration = lastWrite + shortestTTLMs;
+		if (expiration - now < shortestTTLMs * H2HConstants.TTL_EXPIRY_WARNING_FRACTION) {
+			logger.warn("'{}' is close to expiry (estimated in {} s).", file.getFullPath(), (expiration - now) / 1000);
+			expiringFiles.put(file.getFullPath(), expiration);
+		}
+
+		if (!force && now - lastWrite < shortestTTLMs * H2HConstants.TTL_REFRESH_FRACTION) {
+			logger.trace("'{}' does not need to be refreshed yet.", file.getFullPath());
+			return 0;
+		}
+
+		List<IParameters> batch = new ArrayList<IParameters>(chunks.size() + 1);
+		batch.add(new Parameters().setLocationKey(fileKeys.getPublic()).setContentKey(H2HConstants.META_FILE)
+				.setVersionKey(versionKey).setProtectionKeys(file.getProtectionKeys()).setTTL(metaTTL));
+		for (MetaChunk chunk : chunks) {
+			batch.add(new Parameters().setLocationKey(chunk.getChunkId()).setContentKey(H2HConstants.FILE_CHUNK)
+					.setProtectionKeys(file.getProtectionKeys()).setTTL(chunkTTL));
+		}
+
+		if (refreshBatch(batch)) {
+			logger.debug("Refreshed the time-to-live of '{}' ({} objects).", file.getFullPath(), batch.size());
+			expiringFiles.remove(file.getFullPath());
+			refreshTimes.put(file.getFilePublicKey(), now);
+			return batch.size();
+		} else {
+			logger.warn("Could not refresh the time-to-live of all objects of '{}'.", file.getFullPath());
+			return -1;
+		}
+	}
+
+	/**
+	 * Refreshes the objects in batches of {@link H2HConstants#TTL_REFRESH_BATCH_SIZE} concurrent meta puts.
+	 */
+	private boolean refreshBatch(List<IParameters> objects) {
+		boolean success = true;
+		for (int start = 0; start < objects.size(); start += H2HConstants.TTL_REFRESH_BATCH_SIZE) {
+			int end = Math.min(objects.size(), start + H2HConstants.TTL_REFRESH_BATCH_SIZE);
+			List<FutureChangeProtectionListener> listeners = new ArrayList<FutureChangeProtectionListener>(end - start);
+			for (IParameters parameters : objects.subList(start, end)) {
+				acquirePermit();
+				FuturePut futurePut = dataManager.refreshTTLUnblocked(parameters);
+				FutureChangeProtectionListener listener = new FutureChangeProtectionListener(parameters);
+				futurePut.addListener(listener);
+				listeners.add(listener);
+			}
+
+			for (FutureChangeProtectionListener listener : listeners) {
+				success &= listener.await();
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * Blocks until the rate limit allows the next put
+	 */
+	private void acquirePermit() {
+		long interval = TimeUnit.SECONDS.toNanos(1) / H2HConstants.TTL_REFRESH_MAX_PUTS_PER_S;
+		long now = System.nanoTime();
+		long wait;
+		synchronized (this) {
+			nextPermitNanos = Math.max(nextPermitNanos, now) + interval;
+			wait = nextPermitNanos - interval - now;
+		}
+
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static long passDurationMs() {
+		TimeToLiveStore ttls = TimeToLiveStore.getInstance();
+		long shortestTTLMs = Math.min(ttls.getChunk(), ttls.getMetaFile()) * 1000L;
+		return (long) (shortestTTLMs * H2HConstants.TTL_REFRESH_PASS_FRACTION);
+	}
 }
@@ -1,6 +1,8 @@
 package org.hive2hive.core.network.data;
 
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -8,6 +10,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.crypto.SecretKey;
 
+import net.tomp2p.peers.Number160;
+
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.exceptions.AbortModifyException;
 import org.hive2hive.core.exceptions.GetFailedException;
@@ -15,6 +19,7 @@ import org.hive2hive.core.exceptions.PutFailedException;
 import org.hive2hive.core.exceptions.VersionForkAfterPutException;
 import org.hive2hive.core.model.versioned.UserProfile;
 import org.hive2hive.core.network.data.vdht.AESEncryptedVersionManager;
+import org.hive2hive.core.network.data.vdht.ShardedUserProfileVersionManager;
 import org.hive2hive.core.security.PasswordUtil;
 import org.hive2hive.core.security.UserCredentials;
 import org.slf4j.Logger;
@@ -22,7 +27,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Manages the user profile resource. Each process waiting for get / put is added to a queue and delivered in
- * order.
+ * order. Waiting modifications are grouped and put together (see {@link H2HConstants#USER_PROFILE_MAX_BATCH}).
  * 
  * @author Nico
  * @author Seppi
@@ -30,9 +35,7 @@ import org.slf4j.LoggerFactory;
 public class UserProfileManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(UserProfileManager.class);
-	private static final long MAX_MODIFICATION_TIME = 1000;
 	private static final long FAILOVER_TIMEOUT = 5 * 60 * 1000;
-	private static final int FORK_LIMIT = 2;
 
 	private final AESEncryptedVersionManager<UserProfile> versionManager;
 	private final UserCredentials credentials;
@@ -41,19 +44,31 @@ public class UserProfileManager {
 	private final Queue<QueueEntry> readOnlyQueue = new ConcurrentLinkedQueue<QueueEntry>();
 	private final Queue<PutQueueEntry> modifyQueue = new ConcurrentLinkedQueue<PutQueueEntry>();
 	private final AtomicBoolean running = new AtomicBoolean(false);
+	private final AtomicBoolean revalidating = new AtomicBoolean(false);
 
-	private volatile PutQueueEntry modifying;
+	private final Random random = new Random();
 
 	private KeyPair protectionKeys = null;
-	private Thread workerThread;
+	private volatile Thread workerThread;
+
+	// the last known version, returned by reads which allow staleness
+	private volatile KnownProfile lastKnown;
+	private volatile long invalidatedAt = 0;
 
 	public UserProfileManager(DataManager dataManager, UserCredentials credentials) {
 		this.credentials = credentials;
 
 		SecretKey passwordKey = PasswordUtil.generateAESKeyFromPassword(credentials.getPassword(), credentials.getPin(),
 				H2HConstants.KEYLENGTH_USER_PROFILE);
-		this.versionManager = new AESEncryptedVersionManager<UserProfile>(dataManager, passwordKey,
-				credentials.getProfileLocationKey(), H2HConstants.USER_PROFILE);
+		if (H2HConstants.USER_PROFILE_SHARDING) {
+			this.versionManager = new ShardedUserProfileVersionManager(dataManager, passwordKey,
+					credentials.getProfileLocationKey());
+		} else {
+			this.versionManager = new AESEncryptedVersionManager<UserProfile>(dataManager, passwordKey,
+					credentials.getProfileLocationKey(), H2HConstants.USER_PROFILE);
+			// a sharded profile only contains references to the folders, which cannot be merged
+			this.versionManager.setMerger(new UserProfileMerger());
+		}
 		startQueueWorker();
 	}
 
@@ -97,6 +112,37 @@ public class UserProfileManager {
 	 * @throws GetFailedException if the profile cannot be fetched
 	 */
 	public UserProfile readUserProfile() throws GetFailedException {
+		return readUserProfile(false);
+	}
+
+	/**
+	 * Gets the user profile (read-only). If staleness is allowed, the last known version is returned
+	 * immediately as long as it is younger than {@link H2HConstants#USER_PROFILE_MAX_STALENESS_MS} and has not
+	 * been invalidated (see {@link #invalidate()}). Older versions are revalidated in the background.
+	 * Otherwise, the call blocks until the most recent profile is here.<br>
+	 * The returned profile is a snapshot which is never modified afterwards (modifications are made on a copy),
+	 * thus it can be read concurrently without locking but must not be changed.
+	 * 
+	 * @param allowStale <code>true</code> if a slightly outdated version is acceptable
+	 * @return the user profile
+	 * @throws GetFailedException if the profile cannot be fetched
+	 * @throws IllegalStateException if called by a modification (see {@link IUserProfileModification})
+	 */
+	public UserProfile readUserProfile(boolean allowStale) throws GetFailedException {
+		checkNotReentrant();
+		if (allowStale) {
+			KnownProfile known = lastKnown;
+			if (known != null && known.fetchedAt > invalidatedAt) {
+				long age = System.currentTimeMillis() - known.fetchedAt;
+				if (age < H2HConstants.USER_PROFILE_MAX_STALENESS_MS) {
+					if (age > H2HConstants.USER_PROFILE_REVALIDATE_MS) {
+						revalidate();
+					}
+					return known.userProfile;
+				}
+			}
+		}
+
 		QueueEntry entry = new QueueEntry();
 		readOnlyQueue.add(entry);
 
@@ -111,78 +157,59 @@ public class UserProfileManager {
 		return profile;
 	}
 
+	/**
+	 * Marks the last known user profile as outdated, e.g. when another client of the same user notifies
+	 * about a change. Subsequent reads allowing staleness fetch the most recent version.
+	 */
+	public void invalidate() {
+		invalidatedAt = System.currentTimeMillis();
+	}
+
+	private void revalidate() {
+		if (revalidating.compareAndSet(false, true)) {
+			logger.trace("Revalidating the last known user profile in the background.");
+			// nobody waits for this entry, the worker just fetches the latest version
+			readOnlyQueue.add(new QueueEntry());
+			synchronized (queueWaiter) {
+				queueWaiter.notify();
+			}
+		}
+	}
+
 	/**
 	 * Gets the user profile and allows to modify it. The call blocks until
-	 * {@link IUserProfileModification#modifyUserProfile(UserProfile)} is called or an exception is thrown.
+	 * {@link IUserProfileModification#modifyUserProfile(UserProfile)} has been called and the modified profile
+	 * has been put or an exception is thrown.<br>
+	 * Modifications of multiple processes waiting at the same time are applied to the same version and put at
+	 * once (group commit). Thus, the modifier is called by the queue worker and may be called again when a
+	 * version fork occurs or a modification of another process in the same group is aborted.
 	 * 
 	 * @param pid the process identifier
 	 * @param modifier the implementation where the modification is done
 	 * @throws GetFailedException if the profile cannot be fetched
 	 * @throws PutFailedException if the user profile cannot be put
 	 * @throws AbortModifyException if the modification was aborted
+	 * @throws IllegalStateException if called by a modification (see {@link IUserProfileModification})
 	 */
 	public void modifyUserProfile(String pid, IUserProfileModification modifier)
 			throws GetFailedException, PutFailedException, AbortModifyException {
-		PutQueueEntry entry = new PutQueueEntry(pid);
+		checkNotReentrant();
+		PutQueueEntry entry = new PutQueueEntry(pid, modifier);
 		modifyQueue.add(entry);
 
 		synchronized (queueWaiter) {
 			queueWaiter.notify();
 		}
 
-		UserProfile profile;
-		try {
-			profile = entry.getUserProfile();
-			if (profile == null) {
-				throw new GetFailedException("User Profile not found");
-			}
-		} catch (GetFailedException e) {
-			// just stop the modification if an error occurs.
-			if (modifying != null && modifying.getPid().equals(pid)) {
-				modifying.abort();
-			}
-			throw e;
-		}
-
-		boolean retryPut = true;
-		int forkCounter = 0;
-		int forkWaitTime = new Random().nextInt(1000) + 500;
-		while (retryPut) {
-			// user starts modifying it
-			modifier.modifyUserProfile(profile);
-
-			try {
-				// put the updated user profile
-				if (protectionKeys == null) {
-					protectionKeys = profile.getProtectionKeys();
-				}
-
-				if (modifying != null && modifying.getPid().equals(pid)) {
-					modifying.setUserProfile(profile);
-					modifying.readyToPut();
-					modifying.waitForPut();
-
-					// successfully put the user profile
-					retryPut = false;
-				} else {
-					throw new PutFailedException("Not allowed to put anymore");
-				}
-			} catch (VersionForkAfterPutException e) {
-				if (forkCounter++ > FORK_LIMIT) {
-					logger.warn("Ignoring fork after {} rejects and retries.", forkCounter);
-					retryPut = false;
-				} else {
-					logger.warn("Version fork after put detected. Rejecting and retrying put.");
+		entry.waitForPut();
+	}
 
-					// exponential back off waiting and retry to update the user profile
-					try {
-						Thread.sleep(forkWaitTime);
-					} catch (InterruptedException e1) {
-						// ignore
-					}
-					forkWaitTime = forkWaitTime * 2;
-				}
-			}
+	/**
+	 * The queue worker would wait for itself, thus the modifications cannot read or modify the profile again.
+	 */
+	private void checkNotReentrant() {
+		if (Thread.currentThread() == workerThread) {
+			throw new IllegalStateException("The user profile cannot be read or modified within a modification.");
 		}
 	}
 
@@ -196,8 +223,11 @@ public class UserProfileManager {
 				if (modifyQueue.isEmpty() && readOnlyQueue.isEmpty()) {
 					synchronized (queueWaiter) {
 						try {
-							// timeout to prevent queues to live forever because of invalid shutdown
-							queueWaiter.wait(FAILOVER_TIMEOUT);
+							// check again while holding the monitor, else a notification could get lost
+							while (running.get() && modifyQueue.isEmpty() && readOnlyQueue.isEmpty()) {
+								// timeout to prevent queues to live forever because of invalid shutdown
+								queueWaiter.wait(FAILOVER_TIMEOUT);
+							}
 						} catch (InterruptedException e) {
 							// interrupted, go to next iteration, probably the thread was stopped
 							continue;
@@ -207,7 +237,10 @@ public class UserProfileManager {
 					logger.trace("{} process(es) are waiting for read-only access.", readOnlyQueue.size());
 					try {
 						logger.trace("Loading latest version of user profile.");
+						long fetchStart = System.currentTimeMillis();
+						revalidating.set(false);
 						UserProfile userProfile = versionManager.get();
+						lastKnown = new KnownProfile(userProfile, fetchStart);
 
 						logger.trace("Notifying {} processes that newest profile is ready.", readOnlyQueue.size());
 						while (!readOnlyQueue.isEmpty()) {
@@ -223,62 +256,187 @@ public class UserProfileManager {
 						}
 					}
 				} else {
-					// a process wants to modify
-					modifying = modifyQueue.poll();
+					// processes want to modify, apply all waiting modifications to the same version
+					List<PutQueueEntry> group = new ArrayList<PutQueueEntry>();
+					while (!modifyQueue.isEmpty() && group.size() < H2HConstants.USER_PROFILE_MAX_BATCH) {
+						group.add(modifyQueue.poll());
+					}
 
-					logger.trace("Process {} is waiting to make profile modifications.", modifying.getPid());
+					logger.trace("{} process(es) are waiting to make profile modifications.", group.size());
+					commit(group);
+				}
+			}
 
-					UserProfile userProfile;
-					try {
-						logger.trace("Loading latest version of user profile for process {} to modify.", modifying.getPid());
-						userProfile = versionManager.get();
-						modifying.setUserProfile(userProfile);
-					} catch (GetFailedException e) {
-						modifying.setGetError(e);
+			logger.debug("Queue worker stopped. user id = '{}'", credentials.getUserId());
+		}
+
+		/**
+		 * Applies the modifications of the group to the latest user profile and puts it once. Each process is
+		 * notified with the result of the put or its own failure. Version forks are retried until
+		 * {@link H2HConstants#USER_PROFILE_PUT_DEADLINE_MS} has elapsed.
+		 */
+		private void commit(List<PutQueueEntry> group) {
+			long deadline = System.currentTimeMillis() + H2HConstants.USER_PROFILE_PUT_DEADLINE_MS;
+			long backoff = H2HConstants.USER_PROFILE_FORK_BACKOFF_MS;
+			while (true) {
+				long fetchStart = System.currentTimeMillis();
+				UserProfile userProfile;
+				try {
+					logger.trace("Loading latest version of user profile for {} modification(s).", group.size());
+					userProfile = applyModifications(group);
+				} catch (GetFailedException e) {
+					for (PutQueueEntry entry : group) {
+						if (!entry.isAborted()) {
+							entry.setGetError(e);
+						}
+					}
+					return;
+				}
+
+				if (userProfile == null) {
+					logger.debug("All modifications have been aborted. No need to put the user profile.");
+					return;
+				}
+
+				try {
+					if (protectionKeys == null) {
+						protectionKeys = userProfile.getProtectionKeys();
+					}
+
+					// put updated user profile version into network
+					versionManager.put(userProfile, protectionKeys);
+				} catch (VersionForkAfterPutException e) {
+					if (System.currentTimeMillis() < deadline) {
+						logger.warn("Version fork after put detected. Rejecting and retrying put.");
+						awaitCompetingVersion(userProfile.getVersionKey(), backoff, deadline);
+						backoff = Math.min(backoff * 2, H2HConstants.USER_PROFILE_FORK_MAX_BACKOFF_MS);
 						continue;
 					}
 
-					int counter = 0;
-					long sleepTime = MAX_MODIFICATION_TIME / 10;
-					while (counter < 10 && !modifying.isReadyToPut() && !modifying.isAborted()) {
-						try {
-							Thread.sleep(sleepTime);
-						} catch (InterruptedException e) {
-							// ignore
-						} finally {
-							counter++;
-						}
+					logger.warn("Version fork could not be resolved within {} ms.",
+							H2HConstants.USER_PROFILE_PUT_DEADLINE_MS);
+					notifyPutError(group, new PutFailedException("Version fork could not be resolved in time"));
+					return;
+				} catch (PutFailedException e) {
+					notifyPutError(group, e);
+					return;
+				}
+
+				logger.trace("{} modification(s) have been put at once.", group.size());
+				lastKnown = new KnownProfile(userProfile, fetchStart);
+				for (PutQueueEntry entry : group) {
+					if (!entry.isAborted()) {
+						entry.notifyPut();
 					}
+				}
 
-					if (modifying.isReadyToPut()) {
-						logger.trace("Process {} made modifcations and uploads them now.", modifying.getPid());
-						try {
-							// put updated user profile version into network
-							versionManager.put(userProfile, protectionKeys);
-							modifying.notifyPut();
-
-							// notify all read only processes with newest version
-							while (!readOnlyQueue.isEmpty()) {
-								QueueEntry readOnly = readOnlyQueue.poll();
-								readOnly.setUserProfile(userProfile);
-							}
-						} catch (PutFailedException e) {
-							modifying.setPutError(e);
-							modifying.notifyPut();
-						}
-					} else if (!modifying.isAborted()) {
-						logger.warn("Process {} never finished doing modifications. Abort the put request.",
-								modifying.getPid());
-						modifying.abort();
-						modifying.setPutError(new PutFailedException(
-								String.format("Too long modification. Only %s ms are allowed.", MAX_MODIFICATION_TIME)));
-						modifying.notifyPut();
+				// notify all read only processes with newest version
+				while (!readOnlyQueue.isEmpty()) {
+					QueueEntry readOnly = readOnlyQueue.poll();
+					readOnly.setUserProfile(userProfile);
+				}
+				return;
+			}
+		}
+
+		/**
+		 * Waits after a version fork until the version of the competing client appears in the digest, such that
+		 * the retry is based on it. The window is jittered to break the symmetry with the competitor, which
+		 * may have been rejected as well. In this case the digest does not change and the retry happens when
+		 * the window is over.
+		 * 
+		 * @param rejectedBase the version key the rejected version was based on
+		 * @param backoff the maximum length of the wait window
+		 * @param deadline the time at which the group must be put
+		 */
+		private void awaitCompetingVersion(Number160 rejectedBase, long backoff, long deadline) {
+			long now = System.currentTimeMillis();
+			// wait between the half and the full window
+			long window = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+			long windowEnd = Math.min(deadline, now + window);
+			while (now < windowEnd) {
+				try {
+					Thread.sleep(Math.min(H2HConstants.USER_PROFILE_FORK_POLL_MS, windowEnd - now));
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				Number160 latest = versionManager.getLatestVersionKey();
+				if (latest != null && !latest.equals(rejectedBase)) {
+					logger.trace("Competing version {} is visible, retrying.", latest);
+					return;
+				}
+				now = System.currentTimeMillis();
+			}
+		}
+
+		private void notifyPutError(List<PutQueueEntry> group, PutFailedException error) {
+			for (PutQueueEntry entry : group) {
+				if (!entry.isAborted()) {
+					entry.setPutError(error);
+					entry.notifyPut();
+				}
+			}
+		}
+
+		/**
+		 * Gets the latest user profile and lets all processes of the group modify a private copy of it. The
+		 * profile returned to readers is never modified, it is a consistent snapshot. If a process aborts, the
+		 * copy is discarded and the modifications of the others are applied again on a new copy.
+		 * 
+		 * @return the modified profile or <code>null</code> if all modifications have been aborted
+		 */
+		private UserProfile applyModifications(List<PutQueueEntry> group) throws GetFailedException {
+			// fetch the latest version
+			versionManager.get();
+			UserProfile userProfile = versionManager.getLatestCopy();
+
+			boolean rolledBack = true;
+			while (rolledBack) {
+				rolledBack = false;
+				for (PutQueueEntry entry : group) {
+					if (entry.isAborted()) {
+						continue;
+					}
+
+					try {
+						entry.getModifier().modifyUserProfile(userProfile);
+					} catch (AbortModifyException e) {
+						logger.debug("Process {} aborted the modification. reason = '{}'", entry.getPid(), e.getMessage());
+						entry.abort(e);
+					} catch (RuntimeException e) {
+						logger.error("Process {} failed to modify the user profile.", entry.getPid(), e);
+						entry.abort(new AbortModifyException(String.format("Modification failed. reason = '%s'",
+								e.getMessage())));
+					}
+
+					if (entry.isAborted()) {
+						entry.notifyPut();
+						// the aborted modification may have changed the copy partially
+						userProfile = versionManager.getLatestCopy();
+						rolledBack = true;
+						break;
 					}
 				}
 			}
 
-			logger.debug("Queue worker stopped. user id = '{}'", credentials.getUserId());
+			for (PutQueueEntry entry : group) {
+				if (!entry.isAborted()) {
+					return userProfile;
+				}
+			}
+			return null;
 		}
+	}
+
+	private static class KnownProfile {
 
+		private final UserProfile userProfile;
+		private final long fetchedAt;
+
+		public KnownProfile(UserProfile userProfile, long fetchedAt) {
+			this.userProfile = userProfile;
+			this.fetchedAt = fetchedAt;
+		}
 	}
 }
@@ -0,0 +1,312 @@
+package org.hive2hive.core.network.data;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.hive2hive.core.model.DerivedKeyPair;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.IIndexVisitor;
+import org.hive2hive.core.model.Index;
+import org.hive2hive.core.model.UserPermission;
+import org.hive2hive.core.model.versioned.UserProfile;
+import org.hive2hive.core.network.data.vdht.IVersionMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Structural three-way merge of the file trees of two concurrent {@link UserProfile} versions. The nodes are
+ * matched by their file keys and compared in three independent parts: the location (parent and name), the
+ * content of files (hashes) and the sharing state of folders (flag, protection keys and permissions). A part
+ * changed on one side only is taken from that side, disjoint additions and deletions are combined.<br>
+ * The versions conflict if the same part of a node has been changed differently on both sides, if a node has
+ * been deleted on one side but modified on the other or if the merged tree is inconsistent (e.g. name
+ * clashes).
+ */
+public class UserProfileMerger implements IVersionMerger<UserProfile> {
+
+	private static final Logger logger = LoggerFactory.getLogger(UserProfileMerger.class);
+
+	@Override
+	public UserProfile merge(UserProfile base, UserProfile ours, UserProfile theirs) {
+		Map<PublicKey, Index> baseNodes = flatten(base.getRoot());
+		Map<PublicKey, Index> ourNodes = flatten(ours.getRoot());
+		Map<PublicKey, Index> theirNodes = flatten(theirs.getRoot());
+
+		try {
+			// check the deleted nodes
+			Set<PublicKey> deletedByThem = new HashSet<PublicKey>();
+			for (Index baseNode : baseNodes.values()) {
+				Index ourNode = ourNodes.get(baseNode.getFilePublicKey());
+				Index theirNode = theirNodes.get(baseNode.getFilePublicKey());
+				if (ourNode != null && theirNode == null) {
+					if (isModified(baseNode, ourNode)) {
+						throw new MergeConflictException("%s has been deleted and modified concurrently", ourNode);
+					}
+					deletedByThem.add(baseNode.getFilePublicKey());
+				} else if (ourNode == null && theirNode != null && isModified(baseNode, theirNode)) {
+					throw new MergeConflictException("%s has been deleted and modified concurrently", theirNode);
+				}
+			}
+
+			// add their new nodes, the list is in preorder such that the parents are added first
+			for (Index theirNode : Index.getIndexList(theirs.getRoot())) {
+				PublicKey key = theirNode.getFilePublicKey();
+				if (baseNodes.containsKey(key)) {
+					continue;
+				}
+
+				Index ourNode = ourNodes.get(key);
+				if (ourNode == null) {
+					ourNodes.put(key, copy(theirNode, ourNodes));
+				} else if (isModified(ourNode, theirNode)) {
+					throw new MergeConflictException("%s has been added differently", theirNode);
+				}
+			}
+
+			// merge the nodes which exist on both sides
+			for (Index baseNode : baseNodes.values()) {
+				Index ourNode = ourNodes.get(baseNode.getFilePublicKey());
+				Index theirNode = theirNodes.get(baseNode.getFilePublicKey());
+				if (ourNode == null || theirNode == null || baseNode.getParent() == null) {
+					// deleted or root
+					continue;
+				}
+				if (baseNode.isFolder() != ourNode.isFolder() || baseNode.isFolder() != theirNode.isFolder()) {
+					throw new MergeConflictException("%s changed its type", baseNode);
+				}
+
+				mergeLocation(baseNode, ourNode, theirNode, ourNodes);
+				if (baseNode.isFolder()) {
+					mergeSharing((FolderIndex) baseNode, (FolderIndex) ourNode, (FolderIndex) theirNode);
+				} else {
+					mergeContent((FileIndex) baseNode, (FileIndex) ourNode, (FileIndex) theirNode);
+				}
+			}
+
+			// remove the nodes they deleted
+			for (PublicKey key : deletedByThem) {
+				Index ourNode = ourNodes.remove(key);
+				ourNode.getParent().removeChild(ourNode);
+			}
+
+			validate(ours.getRoot(), ourNodes.keySet());
+		} catch (MergeConflictException e) {
+			logger.warn("Cannot merge the user profile versions. reason = '{}'", e.getMessage());
+			return null;
+		}
+
+		logger.debug("Merged the user profile versions {} and {}.", ours.getVersionKey(), theirs.getVersionKey());
+		return ours;
+	}
+
+	@Override
+	public KeyPair getProtectionKeys(UserProfile merged) {
+		return merged.getProtectionKeys();
+	}
+
+	private static Map<PublicKey, Index> flatten(FolderIndex root) {
+		final Map<PublicKey, Index> nodes = new HashMap<PublicKey, Index>();
+		root.walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index node) {
+				nodes.put(node.getFilePublicKey(), node);
+				return true;
+			}
+		});
+		return nodes;
+	}
+
+	private static void mergeLocation(Index base, Index ours, Index theirs, Map<PublicKey, Index> ourNodes)
+			throws MergeConflictException {
+		if (sameLocation(ours, theirs) || sameLocation(base, theirs)) {
+			return;
+		} else if (!sameLocation(base, ours)) {
+			throw new MergeConflictException("%s has been moved differently", ours);
+		}
+
+		// only they moved or renamed it
+		FolderIndex newParent = getParent(theirs, ourNodes);
+		ours.getParent().removeChild(ours);
+		ours.setName(theirs.getName());
+		ours.setParent(newParent);
+		newParent.addChild(ours);
+	}
+
+	private static void mergeContent(FileIndex base, FileIndex ours, FileIndex theirs) throws MergeConflictException {
+		if (sameContent(ours, theirs) || sameContent(base, theirs)) {
+			return;
+		} else if (!sameContent(base, ours)) {
+			throw new MergeConflictException("%s has been updated concurrently", ours);
+		}
+
+		ours.setHash(theirs.getHash());
+		ours.setMetaFileHash(theirs.getMetaFileHash());
+	}
+
+	private static void mergeSharing(FolderIndex base, FolderIndex ours, FolderIndex theirs)
+			throws MergeConflictException {
+		if (sameSharing(ours, theirs) || sameSharing(base, theirs)) {
+			return;
+		} else if (sameSharing(base, ours)) {
+			applySharing(ours, theirs);
+			return;
+		}
+
+		// both changed the permissions of the same share, combine them if the share itself is the same
+		if (ours.getSharedFlag() != theirs.getSharedFlag() || !sameProtectionKeys(ours, theirs)) {
+			throw new MergeConflictException("%s has been shared differently", ours);
+		}
+
+		Set<UserPermission> permissions = new HashSet<UserPermission>(ours.getUserPermissions());
+		for (UserPermission permission : theirs.getUserPermissions()) {
+			if (!base.getUserPermissions().contains(permission)) {
+				permissions.add(permission);
+			}
+		}
+		for (UserPermission permission : base.getUserPermissions()) {
+			if (!theirs.getUserPermissions().contains(permission)) {
+				permissions.remove(permission);
+			}
+		}
+
+		Set<String> users = new HashSet<String>();
+		for (UserPermission permission : permissions) {
+			if (!users.add(permission.getUserId())) {
+				throw new MergeConflictException("permissions of %s have been changed differently", ours);
+			}
+		}
+
+		ours.getUserPermissions().clear();
+		ours.getUserPermissions().addAll(permissions);
+	}
+
+	private static void applySharing(FolderIndex target, FolderIndex source) throws MergeConflictException {
+		target.unshare();
+		if (source.getSharedFlag()) {
+			try {
+				target.share(source.getProtectionKeys());
+			} catch (IllegalStateException e) {
+				throw new MergeConflictException("%s cannot be shared anymore", target);
+			}
+		}
+		for (UserPermission permission : source.getUserPermissions()) {
+			target.addUserPermissions(new UserPermission(permission));
+		}
+	}
+
+	private static Index copy(Index theirNode, Map<PublicKey, Index> ourNodes) throws MergeConflictException {
+		FolderIndex parent = getParent(theirNode, ourNodes);
+		if (parent.getChildByName(theirNode.getName()) != null) {
+			throw new MergeConflictException("%s has been added with an existing name", theirNode);
+		}
+
+		// keep derived keys in their compact form
+		DerivedKeyPair derivedKeys = theirNode.getDerivedFileKeys();
+		if (theirNode.isFolder()) {
+			FolderIndex folder;
+			if (derivedKeys != null) {
+				folder = new FolderIndex(parent, derivedKeys, theirNode.getName());
+			} else {
+				folder = new FolderIndex(parent, theirNode.getFileKeys(), theirNode.getName());
+			}
+			applySharing(folder, (FolderIndex) theirNode);
+			return folder;
+		} else {
+			FileIndex theirFile = (FileIndex) theirNode;
+			FileIndex file;
+			if (derivedKeys != null) {
+				file = new FileIndex(parent, derivedKeys, theirFile.getName(), theirFile.getHash());
+			} else {
+				file = new FileIndex(parent, theirFile.getFileKeys(), theirFile.getName(), theirFile.getHash());
+			}
+			file.setMetaFileHash(theirFile.getMetaFileHash());
+			return file;
+		}
+	}
+
+	/**
+	 * Finds the counterpart of the parent of the given node in our tree.
+	 */
+	private static FolderIndex getParent(Index theirNode, Map<PublicKey, Index> ourNodes)
+			throws MergeConflictException {
+		Index parent = ourNodes.get(theirNode.getParent().getFilePublicKey());
+		if (parent == null || !parent.isFolder()) {
+			throw new MergeConflictException("the parent of %s has been deleted", theirNode);
+		}
+		return (FolderIndex) parent;
+	}
+
+	/**
+	 * Checks that all expected nodes are reachable from the root and that the names are unique per folder.
+	 */
+	private static void validate(FolderIndex root, Set<PublicKey> expected) throws MergeConflictException {
+		Set<PublicKey> found = new HashSet<PublicKey>();
+		for (Index node : Index.getIndexList(root)) {
+			found.add(node.getFilePublicKey());
+			if (node.isFolder()) {
+				Set<String> names = new HashSet<String>();
+				for (Index child : ((FolderIndex) node).getChildren()) {
+					if (!names.add(child.getName().toLowerCase())) {
+						throw new MergeConflictException("%s contains a name twice", node);
+					}
+				}
+			}
+		}
+
+		if (!found.equals(expected)) {
+			throw new MergeConflictException("the merged tree is inconsistent (%s)", root);
+		}
+	}
+
+	private static boolean isModified(Index before, Index after) {
+		if (before.isFolder() != after.isFolder() || !sameLocation(before, after)) {
+			return true;
+		} else if (before.isFolder()) {
+			return !sameSharing((FolderIndex) before, (FolderIndex) after);
+		} else {
+			return !sameContent((FileIndex) before, (FileIndex) after);
+		}
+	}
+
+	private static boolean sameLocation(Index one, Index other) {
+		if (one.getParent() == null || other.getParent() == null) {
+			return one.getParent() == other.getParent();
+		}
+		return one.getName().equals(other.getName())
+				&& one.getParent().getFilePublicKey().equals(other.getParent().getFilePublicKey());
+	}
+
+	private static boolean sameContent(FileIndex one, FileIndex other) {
+		return Arrays.equals(one.getHash(), other.getHash()) && Arrays.equals(one.getMetaFileHash(), other.getMetaFileHash());
+	}
+
+	private static boolean sameSharing(FolderIndex one, FolderIndex other) {
+		return one.getSharedFlag() == other.getSharedFlag() && sameProtectionKeys(one, other)
+				&& one.getUserPermissions().equals(other.getUserPermissions());
+	}
+
+	private static boolean sameProtectionKeys(FolderIndex one, FolderIndex other) {
+		// only the top folder of a share has its own protection keys
+		KeyPair oneKeys = one.getSharedFlag() ? one.getProtectionKeys() : null;
+		KeyPair otherKeys = other.getSharedFlag() ? other.getProtectionKeys() : null;
+		if (oneKeys == null || otherKeys == null) {
+			return oneKeys == otherKeys;
+		}
+		return oneKeys.getPublic().equals(otherKeys.getPublic());
+	}
+
+	private static class MergeConflictException extends Exception {
+
+		private static final long serialVersionUID = -2291580372845497385L;
+
+		public MergeConflictException(String format, Index index) {
+			super(String.format(format, index.getFullPath()));
+		}
+	}
+}
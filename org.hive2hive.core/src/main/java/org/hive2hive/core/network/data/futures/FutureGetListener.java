@@ -29,6 +29,8 @@ public class FutureGetListener implements BaseFutureListener<FutureGet> {
 
 	// the result when it came back
 	private BaseNetworkContent result = null;
+	// the serialized result
+	private byte[] serializedResult = null;
 
 	public FutureGetListener(IParameters parameters, IH2HSerialize serializer) {
 		this.parameters = parameters;
@@ -50,6 +52,15 @@ public class FutureGetListener implements BaseFutureListener<FutureGet> {
 		return result;
 	}
 
+	/**
+	 * Returns the result in its serialized form. Call this only after {@link #awaitAndGet()} returned.
+	 *
+	 * @return the serialized content or <code>null</code> if the get failed
+	 */
+	public byte[] getSerializedResult() {
+		return result == null ? null : serializedResult;
+	}
+
 	@Override
 	public void operationComplete(FutureGet future) throws Exception {
 		if (future == null || future.isFailed() || future.isEmpty() || future.data() == null) {
@@ -60,6 +71,7 @@ public class FutureGetListener implements BaseFutureListener<FutureGet> {
 			byte[] buffer = future.data().toBytes();
 			if (buffer != null && buffer.length > 0) {
 				result = (BaseNetworkContent) serializer.deserialize(buffer);
+				serializedResult = buffer;
 				logger.debug("Got result = '{}'. '{}'", result.getClass().getSimpleName(), parameters.toString());
 			} else {
 				result = null;
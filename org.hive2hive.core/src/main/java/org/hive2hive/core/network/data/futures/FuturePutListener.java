@@ -14,6 +14,7 @@ import net.tomp2p.peers.Number640;
 import net.tomp2p.peers.PeerAddress;
 
 import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.metrics.Outcome;
 import org.hive2hive.core.model.BaseNetworkContent;
 import org.hive2hive.core.network.data.DataManager;
 import org.hive2hive.core.network.data.DataManager.H2HPutStatus;
@@ -188,6 +189,8 @@ public class FuturePutListener extends BaseFutureAdapter<FuturePut> {
 						private void retryConfirm() {
 							if (confirmTries++ < H2HConstants.CONFIRM_RETRIES) {
 								logger.warn("Confirm retry #{}. {}", confirmTries, parameters.toString());
+								dataManager.getMetrics().increment("dht.confirm", parameters.getContentKey(),
+										Outcome.RETRY);
 								// retry confirmation, attach itself as listener
 								dataManager.confirmUnblocked(parameters).addListener(this);
 							} else {
@@ -228,6 +231,7 @@ public class FuturePutListener extends BaseFutureAdapter<FuturePut> {
 	private void retryPut() {
 		if (putTries++ < H2HConstants.PUT_RETRIES) {
 			logger.warn("Put retry #{}. '{}'", putTries, parameters.toString());
+			dataManager.getMetrics().increment("dht.put", parameters.getContentKey(), Outcome.RETRY);
 			// remove prior put
 			dataManager.removeVersionUnblocked(parameters).addListener(new BaseFutureAdapter<FutureRemove>() {
 				@Override
@@ -1,6 +1,7 @@
 package org.hive2hive.core.network.data.parameters;
 
 import java.security.KeyPair;
+import java.util.Collection;
 
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number640;
@@ -75,6 +76,14 @@ public interface IParameters {
 	 */
 	public Number160 getBasedOnKey();
 
+	/**
+	 * Further predecessor versions, if any. Used to resolve a version fork by a version which is based on all
+	 * versions of the fork.
+	 * 
+	 * @return the additional hashed based on keys, empty if none
+	 */
+	public Collection<Number160> getAdditionalBasedOnKeys();
+
 	/**
 	 * Get the key containing all four <code>TomP2P</code> key dimensions.
 	 * 
@@ -2,6 +2,8 @@ package org.hive2hive.core.network.data.parameters;
 
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.Collection;
+import java.util.Collections;
 
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number640;
@@ -27,6 +29,7 @@ public class Parameters implements IParameters {
 	private Number160 cKey = H2HConstants.TOMP2P_DEFAULT_KEY;
 	private Number160 vKey = H2HConstants.TOMP2P_DEFAULT_KEY;
 	private Number160 bKey = null;
+	private Collection<Number160> additionalBKeys = Collections.emptyList();
 	private BaseNetworkContent networkContent;
 	private Data data;
 	private KeyPair protectionKeys;
@@ -118,6 +121,16 @@ public class Parameters implements IParameters {
 		return bKey;
 	}
 
+	public Parameters setAdditionalBasedOnKeys(Collection<Number160> additionalBasedOnKeys) {
+		this.additionalBKeys = additionalBasedOnKeys;
+		return this;
+	}
+
+	@Override
+	public Collection<Number160> getAdditionalBasedOnKeys() {
+		return additionalBKeys;
+	}
+
 	public Parameters setNetworkContent(BaseNetworkContent networkContent) {
 		this.networkContent = networkContent;
 		return this;
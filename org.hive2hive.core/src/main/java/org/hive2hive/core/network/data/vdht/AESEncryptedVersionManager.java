@@ -3,8 +3,13 @@ package org.hive2hive.core.network.data.vdht;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
@@ -19,6 +24,9 @@ import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.exceptions.GetFailedException;
 import org.hive2hive.core.exceptions.PutFailedException;
 import org.hive2hive.core.exceptions.VersionForkAfterPutException;
+import org.hive2hive.core.metrics.Outcome;
+import org.hive2hive.core.model.BaseNetworkContent;
+import org.hive2hive.core.model.CompressedContent;
 import org.hive2hive.core.model.versioned.BaseVersionedNetworkContent;
 import org.hive2hive.core.model.versioned.EncryptedNetworkContent;
 import org.hive2hive.core.network.data.DataManager;
@@ -26,6 +34,7 @@ import org.hive2hive.core.network.data.DataManager.H2HPutStatus;
 import org.hive2hive.core.network.data.parameters.IParameters;
 import org.hive2hive.core.network.data.parameters.Parameters;
 import org.hive2hive.core.security.IH2HEncryption;
+import org.hive2hive.core.serializer.CompressionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +48,9 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 	// additional cache for encrypted data
 	private Cache<EncryptedNetworkContent> encryptedContentCache = new Cache<EncryptedNetworkContent>();
 
+	// resolves version forks, optional
+	private volatile IVersionMerger<T> merger;
+
 	public AESEncryptedVersionManager(DataManager dataManager, SecretKey encryptionKey, String locationKey,
 			String contentKey) {
 		this(dataManager, dataManager.getEncryption(), encryptionKey, locationKey, contentKey);
@@ -51,14 +63,36 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 		this.encryptionKey = encryptionKey;
 	}
 
+	/**
+	 * Sets a merger which is used to resolve a version fork right away. The merged version is put based on all
+	 * versions of the fork. If the versions conflict, the fork is handled as without merger.
+	 * 
+	 * @param merger the merger or <code>null</code> to disable merging
+	 */
+	public void setMerger(IVersionMerger<T> merger) {
+		this.merger = merger;
+	}
+
 	/**
 	 * Performs a get call (blocking) and decrypts the received version.
 	 * 
 	 * @return the fetched data
 	 * @throws GetFailedException if the data cannot be get
 	 */
-	@SuppressWarnings("unchecked")
 	public T get() throws GetFailedException {
+		long start = System.nanoTime();
+		try {
+			T result = getVersion();
+			dataManager.getMetrics().recordLatency("vdht.get", parameters.getContentKey(), Outcome.OK, start);
+			return result;
+		} catch (GetFailedException e) {
+			dataManager.getMetrics().recordLatency("vdht.get", parameters.getContentKey(), Outcome.FAIL, start);
+			throw e;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T getVersion() throws GetFailedException {
 		// load the current digest list from network
 		NavigableMap<Number640, Collection<Number160>> digest = dataManager.getDigestLatest(parameters);
 		// compare the latest version key with the cached one
@@ -71,6 +105,7 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 			int delayWaitTime = random.nextInt(1000) + 1000;
 			int forkAfterGetCounter = 0;
 			int forkAfterGetWaitTime = random.nextInt(1000) + 1000;
+			boolean mergeTried = false;
 			// fetch latest versions from the network, request also digest
 			while (true) {
 				Cache<EncryptedNetworkContent> fetchedVersions = new Cache<EncryptedNetworkContent>();
@@ -97,6 +132,7 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 						} else {
 							logger.warn("Couldn't get data. Try #{}. Retrying. reason = '{}' {}", getCounter++,
 									futureGet.failedReason(), parameters.toString());
+							dataManager.getMetrics().increment("vdht.get", parameters.getContentKey(), Outcome.RETRY);
 
 							// TODO reput latest versions for maintenance
 
@@ -115,6 +151,7 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 				// check if version delays or forks occurred
 				if (hasVersionDelay(fetchedVersions, digestCache) && delayCounter < DELAY_LIMIT) {
 					logger.warn("Detected a version delay. #{}", delayCounter++);
+					dataManager.getMetrics().increment("vdht.get.delay", parameters.getContentKey(), Outcome.RETRY);
 
 					// TODO reput latest versions for maintenance, consider only latest
 
@@ -132,8 +169,18 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 
 				// check for version fork
 				if (latestVersionKeys.size() > 1 && delayCounter < DELAY_LIMIT) {
+					if (merger != null && !mergeTried) {
+						mergeTried = true;
+						T merged = mergeFork(new ArrayList<Number160>(latestVersionKeys.keySet()));
+						if (merged != null) {
+							dataManager.getMetrics().increment("vdht.merge", parameters.getContentKey(), Outcome.OK);
+							return merged;
+						}
+						dataManager.getMetrics().increment("vdht.merge", parameters.getContentKey(), Outcome.FAIL);
+					}
 					if (forkAfterGetCounter < FORK_AFTER_GET_LIMIT) {
 						logger.warn("Got a version fork. Waiting. #{}", forkAfterGetCounter++);
+						dataManager.getMetrics().increment("vdht.get", parameters.getContentKey(), Outcome.FORK);
 						// exponential back off waiting
 						try {
 							Thread.sleep(forkAfterGetWaitTime);
@@ -143,43 +190,154 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 						continue;
 					}
 					logger.warn("Got a version fork.");
-
-					// TODO implement merging
-
+					dataManager.getMetrics().increment("vdht.get", parameters.getContentKey(), Outcome.FAIL);
 					throw new GetFailedException("Got a version fork.");
 				} else {
 					if (delayCounter >= DELAY_LIMIT) {
 						logger.warn("Ignoring delay after {} retries.", delayCounter);
 					}
-					if (encryptedContentCache.isEmpty()) {
-						logger.warn("Did not find any version.");
-						throw new GetFailedException("No version found. Got null.");
-					} else {
-						try {
-							logger.trace("Decrypting with 256-bit AES key.");
-							EncryptedNetworkContent encrypted = encryptedContentCache.lastEntry().getValue();
-							T decrypted = (T) encryption.decryptAES((EncryptedNetworkContent) encrypted, encryptionKey);
-							decrypted.setVersionKey(encrypted.getVersionKey());
-							decrypted.setBasedOnKey(encrypted.getBasedOnKey());
-
-							// cache user profile
-							contentCache.put(encrypted.getVersionKey(), decrypted);
-
-							return decrypted;
-						} catch (GeneralSecurityException e) {
-							logger.error("Cannot decrypt the version.");
-							throw new GetFailedException("Cannot decrypt the version.");
-						} catch (Exception e) {
-							logger.error("Cannot get the version.", e);
-							throw new GetFailedException(
-									String.format("Cannot get the version. reason = '%s'", e.getMessage()));
-						}
-					}
+					return decryptLatest();
 				}
 			}
 		}
 	}
 
+	/**
+	 * Decrypts the latest version fetched by {@link #get()} again without caching it. The instance returned by
+	 * {@link #get()} is shared with all readers and must not be changed, modifications are made on such a
+	 * private copy. Once the copy has been put, it becomes the shared instance itself.
+	 * 
+	 * @return a fresh instance of the latest version
+	 * @throws GetFailedException if no version has been fetched yet or it cannot be decrypted
+	 */
+	public T getLatestCopy() throws GetFailedException {
+		if (encryptedContentCache.isEmpty()) {
+			logger.warn("Did not find any version.");
+			throw new GetFailedException("No version found. Got null.");
+		}
+		return decrypt(encryptedContentCache.lastEntry().getValue());
+	}
+
+	private T decryptLatest() throws GetFailedException {
+		if (encryptedContentCache.isEmpty()) {
+			logger.warn("Did not find any version.");
+			throw new GetFailedException("No version found. Got null.");
+		}
+
+		EncryptedNetworkContent encrypted = encryptedContentCache.lastEntry().getValue();
+		T decrypted = decrypt(encrypted);
+
+		// cache user profile
+		contentCache.put(encrypted.getVersionKey(), decrypted);
+
+		return decrypted;
+	}
+
+	/**
+	 * Merges all versions of a fork based on their newest common ancestor and puts the result.
+	 * 
+	 * @param heads the keys of the forked versions in ascending order
+	 * @return the merged version or <code>null</code> if the fork cannot be merged
+	 */
+	private T mergeFork(List<Number160> heads) {
+		Number160 baseKey = findCommonAncestor(heads);
+		if (baseKey == null) {
+			logger.warn("Cannot merge the version fork, no common ancestor found. {}", parameters.toString());
+			return null;
+		}
+
+		try {
+			T base = decryptVersion(baseKey);
+			T merged = decryptVersion(heads.get(0));
+			for (int i = 1; i < heads.size() && merged != null; i++) {
+				merged = merger.merge(base, merged, decryptVersion(heads.get(i)));
+			}
+			if (merged == null) {
+				return null;
+			}
+
+			// based on the newest version and additionally on all other versions, which resolves the fork
+			merged.setVersionKey(heads.get(heads.size() - 1));
+			put(merged, merger.getProtectionKeys(merged), heads.subList(0, heads.size() - 1));
+			logger.info("Merged a version fork of {} versions. {}", heads.size(), parameters.toString());
+			return merged;
+		} catch (GetFailedException | PutFailedException e) {
+			logger.warn("Cannot merge the version fork. reason = '{}'", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Searches the newest version all given versions are based on, using the cached digest.
+	 */
+	private Number160 findCommonAncestor(List<Number160> versionKeys) {
+		Set<Number160> common = null;
+		for (Number160 versionKey : versionKeys) {
+			Set<Number160> ancestors = new HashSet<Number160>();
+			Deque<Number160> toVisit = new ArrayDeque<Number160>();
+			toVisit.add(versionKey);
+			while (!toVisit.isEmpty()) {
+				Number160 current = toVisit.poll();
+				if (!current.equals(Number160.ZERO) && ancestors.add(current) && digestCache.containsKey(current)) {
+					toVisit.addAll(digestCache.get(current));
+				}
+			}
+
+			if (common == null) {
+				common = ancestors;
+			} else {
+				common.retainAll(ancestors);
+			}
+		}
+
+		Number160 newest = null;
+		if (common != null) {
+			for (Number160 versionKey : common) {
+				if (newest == null || versionKey.compareTo(newest) > 0) {
+					newest = versionKey;
+				}
+			}
+		}
+		return newest;
+	}
+
+	/**
+	 * Decrypts a specific version, which is loaded from the network if it has not been fetched before.
+	 */
+	private T decryptVersion(Number160 versionKey) throws GetFailedException {
+		EncryptedNetworkContent encrypted = encryptedContentCache.get(versionKey);
+		if (encrypted == null) {
+			BaseNetworkContent content = dataManager.getVersion(new Parameters()
+					.setLocationKey(parameters.getLocationKey()).setContentKey(parameters.getContentKey())
+					.setVersionKey(versionKey));
+			if (!(content instanceof EncryptedNetworkContent)) {
+				throw new GetFailedException(String.format("Version %s not found.", versionKey));
+			}
+			encrypted = (EncryptedNetworkContent) content;
+		}
+
+		T decrypted = decrypt(encrypted);
+		decrypted.setVersionKey(versionKey);
+		return decrypted;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T decrypt(EncryptedNetworkContent encrypted) throws GetFailedException {
+		try {
+			logger.trace("Decrypting with 256-bit AES key.");
+			T decrypted = (T) decryptContent(encrypted);
+			decrypted.setVersionKey(encrypted.getVersionKey());
+			decrypted.setBasedOnKey(encrypted.getBasedOnKey());
+			return decrypted;
+		} catch (GeneralSecurityException e) {
+			logger.error("Cannot decrypt the version.");
+			throw new GetFailedException("Cannot decrypt the version.");
+		} catch (Exception e) {
+			logger.error("Cannot get the version.", e);
+			throw new GetFailedException(String.format("Cannot get the version. reason = '%s'", e.getMessage()));
+		}
+	}
+
 	/**
 	 * Encrypts the modified user profile and puts it (blocking).
 	 * 
@@ -188,15 +346,21 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 	 * @throws PutFailedException if the content cannot be put.
 	 */
 	public void put(T networkContent, KeyPair protectionKeys) throws PutFailedException {
+		put(networkContent, protectionKeys, Collections.<Number160> emptyList());
+	}
+
+	private void put(T networkContent, KeyPair protectionKeys, Collection<Number160> additionalBasedOnKeys)
+			throws PutFailedException {
 		try {
-			EncryptedNetworkContent encrypted = encryption.encryptAES(networkContent, encryptionKey);
+			EncryptedNetworkContent encrypted = encryptContent(networkContent);
 			encrypted.setBasedOnKey(networkContent.getBasedOnKey());
 			encrypted.setVersionKey(networkContent.getVersionKey());
 			encrypted.generateVersionKey();
 
 			IParameters parameters = new Parameters().setLocationKey(this.parameters.getLocationKey())
 					.setContentKey(this.parameters.getContentKey()).setVersionKey(encrypted.getVersionKey())
-					.setBasedOnKey(encrypted.getBasedOnKey()).setNetworkContent(encrypted).setProtectionKeys(protectionKeys)
+					.setBasedOnKey(encrypted.getBasedOnKey()).setAdditionalBasedOnKeys(additionalBasedOnKeys)
+					.setNetworkContent(encrypted).setProtectionKeys(protectionKeys)
 					.setTTL(networkContent.getTimeToLive()).setPrepareFlag(true);
 
 			H2HPutStatus status = dataManager.put(parameters);
@@ -223,4 +387,27 @@ public class AESEncryptedVersionManager<T extends BaseVersionedNetworkContent> e
 			throw new PutFailedException(String.format("Cannot encrypt the user profile. reason = '%s'", e.getMessage()));
 		}
 	}
+
+	/**
+	 * Encrypts the content, compressing it first if enabled (see {@link H2HConstants#USER_PROFILE_COMPRESSION}).
+	 */
+	protected EncryptedNetworkContent encryptContent(BaseNetworkContent content) throws IOException,
+			GeneralSecurityException {
+		if (H2HConstants.USER_PROFILE_COMPRESSION) {
+			CompressedContent compressed = CompressionUtil.compress(content, dataManager.getSerializer());
+			EncryptedNetworkContent encrypted = encryption.encryptAES(compressed, encryptionKey);
+			encrypted.setTimeToLive(content.getTimeToLive());
+			return encrypted;
+		}
+		return encryption.encryptAES(content, encryptionKey);
+	}
+
+	/**
+	 * Decrypts the content and decompresses it if it has been stored compressed.
+	 */
+	protected BaseNetworkContent decryptContent(EncryptedNetworkContent encrypted) throws IOException,
+			GeneralSecurityException, ClassNotFoundException {
+		BaseNetworkContent decrypted = encryption.decryptAES(encrypted, encryptionKey);
+		return (BaseNetworkContent) CompressionUtil.decompress(decrypted, dataManager.getSerializer());
+	}
 }
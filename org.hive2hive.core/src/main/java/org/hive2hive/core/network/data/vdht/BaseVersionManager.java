@@ -101,6 +101,19 @@ public abstract class BaseVersionManager<T extends BaseVersionedNetworkContent>
 		return dataMap;
 	}
 
+	/**
+	 * Loads only the digest of the latest version(s) from the network, which is much cheaper than a get.
+	 * 
+	 * @return the key of the latest version or <code>null</code> if the digest could not be loaded
+	 */
+	public Number160 getLatestVersionKey() {
+		NavigableMap<Number640, Collection<Number160>> digest = dataManager.getDigestLatest(parameters);
+		if (digest == null || digest.isEmpty()) {
+			return null;
+		}
+		return digest.lastEntry().getKey().versionKey();
+	}
+
 	protected boolean hasVersionDelay(Map<Number160, ?> latestVersions, Cache<Set<Number160>> digestCache) {
 		for (Number160 version : digestCache.keySet()) {
 			for (Number160 basedOnKey : digestCache.get(version)) {
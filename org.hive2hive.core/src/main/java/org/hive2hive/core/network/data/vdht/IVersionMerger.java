@@ -0,0 +1,33 @@
+package org.hive2hive.core.network.data.vdht;
+
+import java.security.KeyPair;
+
+import org.hive2hive.core.model.versioned.BaseVersionedNetworkContent;
+
+/**
+ * Resolves a version fork by a three-way merge of the concurrent versions. A merger is optional; without it a
+ * version fork can only be resolved by waiting until one of the versions is removed (see
+ * {@link AESEncryptedVersionManager#setMerger(IVersionMerger)}).
+ *
+ * @param <T> the type of the versioned content
+ */
+public interface IVersionMerger<T extends BaseVersionedNetworkContent> {
+
+	/**
+	 * Merges the changes of two concurrent versions which are both based on a common ancestor.
+	 *
+	 * @param base the common ancestor of both versions (must not be modified)
+	 * @param ours the first version, may be modified and returned as the merged version
+	 * @param theirs the second version (must not be modified)
+	 * @return the merged version or <code>null</code> if both versions contain conflicting changes
+	 */
+	T merge(T base, T ours, T theirs);
+
+	/**
+	 * Returns the keys to protect the merged version with.
+	 *
+	 * @param merged the merged version
+	 * @return the protection keys
+	 */
+	KeyPair getProtectionKeys(T merged);
+}
@@ -0,0 +1,283 @@
+package org.hive2hive.core.network.data.vdht;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import net.tomp2p.dht.FuturePut;
+import net.tomp2p.peers.Number160;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.exceptions.GetFailedException;
+import org.hive2hive.core.exceptions.PutFailedException;
+import org.hive2hive.core.model.BaseNetworkContent;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.IChildrenLoader;
+import org.hive2hive.core.model.Index;
+import org.hive2hive.core.model.versioned.EncryptedNetworkContent;
+import org.hive2hive.core.model.versioned.UserProfile;
+import org.hive2hive.core.model.versioned.UserProfileShard;
+import org.hive2hive.core.network.data.DataManager;
+import org.hive2hive.core.network.data.DataManager.H2HPutStatus;
+import org.hive2hive.core.network.data.futures.FuturePutListener;
+import org.hive2hive.core.network.data.parameters.IParameters;
+import org.hive2hive.core.network.data.parameters.Parameters;
+import org.hive2hive.core.security.HashUtil;
+import org.hive2hive.core.serializer.IH2HSerialize;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Version manager for a sharded user profile (see {@link H2HConstants#USER_PROFILE_SHARDING}). The subtree of
+ * every top-level folder is stored as a separate {@link UserProfileShard} next to the profile, which itself only
+ * contains the top-level files and folders and the references to the shard versions.<br>
+ * A put only stores the shards whose content changed (in parallel) and then puts the (small) profile. The
+ * profile is the commit point: it is versioned and fork-checked as before, while the shards are stored under
+ * unique version keys and only become visible through the references. A get only loads the profile, the
+ * subtree of a top-level folder is loaded when it is accessed the first time (see
+ * {@link FolderIndex#setChildrenLoader(IChildrenLoader)}) and verified against the hash of its reference.
+ */
+public class ShardedUserProfileVersionManager extends AESEncryptedVersionManager<UserProfile> {
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardedUserProfileVersionManager.class);
+
+	private final IH2HSerialize serializer;
+	private final String locationKey;
+
+	// the shards loaded or put before, by shard id
+	private final Map<String, UserProfileShard> loadedShards = new HashMap<String, UserProfileShard>();
+
+	public ShardedUserProfileVersionManager(DataManager dataManager, SecretKey encryptionKey, String locationKey) {
+		super(dataManager, encryptionKey, locationKey, H2HConstants.USER_PROFILE);
+		this.serializer = dataManager.getSerializer();
+		this.locationKey = locationKey;
+	}
+
+	@Override
+	public UserProfile get() throws GetFailedException {
+		return assemble(super.get());
+	}
+
+	@Override
+	public UserProfile getLatestCopy() throws GetFailedException {
+		return assemble(super.getLatestCopy());
+	}
+
+	@Override
+	public void put(UserProfile userProfile, KeyPair protectionKeys) throws PutFailedException {
+		// folders which have not been accessed are unchanged, their copies do not contain the subtree
+		Set<String> unloaded = new HashSet<String>();
+		for (Index child : userProfile.getRoot().getChildren()) {
+			if (child.isFolder() && !((FolderIndex) child).isLoaded()) {
+				unloaded.add(getShardId(child));
+			}
+		}
+
+		// split a copy, the given profile is still in use
+		UserProfile profile;
+		try {
+			profile = (UserProfile) serializer.deserialize(serializer.serialize(userProfile));
+		} catch (IOException | ClassNotFoundException e) {
+			throw new PutFailedException(String.format("Cannot copy the user profile. reason = '%s'", e.getMessage()));
+		}
+
+		Map<String, UserProfileShard.Reference> previous = new HashMap<String, UserProfileShard.Reference>(
+				profile.getShards());
+		Map<String, UserProfileShard> putShards = new HashMap<String, UserProfileShard>();
+		Map<String, FuturePutListener> putting = new HashMap<String, FuturePutListener>();
+		profile.getShards().clear();
+
+		FolderIndex root = profile.getRoot();
+		for (Index child : new ArrayList<Index>(root.getChildren())) {
+			if (!child.isFolder()) {
+				continue;
+			}
+
+			String shardId = getShardId(child);
+			UserProfileShard.Reference reference = previous.get(shardId);
+			if (reference != null && unloaded.contains(shardId)) {
+				// not accessed, keep the current version
+				profile.getShards().put(shardId, reference);
+				continue;
+			}
+
+			// serialize the subtree without the rest of the profile
+			root.removeChild(child);
+			child.decoupleFromParent();
+			byte[] folder;
+			try {
+				folder = serializer.serialize(child);
+			} catch (IOException e) {
+				throw new PutFailedException(String.format("Cannot serialize shard. reason = '%s'", e.getMessage()));
+			}
+
+			// only the folder itself remains in the profile
+			((FolderIndex) child).getChildren().clear();
+			child.setParent(root);
+			root.addChild(child);
+
+			byte[] hash = HashUtil.hash(folder);
+			if (reference != null && HashUtil.compare(reference.getHash(), hash)) {
+				// unchanged, keep the current version
+				profile.getShards().put(shardId, reference);
+			} else {
+				UserProfileShard shard = new UserProfileShard(folder);
+				Number160 basedOnKey = reference == null ? Number160.ZERO : reference.getVersionKey();
+				putting.put(shardId, putShard(shardId, shard, basedOnKey, protectionKeys));
+				profile.getShards().put(shardId, new UserProfileShard.Reference(shard.getVersionKey(), hash));
+				putShards.put(shardId, shard);
+			}
+		}
+
+		logger.debug("Putting {} of {} shard(s) of the user profile.", putShards.size(), profile.getShards().size());
+		for (Entry<String, FuturePutListener> entry : putting.entrySet()) {
+			// a version fork does not matter since the profile references the exact version
+			if (entry.getValue().await() == H2HPutStatus.FAILED) {
+				throw new PutFailedException(String.format("Put of shard %s failed.", entry.getKey()));
+			}
+		}
+
+		// commit by putting the profile referencing the shard versions
+		super.put(profile, protectionKeys);
+
+		userProfile.setVersionKey(profile.getVersionKey());
+		userProfile.setBasedOnKey(profile.getBasedOnKey());
+		userProfile.getShards().clear();
+		userProfile.getShards().putAll(profile.getShards());
+		synchronized (loadedShards) {
+			loadedShards.putAll(putShards);
+		}
+	}
+
+	/**
+	 * Starts putting the shard, such that all changed shards are stored in parallel.
+	 */
+	private FuturePutListener putShard(String shardId, UserProfileShard shard, Number160 basedOnKey,
+			KeyPair protectionKeys) throws PutFailedException {
+		// unique version key, concurrent clients must not overwrite each other's shard versions
+		Number160 versionKey = new Number160(basedOnKey.timestamp() + 1, new Number160(random).number96());
+		shard.setBasedOnKey(basedOnKey);
+		shard.setVersionKey(versionKey);
+
+		try {
+			EncryptedNetworkContent encrypted = encryptContent(shard);
+			encrypted.setBasedOnKey(basedOnKey);
+			encrypted.setVersionKey(versionKey);
+
+			IParameters parameters = new Parameters().setLocationKey(locationKey).setContentKey(getContentKey(shardId))
+					.setVersionKey(versionKey).setBasedOnKey(basedOnKey).setNetworkContent(encrypted)
+					.setProtectionKeys(protectionKeys).setTTL(shard.getTimeToLive());
+
+			FuturePut futurePut = dataManager.putUnblocked(parameters);
+			if (futurePut == null) {
+				throw new PutFailedException(String.format("Put of shard %s failed.", shardId));
+			}
+			FuturePutListener listener = new FuturePutListener(parameters, dataManager);
+			futurePut.addListener(listener);
+			return listener;
+		} catch (GeneralSecurityException | IOException e) {
+			throw new PutFailedException(String.format("Cannot encrypt shard. reason = '%s'", e.getMessage()));
+		}
+	}
+
+	/**
+	 * Lets the subtrees of the top-level folders be loaded from their shards when they are accessed. Folders of
+	 * a cached profile which have already been loaded are not affected.
+	 */
+	private UserProfile assemble(UserProfile profile) {
+		Map<String, UserProfileShard.Reference> references = profile.getShards();
+		for (Index child : profile.getRoot().getChildren()) {
+			if (child.isFolder()) {
+				String shardId = getShardId(child);
+				UserProfileShard.Reference reference = references.get(shardId);
+				if (reference != null) {
+					((FolderIndex) child).setChildrenLoader(new ShardLoader(shardId, reference));
+				}
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Gets the referenced version of a shard, if it has not been loaded or put before.
+	 */
+	private UserProfileShard loadShard(String shardId, UserProfileShard.Reference reference)
+			throws GetFailedException {
+		synchronized (loadedShards) {
+			UserProfileShard loaded = loadedShards.get(shardId);
+			if (loaded != null && loaded.getVersionKey().equals(reference.getVersionKey())) {
+				return loaded;
+			}
+		}
+
+		logger.debug("Loading shard {} of the user profile.", shardId);
+		IParameters parameters = new Parameters().setLocationKey(locationKey).setContentKey(getContentKey(shardId))
+				.setVersionKey(reference.getVersionKey());
+		BaseNetworkContent content = dataManager.getVersion(parameters);
+		if (!(content instanceof EncryptedNetworkContent)) {
+			throw new GetFailedException(String.format("Shard %s of the user profile not found.", shardId));
+		}
+
+		UserProfileShard shard;
+		try {
+			shard = (UserProfileShard) decryptContent((EncryptedNetworkContent) content);
+		} catch (GeneralSecurityException | IOException | ClassNotFoundException | ClassCastException e) {
+			throw new GetFailedException(String.format("Cannot decrypt shard %s. reason = '%s'", shardId,
+					e.getMessage()));
+		}
+
+		// a stale or corrupted shard must not be attached to the profile
+		if (!HashUtil.compare(reference.getHash(), HashUtil.hash(shard.getFolder()))) {
+			throw new GetFailedException(String.format("Shard %s does not match the hash of its reference.", shardId));
+		}
+
+		shard.setVersionKey(reference.getVersionKey());
+		synchronized (loadedShards) {
+			loadedShards.put(shardId, shard);
+		}
+		return shard;
+	}
+
+	private static String getShardId(Index index) {
+		return new BigInteger(1, HashUtil.hash(index.getFilePublicKey().getEncoded())).toString(16);
+	}
+
+	private static String getContentKey(String shardId) {
+		return H2HConstants.USER_PROFILE_SHARD + shardId;
+	}
+
+	/**
+	 * Loads the subtree of a top-level folder from the referenced shard version.
+	 */
+	private class ShardLoader implements IChildrenLoader {
+
+		private final String shardId;
+		private final UserProfileShard.Reference reference;
+
+		public ShardLoader(String shardId, UserProfileShard.Reference reference) {
+			this.shardId = shardId;
+			this.reference = reference;
+		}
+
+		@Override
+		public Set<Index> loadChildren(FolderIndex folder) {
+			try {
+				// every profile gets its own copy, the profiles must not share any index
+				FolderIndex loaded = (FolderIndex) serializer.deserialize(loadShard(shardId, reference).getFolder());
+				return loaded.getChildren();
+			} catch (GetFailedException | IOException | ClassNotFoundException e) {
+				throw new IllegalStateException(String.format("Cannot load the subtree of folder '%s'. reason = '%s'",
+						folder.getName(), e.getMessage()), e);
+			}
+		}
+	}
+}
@@ -22,6 +22,10 @@ public enum AcceptanceReply {
 	FAILURE_SIGNATURE,
 	/** When the deserialization failed */
 	FAILURE_DESERIALIZATION,
+	/** When the message is encrypted with a session key the receiver does not know (anymore) */
+	FAILURE_UNKNOWN_SESSION,
+	/** When the receiver has too many messages to handle, the message can be sent again later */
+	BUSY,
 	/**
 	 * It indicates that there is no {@link IResponseCallBackHandler} waiting for the return message on this
 	 * 'sender' node.
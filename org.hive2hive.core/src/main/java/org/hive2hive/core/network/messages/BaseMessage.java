@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.PublicKey;
 import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 import net.tomp2p.peers.PeerAddress;
 
@@ -50,7 +51,12 @@ public abstract class BaseMessage implements Runnable, Serializable {
 
 	protected PeerAddress senderAddress;
 
+	// the key of a new message session, only set if the message is encrypted asymmetrically
+	private MessageSessionOffer sessionOffer;
+
 	private transient int routedSendingCounter = 0;
+	// the time to wait before re-sending, set when the target was busy
+	private transient long resendDelay = 0;
 
 	/**
 	 * Constructor for an asynchronous message.
@@ -150,6 +156,24 @@ public abstract class BaseMessage implements Runnable, Serializable {
 		this.senderPublicKey = senderPublicKey;
 	}
 
+	/**
+	 * Getter
+	 * 
+	 * @return the offer of a new message session, <code>null</code> if none
+	 */
+	public MessageSessionOffer getSessionOffer() {
+		return sessionOffer;
+	}
+
+	/**
+	 * Setter
+	 * 
+	 * @param sessionOffer the offer of a new message session (see {@link MessageSessionManager})
+	 */
+	public void setSessionOffer(MessageSessionOffer sessionOffer) {
+		this.sessionOffer = sessionOffer;
+	}
+
 	/**
 	 * Setter
 	 * 
@@ -169,6 +193,35 @@ public abstract class BaseMessage implements Runnable, Serializable {
 		routedSendingCounter++;
 	}
 
+	/**
+	 * Waits before the message is re-sent, if the target was busy. Must not be called on a network thread.
+	 */
+	public void awaitResendDelay() {
+		long delay = resendDelay;
+		resendDelay = 0;
+		if (delay > 0) {
+			logger.debug("Target is busy. Re-sending the message in {} ms.", delay);
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				logger.error("Could not wait before re-sending the message.");
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Lets the next re-sending wait for a random (jittered) delay, which grows exponentially with the number
+	 * of attempts. This prevents that all senders of a busy target re-send their messages at once.
+	 * 
+	 * @param attempts the number of sending attempts so far
+	 */
+	protected void backOff(int attempts) {
+		long base = H2HConstants.MESSAGE_BUSY_BACKOFF_MS << Math.min(Math.max(attempts - 1, 0), 10);
+		base = Math.min(base, H2HConstants.MESSAGE_BUSY_BACKOFF_MAX_MS);
+		resendDelay = base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+	}
+
 	/**
 	 * This method is called on the receiver node (the one responsible for {@link #targetKey}) of this
 	 * message. It is used to check if the target node is able/willing to handle this message at all.<br>
@@ -206,6 +259,9 @@ public abstract class BaseMessage implements Runnable, Serializable {
 	public boolean handleSendingFailure(AcceptanceReply reply) throws IllegalArgumentException {
 		logger.debug("Have to handle a sending failure. Reply = '{}'.", reply);
 		switch (reply) {
+			case BUSY:
+				backOff(routedSendingCounter);
+				// re-sending is limited the same way as for failures
 			case FAILURE:
 			case FUTURE_FAILURE:
 			case FAILURE_DESERIALIZATION:
@@ -221,6 +277,15 @@ public abstract class BaseMessage implements Runnable, Serializable {
 					logger.warn("Message not accepted by the target after one try. Target key = '{}'.", targetKey);
 					return false;
 				}
+			case FAILURE_UNKNOWN_SESSION:
+				// the session has been discarded, the message is re-sent asymmetrically encrypted
+				if (routedSendingCounter < H2HConstants.MAX_MESSAGE_SENDING) {
+					return true;
+				} else {
+					logger.error("Message did not establish a session with the target in {} tries. Target key = '{}'.",
+							routedSendingCounter, targetKey);
+					return false;
+				}
 			case FAILURE_DECRYPTION:
 				logger.warn("Message not accepted by the target. Decryption on target node failed. Target key = '{}'.",
 						targetKey);
@@ -0,0 +1,230 @@
+package org.hive2hive.core.network.messages;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hive2hive.core.H2HConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles the received messages on a bounded number of threads. The messages are queued per sender and the
+ * senders are served in turns, such that a single sender with many messages cannot delay the messages of
+ * others. The queues are bounded per sender and in total; a message that does not fit anymore is rejected,
+ * which is answered with {@link AcceptanceReply#BUSY}.<br>
+ * Responses to own requests are handled by separate threads, because the handlers of other messages may
+ * wait for them. Their queue is bounded as well.
+ */
+public class MessageExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageExecutor.class);
+
+	private final int maxPerSender;
+	private final int capacity;
+	private final ThreadPoolExecutor workers;
+	private final ThreadPoolExecutor responseWorkers;
+
+	// the queued messages by sender
+	private final ConcurrentMap<String, SenderQueue> queues = new ConcurrentHashMap<String, SenderQueue>();
+	// the senders with queued messages, in the order they are served
+	private final BlockingQueue<SenderQueue> ready = new LinkedBlockingQueue<SenderQueue>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+
+	public MessageExecutor() {
+		this(H2HConstants.MESSAGE_HANDLING_THREADS, H2HConstants.MESSAGE_QUEUE_PER_SENDER,
+				H2HConstants.MESSAGE_QUEUE_CAPACITY, H2HConstants.MESSAGE_RESPONSE_THREADS,
+				H2HConstants.MESSAGE_RESPONSE_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param threads the maximum number of messages handled concurrently
+	 * @param maxPerSender the maximum number of queued messages per sender
+	 * @param capacity the maximum number of queued messages in total
+	 * @param responseThreads the maximum number of responses handled concurrently
+	 * @param responseCapacity the maximum number of queued responses
+	 */
+	public MessageExecutor(int threads, int maxPerSender, int capacity, int responseThreads, int responseCapacity) {
+		this.maxPerSender = maxPerSender;
+		this.capacity = capacity;
+
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "H2H-Message-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+
+		// every submitted dispatch handles exactly one message, thus this queue is bounded by the capacity
+		workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				threadFactory);
+		workers.allowCoreThreadTimeOut(true);
+		responseWorkers = new ThreadPoolExecutor(responseThreads, responseThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(responseCapacity), threadFactory);
+		responseWorkers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queues a message of the given sender.
+	 * 
+	 * @param senderId the (claimed) user id of the sender
+	 * @param message the message to handle
+	 * @return <code>true</code> if the message has been queued, <code>false</code> if the queues are full
+	 */
+	public boolean execute(String senderId, Runnable message) {
+		if (queued.incrementAndGet() > capacity) {
+			queued.decrementAndGet();
+			logger.warn("Rejected a message of '{}', {} messages are queued.", senderId, capacity);
+			return false;
+		}
+
+		while (true) {
+			SenderQueue queue = queues.get(senderId);
+			if (queue == null) {
+				queues.putIfAbsent(senderId, new SenderQueue(senderId));
+				queue = queues.get(senderId);
+			}
+
+			synchronized (queue) {
+				if (queue.removed) {
+					// emptied in the meantime
+					continue;
+				} else if (queue.messages.size() >= maxPerSender) {
+					queued.decrementAndGet();
+					logger.warn("Rejected a message of '{}', {} of its messages are queued.", senderId, maxPerSender);
+					return false;
+				}
+				queue.messages.add(message);
+				if (!queue.scheduled) {
+					queue.scheduled = true;
+					ready.add(queue);
+				}
+				break;
+			}
+		}
+
+		try {
+			workers.execute(new Dispatcher());
+			return true;
+		} catch (RejectedExecutionException e) {
+			// shut down, the message stays queued forever
+			logger.error("Cannot handle the message of '{}'.", senderId, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Handles a response to an own request, independent of the queued messages.
+	 * 
+	 * @param response the response message
+	 * @return <code>true</code> if the response has been queued, <code>false</code> if the queue is full
+	 */
+	public boolean executeResponse(Runnable response) {
+		try {
+			responseWorkers.execute(response);
+			return true;
+		} catch (RejectedExecutionException e) {
+			logger.warn("Rejected a response, {} responses are queued.", responseWorkers.getQueue().size());
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of messages waiting to be handled
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of messages currently being handled
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * @return the number of senders with queued messages
+	 */
+	public int getQueuedSenders() {
+		return ready.size();
+	}
+
+	/**
+	 * Stops handling messages. Queued messages are discarded.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+		responseWorkers.shutdownNow();
+		queues.clear();
+		ready.clear();
+		queued.set(0);
+	}
+
+	private static class SenderQueue {
+
+		private final String senderId;
+		private final Queue<Runnable> messages = new LinkedList<Runnable>();
+		// whether the sender is in the ready queue
+		private boolean scheduled = false;
+		// whether the queue has been removed because it was empty
+		private boolean removed = false;
+
+		public SenderQueue(String senderId) {
+			this.senderId = senderId;
+		}
+	}
+
+	/**
+	 * Takes the next message of the next sender in turn. A sender is served again after all other senders
+	 * with queued messages.
+	 */
+	private class Dispatcher implements Runnable {
+
+		@Override
+		public void run() {
+			SenderQueue queue = ready.poll();
+			if (queue == null) {
+				return;
+			}
+
+			Runnable message;
+			synchronized (queue) {
+				message = queue.messages.poll();
+				if (queue.messages.isEmpty()) {
+					queue.scheduled = false;
+					queue.removed = true;
+					queues.remove(queue.senderId, queue);
+				} else {
+					ready.add(queue);
+				}
+			}
+			if (message == null) {
+				return;
+			}
+
+			queued.decrementAndGet();
+			running.incrementAndGet();
+			try {
+				message.run();
+			} catch (RuntimeException e) {
+				logger.error("Handling a message failed.", e);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+}
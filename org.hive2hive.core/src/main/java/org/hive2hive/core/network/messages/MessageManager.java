@@ -1,6 +1,7 @@
 package org.hive2hive.core.network.messages;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.PublicKey;
@@ -9,10 +10,16 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import javax.crypto.SecretKey;
+
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HSession;
+import org.hive2hive.core.exceptions.NoPeerConnectionException;
 import org.hive2hive.core.exceptions.NoSessionException;
+import org.hive2hive.core.metrics.Outcome;
 import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.network.NetworkManager;
+import org.hive2hive.core.network.data.PeerLatencyTracker;
 import org.hive2hive.core.network.messages.direct.BaseDirectMessage;
 import org.hive2hive.core.network.messages.direct.response.IResponseCallBackHandler;
 import org.hive2hive.core.network.messages.futures.FutureDirectListener;
@@ -25,10 +32,12 @@ import org.slf4j.LoggerFactory;
 
 import io.netty.buffer.Unpooled;
 import net.tomp2p.dht.FutureSend;
+import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureDirect;
 import net.tomp2p.message.Buffer;
 import net.tomp2p.p2p.RequestP2PConfiguration;
 import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
 
 /**
  * This class handles the sending of messages.
@@ -62,8 +71,10 @@ public final class MessageManager implements IMessageManager {
 		prepareMessage(message);
 		message.increaseRoutedSendingCounter();
 
-		// encrypt the message with the given public key
-		HybridEncryptedContent encryptedMessage = signAndEncryptMessage(message, targetPublicKey);
+		// encrypt the message for the owner of the given public key, the session is shared with the peer which
+		// is responsible for the target key
+		Number160 receiverId = Number160.createHash(message.getTargetKey());
+		Serializable encryptedMessage = encryptMessage(message, targetPublicKey, receiverId);
 		if (encryptedMessage == null) {
 			return false;
 		}
@@ -78,13 +89,17 @@ public final class MessageManager implements IMessageManager {
 		}
 
 		// send message to the peer which is responsible for the given key
-		FutureSend futureSend = networkManager.getConnection().getPeer().send(Number160.createHash(message.getTargetKey()))
-				.buffer(buffer).requestP2PConfiguration(createSendingConfiguration()).start();
+		long start = System.nanoTime();
+		FutureSend futureSend = networkManager.getConnection().getPeer().send(receiverId).buffer(buffer)
+				.requestP2PConfiguration(createSendingConfiguration()).start();
 
 		// attach a future listener to log, handle and notify events
-		FutureRoutedListener listener = new FutureRoutedListener(message, targetPublicKey, this, serializer);
+		FutureRoutedListener listener = new FutureRoutedListener(message, targetPublicKey, receiverId, this,
+				serializer);
 		futureSend.addListener(listener);
 		boolean success = listener.await();
+		networkManager.getMetrics().recordLatency("message.send", message.getClass().getSimpleName(),
+				success ? Outcome.OK : Outcome.FAIL, start);
 
 		if (success) {
 			logger.debug("Message sent. Target key = '{}', Message ID = '{}'.", message.getTargetKey(),
@@ -109,8 +124,9 @@ public final class MessageManager implements IMessageManager {
 		prepareMessage(message);
 		message.increaseDirectSendingCounter();
 
-		// encrypt the message with the given public key
-		HybridEncryptedContent encryptedMessage = signAndEncryptMessage(message, targetPublicKey);
+		// encrypt the message for the owner of the given public key
+		Number160 receiverId = message.getTargetAddress().peerId();
+		Serializable encryptedMessage = encryptMessage(message, targetPublicKey, receiverId);
 		if (encryptedMessage == null) {
 			return false;
 		}
@@ -125,12 +141,17 @@ public final class MessageManager implements IMessageManager {
 		}
 
 		// send message directly to the peer with the given peer address
+		long start = System.nanoTime();
 		FutureDirect futureDirect = networkManager.getConnection().getPeer().peer().sendDirect(message.getTargetAddress())
 				.buffer(buffer).start();
+		trackLatency(futureDirect, message.getTargetAddress());
 		// attach a future listener to log, handle and notify events
-		FutureDirectListener listener = new FutureDirectListener(message, targetPublicKey, this, serializer);
+		FutureDirectListener listener = new FutureDirectListener(message, targetPublicKey, receiverId, this,
+				serializer);
 		futureDirect.addListener(listener);
 		boolean success = listener.await();
+		networkManager.getMetrics().recordLatency("message.sendDirect", message.getClass().getSimpleName(),
+				success ? Outcome.OK : Outcome.FAIL, start);
 
 		if (success) {
 			logger.debug("Message (direct) sent. Message ID = '{}', Target address = '{}', Sender address = '{}'.",
@@ -143,6 +164,30 @@ public final class MessageManager implements IMessageManager {
 		return success;
 	}
 
+	/**
+	 * Feeds the round trip time (or the failure) of a direct message to the latency tracker
+	 */
+	private void trackLatency(FutureDirect futureDirect, final PeerAddress targetAddress) {
+		final PeerLatencyTracker latencyTracker;
+		try {
+			latencyTracker = networkManager.getDataManager().getLatencyTracker();
+		} catch (NoPeerConnectionException e) {
+			return;
+		}
+
+		final long start = System.currentTimeMillis();
+		futureDirect.addListener(new BaseFutureAdapter<FutureDirect>() {
+			@Override
+			public void operationComplete(FutureDirect future) throws Exception {
+				if (future.isSuccess()) {
+					latencyTracker.recordSuccess(targetAddress, System.currentTimeMillis() - start);
+				} else {
+					latencyTracker.recordFailure(targetAddress);
+				}
+			}
+		});
+	}
+
 	/**
 	 * Gets and removes a message callback handler
 	 * 
@@ -165,6 +210,41 @@ public final class MessageManager implements IMessageManager {
 		return callBackHandlers.get(messageId) != null;
 	}
 
+	/**
+	 * Discards the message session to the given peer. The next message is encrypted asymmetrically and
+	 * establishes a new session.
+	 * 
+	 * @param receiverId the id of the receiving peer
+	 */
+	public void invalidateSession(Number160 receiverId) {
+		try {
+			networkManager.getSession().getMessageSessionManager().invalidate(receiverId);
+		} catch (NoSessionException e) {
+			// no sessions without a logged in user
+		}
+	}
+
+	/**
+	 * Starts to use the session offered by the given message. Must only be called once the receiver finally
+	 * accepted the message ({@link AcceptanceReply#OK}), as the receiver accepts the offer only after it has
+	 * verified the signature.
+	 * 
+	 * @param message the accepted message
+	 * @param receiverId the id of the receiving peer
+	 */
+	public void confirmSession(BaseMessage message, Number160 receiverId) {
+		MessageSessionOffer offer = message.getSessionOffer();
+		if (offer == null) {
+			return;
+		}
+
+		try {
+			networkManager.getSession().getMessageSessionManager().confirm(receiverId, offer);
+		} catch (NoSessionException e) {
+			// logged out in the meantime
+		}
+	}
+
 	private void prepareMessage(BaseMessage message) {
 		message.setSenderAddress(networkManager.getConnection().getPeer().peerAddress());
 		configureCallbackHandlerIfNeeded(message);
@@ -193,7 +273,11 @@ public final class MessageManager implements IMessageManager {
 		}
 	}
 
-	private HybridEncryptedContent signAndEncryptMessage(BaseMessage message, PublicKey targetPublicKey) {
+	/**
+	 * Encrypts the message symmetrically if a session with the receiving peer exists. Else, the message is
+	 * encrypted asymmetrically and signed. It then offers a new session.
+	 */
+	private Serializable encryptMessage(BaseMessage message, PublicKey targetPublicKey, Number160 receiverId) {
 		H2HSession session;
 		try {
 			session = networkManager.getSession();
@@ -202,6 +286,31 @@ public final class MessageManager implements IMessageManager {
 			return null;
 		}
 
+		MessageSessionManager sessionManager = session.getMessageSessionManager();
+		MessageSession messageSession = sessionManager.getOutgoing(receiverId);
+		if (messageSession != null) {
+			message.setSessionOffer(null);
+			try {
+				byte[] messageBytes = serializer.serialize(message);
+				byte[] nonce = messageSession.nextNonce();
+				byte[] encrypted = networkManager.getEncryption().encryptAESGCM(messageBytes, messageSession.getKey(),
+						nonce);
+				return new SessionEncryptedMessage(messageSession.getId(), nonce, encrypted);
+			} catch (GeneralSecurityException | IOException e) {
+				logger.error("An exception occured while encrypting the message. The message will not be sent.", e);
+				return null;
+			}
+		}
+
+		// first contact or the session expired
+		SecretKey sessionKey = EncryptionUtil.generateAESKey(H2HConstants.KEYLENGTH_MESSAGE_SESSION, networkManager
+				.getEncryption().getSecurityProvider());
+		message.setSessionOffer(sessionKey == null ? null : sessionManager.createOffer(sessionKey));
+		return signAndEncryptMessage(message, targetPublicKey, session);
+	}
+
+	private HybridEncryptedContent signAndEncryptMessage(BaseMessage message, PublicKey targetPublicKey,
+			H2HSession session) {
 		byte[] messageBytes;
 		HybridEncryptedContent encryptedMessage;
 		try {
@@ -9,8 +9,13 @@ import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.exceptions.GetFailedException;
 import org.hive2hive.core.exceptions.NoPeerConnectionException;
 import org.hive2hive.core.exceptions.NoSessionException;
+import org.hive2hive.core.metrics.H2HMetrics;
+import org.hive2hive.core.metrics.IGauge;
+import org.hive2hive.core.metrics.Outcome;
 import org.hive2hive.core.model.versioned.HybridEncryptedContent;
+import org.hive2hive.core.network.DigestReplication;
 import org.hive2hive.core.network.NetworkManager;
+import org.hive2hive.core.network.messages.direct.response.ResponseMessage;
 import org.hive2hive.core.security.EncryptionUtil;
 import org.hive2hive.core.serializer.IH2HSerialize;
 import org.hive2hive.core.serializer.SerializerUtil;
@@ -19,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.PublicKey;
@@ -27,10 +33,12 @@ import java.security.SignatureException;
 /**
  * This is the general message handler of each node. It checks if received
  * message is ok (depends on message e.g. routed to correct node). If accepted
- * the message gets independently handled in a own thread. As soon as the
- * handler thread has started the reply handler gives immediately response to
- * the sender node. This design allows a quick and non-blocking message
- * handling.
+ * the message gets independently handled by the {@link MessageExecutor}. As
+ * soon as the message is queued the reply handler gives immediately response
+ * to the sender node, or {@link AcceptanceReply#BUSY} if the queues are full.
+ * This design allows a quick and non-blocking message handling. Messages of
+ * an established {@link MessageSession} are decrypted symmetrically and need
+ * no signature verification.
  *
  * @author Nendor
  * @author Seppi
@@ -43,11 +51,60 @@ public class MessageReplyHandler implements RawDataReply, ObjectDataReply
 
 	private final NetworkManager networkManager;
 	private final IH2HSerialize serializer;
+	private volatile MessageExecutor executor;
+	private volatile DigestReplication digestReplication;
 
 	public MessageReplyHandler(NetworkManager networkManager, IH2HSerialize serializer)
 	{
 		this.networkManager = networkManager;
 		this.serializer = serializer;
+		this.executor = new MessageExecutor();
+
+		H2HMetrics metrics = networkManager.getMetrics();
+		metrics.registerGauge("messages.queued", new IGauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return executor.getQueued();
+			}
+		});
+		metrics.registerGauge("messages.queuedSenders", new IGauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return executor.getQueuedSenders();
+			}
+		});
+		metrics.registerGauge("messages.running", new IGauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return executor.getRunning();
+			}
+		});
+	}
+
+	/**
+	 * @param digestReplication handles the replication requests of other peers, <code>null</code> to deny
+	 *            them
+	 */
+	public void setDigestReplication(DigestReplication digestReplication)
+	{
+		this.digestReplication = digestReplication;
+	}
+
+	/**
+	 * Stops the threads handling the received messages and discards the queued ones. The handler gets a new
+	 * (idle) executor, such that it can be registered again when the peer reconnects.
+	 */
+	public void shutdown()
+	{
+		MessageExecutor stopped = executor;
+		executor = new MessageExecutor();
+		stopped.shutdown();
 	}
 
 	@Override
@@ -90,7 +147,19 @@ public class MessageReplyHandler implements RawDataReply, ObjectDataReply
 	@Override
 	public Object reply(PeerAddress sender, Object request)
 	{
-		if (!(request instanceof HybridEncryptedContent))
+		if (request instanceof DigestReplication.ReplicationMessage)
+		{
+			// replication does not depend on a logged in user
+			DigestReplication replication = digestReplication;
+			if (replication == null)
+			{
+				logger.warn("Received a replication request, but digest replication is not running.");
+				return null;
+			}
+			return replication.handle(sender, (DigestReplication.ReplicationMessage) request);
+		}
+
+		if (!(request instanceof HybridEncryptedContent) && !(request instanceof SessionEncryptedMessage))
 		{
 			logger.error("Received unknown object {}", request);
 			return null;
@@ -115,6 +184,11 @@ public class MessageReplyHandler implements RawDataReply, ObjectDataReply
 			return AcceptanceReply.FAILURE;
 		}
 
+		if (request instanceof SessionEncryptedMessage)
+		{
+			return replySession(session, (SessionEncryptedMessage) request);
+		}
+
 		HybridEncryptedContent encryptedMessage = (HybridEncryptedContent) request;
 
 		// get signature
@@ -164,39 +238,16 @@ public class MessageReplyHandler implements RawDataReply, ObjectDataReply
 					return AcceptanceReply.FAILURE_SIGNATURE;
 				}
 
-				// give a network manager reference to work (verify, handle)
-				try
-				{
-					receivedMessage.setNetworkManager(networkManager);
-				}
-				catch(NoPeerConnectionException e)
-				{
-					logger.error("Cannot process the message because the peer is not connected.", e);
-					return AcceptanceReply.FAILURE;
-				}
-
-				// check if message gets accepted
-				AcceptanceReply reply = receivedMessage.accept();
-				if (AcceptanceReply.OK == reply)
-				{
-					// handle message in own thread
-					logger.debug("Received and accepted the message. Node ID = '{}'.",
-							networkManager.getNodeId());
-					new Thread(receivedMessage).start();
-				}
-				else
-				{
-					logger.warn(
-							"Received but denied a message. Acceptance reply = '{}', Node ID = '{}'.",
-							reply, networkManager.getNodeId());
-				}
-
-				return reply;
+				acceptSessionOffer(session, senderId, receivedMessage);
+				return handle(receivedMessage, senderId);
 			}
 			else
 			{
-				new Thread(new VerifyMessage(senderId, decryptedMessage, signature, receivedMessage))
-						.start();
+				if (!executor.execute(senderId, new VerifyMessage(senderId, decryptedMessage, signature,
+						receivedMessage)))
+				{
+					return busy(receivedMessage);
+				}
 				return AcceptanceReply.OK_PROVISIONAL;
 			}
 		}
@@ -207,6 +258,126 @@ public class MessageReplyHandler implements RawDataReply, ObjectDataReply
 		}
 	}
 
+	/**
+	 * Handles a message which has been encrypted with the key of a message session. The sender is
+	 * authenticated by the key, thus the message carries no signature.
+	 */
+	private AcceptanceReply replySession(H2HSession session, SessionEncryptedMessage encryptedMessage)
+	{
+		MessageSession messageSession = session.getMessageSessionManager()
+				.getIncoming(encryptedMessage.getSessionId());
+		if (messageSession == null)
+		{
+			logger.debug("Received a message of an unknown session. Node ID = '{}'.", networkManager.getNodeId());
+			return AcceptanceReply.FAILURE_UNKNOWN_SESSION;
+		}
+
+		byte[] decryptedMessage;
+		try
+		{
+			decryptedMessage = networkManager.getEncryption().decryptAESGCM(encryptedMessage.getEncryptedData(),
+					messageSession.getKey(), encryptedMessage.getNonce());
+		}
+		catch(GeneralSecurityException e)
+		{
+			logger.warn("Decryption of message of session '{}' failed.", messageSession.getId(), e);
+			return AcceptanceReply.FAILURE_DECRYPTION;
+		}
+
+		// the nonce is authenticated by the decryption
+		if (!messageSession.markReceived(encryptedMessage.getNonce()))
+		{
+			logger.warn("Rejected a replayed message of session '{}'.", messageSession.getId());
+			return AcceptanceReply.FAILURE;
+		}
+
+		Object message;
+		try
+		{
+			message = serializer.deserialize(decryptedMessage);
+		}
+		catch(IOException | ClassNotFoundException e)
+		{
+			logger.error("Message could not be deserialized.", e);
+			return AcceptanceReply.FAILURE_DESERIALIZATION;
+		}
+
+		if (!(message instanceof BaseMessage))
+		{
+			logger.error("Received unknown object.");
+			return null;
+		}
+
+		logger.debug("Message of user '{}' authenticated by its session. Node ID = '{}'.",
+				messageSession.getUserId(), networkManager.getNodeId());
+		return handle((BaseMessage) message, messageSession.getUserId());
+	}
+
+	/**
+	 * Hands a verified message over to the executor if it gets accepted
+	 */
+	private AcceptanceReply handle(BaseMessage message, String senderId)
+	{
+		AcceptanceReply reply = accept(message);
+		if (AcceptanceReply.OK == reply)
+		{
+			// handle message in a worker thread
+			boolean queued = message instanceof ResponseMessage ? executor.executeResponse(message) : executor
+					.execute(senderId, message);
+			if (!queued)
+			{
+				return busy(message);
+			}
+			logger.debug("Received and accepted the message. Node ID = '{}'.",
+					networkManager.getNodeId());
+		}
+		return reply;
+	}
+
+	private AcceptanceReply accept(BaseMessage message)
+	{
+		// give a network manager reference to work (verify, handle)
+		try
+		{
+			message.setNetworkManager(networkManager);
+		}
+		catch(NoPeerConnectionException e)
+		{
+			logger.error("Cannot process the message because the peer is not connected.", e);
+			return AcceptanceReply.FAILURE;
+		}
+
+		// check if message gets accepted
+		AcceptanceReply reply = message.accept();
+		if (AcceptanceReply.OK != reply)
+		{
+			logger.warn("Received but denied a message. Acceptance reply = '{}', Node ID = '{}'.",
+					reply, networkManager.getNodeId());
+		}
+		return reply;
+	}
+
+	private AcceptanceReply busy(BaseMessage message)
+	{
+		logger.warn("Too many messages to handle, rejected a message. Node ID = '{}'.", networkManager.getNodeId());
+		networkManager.getMetrics().increment("message.reject", message.getClass().getSimpleName(), Outcome.FAIL);
+		return AcceptanceReply.BUSY;
+	}
+
+	/**
+	 * Accepts the message session offered by a message whose signature has been verified
+	 */
+	private void acceptSessionOffer(H2HSession session, String senderId, BaseMessage message)
+	{
+		MessageSessionOffer offer = message.getSessionOffer();
+		if (offer != null)
+		{
+			session.getMessageSessionManager().accept(senderId, offer);
+			// the key is not needed any further
+			message.setSessionOffer(null);
+		}
+	}
+
 	private boolean verifySignature(String senderId, byte[] decryptedMessage, byte[] signature)
 	{
 		try
@@ -260,30 +431,19 @@ public class MessageReplyHandler implements RawDataReply, ObjectDataReply
 				return;
 			}
 
-			// give a network manager reference to work (verify, handle)
 			try
 			{
-				message.setNetworkManager(networkManager);
+				acceptSessionOffer(networkManager.getSession(), senderId, message);
 			}
-			catch(NoPeerConnectionException e)
+			catch(NoSessionException e)
 			{
-				logger.error("Cannot process the message because the peer is not connected.", e);
-				return;
+				logger.warn("Cannot accept the message session because the user logged out.");
 			}
 
-			// check if message gets accepted
-			AcceptanceReply reply = message.accept();
-			if (AcceptanceReply.OK == reply)
-			{
-				// handle message in own thread
-				logger.debug("Received and accepted the message. Node ID = '{}'.",
-						networkManager.getNodeId());
-				new Thread(message).start();
-			}
-			else
+			if (AcceptanceReply.OK == accept(message))
 			{
-				logger.warn("Received but denied a message. Acceptance reply = '{}', Node ID = '{}'.",
-						reply, networkManager.getNodeId());
+				// already on a worker thread
+				message.run();
 			}
 		}
 
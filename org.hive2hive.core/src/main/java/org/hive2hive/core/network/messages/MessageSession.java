@@ -0,0 +1,100 @@
+package org.hive2hive.core.network.messages;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+import org.hive2hive.core.security.EncryptionUtil;
+
+/**
+ * A symmetric session for the messages from one user to another. The messages are encrypted and
+ * authenticated with AES-GCM, the nonces are derived from a message counter. The receiver uses the counter
+ * to reject replayed messages.
+ */
+public class MessageSession {
+
+	// number of counters below the highest received one which are still accepted (messages may be reordered)
+	private static final int REPLAY_WINDOW = Long.SIZE;
+
+	private final String id;
+	private final SecretKey key;
+	private final String userId;
+	private final long expiresAt;
+	private final long maxMessages;
+	private final AtomicLong counter = new AtomicLong();
+
+	// the highest counter received and a bitmap of the received counters below (bit i = highest - i)
+	private long highestReceived = -1;
+	private long receivedWindow = 0;
+
+	/**
+	 * @param id the id of the session
+	 * @param key the symmetric key
+	 * @param userId the sender of the messages, <code>null</code> if the messages are sent by this user
+	 * @param expiresAt the time (in ms) when the session expires
+	 * @param maxMessages the number of messages after which the session expires
+	 */
+	public MessageSession(String id, SecretKey key, String userId, long expiresAt, long maxMessages) {
+		this.id = id;
+		this.key = key;
+		this.userId = userId;
+		this.expiresAt = expiresAt;
+		this.maxMessages = maxMessages;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public SecretKey getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the sender of the messages of this session, authenticated when it has been established
+	 */
+	public String getUserId() {
+		return userId;
+	}
+
+	public boolean isExpired() {
+		return System.currentTimeMillis() >= expiresAt || counter.get() >= maxMessages;
+	}
+
+	/**
+	 * @return a nonce which has never been used with this session before
+	 */
+	public byte[] nextNonce() {
+		return EncryptionUtil.generateGCMNonce(counter.getAndIncrement());
+	}
+
+	/**
+	 * Records the counter of a received message. Must only be called after the message has been
+	 * authenticated, else a forged counter could move the window.
+	 * 
+	 * @param nonce the nonce of the received message (see {@link #nextNonce()})
+	 * @return <code>false</code> if a message with the same counter has been received before or if the
+	 *         counter is too old to tell
+	 */
+	public synchronized boolean markReceived(byte[] nonce) {
+		long received = EncryptionUtil.getGCMNoncePosition(nonce);
+		if (received < 0) {
+			return false;
+		}
+
+		if (received > highestReceived) {
+			long shift = received - highestReceived;
+			receivedWindow = shift >= REPLAY_WINDOW ? 0 : receivedWindow << shift;
+			receivedWindow |= 1;
+			highestReceived = received;
+			return true;
+		}
+
+		long offset = highestReceived - received;
+		if (offset >= REPLAY_WINDOW || (receivedWindow & (1L << offset)) != 0) {
+			return false;
+		}
+		receivedWindow |= 1L << offset;
+		return true;
+	}
+}
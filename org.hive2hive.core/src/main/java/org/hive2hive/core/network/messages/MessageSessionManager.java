@@ -0,0 +1,146 @@
+package org.hive2hive.core.network.messages;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.SecretKey;
+
+import net.tomp2p.peers.Number160;
+
+import org.hive2hive.core.H2HConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the symmetric sessions of the messages between the logged in user and other users. The first
+ * message to a user is encrypted asymmetrically, signed and carries a {@link MessageSessionOffer}. The
+ * receiver accepts the offer once the signature has been verified, the sender uses the session once the
+ * message has been accepted. Expired sessions are replaced the same way.<br>
+ * The sessions are accepted by the receiving peer, thus the outgoing sessions are cached per peer (and not per
+ * user, as all clients of a user share its public key).
+ */
+public class MessageSessionManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageSessionManager.class);
+
+	private final long lifetimeMs;
+	private final long maxMessages;
+	private final SecureRandom random = new SecureRandom();
+
+	// sessions to encrypt messages to other users, by the id of the receiving peer
+	private final ConcurrentMap<Number160, MessageSession> outgoing = new ConcurrentHashMap<Number160, MessageSession>();
+	// sessions to decrypt messages of other users, by the session id
+	private final ConcurrentMap<String, MessageSession> incoming = new ConcurrentHashMap<String, MessageSession>();
+
+	public MessageSessionManager() {
+		this(H2HConstants.MESSAGE_SESSION_LIFETIME_MS, H2HConstants.MESSAGE_SESSION_MAX_MESSAGES);
+	}
+
+	/**
+	 * @param lifetimeMs the time after which a session expires
+	 * @param maxMessages the number of messages after which an outgoing session expires
+	 */
+	public MessageSessionManager(long lifetimeMs, long maxMessages) {
+		this.lifetimeMs = lifetimeMs;
+		this.maxMessages = maxMessages;
+	}
+
+	/**
+	 * @param receiverId the id of the receiving peer
+	 * @return the session to encrypt the next message with or <code>null</code> if a new session needs to be
+	 *         established
+	 */
+	public MessageSession getOutgoing(Number160 receiverId) {
+		MessageSession session = outgoing.get(receiverId);
+		if (session != null && session.isExpired()) {
+			outgoing.remove(receiverId, session);
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * Creates an offer for a new session. It is only used after the receiver accepted it (see
+	 * {@link #confirm(Number160, MessageSessionOffer)}).
+	 * 
+	 * @param key a fresh symmetric key
+	 * @return the offer to send along with the next message
+	 */
+	public MessageSessionOffer createOffer(SecretKey key) {
+		return new MessageSessionOffer(new BigInteger(128, random).toString(32), key);
+	}
+
+	/**
+	 * Starts to use the offered session, after the receiver accepted the message carrying the offer.
+	 * 
+	 * @param receiverId the id of the receiving peer
+	 * @param offer the accepted offer
+	 */
+	public void confirm(Number160 receiverId, MessageSessionOffer offer) {
+		MessageSession current = outgoing.get(receiverId);
+		if (current != null && current.getId().equals(offer.getSessionId())) {
+			// already in use, don't reset the nonce counter
+			return;
+		}
+
+		long expiresAt = System.currentTimeMillis() + lifetimeMs;
+		outgoing.put(receiverId, new MessageSession(offer.getSessionId(), offer.getKey(), null, expiresAt, maxMessages));
+		logger.debug("Established message session '{}'.", offer.getSessionId());
+	}
+
+	/**
+	 * Discards the session to the given peer, e.g. because the receiver does not know it anymore.
+	 * 
+	 * @param receiverId the id of the receiving peer
+	 */
+	public void invalidate(Number160 receiverId) {
+		outgoing.remove(receiverId);
+	}
+
+	/**
+	 * Accepts a session offered by another user. Must only be called after the signature of the message
+	 * carrying the offer has been verified.
+	 * 
+	 * @param senderId the verified sender of the offer
+	 * @param offer the offer
+	 */
+	public void accept(String senderId, MessageSessionOffer offer) {
+		removeExpired();
+		// kept longer than on the sender side, such that messages in transit do not fail
+		long expiresAt = System.currentTimeMillis() + 2 * lifetimeMs;
+		MessageSession session = new MessageSession(offer.getSessionId(), offer.getKey(), senderId, expiresAt,
+				Long.MAX_VALUE);
+		// the ids are random, an existing one must not be taken over by another user
+		if (incoming.putIfAbsent(offer.getSessionId(), session) == null) {
+			logger.debug("Accepted message session '{}' of user '{}'.", offer.getSessionId(), senderId);
+		} else {
+			logger.warn("Ignored the offer of message session '{}' by user '{}'. It already exists.",
+					offer.getSessionId(), senderId);
+		}
+	}
+
+	/**
+	 * @param sessionId the id of a session offered by another user
+	 * @return the session or <code>null</code> if it is unknown or expired
+	 */
+	public MessageSession getIncoming(String sessionId) {
+		MessageSession session = incoming.get(sessionId);
+		if (session != null && session.isExpired()) {
+			incoming.remove(sessionId, session);
+			return null;
+		}
+		return session;
+	}
+
+	private void removeExpired() {
+		Iterator<MessageSession> iterator = incoming.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isExpired()) {
+				iterator.remove();
+			}
+		}
+	}
+}
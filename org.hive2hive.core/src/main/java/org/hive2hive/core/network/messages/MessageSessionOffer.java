@@ -0,0 +1,31 @@
+package org.hive2hive.core.network.messages;
+
+import java.io.Serializable;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The symmetric key of a new {@link MessageSession}. It travels within an asymmetrically encrypted and signed
+ * message, such that only the receiver learns it and knows who the sender is.
+ */
+public class MessageSessionOffer implements Serializable {
+
+	private static final long serialVersionUID = 4306470391637561093L;
+
+	private final String sessionId;
+	private final byte[] encodedKey;
+
+	public MessageSessionOffer(String sessionId, SecretKey key) {
+		this.sessionId = sessionId;
+		this.encodedKey = key.getEncoded();
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public SecretKey getKey() {
+		return new SecretKeySpec(encodedKey, "AES");
+	}
+}
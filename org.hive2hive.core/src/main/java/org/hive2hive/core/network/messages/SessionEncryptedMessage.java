@@ -0,0 +1,35 @@
+package org.hive2hive.core.network.messages;
+
+import java.io.Serializable;
+
+/**
+ * A message encrypted with the key of an established {@link MessageSession}. In contrast to messages sent
+ * as {@link org.hive2hive.core.model.versioned.HybridEncryptedContent}, it carries no signature because the
+ * session key authenticates the sender.
+ */
+public class SessionEncryptedMessage implements Serializable {
+
+	private static final long serialVersionUID = -3325946286417781470L;
+
+	private final String sessionId;
+	private final byte[] nonce;
+	private final byte[] encryptedData;
+
+	public SessionEncryptedMessage(String sessionId, byte[] nonce, byte[] encryptedData) {
+		this.sessionId = sessionId;
+		this.nonce = nonce;
+		this.encryptedData = encryptedData;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public byte[] getNonce() {
+		return nonce;
+	}
+
+	public byte[] getEncryptedData() {
+		return encryptedData;
+	}
+}
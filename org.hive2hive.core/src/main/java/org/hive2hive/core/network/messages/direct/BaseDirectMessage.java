@@ -133,6 +133,13 @@ public abstract class BaseDirectMessage extends BaseMessage {
 				return canResendDirect();
 			case FUTURE_FAILURE:
 				return canResendDirect();
+			case BUSY:
+				logger.debug("Target is busy. Peer address = '{}'.", getTargetAddress());
+				backOff(directSendingCounter);
+				return canResendDirect();
+			case FAILURE_UNKNOWN_SESSION:
+				// the session has been discarded, the message is re-sent asymmetrically encrypted
+				return canResendDirect();
 			case FAILURE_DECRYPTION:
 				logger.warn("Message not accepted by the target. Decryption on target node failed. Peer address = '{}'.",
 						getTargetAddress());
@@ -6,6 +6,7 @@ import java.util.concurrent.TimeUnit;
 
 import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureDirect;
+import net.tomp2p.peers.Number160;
 
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.network.messages.AcceptanceReply;
@@ -43,6 +44,7 @@ public class FutureDirectListener extends BaseFutureAdapter<FutureDirect> {
 
 	private final BaseDirectMessage message;
 	private final PublicKey receiverPublicKey;
+	private final Number160 receiverId;
 	private final MessageManager messageManager;
 	private final CountDownLatch latch;
 	private final IH2HSerialize serializer;
@@ -62,14 +64,17 @@ public class FutureDirectListener extends BaseFutureAdapter<FutureDirect> {
 	 *            message which has been sent (needed for re-sending)
 	 * @param receiverPublicKey
 	 *            the receivers public key which was used for encryption
+	 * @param receiverId
+	 *            the id of the receiving peer
 	 * @param messageManager
 	 *            reference needed for re-sending
 	 * @param serializer the serializer
 	 */
-	public FutureDirectListener(BaseDirectMessage message, PublicKey receiverPublicKey, MessageManager messageManager,
-			IH2HSerialize serializer) {
+	public FutureDirectListener(BaseDirectMessage message, PublicKey receiverPublicKey, Number160 receiverId,
+			MessageManager messageManager, IH2HSerialize serializer) {
 		this.message = message;
 		this.receiverPublicKey = receiverPublicKey;
+		this.receiverId = receiverId;
 		this.messageManager = messageManager;
 		this.serializer = serializer;
 		this.latch = new CountDownLatch(1);
@@ -102,9 +107,11 @@ public class FutureDirectListener extends BaseFutureAdapter<FutureDirect> {
 				return false;
 			case RESEND_DIRECT:
 				// resend direct is recommended
+				message.awaitResendDelay();
 				return messageManager.sendDirect(message, receiverPublicKey);
 			case RESEND_ROUTED:
 				// resend (this time routed) is recommended
+				message.awaitResendDelay();
 				return messageManager.send(message, receiverPublicKey);
 			default:
 				// invalid state
@@ -117,9 +124,17 @@ public class FutureDirectListener extends BaseFutureAdapter<FutureDirect> {
 	public void operationComplete(FutureDirect future) throws Exception {
 		AcceptanceReply reply = extractAcceptanceReply(future);
 		if (reply == AcceptanceReply.OK || reply == AcceptanceReply.OK_PROVISIONAL) {
+			if (reply == AcceptanceReply.OK) {
+				// the receiver verified the message, use the offered session from now on
+				messageManager.confirmSession(message, receiverId);
+			}
 			// notify the listener about the success of sending the message
 			state = DeliveryState.SUCCESS;
 		} else {
+			if (reply == AcceptanceReply.FAILURE_UNKNOWN_SESSION) {
+				// the receiver does not know the session (anymore), re-sending establishes a new one
+				messageManager.invalidateSession(receiverId);
+			}
 			// check if a direct re-send is necessary / wished
 			boolean directResending = message.handleSendingFailure(reply);
 			if (directResending) {
@@ -10,6 +10,7 @@ import java.util.concurrent.TimeUnit;
 
 import net.tomp2p.dht.FutureSend;
 import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.peers.Number160;
 
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.network.messages.AcceptanceReply;
@@ -42,6 +43,7 @@ public class FutureRoutedListener extends BaseFutureAdapter<FutureSend> {
 
 	private final BaseMessage message;
 	private final PublicKey receiverPublicKey;
+	private final Number160 receiverId;
 	private final MessageManager messageManager;
 	private final CountDownLatch latch;
 	private final IH2HSerialize serializer;
@@ -59,14 +61,16 @@ public class FutureRoutedListener extends BaseFutureAdapter<FutureSend> {
 	 * @param message
 	 *            message which has been sent (needed for re-sending)
 	 * @param receiverPublicKey the receivers public key
+	 * @param receiverId the id of the peer which is responsible for the target key
 	 * @param messageManager
 	 *            reference needed for re-sending
 	 * @param serializer the serializer
 	 */
-	public FutureRoutedListener(BaseMessage message, PublicKey receiverPublicKey, MessageManager messageManager,
-			IH2HSerialize serializer) {
+	public FutureRoutedListener(BaseMessage message, PublicKey receiverPublicKey, Number160 receiverId,
+			MessageManager messageManager, IH2HSerialize serializer) {
 		this.message = message;
 		this.receiverPublicKey = receiverPublicKey;
+		this.receiverId = receiverId;
 		this.messageManager = messageManager;
 		this.serializer = serializer;
 		this.latch = new CountDownLatch(1);
@@ -98,6 +102,7 @@ public class FutureRoutedListener extends BaseFutureAdapter<FutureSend> {
 				return false;
 			case RESEND:
 				// resend is recommended
+				message.awaitResendDelay();
 				return messageManager.send(message, receiverPublicKey);
 			default:
 				// invalid state
@@ -110,10 +115,18 @@ public class FutureRoutedListener extends BaseFutureAdapter<FutureSend> {
 	public void operationComplete(FutureSend future) throws Exception {
 		AcceptanceReply reply = extractAcceptanceReply(future);
 		if (reply == AcceptanceReply.OK || reply == AcceptanceReply.OK_PROVISIONAL) {
+			if (reply == AcceptanceReply.OK) {
+				// the receiver verified the message, use the offered session from now on
+				messageManager.confirmSession(message, receiverId);
+			}
 			// notify the listener about the success of sending the message
 			state = DeliveryState.SUCCESS;
 			latch.countDown();
 		} else {
+			if (reply == AcceptanceReply.FAILURE_UNKNOWN_SESSION) {
+				// the receiver does not know the session (anymore), re-sending establishes a new one
+				messageManager.invalidateSession(receiverId);
+			}
 			// check if a re-send is necessary / wished
 			boolean resending = message.handleSendingFailure(reply);
 			if (resending) {
@@ -58,6 +58,7 @@ import org.hive2hive.core.processes.logout.DeleteSessionStep;
 import org.hive2hive.core.processes.logout.RemoveOwnLocationsStep;
 import org.hive2hive.core.processes.logout.SendLogoutNotificationStep;
 import org.hive2hive.core.processes.logout.StopDownloadsStep;
+import org.hive2hive.core.processes.logout.StopTTLRefreshStep;
 import org.hive2hive.core.processes.logout.StopUserQueueWorkerStep;
 import org.hive2hive.core.processes.logout.WritePersistentStep;
 import org.hive2hive.core.processes.notify.BaseNotificationMessageFactory;
@@ -194,8 +195,11 @@ public final class ProcessFactory {
 		parentProcess.add(new AsyncComponent<>(sessionProcess));
 		parentProcess.add(new AsyncComponent<>(new StopDownloadsStep(session.getDownloadManager())));
 		parentProcess.add(new AsyncComponent<>(new StopUserQueueWorkerStep(session.getProfileManager())));
+		if (session.getTTLRefreshManager() != null) {
+			parentProcess.add(new AsyncComponent<>(new StopTTLRefreshStep(session.getTTLRefreshManager())));
+		}
 		parentProcess.add(new AsyncComponent<>(new WritePersistentStep(session.getFileAgent(), session.getKeyManager(),
-				networkManager.getDataManager().getSerializer())));
+				session.getTTLRefreshManager(), networkManager.getDataManager().getSerializer())));
 
 		parentProcess.setName("Logout Process");
 		return parentProcess;
@@ -6,8 +6,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import javax.crypto.SecretKey;
+
 import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
+import org.hive2hive.core.model.DerivedKeyPair;
 import org.hive2hive.core.model.Index;
 import org.hive2hive.core.model.MetaChunk;
 import org.hive2hive.core.model.versioned.BaseMetaFile;
@@ -32,8 +35,10 @@ public class AddFileProcessContext implements IUploadContext, INotifyContext {
 	private List<MetaChunk> metaChunks = new ArrayList<MetaChunk>();
 
 	private KeyPair chunkEncryptionKeys; // generated
+	private SecretKey chunkContentKey; // generated, if enabled
 	private KeyPair chunkProtectionKeys; // from parent FolderIndex
 	private KeyPair fileKeys; // File Encryption Key Pair
+	private DerivedKeyPair derivedFileKeys; // compact form of the file keys, if enabled
 	private KeyPair metaFileProtectionKeys;
 	private boolean largeFile;
 	private BaseMetaFile metaFile;
@@ -94,6 +99,16 @@ public class AddFileProcessContext implements IUploadContext, INotifyContext {
 		this.chunkEncryptionKeys = chunkEncryptionKeys;
 	}
 
+	@Override
+	public SecretKey consumeChunkContentKey() {
+		return chunkContentKey;
+	}
+
+	@Override
+	public void provideChunkContentKey(SecretKey chunkContentKey) {
+		this.chunkContentKey = chunkContentKey;
+	}
+
 	@Override
 	public KeyPair consumeMetaFileEncryptionKeys() {
 		return fileKeys;
@@ -103,6 +118,14 @@ public class AddFileProcessContext implements IUploadContext, INotifyContext {
 		this.fileKeys = fileKeys;
 	}
 
+	public DerivedKeyPair consumeDerivedFileKeys() {
+		return derivedFileKeys;
+	}
+
+	public void provideDerivedFileKeys(DerivedKeyPair derivedFileKeys) {
+		this.derivedFileKeys = derivedFileKeys;
+	}
+
 	@Override
 	public KeyPair consumeMetaFileProtectionKeys() {
 		return metaFileProtectionKeys;
@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import javax.crypto.SecretKey;
+
 import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
 import org.hive2hive.core.model.FileIndex;
@@ -31,6 +33,7 @@ public class UpdateFileProcessContext implements IUploadContext, IGetFileKeysCon
 	private List<MetaChunk> metaChunks = new ArrayList<MetaChunk>();
 
 	private KeyPair chunkProtectionKeys;
+	private SecretKey chunkContentKey;
 	private KeyPair metaFileProtectionKeys;
 	private KeyPair metaFileEncryptionKeys;
 	private boolean largeFile;
@@ -94,6 +97,16 @@ public class UpdateFileProcessContext implements IUploadContext, IGetFileKeysCon
 		// not used here
 	}
 
+	@Override
+	public SecretKey consumeChunkContentKey() {
+		return chunkContentKey;
+	}
+
+	@Override
+	public void provideChunkContentKey(SecretKey chunkContentKey) {
+		this.chunkContentKey = chunkContentKey;
+	}
+
 	@Override
 	public KeyPair consumeChunkEncryptionKeys() {
 		if (metaFile instanceof MetaFileSmall) {
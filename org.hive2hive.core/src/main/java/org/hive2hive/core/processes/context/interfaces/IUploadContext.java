@@ -5,6 +5,8 @@ import java.security.KeyPair;
 import java.util.List;
 import java.util.Set;
 
+import javax.crypto.SecretKey;
+
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
 import org.hive2hive.core.model.Index;
 import org.hive2hive.core.model.MetaChunk;
@@ -57,6 +59,8 @@ public interface IUploadContext {
 
 	public void provideChunkEncryptionKeys(KeyPair chunkEncryptionKeys);
 
+	public void provideChunkContentKey(SecretKey chunkContentKey);
+
 	// ------ InitializeChunksStep, CreateMetaFileStep ------
 
 	public boolean isLargeFile();
@@ -65,6 +69,10 @@ public interface IUploadContext {
 
 	public KeyPair consumeChunkEncryptionKeys();
 
+	// ------ CreateMetaFileStep, CreateNewVersionStep, PutSingleChunkStep ------
+
+	public SecretKey consumeChunkContentKey();
+
 	// ------ PutSingleChunkStep, CreateMetaFileStep, CreateNewVersionStep, InitializeChunksStep ------
 
 	public List<MetaChunk> getMetaChunks();
@@ -2,16 +2,21 @@ package org.hive2hive.core.processes.files;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.util.UUID;
 
+import javax.crypto.SecretKey;
+
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
 import org.hive2hive.core.file.FileChunkUtil;
 import org.hive2hive.core.model.Chunk;
 import org.hive2hive.core.model.MetaChunk;
+import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.network.data.DataManager;
 import org.hive2hive.core.processes.context.interfaces.IUploadContext;
+import org.hive2hive.core.security.EncryptionUtil;
 import org.hive2hive.core.security.HashUtil;
 import org.hive2hive.processframework.ProcessStep;
 import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
@@ -62,6 +67,13 @@ public class InitializeChunksStep extends ProcessStep<Void> {
 			context.provideChunkEncryptionKeys(chunkKeys);
 		}
 
+		if (H2HConstants.CHUNK_CONTENT_KEY) {
+			// one key for all chunks of this version, such that the chunks only need symmetric encryption
+			SecretKey contentKey = EncryptionUtil.generateAESKey(H2HConstants.KEYLENGTH_CHUNK_CONTENT, context
+					.getEncryption().getSecurityProvider());
+			context.provideChunkContentKey(contentKey);
+		}
+
 		// create put chunks steps
 		IFileConfiguration config = context.consumeFileConfiguration();
 		int chunks = FileChunkUtil.getNumberOfChunks(file, config.getChunkSize());
@@ -77,6 +89,23 @@ public class InitializeChunksStep extends ProcessStep<Void> {
 		}
 	}
 
+	/**
+	 * Encrypts the content key of the chunks with the chunk keys, such that it can be stored in the new file
+	 * version.
+	 * 
+	 * @param context the upload context
+	 * @return the encrypted content key or <code>null</code> if the chunks are encrypted hybrid one by one
+	 * @throws GeneralSecurityException if the key cannot be encrypted
+	 */
+	public static HybridEncryptedContent encryptContentKey(IUploadContext context) throws GeneralSecurityException {
+		SecretKey contentKey = context.consumeChunkContentKey();
+		if (contentKey == null) {
+			return null;
+		}
+		return context.getEncryption().encryptHybrid(contentKey.getEncoded(),
+				context.consumeChunkEncryptionKeys().getPublic());
+	}
+
 	private void initLargeFile(File file) throws ProcessExecutionException {
 		// init the large file chunks
 		IFileConfiguration config = context.consumeFileConfiguration();
@@ -4,17 +4,22 @@ import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 
+import javax.crypto.SecretKey;
+
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
 import org.hive2hive.core.exceptions.PutFailedException;
 import org.hive2hive.core.file.FileChunkUtil;
 import org.hive2hive.core.model.Chunk;
+import org.hive2hive.core.model.BaseNetworkContent;
+import org.hive2hive.core.model.FileVersion.ChunkCipher;
 import org.hive2hive.core.model.MetaChunk;
-import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.network.data.DataManager;
 import org.hive2hive.core.network.data.parameters.Parameters;
 import org.hive2hive.core.processes.common.base.BasePutProcessStep;
 import org.hive2hive.core.processes.context.interfaces.IUploadContext;
+import org.hive2hive.core.security.EncryptionUtil;
+import org.hive2hive.core.security.HashUtil;
 import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
 import org.hive2hive.processframework.exceptions.ProcessExecutionException;
 import org.slf4j.Logger;
@@ -57,21 +62,29 @@ public class PutSingleChunkStep extends BasePutProcessStep {
 		if (chunk != null) {
 			try {
 				// encrypt the chunk prior to put such that nobody can read it
-				HybridEncryptedContent encryptedContent = context.getEncryption().encryptHybrid(chunk,
-						context.consumeChunkEncryptionKeys().getPublic());
+				BaseNetworkContent encryptedContent;
+				SecretKey contentKey = context.consumeChunkContentKey();
+				if (contentKey != null && H2HConstants.CHUNK_CIPHER == ChunkCipher.AES_GCM) {
+					// the content key is stored encrypted in the file version, the nonce is unique per chunk
+					encryptedContent = context.getEncryption().encryptAESGCM(chunk, contentKey,
+							EncryptionUtil.generateGCMNonce(index));
+				} else if (contentKey != null) {
+					encryptedContent = context.getEncryption().encryptAES(chunk, contentKey);
+				} else {
+					encryptedContent = context.getEncryption().encryptHybrid(chunk,
+							context.consumeChunkEncryptionKeys().getPublic());
+				}
 
 				logger.debug("Uploading chunk {} of file {}.", chunk.getOrder(), file.getName());
 				Parameters parameters = new Parameters().setLocationKey(chunk.getId())
 						.setContentKey(H2HConstants.FILE_CHUNK).setNetworkContent(encryptedContent)
 						.setProtectionKeys(context.consumeChunkProtectionKeys()).setTTL(chunk.getTimeToLive());
 
-				// data manager has to produce the hash, which gets used for signing
-				parameters.setHashFlag(true);
 				// put the encrypted chunk into the network
 				put(parameters);
 
-				// store the hash in the index of the meta file
-				context.getMetaChunks().add(new MetaChunk(chunkId, parameters.getHash(), index));
+				// store the hash of the plain data in the index of the meta file, it verifies the downloaded chunk
+				context.getMetaChunks().add(new MetaChunk(chunkId, HashUtil.hash(chunk.getData()), index));
 			} catch (IOException | IllegalStateException | GeneralSecurityException | PutFailedException ex) {
 				throw new ProcessExecutionException(this, ex, "Could not encrypt and put the chunk.");
 			}
@@ -5,6 +5,7 @@ import java.io.IOException;
 
 import org.hive2hive.core.exceptions.AbortModificationCode;
 import org.hive2hive.core.exceptions.AbortModifyException;
+import org.hive2hive.core.model.DerivedKeyPair;
 import org.hive2hive.core.model.FileIndex;
 import org.hive2hive.core.model.FolderIndex;
 import org.hive2hive.core.model.Index;
@@ -63,11 +64,22 @@ public class AddIndexToUserProfileStep extends BaseModifyUserProfileStep {
 		}
 
 		// create a file tree node in the user profile
+		DerivedKeyPair derivedKeys = context.consumeDerivedFileKeys();
 		if (file.isDirectory()) {
-			FolderIndex folderIndex = new FolderIndex(parentNode, context.consumeMetaFileEncryptionKeys(), file.getName());
+			FolderIndex folderIndex;
+			if (derivedKeys != null) {
+				folderIndex = new FolderIndex(parentNode, derivedKeys, file.getName());
+			} else {
+				folderIndex = new FolderIndex(parentNode, context.consumeMetaFileEncryptionKeys(), file.getName());
+			}
 			context.provideIndex(folderIndex);
 		} else {
-			FileIndex fileIndex = new FileIndex(parentNode, context.consumeMetaFileEncryptionKeys(), file.getName(), hash);
+			FileIndex fileIndex;
+			if (derivedKeys != null) {
+				fileIndex = new FileIndex(parentNode, derivedKeys, file.getName(), hash);
+			} else {
+				fileIndex = new FileIndex(parentNode, context.consumeMetaFileEncryptionKeys(), file.getName(), hash);
+			}
 			context.provideIndex(fileIndex);
 		}
 	}
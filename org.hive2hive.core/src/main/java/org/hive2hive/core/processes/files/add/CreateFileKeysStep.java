@@ -1,11 +1,14 @@
 package org.hive2hive.core.processes.files.add;
 
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 
 import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.model.DerivedKeyPair;
 import org.hive2hive.core.processes.context.AddFileProcessContext;
 import org.hive2hive.processframework.ProcessStep;
 import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
+import org.hive2hive.processframework.exceptions.ProcessExecutionException;
 
 /**
  * Create a new {@link KeyPair} which serves as id of the index and encryption key pair for the corresponding
@@ -23,9 +26,21 @@ public class CreateFileKeysStep extends ProcessStep<Void> {
 	}
 
 	@Override
-	protected Void doExecute() throws InvalidProcessStateException {
+	protected Void doExecute() throws InvalidProcessStateException, ProcessExecutionException {
 		// generate the meta keys used for encrypting the meta file and as id of the meta file and index
-		KeyPair metaKeys = context.getEncryption().generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE);
+		KeyPair metaKeys;
+		if (H2HConstants.DERIVED_FILE_KEYS) {
+			// only the seed and the public key will be stored in the user profile
+			try {
+				DerivedKeyPair derivedKeys = DerivedKeyPair.create(H2HConstants.KEYLENGTH_META_FILE);
+				context.provideDerivedFileKeys(derivedKeys);
+				metaKeys = derivedKeys.getKeyPair();
+			} catch (GeneralSecurityException e) {
+				throw new ProcessExecutionException(this, e, "Cannot derive the file keys.");
+			}
+		} else {
+			metaKeys = context.getEncryption().generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE);
+		}
 
 		context.provideFileKeys(metaKeys);
 		setRequiresRollback(true);
@@ -35,6 +50,7 @@ public class CreateFileKeysStep extends ProcessStep<Void> {
 	@Override
 	protected Void doRollback() throws InvalidProcessStateException {
 		context.provideFileKeys(null);
+		context.provideDerivedFileKeys(null);
 		setRequiresRollback(false);
 		return null;
 	}
@@ -1,18 +1,23 @@
 package org.hive2hive.core.processes.files.add;
 
 import java.io.File;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.file.FileUtil;
 import org.hive2hive.core.model.FileVersion;
 import org.hive2hive.core.model.versioned.BaseMetaFile;
 import org.hive2hive.core.model.versioned.MetaFileLarge;
 import org.hive2hive.core.model.versioned.MetaFileSmall;
+import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.processes.context.AddFileProcessContext;
+import org.hive2hive.core.processes.files.InitializeChunksStep;
 import org.hive2hive.processframework.ProcessStep;
 import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
+import org.hive2hive.processframework.exceptions.ProcessExecutionException;
 
 /**
  * Create a new {@link MetaFileSmall} or {@link MetaFileLarge}.
@@ -29,7 +34,7 @@ public class CreateMetaFileStep extends ProcessStep<Void> {
 	}
 
 	@Override
-	protected Void doExecute() throws InvalidProcessStateException {
+	protected Void doExecute() throws InvalidProcessStateException, ProcessExecutionException {
 		File file = context.consumeFile();
 		KeyPair metaKeys = context.consumeMetaFileEncryptionKeys();
 
@@ -37,9 +42,16 @@ public class CreateMetaFileStep extends ProcessStep<Void> {
 		if (context.isLargeFile()) {
 			metaFile = new MetaFileLarge(metaKeys.getPublic(), context.getMetaChunks());
 		} else {
+			HybridEncryptedContent contentKey;
+			try {
+				contentKey = InitializeChunksStep.encryptContentKey(context);
+			} catch (GeneralSecurityException e) {
+				throw new ProcessExecutionException(this, e, "Cannot encrypt the content key of the chunks.");
+			}
+
 			// create new meta file with new version
 			FileVersion version = new FileVersion(0, FileUtil.getFileSize(file), System.currentTimeMillis(),
-					context.getMetaChunks());
+					context.getMetaChunks(), contentKey, contentKey == null ? null : H2HConstants.CHUNK_CIPHER);
 			List<FileVersion> versions = new ArrayList<FileVersion>(1);
 			versions.add(version);
 			metaFile = new MetaFileSmall(metaKeys.getPublic(), versions, context.consumeChunkEncryptionKeys());
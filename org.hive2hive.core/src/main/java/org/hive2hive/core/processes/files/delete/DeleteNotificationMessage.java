@@ -50,6 +50,7 @@ public class DeleteNotificationMessage extends BaseDirectMessage implements IFil
 
 		UserProfile userProfile;
 		try {
+			session.getProfileManager().invalidate();
 			userProfile = session.getProfileManager().readUserProfile();
 		} catch (GetFailedException e) {
 			logger.error("Couldn't load the user profile.");
@@ -44,20 +44,17 @@ public class FindInUserProfileStep extends ProcessStep<Void> {
 
 		UserProfileManager profileManager = session.getProfileManager();
 
-		UserProfile userProfile = null;
+		Index index;
 		try {
-			userProfile = profileManager.readUserProfile();
+			// try the last known profile first, the latest one is only needed when the file is new
+			index = findIndex(profileManager.readUserProfile(true), session);
+			if (index == null) {
+				index = findIndex(profileManager.readUserProfile(false), session);
+			}
 		} catch (GetFailedException e) {
 			throw new ProcessExecutionException(this, e);
 		}
 
-		Index index;
-		if (context.getFileKey() == null) {
-			index = userProfile.getFileByPath(context.getFile(), session.getRootFile());
-		} else {
-			index = userProfile.getFileById(context.getFileKey());
-		}
-
 		if (index == null) {
 			throw new ProcessExecutionException(this, "File key not found in user profile.");
 		}
@@ -84,6 +81,14 @@ public class FindInUserProfileStep extends ProcessStep<Void> {
 		return null;
 	}
 
+	private Index findIndex(UserProfile userProfile, H2HSession session) {
+		if (context.getFileKey() == null) {
+			return userProfile.getFileByPath(context.getFile(), session.getRootFile());
+		} else {
+			return userProfile.getFileById(context.getFileKey());
+		}
+	}
+
 	@Override
 	protected Void doRollback() throws InvalidProcessStateException {
 		context.provideIndex(null);
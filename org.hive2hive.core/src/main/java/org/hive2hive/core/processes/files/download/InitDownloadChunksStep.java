@@ -2,13 +2,18 @@ package org.hive2hive.core.processes.files.download;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.List;
 import java.util.Set;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.exceptions.NoPeerConnectionException;
 import org.hive2hive.core.exceptions.NoSessionException;
 import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FileVersion;
 import org.hive2hive.core.model.MetaChunk;
 import org.hive2hive.core.model.versioned.BaseMetaFile;
 import org.hive2hive.core.model.versioned.MetaFileLarge;
@@ -65,11 +70,24 @@ public class InitDownloadChunksStep extends ProcessStep<Void> {
 			MetaFileSmall metaFileSmall = (MetaFileSmall) metaFile;
 
 			// support to download a specific version
-			List<MetaChunk> metaChunks;
+			FileVersion version;
 			if (context.downloadNewestVersion()) {
-				metaChunks = metaFileSmall.getNewestVersion().getMetaChunks();
+				version = metaFileSmall.getNewestVersion();
 			} else {
-				metaChunks = metaFileSmall.getVersionByIndex(context.getVersionToDownload()).getMetaChunks();
+				version = metaFileSmall.getVersionByIndex(context.getVersionToDownload());
+			}
+			List<MetaChunk> metaChunks = version.getMetaChunks();
+
+			// decrypt the content key of the chunks once for all chunks
+			SecretKey contentKey = null;
+			if (version.getEncryptedContentKey() != null) {
+				try {
+					byte[] encoded = networkManager.getEncryption().decryptHybridRaw(version.getEncryptedContentKey(),
+							metaFileSmall.getChunkKey().getPrivate());
+					contentKey = new SecretKeySpec(encoded, "AES");
+				} catch (GeneralSecurityException | ClassNotFoundException | IOException ex) {
+					throw new ProcessExecutionException(this, ex, "Cannot decrypt the content key of the chunks.");
+				}
 			}
 
 			// verify destination before downloading
@@ -87,7 +105,7 @@ public class InitDownloadChunksStep extends ProcessStep<Void> {
 			}
 
 			DownloadTaskDHT task = new DownloadTaskDHT(metaChunks, destination, metaFileSmall.getChunkKey().getPrivate(),
-					networkManager.getEventBus(), session.getKeyManager());
+					contentKey, version.getChunkCipher(), networkManager.getEventBus(), session.getKeyManager());
 
 			// start the download
 			try {
@@ -8,11 +8,15 @@ import org.apache.commons.io.FileUtils;
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.model.BaseNetworkContent;
 import org.hive2hive.core.model.Chunk;
+import org.hive2hive.core.model.FileVersion.ChunkCipher;
 import org.hive2hive.core.model.MetaChunk;
+import org.hive2hive.core.model.versioned.EncryptedNetworkContent;
 import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.network.data.DataManager;
 import org.hive2hive.core.network.data.parameters.IParameters;
 import org.hive2hive.core.network.data.parameters.Parameters;
+import org.hive2hive.core.security.EncryptionUtil;
+import org.hive2hive.core.security.HashUtil;
 import org.hive2hive.core.security.IH2HEncryption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,17 +66,51 @@ public class DownloadChunkRunnableDHT implements Runnable {
 			return;
 		}
 
-		HybridEncryptedContent encrypted = (HybridEncryptedContent) content;
 		Chunk chunk;
-
+		// whether the decryption already authenticated the chunk data
+		boolean authenticated = false;
 		try {
-			BaseNetworkContent decrypted = encryption.decryptHybrid(encrypted, task.getDecryptionKey());
+			BaseNetworkContent decrypted;
+			if (content instanceof EncryptedNetworkContent && task.getContentKey() != null) {
+				// encrypted with the content key of the version
+				if (task.getChunkCipher() == ChunkCipher.AES_GCM) {
+					// fails if the chunk has been modified. The content key is unique per version, but the position
+					// of the chunk within the version is not authenticated, thus it is checked below.
+					long position = EncryptionUtil.getGCMNoncePosition(((EncryptedNetworkContent) content).getInitVector());
+					if (position != metaChunk.getIndex()) {
+						task.abortDownload(String.format("Chunk %s has been encrypted for position %s.",
+								metaChunk.getIndex(), position));
+						return;
+					}
+					decrypted = encryption.decryptAESGCM((EncryptedNetworkContent) content, task.getContentKey());
+					authenticated = true;
+				} else {
+					decrypted = encryption.decryptAES((EncryptedNetworkContent) content, task.getContentKey());
+				}
+			} else {
+				decrypted = encryption.decryptHybrid((HybridEncryptedContent) content, task.getDecryptionKey());
+			}
 			chunk = (Chunk) decrypted;
-		} catch (GeneralSecurityException | IllegalArgumentException | IOException | ClassNotFoundException e) {
+		} catch (GeneralSecurityException | IllegalArgumentException | IOException | ClassNotFoundException
+				| ClassCastException e) {
 			task.abortDownload(String.format("Decryption of the chunk failed. reason = '%s'", e.getMessage()));
 			return;
 		}
 
+		if (chunk.getOrder() != metaChunk.getIndex()) {
+			// another chunk of the same version
+			task.abortDownload(String.format("Expected chunk %s but got chunk %s.", metaChunk.getIndex(),
+					chunk.getOrder()));
+			return;
+		}
+
+		if (!authenticated && metaChunk.getChunkHash() != null
+				&& !HashUtil.compare(metaChunk.getChunkHash(), HashUtil.hash(chunk.getData()))) {
+			// the AES-CBC and hybrid encryption do not detect a modified chunk
+			task.abortDownload(String.format("Chunk %s does not match its hash.", metaChunk.getIndex()));
+			return;
+		}
+
 		try {
 			FileUtils.writeByteArrayToFile(tempDestination, chunk.getData());
 		} catch (IOException e) {
@@ -80,8 +118,6 @@ public class DownloadChunkRunnableDHT implements Runnable {
 			return;
 		}
 
-		// TODO verify hash here
-
 		// notify the task that this file part has been downloaded successfully
 		task.markDownloaded(metaChunk.getIndex(), tempDestination);
 	}
@@ -4,7 +4,10 @@ import java.io.File;
 import java.security.PrivateKey;
 import java.util.List;
 
+import javax.crypto.SecretKey;
+
 import org.hive2hive.core.events.EventBus;
+import org.hive2hive.core.model.FileVersion.ChunkCipher;
 import org.hive2hive.core.model.MetaChunk;
 import org.hive2hive.core.network.data.PublicKeyManager;
 import org.hive2hive.core.network.data.download.BaseDownloadTask;
@@ -14,17 +17,41 @@ public class DownloadTaskDHT extends BaseDownloadTask {
 	private static final long serialVersionUID = -6933011357191806148L;
 
 	private final PrivateKey decryptionKey;
+	private final SecretKey contentKey;
+	private final ChunkCipher chunkCipher;
 
 	public DownloadTaskDHT(List<MetaChunk> metaChunks, File destination, PrivateKey decryptionKey, EventBus eventBus,
 			PublicKeyManager keyManager) {
+		this(metaChunks, destination, decryptionKey, null, null, eventBus, keyManager);
+	}
+
+	public DownloadTaskDHT(List<MetaChunk> metaChunks, File destination, PrivateKey decryptionKey,
+			SecretKey contentKey, ChunkCipher chunkCipher, EventBus eventBus, PublicKeyManager keyManager) {
 		super(metaChunks, destination, eventBus, keyManager);
 		this.decryptionKey = decryptionKey;
+		this.contentKey = contentKey;
+		this.chunkCipher = chunkCipher;
 	}
 
 	public PrivateKey getDecryptionKey() {
 		return decryptionKey;
 	}
 
+	/**
+	 * @return the symmetric key of the chunks of the version or <code>null</code> if each chunk is encrypted
+	 *         hybrid on its own
+	 */
+	public SecretKey getContentKey() {
+		return contentKey;
+	}
+
+	/**
+	 * @return the encryption of the chunks with the content key
+	 */
+	public ChunkCipher getChunkCipher() {
+		return chunkCipher == null ? ChunkCipher.AES_CBC : chunkCipher;
+	}
+
 	@Override
 	public boolean isDirectDownload() {
 		return false;
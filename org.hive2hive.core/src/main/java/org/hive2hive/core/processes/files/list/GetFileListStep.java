@@ -30,7 +30,7 @@ public class GetFileListStep extends ProcessStep<FileNode> {
 		// get the user profile
 		UserProfile profile = null;
 		try {
-			profile = profileManager.readUserProfile();
+			profile = profileManager.readUserProfile(true);
 		} catch (GetFailedException e) {
 			throw new ProcessExecutionException(this, "User profile could not be loaded.");
 		}
@@ -59,6 +59,7 @@ public class MoveNotificationMessage extends BaseDirectMessage implements IFileE
 
 		UserProfile userProfile;
 		try {
+			profileManager.invalidate();
 			userProfile = profileManager.readUserProfile();
 		} catch (GetFailedException e) {
 			logger.error("Couldn't load user profile.", e);
@@ -1,14 +1,18 @@
 package org.hive2hive.core.processes.files.update;
 
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.api.interfaces.IFileConfiguration;
 import org.hive2hive.core.file.FileUtil;
 import org.hive2hive.core.model.FileVersion;
 import org.hive2hive.core.model.MetaChunk;
+import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.model.versioned.MetaFileSmall;
 import org.hive2hive.core.processes.context.UpdateFileProcessContext;
+import org.hive2hive.core.processes.files.InitializeChunksStep;
 import org.hive2hive.processframework.ProcessStep;
 import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
 import org.hive2hive.processframework.exceptions.ProcessExecutionException;
@@ -46,8 +50,15 @@ public class CreateNewVersionStep extends ProcessStep<Void> {
 
 		// create a new version and add it to the meta file
 		MetaFileSmall metaFileSmall = (MetaFileSmall) context.consumeMetaFile();
+		HybridEncryptedContent contentKey;
+		try {
+			contentKey = InitializeChunksStep.encryptContentKey(context);
+		} catch (GeneralSecurityException e) {
+			throw new ProcessExecutionException(this, e, "Cannot encrypt the content key of the chunks.");
+		}
 		newVersion = new FileVersion(metaFileSmall.getVersions().size(), FileUtil.getFileSize(context.consumeFile()),
-				System.currentTimeMillis(), context.getMetaChunks());
+				System.currentTimeMillis(), context.getMetaChunks(), contentKey, contentKey == null ? null
+						: H2HConstants.CHUNK_CIPHER);
 		metaFileSmall.getVersions().add(newVersion);
 
 		initiateCleanup();
@@ -45,6 +45,7 @@ public class UpdateNotificationMessage extends BaseDirectMessage implements IFil
 
 		UserProfile userProfile;
 		try {
+			profileManager.invalidate();
 			userProfile = profileManager.readUserProfile();
 		} catch (GetFailedException e) {
 			logger.error("Couldn't load user profile.", e);
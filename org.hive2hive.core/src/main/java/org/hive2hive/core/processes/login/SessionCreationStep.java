@@ -3,14 +3,17 @@ package org.hive2hive.core.processes.login;
 import java.security.PublicKey;
 import java.util.Map;
 
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.exceptions.GetFailedException;
 import org.hive2hive.core.exceptions.NoPeerConnectionException;
+import org.hive2hive.core.exceptions.NoSessionException;
 import org.hive2hive.core.file.FileUtil;
 import org.hive2hive.core.file.PersistentMetaData;
 import org.hive2hive.core.model.versioned.UserProfile;
 import org.hive2hive.core.network.NetworkManager;
 import org.hive2hive.core.network.data.PublicKeyManager;
+import org.hive2hive.core.network.data.TTLRefreshManager;
 import org.hive2hive.core.network.data.UserProfileManager;
 import org.hive2hive.core.network.data.download.DownloadManager;
 import org.hive2hive.core.network.data.vdht.LocationsManager;
@@ -64,10 +67,23 @@ public class SessionCreationStep extends ProcessStep<Void> {
 			}
 			params.setKeyManager(keyManager);
 
+			// spill evicted immutable content to the cache of the user's file agent
+			if (networkManager.getDataManager().getContentCache() != null) {
+				networkManager.getDataManager().getContentCache().setFileAgent(params.getFileAgent());
+			}
+
 			// create the download manager
 			DownloadManager downloadManager = networkManager.getDownloadManager();
 			params.setDownloadManager(downloadManager);
 
+			// create the ttl refresh manager
+			if (H2HConstants.ENABLE_TTL_REFRESH) {
+				TTLRefreshManager ttlRefreshManager = new TTLRefreshManager(userProfileManager,
+						networkManager.getDataManager());
+				ttlRefreshManager.setRefreshTimes(metaData.getTTLRefreshTimes());
+				params.setTTLRefreshManager(ttlRefreshManager);
+			}
+
 			// create session
 			session = new H2HSession(params);
 		} catch (NoPeerConnectionException ex) {
@@ -78,6 +94,9 @@ public class SessionCreationStep extends ProcessStep<Void> {
 
 		// set session
 		networkManager.setSession(session);
+		if (session.getTTLRefreshManager() != null) {
+			session.getTTLRefreshManager().start();
+		}
 		setRequiresRollback(true);
 
 		return null;
@@ -86,6 +105,14 @@ public class SessionCreationStep extends ProcessStep<Void> {
 	@Override
 	protected Void doRollback() throws InvalidProcessStateException {
 		// invalidate the session
+		try {
+			H2HSession session = networkManager.getSession();
+			if (session.getTTLRefreshManager() != null) {
+				session.getTTLRefreshManager().stop();
+			}
+		} catch (NoSessionException e) {
+			// session has already been invalidated
+		}
 		networkManager.setSession(null);
 		setRequiresRollback(false);
 		return null;
@@ -2,6 +2,7 @@ package org.hive2hive.core.processes.login;
 
 import org.hive2hive.core.file.IFileAgent;
 import org.hive2hive.core.network.data.PublicKeyManager;
+import org.hive2hive.core.network.data.TTLRefreshManager;
 import org.hive2hive.core.network.data.UserProfileManager;
 import org.hive2hive.core.network.data.download.DownloadManager;
 import org.hive2hive.core.network.data.vdht.LocationsManager;
@@ -14,6 +15,7 @@ public class SessionParameters {
 	private LocationsManager locationsManager;
 	private DownloadManager downloadManager;
 	private PublicKeyManager keyManager;
+	private TTLRefreshManager ttlRefreshManager;
 
 	public SessionParameters(IFileAgent fileAgent) {
 		this.fileAgent = fileAgent;
@@ -51,6 +53,14 @@ public class SessionParameters {
 		this.locationsManager = locationsManager;
 	}
 
+	public TTLRefreshManager getTTLRefreshManager() {
+		return ttlRefreshManager;
+	}
+
+	public void setTTLRefreshManager(TTLRefreshManager ttlRefreshManager) {
+		this.ttlRefreshManager = ttlRefreshManager;
+	}
+
 	public IFileAgent getFileAgent() {
 		return fileAgent;
 	}
@@ -1,8 +1,11 @@
 package org.hive2hive.core.processes.logout;
 
 import org.hive2hive.core.H2HSession;
+import org.hive2hive.core.exceptions.NoPeerConnectionException;
 import org.hive2hive.core.exceptions.NoSessionException;
+import org.hive2hive.core.file.IFileAgent;
 import org.hive2hive.core.network.NetworkManager;
+import org.hive2hive.core.network.data.ImmutableContentCache;
 import org.hive2hive.processframework.ProcessStep;
 import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
 import org.hive2hive.processframework.exceptions.ProcessExecutionException;
@@ -28,6 +31,7 @@ public class DeleteSessionStep extends ProcessStep<Void> {
 		try {
 			session = networkManager.getSession();
 			networkManager.setSession(null);
+			setCacheFileAgent(null);
 			setRequiresRollback(true);
 		} catch (NoSessionException e) {
 			// session already deleted
@@ -39,8 +43,22 @@ public class DeleteSessionStep extends ProcessStep<Void> {
 	protected Void doRollback() throws InvalidProcessStateException {
 		// restore the session
 		networkManager.setSession(session);
+		setCacheFileAgent(session.getFileAgent());
 		setRequiresRollback(false);
 		return null;
 	}
 
+	/**
+	 * Sets the file agent the cache for immutable content spills to. A logged out user must not receive any spilled content.
+	 */
+	private void setCacheFileAgent(IFileAgent fileAgent) {
+		try {
+			ImmutableContentCache contentCache = networkManager.getDataManager().getContentCache();
+			if (contentCache != null) {
+				contentCache.setFileAgent(fileAgent);
+			}
+		} catch (NoPeerConnectionException e) {
+			// not connected anymore, nothing to spill
+		}
+	}
 }
@@ -0,0 +1,31 @@
+package org.hive2hive.core.processes.logout;
+
+import org.hive2hive.core.network.data.TTLRefreshManager;
+import org.hive2hive.processframework.ProcessStep;
+import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
+import org.hive2hive.processframework.exceptions.ProcessExecutionException;
+import org.hive2hive.processframework.exceptions.ProcessRollbackException;
+
+public class StopTTLRefreshStep extends ProcessStep<Void> {
+
+	private final TTLRefreshManager ttlRefreshManager;
+
+	public StopTTLRefreshStep(TTLRefreshManager ttlRefreshManager) {
+		this.ttlRefreshManager = ttlRefreshManager;
+		this.setName(getClass().getName());
+	}
+
+	@Override
+	protected Void doExecute() throws InvalidProcessStateException, ProcessExecutionException {
+		ttlRefreshManager.stop();
+		setRequiresRollback(true);
+		return null;
+	}
+
+	@Override
+	protected Void doRollback() throws ProcessRollbackException {
+		ttlRefreshManager.start();
+		setRequiresRollback(false);
+		return null;
+	}
+}
@@ -4,7 +4,6 @@ import java.security.KeyPair;
 
 import net.tomp2p.peers.PeerAddress;
 
-import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.network.messages.direct.BaseDirectMessage;
 import org.hive2hive.core.network.userprofiletask.UserProfileTask;
 import org.hive2hive.core.security.IH2HEncryption;
@@ -31,7 +30,7 @@ public abstract class BaseNotificationMessageFactory {
 	 * @return the generated protection keys
 	 */
 	protected KeyPair generateProtectionKeys() {
-		return encryption.generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+		return encryption.generateProtectionKeyPair();
 	}
 
 	/**
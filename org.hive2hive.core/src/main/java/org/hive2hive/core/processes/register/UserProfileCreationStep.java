@@ -35,7 +35,7 @@ public class UserProfileCreationStep extends ProcessStep<Void> {
 
 		// generate keys
 		KeyPair encryptionKeys = encryption.generateRSAKeyPair(H2HConstants.KEYLENGTH_USER_KEYS);
-		KeyPair protectionKeys = encryption.generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+		KeyPair protectionKeys = encryption.generateProtectionKeyPair();
 
 		context.provideUserProfile(new UserProfile(userId, encryptionKeys, protectionKeys));
 		return null;
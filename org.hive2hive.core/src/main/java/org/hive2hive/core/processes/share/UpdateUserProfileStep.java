@@ -3,7 +3,6 @@ package org.hive2hive.core.processes.share;
 import java.io.File;
 import java.security.KeyPair;
 
-import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HSession;
 import org.hive2hive.core.exceptions.AbortModifyException;
 import org.hive2hive.core.exceptions.NoSessionException;
@@ -47,7 +46,7 @@ public class UpdateUserProfileStep extends BaseModifyUserProfileStep {
 	@Override
 	protected void beforeModify() throws ProcessExecutionException {
 		// generate the new key pair only once
-		newProtectionKeys = encryption.generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+		newProtectionKeys = encryption.generateProtectionKeyPair();
 		// make it available for future steps where we change protection keys
 		context.provideNewProtectionKeys(newProtectionKeys);
 	}
@@ -9,7 +9,9 @@ import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 
@@ -39,6 +41,40 @@ public class BCStrongAESEncryption implements IStrongAESEncryption {
 		}
 	}
 
+	@Override
+	public byte[] encryptStrongAESGCM(byte[] data, SecretKey key, byte[] nonce) throws GeneralSecurityException {
+		try {
+			return processAESGCMCipher(true, data, key, nonce);
+		} catch (DataLengthException | IllegalStateException | InvalidCipherTextException e) {
+			throw new GeneralSecurityException("Cannot encrypt the data with AES-GCM 256bit", e);
+		}
+	}
+
+	@Override
+	public byte[] decryptStrongAESGCM(byte[] data, SecretKey key, byte[] nonce) throws GeneralSecurityException {
+		try {
+			return processAESGCMCipher(false, data, key, nonce);
+		} catch (DataLengthException | IllegalStateException | InvalidCipherTextException e) {
+			throw new GeneralSecurityException("Cannot decrypt the data with AES-GCM 256bit", e);
+		}
+	}
+
+	private static byte[] processAESGCMCipher(boolean encrypt, byte[] data, SecretKey key, byte[] nonce)
+			throws DataLengthException, IllegalStateException, InvalidCipherTextException {
+		GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+		cipher.init(encrypt, new AEADParameters(new KeyParameter(key.getEncoded()), EncryptionUtil.GCM_TAG_LENGTH, nonce));
+
+		byte[] output = new byte[cipher.getOutputSize(data.length)];
+		int bytesProcessed = cipher.processBytes(data, 0, data.length, output, 0);
+		bytesProcessed += cipher.doFinal(output, bytesProcessed);
+		if (bytesProcessed == output.length) {
+			return output;
+		}
+		byte[] result = new byte[bytesProcessed];
+		System.arraycopy(output, 0, result, 0, bytesProcessed);
+		return result;
+	}
+
 	private static byte[] processAESCipher(boolean encrypt, byte[] data, SecretKey key, byte[] initVector)
 			throws DataLengthException, IllegalStateException, InvalidCipherTextException {
 		// seat up engine, block cipher mode and padding
@@ -1,9 +1,11 @@
 package org.hive2hive.core.security;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
@@ -13,8 +15,11 @@ import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.RSAKeyGenParameterSpec;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -22,6 +27,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -45,10 +51,31 @@ public final class EncryptionUtil {
 	// This variable is not final in order to swap the provider with another (like SpongyCastle)
 	// public static String SECURITY_PROVIDER = "BC";
 
-	private static final String SINGATURE_ALGORITHM = "SHA1withRSA";
 	// Fermat F4, largest known fermat prime
 	private static final BigInteger RSA_PUBLIC_EXP = new BigInteger("10001", 16);
 	private static final int IV_LENGTH = 16;
+	private static final String AES_TRANSFORMATION = "AES/CBC/PKCS7Padding";
+	private static final String AES_GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int GCM_NONCE_LENGTH = 12;
+	// length of the authentication tag in bits
+	static final int GCM_TAG_LENGTH = 128;
+
+	// the key length allowed by the installed policy does not change at runtime
+	private static final int MAX_ALLOWED_AES_KEY_LENGTH = getMaxAllowedKeyLength();
+
+	// cipher and signature engines are expensive to look up but not thread-safe, keep one per thread
+	private static final ThreadLocal<Map<String, Cipher>> ciphers = new ThreadLocal<Map<String, Cipher>>() {
+		@Override
+		protected Map<String, Cipher> initialValue() {
+			return new HashMap<String, Cipher>();
+		}
+	};
+	private static final ThreadLocal<Map<String, Signature>> signatures = new ThreadLocal<Map<String, Signature>>() {
+		@Override
+		protected Map<String, Signature> initialValue() {
+			return new HashMap<String, Signature>();
+		}
+	};
 
 	public enum AES_KEYLENGTH {
 		BIT_128(128),
@@ -83,6 +110,45 @@ public final class EncryptionUtil {
 		}
 	}
 
+	/**
+	 * The supported signature schemes. Which one is used is determined by the type of the key, such that peers
+	 * can verify signatures of both schemes.
+	 */
+	public enum SIGNATURE_SCHEME {
+		RSA("RSA", "SHA1withRSA"),
+		// much faster signing and smaller keys than RSA at a comparable security level
+		ECDSA_P256("EC", "SHA256withECDSA");
+
+		private final String keyAlgorithm;
+		private final String signatureAlgorithm;
+
+		SIGNATURE_SCHEME(String keyAlgorithm, String signatureAlgorithm) {
+			this.keyAlgorithm = keyAlgorithm;
+			this.signatureAlgorithm = signatureAlgorithm;
+		}
+
+		public String getKeyAlgorithm() {
+			return keyAlgorithm;
+		}
+
+		public String getSignatureAlgorithm() {
+			return signatureAlgorithm;
+		}
+
+		/**
+		 * @param key a private or public key
+		 * @return the scheme the key belongs to
+		 */
+		public static SIGNATURE_SCHEME of(Key key) {
+			String algorithm = key.getAlgorithm();
+			// depending on the provider, elliptic curve keys are called EC or ECDSA
+			if ("EC".equals(algorithm) || "ECDSA".equals(algorithm)) {
+				return ECDSA_P256;
+			}
+			return RSA;
+		}
+	}
+
 	private EncryptionUtil() {
 	}
 
@@ -101,6 +167,34 @@ public final class EncryptionUtil {
 		return iv;
 	}
 
+	/**
+	 * Generates a nonce for the AES-GCM encryption of the n-th part of a content, e.g. a chunk of a file. The
+	 * position makes the nonce unique among the parts, a random prefix makes it unique among repeated
+	 * encryptions of the same part.
+	 * 
+	 * @param position the position of the part
+	 * @return Returns a 12 byte nonce.
+	 */
+	public static byte[] generateGCMNonce(long position) {
+		ByteBuffer nonce = ByteBuffer.allocate(GCM_NONCE_LENGTH);
+		nonce.putInt(new SecureRandom().nextInt());
+		nonce.putLong(position);
+		return nonce.array();
+	}
+
+	/**
+	 * Extracts the position of the part from a nonce generated by {@link #generateGCMNonce(long)}.
+	 * 
+	 * @param nonce the nonce
+	 * @return the position of the part or -1 if the nonce has not been generated for a part
+	 */
+	public static long getGCMNoncePosition(byte[] nonce) {
+		if (nonce == null || nonce.length != GCM_NONCE_LENGTH) {
+			return -1;
+		}
+		return ByteBuffer.wrap(nonce, 4, 8).getLong();
+	}
+
 	/**
 	 * Generates a symmetric AES key of the specified key length.
 	 * 
@@ -140,6 +234,41 @@ public final class EncryptionUtil {
 		return null;
 	}
 
+	/**
+	 * Generates an asymmetric elliptic curve key pair on the NIST P-256 curve. It can only be used for signing
+	 * (see {@link SIGNATURE_SCHEME#ECDSA_P256}).
+	 * 
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @return An asymmetric EC key pair.
+	 */
+	public static KeyPair generateECKeyPair(String securityProvider) {
+		try {
+			KeyPairGenerator gen = KeyPairGenerator.getInstance(SIGNATURE_SCHEME.ECDSA_P256.getKeyAlgorithm(),
+					securityProvider);
+			gen.initialize(new ECGenParameterSpec("secp256r1"), new SecureRandom());
+			return gen.generateKeyPair();
+		} catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException | NoSuchProviderException e) {
+			logger.error("Exception while generation of EC key pair:", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Generates a key pair to sign with, according to the given scheme.
+	 * 
+	 * @param scheme the signature scheme
+	 * @param rsaKeyLength the key length in case of {@link SIGNATURE_SCHEME#RSA}
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @return An asymmetric key pair.
+	 */
+	public static KeyPair generateSignatureKeyPair(SIGNATURE_SCHEME scheme, RSA_KEYLENGTH rsaKeyLength,
+			String securityProvider) {
+		if (scheme == SIGNATURE_SCHEME.ECDSA_P256) {
+			return generateECKeyPair(securityProvider);
+		}
+		return generateRSAKeyPair(rsaKeyLength, securityProvider);
+	}
+
 	/**
 	 * Symmetrically encrypts the provided data by means of the AES algorithm.
 	 * 
@@ -154,11 +283,11 @@ public final class EncryptionUtil {
 	public static byte[] encryptAES(byte[] data, SecretKey secretKey, byte[] initVector, String securityProvider,
 			IStrongAESEncryption strongAES) throws GeneralSecurityException {
 		int keySize = secretKey.getEncoded().length * 8;
-		if (Cipher.getMaxAllowedKeyLength("AES") >= keySize) {
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
 			return processAESCiphering(true, data, secretKey, initVector, securityProvider);
 		} else {
 			logger.trace("Using strong AES encryptor because key has {} bits. Max allowed are {} bits", keySize,
-					Cipher.getMaxAllowedKeyLength("AES"));
+					MAX_ALLOWED_AES_KEY_LENGTH);
 			return strongAES.encryptStrongAES(data, secretKey, initVector);
 		}
 	}
@@ -177,15 +306,169 @@ public final class EncryptionUtil {
 	public static byte[] decryptAES(byte[] data, SecretKey secretKey, byte[] initVector, String securityProvider,
 			IStrongAESEncryption strongAES) throws GeneralSecurityException {
 		int keySize = secretKey.getEncoded().length * 8;
-		if (Cipher.getMaxAllowedKeyLength("AES") >= keySize) {
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
 			return processAESCiphering(false, data, secretKey, initVector, securityProvider);
 		} else {
 			logger.trace("Using strong AES decryptor because key has {} bits. Max allowed are {} bits", keySize,
-					Cipher.getMaxAllowedKeyLength("AES"));
+					MAX_ALLOWED_AES_KEY_LENGTH);
 			return strongAES.decryptStrongAES(data, secretKey, initVector);
 		}
 	}
 
+	/**
+	 * Symmetrically encrypts the remaining bytes of the input buffer by means of the AES algorithm and writes
+	 * the result into the output buffer, without intermediate copies. The output buffer needs at least
+	 * {@link #getAESEncryptedSize(int)} bytes remaining.
+	 * 
+	 * @param input The data to be encrypted, its position is moved to its limit.
+	 * @param output The buffer to write the encrypted data to, its position is moved accordingly.
+	 * @param secretKey The symmetric key with which the data shall be encrypted.
+	 * @param initVector The initialization vector (IV) with which the data shall be encrypted.
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @param strongAES the aes encryption implementation
+	 * @return Returns the number of bytes written.
+	 * @throws GeneralSecurityException in case something goes wrong (e.g. the output buffer is too short)
+	 */
+	public static int encryptAES(ByteBuffer input, ByteBuffer output, SecretKey secretKey, byte[] initVector,
+			String securityProvider, IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		return processAESCiphering(true, input, output, secretKey, initVector, securityProvider, strongAES);
+	}
+
+	/**
+	 * Symmetrically decrypts the remaining bytes of the input buffer by means of the AES algorithm and writes
+	 * the result into the output buffer, without intermediate copies. The output buffer needs at least as
+	 * many bytes remaining as the input buffer.
+	 * 
+	 * @param input The data to be decrypted, its position is moved to its limit.
+	 * @param output The buffer to write the decrypted data to, its position is moved accordingly.
+	 * @param secretKey The symmetric key with which the data shall be decrypted.
+	 * @param initVector The initialization vector (IV) with which the data shall be decrypted.
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @param strongAES the aes encryption implementation
+	 * @return Returns the number of bytes written.
+	 * @throws GeneralSecurityException in case something goes wrong (e.g. the output buffer is too short)
+	 */
+	public static int decryptAES(ByteBuffer input, ByteBuffer output, SecretKey secretKey, byte[] initVector,
+			String securityProvider, IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		return processAESCiphering(false, input, output, secretKey, initVector, securityProvider, strongAES);
+	}
+
+	/**
+	 * Symmetrically encrypts and authenticates the provided data by means of AES in GCM mode. The
+	 * authentication tag is appended to the encrypted data, thus no separate hash is needed to detect
+	 * modifications.
+	 * 
+	 * @param data The data to be encrypted.
+	 * @param secretKey The symmetric key with which the data shall be encrypted.
+	 * @param nonce The nonce (see {@link #generateGCMNonce(long)}), it must never be used twice with the same
+	 *            key.
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @param strongAES the aes encryption implementation
+	 * @return Returns the encrypted data including the authentication tag.
+	 * @throws GeneralSecurityException in case something goes wrong
+	 */
+	public static byte[] encryptAESGCM(byte[] data, SecretKey secretKey, byte[] nonce, String securityProvider,
+			IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		int keySize = secretKey.getEncoded().length * 8;
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
+			byte[] output = new byte[data.length + GCM_TAG_LENGTH / 8];
+			int length = processAESGCMCiphering(true, ByteBuffer.wrap(data), ByteBuffer.wrap(output), secretKey, nonce,
+					securityProvider);
+			return length == output.length ? output : Arrays.copyOf(output, length);
+		} else {
+			return strongAES.encryptStrongAESGCM(data, secretKey, nonce);
+		}
+	}
+
+	/**
+	 * Symmetrically decrypts the provided data by means of AES in GCM mode and verifies the authentication
+	 * tag.
+	 * 
+	 * @param data The data to be decrypted, including the authentication tag.
+	 * @param secretKey The symmetric key with which the data shall be decrypted.
+	 * @param nonce The nonce which has been used for the encryption.
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @param strongAES the aes encryption implementation
+	 * @return Returns the decrypted data.
+	 * @throws GeneralSecurityException in case something goes wrong, e.g. the data has been modified
+	 */
+	public static byte[] decryptAESGCM(byte[] data, SecretKey secretKey, byte[] nonce, String securityProvider,
+			IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		int keySize = secretKey.getEncoded().length * 8;
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
+			byte[] output = new byte[Math.max(0, data.length - GCM_TAG_LENGTH / 8)];
+			int length = processAESGCMCiphering(false, ByteBuffer.wrap(data), ByteBuffer.wrap(output), secretKey, nonce,
+					securityProvider);
+			return length == output.length ? output : Arrays.copyOf(output, length);
+		} else {
+			return strongAES.decryptStrongAESGCM(data, secretKey, nonce);
+		}
+	}
+
+	/**
+	 * Encrypts and authenticates the remaining bytes of the input buffer by means of AES in GCM mode in a
+	 * single pass. The output buffer needs at least 16 bytes more remaining than the input buffer.
+	 * 
+	 * @param input The data to be encrypted, its position is moved to its limit.
+	 * @param output The buffer to write the encrypted data and the tag to, its position is moved accordingly.
+	 * @param secretKey The symmetric key with which the data shall be encrypted.
+	 * @param nonce The nonce, it must never be used twice with the same key.
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @param strongAES the aes encryption implementation
+	 * @return Returns the number of bytes written.
+	 * @throws GeneralSecurityException in case something goes wrong (e.g. the output buffer is too short)
+	 */
+	public static int encryptAESGCM(ByteBuffer input, ByteBuffer output, SecretKey secretKey, byte[] nonce,
+			String securityProvider, IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		int keySize = secretKey.getEncoded().length * 8;
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
+			return processAESGCMCiphering(true, input, output, secretKey, nonce, securityProvider);
+		}
+
+		byte[] data = new byte[input.remaining()];
+		input.get(data);
+		byte[] result = strongAES.encryptStrongAESGCM(data, secretKey, nonce);
+		output.put(result);
+		return result.length;
+	}
+
+	/**
+	 * Decrypts the remaining bytes of the input buffer by means of AES in GCM mode and verifies the
+	 * authentication tag in a single pass.
+	 * 
+	 * @param input The encrypted data including the tag, its position is moved to its limit.
+	 * @param output The buffer to write the decrypted data to, its position is moved accordingly.
+	 * @param secretKey The symmetric key with which the data shall be decrypted.
+	 * @param nonce The nonce which has been used for the encryption.
+	 * @param securityProvider the security provider (e.g. bouncycastle)
+	 * @param strongAES the aes encryption implementation
+	 * @return Returns the number of bytes written.
+	 * @throws GeneralSecurityException in case something goes wrong, e.g. the data has been modified
+	 */
+	public static int decryptAESGCM(ByteBuffer input, ByteBuffer output, SecretKey secretKey, byte[] nonce,
+			String securityProvider, IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		int keySize = secretKey.getEncoded().length * 8;
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
+			return processAESGCMCiphering(false, input, output, secretKey, nonce, securityProvider);
+		}
+
+		byte[] data = new byte[input.remaining()];
+		input.get(data);
+		byte[] result = strongAES.decryptStrongAESGCM(data, secretKey, nonce);
+		output.put(result);
+		return result.length;
+	}
+
+	/**
+	 * Calculates the size of AES encrypted data (including the padding).
+	 * 
+	 * @param dataLength the length of the plain data
+	 * @return the length of the encrypted data
+	 */
+	public static int getAESEncryptedSize(int dataLength) {
+		return (dataLength / IV_LENGTH + 1) * IV_LENGTH;
+	}
+
 	/**
 	 * Asymmetrically encrypts the provided data by means of the RSA algorithm. In order to encrypt the
 	 * content, a public RSA key has to be provided.
@@ -205,7 +488,7 @@ public final class EncryptionUtil {
 	public static byte[] encryptRSA(byte[] data, PublicKey publicKey, String securityProvider)
 			throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
 		try {
-			Cipher cipher = Cipher.getInstance("RSA", securityProvider);
+			Cipher cipher = getCipher("RSA", securityProvider);
 			cipher.init(Cipher.ENCRYPT_MODE, publicKey);
 			return cipher.doFinal(data);
 		} catch (NoSuchAlgorithmException | NoSuchProviderException | NoSuchPaddingException e) {
@@ -233,7 +516,7 @@ public final class EncryptionUtil {
 	public static byte[] decryptRSA(byte[] data, PrivateKey privateKey, String securityProvider)
 			throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
 		try {
-			Cipher cipher = Cipher.getInstance("RSA", securityProvider);
+			Cipher cipher = getCipher("RSA", securityProvider);
 			cipher.init(Cipher.DECRYPT_MODE, privateKey);
 			return cipher.doFinal(data);
 		} catch (NoSuchAlgorithmException | NoSuchProviderException | NoSuchPaddingException e) {
@@ -310,7 +593,8 @@ public final class EncryptionUtil {
 	}
 
 	/**
-	 * Signs the provided data with the specified private key and returns the signature.
+	 * Signs the provided data with the specified private key and returns the signature. The signature
+	 * algorithm depends on the type of the key (see {@link SIGNATURE_SCHEME}).
 	 * 
 	 * @param data The content to be signed.
 	 * @param privateKey The private key used to sign the content.
@@ -322,7 +606,8 @@ public final class EncryptionUtil {
 	public static byte[] sign(byte[] data, PrivateKey privateKey, String securityProvider)
 			throws InvalidKeyException, SignatureException {
 		try {
-			Signature signEngine = Signature.getInstance(SINGATURE_ALGORITHM, securityProvider);
+			Signature signEngine = getSignature(SIGNATURE_SCHEME.of(privateKey).getSignatureAlgorithm(),
+					securityProvider);
 			signEngine.initSign(privateKey);
 			signEngine.update(data);
 			return signEngine.sign();
@@ -334,7 +619,8 @@ public final class EncryptionUtil {
 	}
 
 	/**
-	 * Verifies the provided signature of the provided data with the specified public key.
+	 * Verifies the provided signature of the provided data with the specified public key. The signature
+	 * algorithm depends on the type of the key (see {@link SIGNATURE_SCHEME}).
 	 * 
 	 * @param data The data to be verified.
 	 * @param signature The signature with which the data should be verified.
@@ -347,7 +633,8 @@ public final class EncryptionUtil {
 	public static boolean verify(byte[] data, byte[] signature, PublicKey publicKey, String securityProvider)
 			throws InvalidKeyException, SignatureException {
 		try {
-			Signature signEngine = Signature.getInstance(SINGATURE_ALGORITHM, securityProvider);
+			Signature signEngine = getSignature(SIGNATURE_SCHEME.of(publicKey).getSignatureAlgorithm(),
+					securityProvider);
 			signEngine.initVerify(publicKey);
 			signEngine.update(data);
 			return signEngine.verify(signature);
@@ -364,22 +651,94 @@ public final class EncryptionUtil {
 	 */
 	private static byte[] processAESCiphering(boolean forEncrypting, byte[] data, SecretKey key, byte[] initVector,
 			String securityProvider) throws GeneralSecurityException {
+		Cipher cipher = initAESCipher(forEncrypting, key, initVector, securityProvider);
+
+		// process ciphering, the output size is exact when encrypting
+		byte[] output = new byte[cipher.getOutputSize(data.length)];
+		int bytesProcessed = cipher.doFinal(data, 0, data.length, output, 0);
+		if (bytesProcessed == output.length) {
+			return output;
+		}
+
+		// the padding has been removed
+		return Arrays.copyOf(output, bytesProcessed);
+	}
+
+	private static int processAESCiphering(boolean forEncrypting, ByteBuffer input, ByteBuffer output, SecretKey key,
+			byte[] initVector, String securityProvider, IStrongAESEncryption strongAES) throws GeneralSecurityException {
+		int keySize = key.getEncoded().length * 8;
+		if (MAX_ALLOWED_AES_KEY_LENGTH >= keySize) {
+			Cipher cipher = initAESCipher(forEncrypting, key, initVector, securityProvider);
+			return cipher.doFinal(input, output);
+		}
+
+		// the strong AES implementation only works on arrays
+		byte[] data = new byte[input.remaining()];
+		input.get(data);
+		byte[] result = forEncrypting ? strongAES.encryptStrongAES(data, key, initVector) : strongAES.decryptStrongAES(
+				data, key, initVector);
+		output.put(result);
+		return result.length;
+	}
+
+	private static int processAESGCMCiphering(boolean forEncrypting, ByteBuffer input, ByteBuffer output,
+			SecretKey key, byte[] nonce, String securityProvider) throws GeneralSecurityException {
+		SecretKey keySpec = "AES".equals(key.getAlgorithm()) ? key : new SecretKeySpec(key.getEncoded(), "AES");
+		Cipher cipher = getCipher(AES_GCM_TRANSFORMATION, securityProvider);
+		int encryptMode = forEncrypting ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+		cipher.init(encryptMode, keySpec, new GCMParameterSpec(GCM_TAG_LENGTH, nonce));
+		return cipher.doFinal(input, output);
+	}
+
+	private static Cipher initAESCipher(boolean forEncrypting, SecretKey key, byte[] initVector, String securityProvider)
+			throws GeneralSecurityException {
 		IvParameterSpec ivSpec = new IvParameterSpec(initVector);
-		SecretKeySpec keySpec = new SecretKeySpec(key.getEncoded(), "AES");
-		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding", securityProvider);
+		// e.g. keys derived from a password carry another algorithm name
+		SecretKey keySpec = "AES".equals(key.getAlgorithm()) ? key : new SecretKeySpec(key.getEncoded(), "AES");
+		Cipher cipher = getCipher(AES_TRANSFORMATION, securityProvider);
 		int encryptMode = forEncrypting ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
 		cipher.init(encryptMode, keySpec, ivSpec);
+		return cipher;
+	}
 
-		// process ciphering
-		byte[] output = new byte[cipher.getOutputSize(data.length)];
-
-		int bytesProcessed1 = cipher.update(data, 0, data.length, output, 0);
-		int bytesProcessed2 = cipher.doFinal(output, bytesProcessed1);
+	/**
+	 * Returns the cipher of the current thread. It has to be initialized before every use.
+	 */
+	private static Cipher getCipher(String transformation, String securityProvider) throws NoSuchAlgorithmException,
+			NoSuchProviderException, NoSuchPaddingException {
+		String id = transformation + "@" + securityProvider;
+		Map<String, Cipher> engines = ciphers.get();
+		Cipher cipher = engines.get(id);
+		if (cipher == null) {
+			cipher = Cipher.getInstance(transformation, securityProvider);
+			engines.put(id, cipher);
+		}
+		return cipher;
+	}
 
-		byte[] result = new byte[bytesProcessed1 + bytesProcessed2];
-		System.arraycopy(output, 0, result, 0, result.length);
-		return result;
+	/**
+	 * Returns the signature engine of the current thread. It has to be initialized before every use.
+	 */
+	private static Signature getSignature(String algorithm, String securityProvider) throws NoSuchAlgorithmException,
+			NoSuchProviderException {
+		String id = algorithm + "@" + securityProvider;
+		Map<String, Signature> engines = signatures.get();
+		Signature signature = engines.get(id);
+		if (signature == null) {
+			signature = Signature.getInstance(algorithm, securityProvider);
+			engines.put(id, signature);
+		}
+		return signature;
+	}
 
+	private static int getMaxAllowedKeyLength() {
+		try {
+			return Cipher.getMaxAllowedKeyLength("AES");
+		} catch (NoSuchAlgorithmException e) {
+			logger.error("Cannot determine the maximum AES key length.", e);
+			// the minimum every policy allows
+			return 128;
+		}
 	}
 
 	/**
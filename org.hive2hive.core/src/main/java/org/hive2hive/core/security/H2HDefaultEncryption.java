@@ -15,6 +15,7 @@ import org.hive2hive.core.model.BaseNetworkContent;
 import org.hive2hive.core.model.versioned.EncryptedNetworkContent;
 import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.hive2hive.core.security.EncryptionUtil.SIGNATURE_SCHEME;
 import org.hive2hive.core.serializer.IH2HSerialize;
 
 public class H2HDefaultEncryption implements IH2HEncryption {
@@ -22,6 +23,8 @@ public class H2HDefaultEncryption implements IH2HEncryption {
 	private final IH2HSerialize serializer;
 	private final String securityProvider;
 	private final IStrongAESEncryption strongAES;
+	private final KeyPairPool keyPairPool;
+	private final SIGNATURE_SCHEME protectionScheme;
 
 	/**
 	 * Create a default encryption using bouncy castle as the security provider
@@ -45,9 +48,26 @@ public class H2HDefaultEncryption implements IH2HEncryption {
 	 * @param strongAES the fallback if the AES encryption / decryption has a too long key
 	 */
 	public H2HDefaultEncryption(IH2HSerialize serializer, String securityProvider, IStrongAESEncryption strongAES) {
+		this(serializer, securityProvider, strongAES, H2HConstants.PROTECTION_SIGNATURE_SCHEME);
+	}
+
+	/**
+	 * Create a default encryption using any installed security provider identifier.
+	 * 
+	 * @param serializer the serializer to encode / decode objects
+	 * @param securityProvider the security provider identifier. Note that the provider must be installed
+	 *            separately.
+	 * @param strongAES the fallback if the AES encryption / decryption has a too long key
+	 * @param protectionScheme the signature scheme of the protection keys. All peers of the network should use
+	 *            the same.
+	 */
+	public H2HDefaultEncryption(IH2HSerialize serializer, String securityProvider, IStrongAESEncryption strongAES,
+			SIGNATURE_SCHEME protectionScheme) {
 		this.serializer = serializer;
 		this.securityProvider = securityProvider;
 		this.strongAES = strongAES;
+		this.protectionScheme = protectionScheme;
+		this.keyPairPool = new KeyPairPool(securityProvider);
 	}
 
 	@Override
@@ -75,6 +95,35 @@ public class H2HDefaultEncryption implements IH2HEncryption {
 		return (BaseNetworkContent) serializer.deserialize(decrypted);
 	}
 
+	@Override
+	public EncryptedNetworkContent encryptAESGCM(BaseNetworkContent content, SecretKey aesKey, byte[] nonce)
+			throws IOException, GeneralSecurityException {
+		byte[] serialized = serializer.serialize(content);
+		byte[] encryptedContent = EncryptionUtil.encryptAESGCM(serialized, aesKey, nonce, securityProvider, strongAES);
+
+		EncryptedNetworkContent encryptedNetworkContent = new EncryptedNetworkContent(encryptedContent, nonce);
+		encryptedNetworkContent.setTimeToLive(content.getTimeToLive());
+		return encryptedNetworkContent;
+	}
+
+	@Override
+	public BaseNetworkContent decryptAESGCM(EncryptedNetworkContent content, SecretKey aesKey)
+			throws ClassNotFoundException, IOException, GeneralSecurityException {
+		byte[] decrypted = EncryptionUtil.decryptAESGCM(content.getCipherContent(), aesKey, content.getInitVector(),
+				securityProvider, strongAES);
+		return (BaseNetworkContent) serializer.deserialize(decrypted);
+	}
+
+	@Override
+	public byte[] encryptAESGCM(byte[] content, SecretKey aesKey, byte[] nonce) throws GeneralSecurityException {
+		return EncryptionUtil.encryptAESGCM(content, aesKey, nonce, securityProvider, strongAES);
+	}
+
+	@Override
+	public byte[] decryptAESGCM(byte[] content, SecretKey aesKey, byte[] nonce) throws GeneralSecurityException {
+		return EncryptionUtil.decryptAESGCM(content, aesKey, nonce, securityProvider, strongAES);
+	}
+
 	@Override
 	public HybridEncryptedContent encryptHybrid(BaseNetworkContent content, PublicKey publicKey)
 			throws IOException, GeneralSecurityException {
@@ -132,6 +181,22 @@ public class H2HDefaultEncryption implements IH2HEncryption {
 
 	@Override
 	public KeyPair generateRSAKeyPair(RSA_KEYLENGTH length) {
-		return EncryptionUtil.generateRSAKeyPair(length, securityProvider);
+		return keyPairPool.take(length);
+	}
+
+	@Override
+	public KeyPair generateProtectionKeyPair() {
+		if (protectionScheme == SIGNATURE_SCHEME.RSA) {
+			return keyPairPool.take(H2HConstants.KEYLENGTH_PROTECTION);
+		}
+		// cheap enough to be generated on demand
+		return EncryptionUtil.generateSignatureKeyPair(protectionScheme, H2HConstants.KEYLENGTH_PROTECTION,
+				securityProvider);
+	}
+
+	@Override
+	public void shutdown() {
+		// stops the pre-generation, key pairs are generated on demand afterwards
+		keyPairPool.shutdown();
 	}
 }
@@ -3,13 +3,24 @@ package org.hive2hive.core.security;
 import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
 
 import net.tomp2p.message.RSASignatureCodec;
 
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.util.BigIntegers;
 import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.EncryptionUtil.SIGNATURE_SCHEME;
 
 /**
- * A RSA encoder and decoder for the signature.
+ * A RSA encoder and decoder for the signature. The size of the encoded signature is fixed by the RSA
+ * protection keys. ECDSA signatures (see {@link SIGNATURE_SCHEME#ECDSA_P256}) are shorter and of variable
+ * length, they are encoded as the plain concatenation of r and s and padded with zeros. Like this, both
+ * schemes share the same wire format.
  * 
  * @author Thomas
  * @author Seppi
@@ -20,8 +31,11 @@ public class H2HSignatureCodec extends RSASignatureCodec {
 	// get the default byte count
 	public static final int SIGNATURE_SIZE = H2HConstants.KEYLENGTH_PROTECTION.value() / 8;
 
+	// byte length of r and s of a P-256 signature
+	private static final int EC_INTEGER_LENGTH = 32;
+
 	public H2HSignatureCodec(byte[] encodedData) throws IOException {
-		super(encodedData);
+		super(pad(encodedData));
 	}
 
 	public H2HSignatureCodec(ByteBuf buf) {
@@ -32,4 +46,68 @@ public class H2HSignatureCodec extends RSASignatureCodec {
 	public int signatureSize() {
 		return SIGNATURE_SIZE;
 	}
+
+	/**
+	 * Converts a signature as created by the signature engine of the given scheme into the encoded form.
+	 * 
+	 * @param signature the signature
+	 * @param scheme the scheme of the signing key
+	 * @return the encoded signature
+	 * @throws IOException if the signature is malformed
+	 */
+	public static byte[] encode(byte[] signature, SIGNATURE_SCHEME scheme) throws IOException {
+		if (scheme != SIGNATURE_SCHEME.ECDSA_P256) {
+			return signature;
+		}
+
+		try {
+			// DER sequence of r and s
+			ASN1Sequence sequence = ASN1Sequence.getInstance(signature);
+			BigInteger r = ASN1Integer.getInstance(sequence.getObjectAt(0)).getValue();
+			BigInteger s = ASN1Integer.getInstance(sequence.getObjectAt(1)).getValue();
+
+			byte[] encoded = new byte[2 * EC_INTEGER_LENGTH];
+			System.arraycopy(BigIntegers.asUnsignedByteArray(EC_INTEGER_LENGTH, r), 0, encoded, 0, EC_INTEGER_LENGTH);
+			System.arraycopy(BigIntegers.asUnsignedByteArray(EC_INTEGER_LENGTH, s), 0, encoded, EC_INTEGER_LENGTH,
+					EC_INTEGER_LENGTH);
+			return encoded;
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed ECDSA signature", e);
+		}
+	}
+
+	/**
+	 * Converts an encoded signature into the form the signature engine of the given scheme expects.
+	 * 
+	 * @param encoded the encoded signature, possibly padded
+	 * @param scheme the scheme of the verifying key
+	 * @return the signature
+	 * @throws IOException if the signature is malformed
+	 */
+	public static byte[] decode(byte[] encoded, SIGNATURE_SCHEME scheme) throws IOException {
+		if (scheme != SIGNATURE_SCHEME.ECDSA_P256) {
+			return encoded;
+		} else if (encoded.length < 2 * EC_INTEGER_LENGTH) {
+			throw new IOException("ECDSA signature is too short");
+		}
+		for (int i = 2 * EC_INTEGER_LENGTH; i < encoded.length; i++) {
+			// else the same signature would have several valid encodings
+			if (encoded[i] != 0) {
+				throw new IOException("ECDSA signature has a non-zero padding");
+			}
+		}
+
+		BigInteger r = new BigInteger(1, Arrays.copyOfRange(encoded, 0, EC_INTEGER_LENGTH));
+		BigInteger s = new BigInteger(1, Arrays.copyOfRange(encoded, EC_INTEGER_LENGTH, 2 * EC_INTEGER_LENGTH));
+		return new DERSequence(new ASN1Encodable[] { new ASN1Integer(r), new ASN1Integer(s) }).getEncoded();
+	}
+
+	private static byte[] pad(byte[] encodedData) throws IOException {
+		if (encodedData.length == SIGNATURE_SIZE) {
+			return encodedData;
+		} else if (encodedData.length > SIGNATURE_SIZE) {
+			throw new IOException("Signature is longer than " + SIGNATURE_SIZE + " bytes");
+		}
+		return Arrays.copyOf(encodedData, SIGNATURE_SIZE);
+	}
 }
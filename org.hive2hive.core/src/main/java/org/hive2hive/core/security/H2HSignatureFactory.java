@@ -18,11 +18,14 @@ import net.tomp2p.connection.SignatureFactory;
 import net.tomp2p.message.SignatureCodec;
 import net.tomp2p.p2p.PeerBuilder;
 
+import org.hive2hive.core.security.EncryptionUtil.SIGNATURE_SCHEME;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * The signature is done with SHA1withRSA.
+ * The signature is done with SHA1withRSA or, for elliptic curve keys, with SHA256withECDSA (see
+ * {@link SIGNATURE_SCHEME}). The scheme is chosen by the type of the key, such that peers verify content of
+ * both schemes.
  *
  * @author Seppi
  * @author Nico
@@ -35,9 +38,9 @@ public class H2HSignatureFactory implements SignatureFactory {
 	/**
 	 * @return The signature mechanism
 	 */
-	private Signature signatureInstance() {
+	private Signature signatureInstance(SIGNATURE_SCHEME scheme) {
 		try {
-			return Signature.getInstance("SHA1withRSA");
+			return Signature.getInstance(scheme.getSignatureAlgorithm());
 		} catch (NoSuchAlgorithmException e) {
 			logger.error("Could not find signature algorithm:", e);
 			return null;
@@ -48,8 +51,16 @@ public class H2HSignatureFactory implements SignatureFactory {
 	public PublicKey decodePublicKey(final byte[] me) {
 		X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(me);
 		try {
-			KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-			return keyFactory.generatePublic(pubKeySpec);
+			return KeyFactory.getInstance(SIGNATURE_SCHEME.RSA.getKeyAlgorithm()).generatePublic(pubKeySpec);
+		} catch (NoSuchAlgorithmException e) {
+			logger.error("Could not find decoding algorithm:", e);
+			return null;
+		} catch (InvalidKeySpecException e) {
+			// not an RSA key, try the other scheme
+		}
+
+		try {
+			return KeyFactory.getInstance(SIGNATURE_SCHEME.ECDSA_P256.getKeyAlgorithm()).generatePublic(pubKeySpec);
 		} catch (NoSuchAlgorithmException e) {
 			logger.error("Could not find decoding algorithm:", e);
 			return null;
@@ -91,7 +102,8 @@ public class H2HSignatureFactory implements SignatureFactory {
 	@Override
 	public SignatureCodec sign(PrivateKey privateKey, ByteBuffer[] byteBuffers) throws InvalidKeyException,
 			SignatureException, IOException {
-		Signature signature = signatureInstance();
+		SIGNATURE_SCHEME scheme = SIGNATURE_SCHEME.of(privateKey);
+		Signature signature = signatureInstance(scheme);
 		signature.initSign(privateKey);
 		int len = byteBuffers.length;
 		for (int i = 0; i < len; i++) {
@@ -99,7 +111,7 @@ public class H2HSignatureFactory implements SignatureFactory {
 			signature.update(buffer);
 		}
 
-		byte[] signatureData = signature.sign();
+		byte[] signatureData = H2HSignatureCodec.encode(signature.sign(), scheme);
 		SignatureCodec decodedSignature = new H2HSignatureCodec(signatureData);
 		return decodedSignature;
 	}
@@ -107,7 +119,8 @@ public class H2HSignatureFactory implements SignatureFactory {
 	@Override
 	public boolean verify(PublicKey publicKey, ByteBuffer[] byteBuffers, SignatureCodec signatureCodec)
 			throws SignatureException, InvalidKeyException {
-		Signature signature = signatureInstance();
+		SIGNATURE_SCHEME scheme = SIGNATURE_SCHEME.of(publicKey);
+		Signature signature = signatureInstance(scheme);
 		signature.initVerify(publicKey);
 		int len = byteBuffers.length;
 		for (int i = 0; i < len; i++) {
@@ -115,14 +128,26 @@ public class H2HSignatureFactory implements SignatureFactory {
 			signature.update(buffer);
 		}
 
-		byte[] signatureReceived = signatureCodec.encode();
-		return signature.verify(signatureReceived);
+		try {
+			byte[] signatureReceived = H2HSignatureCodec.decode(signatureCodec.encode(), scheme);
+			return signature.verify(signatureReceived);
+		} catch (IOException e) {
+			logger.warn("Received a malformed signature:", e);
+			return false;
+		}
 	}
 
+	/**
+	 * The caller verifies the returned signature against the encoded signature itself, which only works for
+	 * RSA keys.
+	 */
 	@Override
 	public Signature update(PublicKey receivedPublicKey, ByteBuffer[] byteBuffers) throws InvalidKeyException,
 			SignatureException {
-		Signature signature = signatureInstance();
+		if (SIGNATURE_SCHEME.of(receivedPublicKey) != SIGNATURE_SCHEME.RSA) {
+			throw new InvalidKeyException("Only RSA keys can be used to sign messages");
+		}
+		Signature signature = signatureInstance(SIGNATURE_SCHEME.RSA);
 		signature.initVerify(receivedPublicKey);
 		int arrayLength = byteBuffers.length;
 		for (int i = 0; i < arrayLength; i++) {
@@ -49,6 +49,60 @@ public interface IH2HEncryption {
 	BaseNetworkContent decryptAES(EncryptedNetworkContent content, SecretKey aesKey)
 			throws ClassNotFoundException, IOException, GeneralSecurityException;
 
+	/**
+	 * Symmetrically encrypts and authenticates content inheriting from {@link BaseNetworkContent} by means of
+	 * AES in GCM mode. The content first gets serialized, then encrypted.
+	 * 
+	 * @param content the content to be encrypted. Can be of any type that extends {@link BaseNetworkContent}.
+	 * @param aesKey The symmetric key with which the content will be encrypted.
+	 * @param nonce The nonce, it must never be used twice with the same key (see
+	 *            {@link EncryptionUtil#generateGCMNonce(long)}).
+	 * @return EncryptedContent which contains the encrypted byte[] content including the authentication tag
+	 *         and the nonce as initialization vector.
+	 * @throws IOException if the data cannot be processed
+	 * @throws GeneralSecurityException if the data cannot be encrypted for any reason.
+	 */
+	EncryptedNetworkContent encryptAESGCM(BaseNetworkContent content, SecretKey aesKey, byte[] nonce)
+			throws IOException, GeneralSecurityException;
+
+	/**
+	 * Symmetrically decrypts a prior content encrypted by {@link #encryptAESGCM(BaseNetworkContent, SecretKey, byte[])}
+	 * and verifies that it has not been modified. The content gets deserialized after the decryption.
+	 * 
+	 * @param content The EncryptedContent to be decrypted.
+	 * @param aesKey The symmetric key with which the content will be decrypted.
+	 * @return decrypted object
+	 * @throws IOException if the data cannot be processed
+	 * @throws ClassNotFoundException if the decrypted data cannot be cast to the target class
+	 * @throws GeneralSecurityException if the data cannot be decrypted or has been modified.
+	 */
+	BaseNetworkContent decryptAESGCM(EncryptedNetworkContent content, SecretKey aesKey)
+			throws ClassNotFoundException, IOException, GeneralSecurityException;
+
+	/**
+	 * Symmetrically encrypts and authenticates any content that is already serialized by means of AES in GCM
+	 * mode.
+	 * 
+	 * @param content the content to be encrypted.
+	 * @param aesKey The symmetric key with which the content will be encrypted.
+	 * @param nonce The nonce, it must never be used twice with the same key.
+	 * @return the encrypted content including the authentication tag
+	 * @throws GeneralSecurityException if the data cannot be encrypted for any reason.
+	 */
+	byte[] encryptAESGCM(byte[] content, SecretKey aesKey, byte[] nonce) throws GeneralSecurityException;
+
+	/**
+	 * Symmetrically decrypts any content encrypted by {@link #encryptAESGCM(byte[], SecretKey, byte[])} and
+	 * verifies that it has not been modified.
+	 * 
+	 * @param content the encrypted content including the authentication tag
+	 * @param aesKey The symmetric key with which the content will be decrypted.
+	 * @param nonce The nonce used for the encryption
+	 * @return decrypted content in the raw format
+	 * @throws GeneralSecurityException if the data cannot be decrypted or has been modified.
+	 */
+	byte[] decryptAESGCM(byte[] content, SecretKey aesKey, byte[] nonce) throws GeneralSecurityException;
+
 	/**
 	 * Asymmetrically encrypts content inheriting from {@link BaseNetworkContent}. A default key length will
 	 * be used.
@@ -100,10 +154,25 @@ public interface IH2HEncryption {
 			throws ClassNotFoundException, IOException, GeneralSecurityException;
 
 	/**
-	 * Generates an RSA keypair using the correct security provider
+	 * Generates an RSA keypair using the correct security provider. Implementations may return a key pair
+	 * which has been generated in advance, but never the same one twice.
 	 * 
 	 * @param length the length of the key
 	 * @return an RSA keypair
 	 */
 	KeyPair generateRSAKeyPair(RSA_KEYLENGTH length);
+
+	/**
+	 * Generates a keypair to protect content in the DHT with. The signature scheme of the keys is configured
+	 * per network, such that all peers are able to verify them.
+	 * 
+	 * @return a keypair that can be used for signing only
+	 */
+	KeyPair generateProtectionKeyPair();
+
+	/**
+	 * Releases the resources held in the background (e.g. threads generating key pairs in advance). Called
+	 * when the node disconnects. The encryption must remain usable afterwards, since it may be shared.
+	 */
+	void shutdown();
 }
\ No newline at end of file
@@ -34,4 +34,26 @@ public interface IStrongAESEncryption {
 	 * @throws GeneralSecurityException if the data cannot be decrypted for any reason.
 	 */
 	byte[] decryptStrongAES(byte[] data, SecretKey key, byte[] initVector) throws GeneralSecurityException;
+
+	/**
+	 * Encrypt and authenticate the data with a large AES key in GCM mode
+	 * 
+	 * @param data the data
+	 * @param key the secret key
+	 * @param nonce the nonce, must not be used twice with the same key
+	 * @return the encrypted data, followed by the authentication tag
+	 * @throws GeneralSecurityException if the data cannot be encrypted for any reason.
+	 */
+	byte[] encryptStrongAESGCM(byte[] data, SecretKey key, byte[] nonce) throws GeneralSecurityException;
+
+	/**
+	 * Decrypt and verify the data with a large AES key in GCM mode
+	 * 
+	 * @param data the encrypted data, followed by the authentication tag
+	 * @param key the secret key
+	 * @param nonce the nonce used for the encryption
+	 * @return the decrypted data
+	 * @throws GeneralSecurityException if the data cannot be decrypted or has been modified.
+	 */
+	byte[] decryptStrongAESGCM(byte[] data, SecretKey key, byte[] nonce) throws GeneralSecurityException;
 }
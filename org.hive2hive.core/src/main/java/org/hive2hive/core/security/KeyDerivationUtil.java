@@ -0,0 +1,143 @@
+package org.hive2hive.core.security;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+
+/**
+ * Derives RSA key pairs deterministically from a short seed. This allows to store only the seed and the public
+ * key instead of a full key pair (see {@link H2HConstants#DERIVED_FILE_KEYS}). Deriving is as expensive as
+ * generating a key pair, thus derived key pairs are cached.<br>
+ * <b>Important:</b> The derivation depends on the key generator of the security provider, therefore always
+ * <code>BouncyCastle</code> is used.
+ */
+public final class KeyDerivationUtil {
+
+	private static final int SEED_LENGTH = 32;
+	// Fermat F4, same as for generated key pairs
+	private static final BigInteger RSA_PUBLIC_EXP = new BigInteger("10001", 16);
+
+	@SuppressWarnings("serial")
+	private static final Map<ByteBuffer, KeyPair> cache = Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, KeyPair>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, KeyPair> eldest) {
+			return size() > H2HConstants.DERIVED_KEYS_CACHE_SIZE;
+		}
+	});
+
+	private KeyDerivationUtil() {
+		// only static methods
+	}
+
+	/**
+	 * Generates a new random seed.
+	 *
+	 * @return the seed
+	 */
+	public static byte[] generateSeed() {
+		byte[] seed = new byte[SEED_LENGTH];
+		new SecureRandom().nextBytes(seed);
+		return seed;
+	}
+
+	/**
+	 * Derives the RSA key pair of the given seed. The same seed and key length always result in the same key
+	 * pair.
+	 *
+	 * @param seed the secret seed
+	 * @param keyLength the length of the RSA keys
+	 * @return the derived key pair
+	 * @throws GeneralSecurityException if the key pair cannot be generated
+	 */
+	public static KeyPair deriveRSAKeyPair(byte[] seed, RSA_KEYLENGTH keyLength) throws GeneralSecurityException {
+		ByteBuffer cacheKey = ByteBuffer.allocate(seed.length + 4).put(seed).putInt(keyLength.value());
+		cacheKey.flip();
+
+		KeyPair keyPair = cache.get(cacheKey);
+		if (keyPair == null) {
+			if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+				Security.addProvider(new BouncyCastleProvider());
+			}
+
+			KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+			gen.initialize(new RSAKeyGenParameterSpec(keyLength.value(), RSA_PUBLIC_EXP), new DeterministicRandom(seed,
+					keyLength.value()));
+			keyPair = gen.generateKeyPair();
+			cache.put(cacheKey, keyPair);
+		}
+		return keyPair;
+	}
+
+	/**
+	 * Random number generator producing a SHA-256 based stream of the seed.
+	 */
+	private static class DeterministicRandom extends SecureRandom {
+
+		private static final long serialVersionUID = 4106785134596003520L;
+
+		private final byte[] seed;
+		private final int keyLength;
+		private long counter = 0;
+		private byte[] block = new byte[0];
+		private int position = 0;
+
+		public DeterministicRandom(byte[] seed, int keyLength) {
+			this.seed = seed;
+			this.keyLength = keyLength;
+		}
+
+		@Override
+		public synchronized void nextBytes(byte[] bytes) {
+			for (int i = 0; i < bytes.length; i++) {
+				if (position == block.length) {
+					nextBlock();
+				}
+				bytes[i] = block[position++];
+			}
+		}
+
+		@Override
+		public byte[] generateSeed(int numBytes) {
+			byte[] bytes = new byte[numBytes];
+			nextBytes(bytes);
+			return bytes;
+		}
+
+		@Override
+		public void setSeed(byte[] seed) {
+			// ignore, the stream must only depend on the initial seed
+		}
+
+		@Override
+		public void setSeed(long seed) {
+			// ignore, the stream must only depend on the initial seed
+		}
+
+		private void nextBlock() {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				digest.update(seed);
+				digest.update(ByteBuffer.allocate(12).putInt(keyLength).putLong(counter++).array());
+				block = digest.digest();
+				position = 0;
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available.", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package org.hive2hive.core.security;
+
+import java.security.KeyPair;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-generates RSA key pairs on background threads, such that e.g. adding a file does not have to wait for
+ * the (expensive) key generation. A key length is only pooled after it has been requested once. The depth of
+ * each pool adapts to the consumption: it doubles whenever a request finds the pool empty (up to
+ * {@link H2HConstants#KEY_PAIR_POOL_MAX_DEPTH}) and halves if no key pair has been taken for
+ * {@link H2HConstants#KEY_PAIR_POOL_IDLE_MS}.
+ */
+public class KeyPairPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+	private final String securityProvider;
+	private final int maxDepth;
+	private final long idleMs;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentMap<RSA_KEYLENGTH, Pool> pools = new ConcurrentHashMap<RSA_KEYLENGTH, Pool>();
+
+	public KeyPairPool(String securityProvider) {
+		this(securityProvider, H2HConstants.KEY_PAIR_POOL_MAX_DEPTH, H2HConstants.KEY_PAIR_POOL_IDLE_MS);
+	}
+
+	/**
+	 * @param securityProvider the provider to generate the key pairs with
+	 * @param maxDepth the maximum number of pre-generated key pairs per key length, 0 disables the pool
+	 * @param idleMs the time without consumption after which the depth shrinks again
+	 */
+	public KeyPairPool(String securityProvider, int maxDepth, long idleMs) {
+		this.securityProvider = securityProvider;
+		this.maxDepth = maxDepth;
+		this.idleMs = idleMs;
+
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "KeyPair-Pool");
+						thread.setDaemon(true);
+						// don't compete with the foreground work
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+		// the threads are only kept while there is something to generate
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Takes a pre-generated key pair or generates one if the pool is empty. The pool is refilled in the
+	 * background.
+	 *
+	 * @param length the length of the key
+	 * @return a fresh RSA key pair or <code>null</code> if it cannot be generated
+	 */
+	public KeyPair take(RSA_KEYLENGTH length) {
+		if (maxDepth <= 0) {
+			return generate(length);
+		}
+
+		Pool pool = pools.get(length);
+		if (pool == null) {
+			pools.putIfAbsent(length, new Pool(length));
+			pool = pools.get(length);
+		}
+
+		KeyPair keyPair = pool.take();
+		pool.refill();
+		if (keyPair == null) {
+			keyPair = generate(length);
+		}
+		return keyPair;
+	}
+
+	/**
+	 * @param length the length of the key
+	 * @return the number of key pairs which are ready to be taken
+	 */
+	int getAvailable(RSA_KEYLENGTH length) {
+		Pool pool = pools.get(length);
+		return pool == null ? 0 : pool.keys.size();
+	}
+
+	/**
+	 * @param length the length of the key
+	 * @return the number of key pairs the pool currently aims at
+	 */
+	int getDepth(RSA_KEYLENGTH length) {
+		Pool pool = pools.get(length);
+		return pool == null ? 0 : pool.depth.get();
+	}
+
+	/**
+	 * Stops the background generation and discards all pre-generated key pairs
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		pools.clear();
+	}
+
+	private KeyPair generate(RSA_KEYLENGTH length) {
+		return EncryptionUtil.generateRSAKeyPair(length, securityProvider);
+	}
+
+	private class Pool implements Runnable {
+
+		private final RSA_KEYLENGTH length;
+		private final BlockingQueue<KeyPair> keys = new LinkedBlockingQueue<KeyPair>();
+		private final AtomicInteger depth = new AtomicInteger(1);
+		private final AtomicBoolean refilling = new AtomicBoolean(false);
+		private volatile long lastTake = System.currentTimeMillis();
+
+		public Pool(RSA_KEYLENGTH length) {
+			this.length = length;
+		}
+
+		public KeyPair take() {
+			KeyPair keyPair = keys.poll();
+			long now = System.currentTimeMillis();
+			if (keyPair == null) {
+				// consumed faster than refilled
+				int current = depth.get();
+				if (current < maxDepth && depth.compareAndSet(current, Math.min(current * 2, maxDepth))) {
+					logger.debug("Increased the pool depth of {} to {}.", length, depth.get());
+				}
+			} else if (now - lastTake > idleMs) {
+				int current = depth.get();
+				if (current > 1 && depth.compareAndSet(current, current / 2)) {
+					logger.debug("Decreased the pool depth of {} to {}.", length, depth.get());
+				}
+			}
+			lastTake = now;
+			return keyPair;
+		}
+
+		public void refill() {
+			if (keys.size() < depth.get() && refilling.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					// shut down
+					refilling.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (keys.size() < depth.get() && !executor.isShutdown()) {
+					KeyPair keyPair = generate(length);
+					if (keyPair == null) {
+						return;
+					}
+					keys.offer(keyPair);
+				}
+			} finally {
+				refilling.set(false);
+			}
+			// a key pair may have been taken in the meantime
+			refill();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.hive2hive.core.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.hive2hive.core.model.BaseNetworkContent;
+import org.hive2hive.core.model.CompressedContent;
+
+/**
+ * Compresses serialized content before it gets encrypted. Encrypted data cannot be compressed anymore, while
+ * the serialized user profile is very redundant (public key encodings, names, permissions).
+ */
+public class CompressionUtil {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private CompressionUtil() {
+		// only static methods
+	}
+
+	/**
+	 * Serializes and compresses the given content.
+	 *
+	 * @param content the content to compress
+	 * @param serializer the serializer to use
+	 * @return the compressed content, having the same time to live
+	 * @throws IOException if the content cannot be serialized
+	 */
+	public static CompressedContent compress(BaseNetworkContent content, IH2HSerialize serializer) throws IOException {
+		byte[] serialized = serializer.serialize(content);
+		return new CompressedContent(CompressedContent.FORMAT_DEFLATE, deflate(serialized), content.getTimeToLive());
+	}
+
+	/**
+	 * Unwraps the content if it has been compressed, else the content is returned as it is.
+	 *
+	 * @param content the possibly compressed content
+	 * @param serializer the serializer to use
+	 * @return the uncompressed content
+	 * @throws IOException if the format is unknown or the data is corrupt
+	 * @throws ClassNotFoundException if the decompressed data cannot be deserialized
+	 */
+	public static Serializable decompress(Serializable content, IH2HSerialize serializer) throws IOException,
+			ClassNotFoundException {
+		if (!(content instanceof CompressedContent)) {
+			// stored uncompressed
+			return content;
+		}
+
+		CompressedContent compressed = (CompressedContent) content;
+		if (compressed.getFormat() != CompressedContent.FORMAT_DEFLATE) {
+			throw new IOException(String.format("Unsupported compression format %s.", compressed.getFormat()));
+		}
+		return (Serializable) serializer.deserialize(inflate(compressed.getData()));
+	}
+
+	public static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(data.length / 4, 64));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	public static byte[] inflate(byte[] data) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!inflater.finished()) {
+				int length = inflater.inflate(buffer);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Compressed data is truncated.");
+				}
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IOException("Compressed data is corrupt.", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
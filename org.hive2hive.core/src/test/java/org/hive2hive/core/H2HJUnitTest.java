@@ -6,6 +6,9 @@ import java.security.Security;
 import java.util.Random;
 import java.util.UUID;
 
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.hive2hive.core.security.EncryptionUtil;
 import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
@@ -135,6 +138,22 @@ public class H2HJUnitTest {
 		return UUID.randomUUID().toString();
 	}
 
+	/**
+	 * @return a random key in the chunk domain with the zero version key
+	 */
+	public static Number640 randomKey() {
+		return randomKey(Number160.ZERO);
+	}
+
+	/**
+	 * @param versionKey the version key
+	 * @return a random key in the chunk domain with the given version key
+	 */
+	public static Number640 randomKey(Number160 versionKey) {
+		return new Number640(Number160.createHash(randomString()), Number160.ZERO,
+				Number160.createHash(H2HConstants.FILE_CHUNK), versionKey);
+	}
+
 	public static UserCredentials generateRandomCredentials() {
 		return new UserCredentials(randomString(), randomString(), randomString());
 	}
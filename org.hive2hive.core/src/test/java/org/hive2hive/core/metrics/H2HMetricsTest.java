@@ -0,0 +1,111 @@
+package org.hive2hive.core.metrics;
+
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.hive2hive.core.H2HJUnitTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LatencyHistogram} and the {@link H2HMetrics} registry.
+ */
+public class H2HMetricsTest extends H2HJUnitTest {
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = H2HMetricsTest.class;
+		beforeClass();
+	}
+
+	@AfterClass
+	public static void endTest() {
+		afterClass();
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		for (long micros = 0; micros < 1000000; micros += 7) {
+			int index = LatencyHistogram.index(micros);
+			Assert.assertTrue(LatencyHistogram.upperBound(index) >= micros);
+			if (index > 0) {
+				Assert.assertTrue(LatencyHistogram.upperBound(index - 1) < micros);
+			}
+		}
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		// 1 ms to 100 ms
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+		Assert.assertEquals(100, histogram.getMaxMillis(), 0.001);
+		// the buckets are accurate to about 6%
+		Assert.assertEquals(50, histogram.getPercentileMillis(0.5), 50 * 0.07);
+		Assert.assertEquals(90, histogram.getPercentileMillis(0.9), 90 * 0.07);
+		Assert.assertEquals(99, histogram.getPercentileMillis(0.99), 99 * 0.07);
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getPercentileMillis(0.99), 0);
+	}
+
+	@Test
+	public void testSnapshot() {
+		H2HMetrics metrics = new H2HMetrics(true);
+		long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10);
+		metrics.recordLatency("dht.put", "USER_PROFILE", Outcome.OK, start);
+		metrics.increment("dht.put", "USER_PROFILE", Outcome.RETRY);
+		metrics.increment("dht.put", "USER_PROFILE", Outcome.RETRY);
+		metrics.registerGauge("gauge", new IGauge() {
+			@Override
+			public double getValue() {
+				return 42;
+			}
+		});
+
+		SortedMap<String, Double> snapshot = metrics.snapshot();
+		Assert.assertEquals(1, snapshot.get("dht.put{USER_PROFILE,OK}.count"), 0);
+		Assert.assertTrue(snapshot.get("dht.put{USER_PROFILE,OK}.p99") >= 10);
+		Assert.assertTrue(snapshot.containsKey("dht.put{USER_PROFILE,OK}.p50"));
+		Assert.assertTrue(snapshot.containsKey("dht.put{USER_PROFILE,OK}.max"));
+		Assert.assertEquals(2, snapshot.get("dht.put{USER_PROFILE,RETRY}"), 0);
+		Assert.assertEquals(42, snapshot.get("gauge"), 0);
+
+		metrics.reset();
+		snapshot = metrics.snapshot();
+		Assert.assertEquals(0, snapshot.get("dht.put{USER_PROFILE,OK}.count"), 0);
+		Assert.assertEquals(0, snapshot.get("dht.put{USER_PROFILE,RETRY}"), 0);
+	}
+
+	@Test
+	public void testDisabled() {
+		H2HMetrics metrics = new H2HMetrics(false);
+		metrics.recordLatency("dht.get", "USER_PROFILE", Outcome.OK, System.nanoTime());
+		metrics.increment("dht.get", "USER_PROFILE", Outcome.FAIL);
+		Assert.assertTrue(metrics.snapshot().isEmpty());
+
+		metrics.setEnabled(true);
+		metrics.increment("dht.get", "USER_PROFILE", Outcome.FAIL);
+		Assert.assertEquals(1, metrics.snapshot().size());
+	}
+
+	@Test
+	public void testJMX() throws Exception {
+		H2HMetrics metrics = new H2HMetrics(true);
+		metrics.increment("message.send", "TestMessage", Outcome.OK);
+		metrics.registerJMX("node-" + randomString());
+		try {
+			Assert.assertEquals(1, metrics.getValues().size());
+		} finally {
+			metrics.unregisterJMX();
+		}
+	}
+}
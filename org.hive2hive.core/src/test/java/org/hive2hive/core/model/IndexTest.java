@@ -1,6 +1,8 @@
 package org.hive2hive.core.model;
 
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HJUnitTest;
@@ -158,6 +160,90 @@ public class IndexTest extends H2HJUnitTest {
 		Assert.assertEquals(null, root.getChildByName(""));
 	}
 
+	@Test
+	public void testLookupAfterModification() {
+		// case insensitive
+		Assert.assertEquals(dir1, root.getChildByName("1D"));
+
+		// rename
+		child1.setName("renamed");
+		Assert.assertNull(root.getChildByName("1f1"));
+		Assert.assertEquals(child1, root.getChildByName("renamed"));
+
+		// move
+		root.removeChild(child2);
+		child2.setParent(dir2);
+		dir2.addChild(child2);
+		Assert.assertNull(root.getChildByName("1f2"));
+		Assert.assertEquals(child2, dir2.getChildByName("1f2"));
+
+		// lookup by id
+		KeyPair otherKeys = generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE);
+		FolderIndex otherDir = new FolderIndex(dir4, otherKeys, "5d");
+		Assert.assertEquals(otherDir, root.getIndexById(otherKeys.getPublic()));
+		FileIndex otherFile = new FileIndex(otherDir, generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "6f", null);
+		Assert.assertEquals(otherFile, root.getIndexById(otherFile.getFilePublicKey()));
+
+		dir4.removeChild(otherDir);
+		Assert.assertNull(root.getIndexById(otherKeys.getPublic()));
+		Assert.assertNull(root.getIndexById(otherFile.getFilePublicKey()));
+	}
+
+	@Test
+	public void testFullPathAfterModification() {
+		String sep = FileUtil.getFileSep();
+		Assert.assertEquals("1d" + sep + "3d" + sep + "4d" + sep, dir4.getFullPath());
+
+		// rename a parent
+		dir1.setName("renamed");
+		Assert.assertEquals("renamed" + sep + "3d" + sep + "4d" + sep, dir4.getFullPath());
+		Assert.assertEquals("renamed" + sep + "2f", child3.getFullPath());
+
+		// move a parent
+		dir1.removeChild(dir3);
+		dir3.setParent(dir2);
+		dir2.addChild(dir3);
+		Assert.assertEquals("renamed" + sep + "2d" + sep + "3d" + sep + "4d" + sep, dir4.getFullPath());
+	}
+
+	@Test
+	public void testWalk() {
+		final List<Index> preorder = new ArrayList<Index>();
+		Assert.assertTrue(root.walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				preorder.add(index);
+				return true;
+			}
+		}));
+		Assert.assertEquals(8, preorder.size());
+		Assert.assertEquals(root, preorder.get(0));
+		Assert.assertTrue(preorder.indexOf(dir3) < preorder.indexOf(dir4));
+
+		final List<Index> postorder = new ArrayList<Index>();
+		root.walkPostorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				postorder.add(index);
+				return true;
+			}
+		});
+		Assert.assertEquals(8, postorder.size());
+		Assert.assertEquals(root, postorder.get(7));
+		Assert.assertTrue(postorder.indexOf(dir4) < postorder.indexOf(dir3));
+
+		// stop at the first folder below the root
+		final List<Index> visited = new ArrayList<Index>();
+		Assert.assertFalse(dir1.walkPreorder(new IIndexVisitor() {
+			@Override
+			public boolean visit(Index index) {
+				visited.add(index);
+				return index == dir1;
+			}
+		}));
+		Assert.assertEquals(2, visited.size());
+	}
+
 	@Test
 	public void testPermissions() {
 		Assert.assertTrue(root.getCalculatedUserList().contains(userId));
@@ -0,0 +1,167 @@
+package org.hive2hive.core.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.serializer.FSTSerializer;
+import org.hive2hive.core.utils.NetworkTestUtil;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DigestReplication} between the peers of a small network, where every peer is a replica of
+ * every location key.
+ */
+public class DigestReplicationTest extends H2HJUnitTest {
+
+	private static final int NETWORK_SIZE = 3;
+
+	private List<NetworkManager> network;
+	private List<DigestReplication> replications;
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = DigestReplicationTest.class;
+		beforeClass();
+	}
+
+	@Before
+	public void createNetwork() {
+		network = NetworkTestUtil.createNetwork(NETWORK_SIZE);
+		replications = new ArrayList<DigestReplication>();
+		FSTSerializer serializer = new FSTSerializer();
+		for (NetworkManager node : network) {
+			DigestReplication replication = new DigestReplication(node.getConnection().getPeer(), serializer,
+					NETWORK_SIZE);
+			node.getConnection().getMessageReplyHandler().setDigestReplication(replication);
+			// the replies are prepared and the pushed entries are stored on the replication thread
+			replication.start();
+			replications.add(replication);
+		}
+	}
+
+	@Test
+	public void testMissingEntriesAreTransferred() throws Exception {
+		PeerDHT source = network.get(0).getConnection().getPeer();
+		Number640 key = new Number640(Number160.createHash(randomString()), Number160.ZERO,
+				Number160.createHash(randomString()), Number160.ZERO);
+		byte[] content = generateFixedContent(1000);
+		source.storageLayer().put(key, new Data(content), null, false, false, false);
+
+		// the first round transfers the entry to both other replicas
+		Assert.assertTrue(replications.get(0).replicate());
+		awaitIdle();
+		for (NetworkManager node : network) {
+			Data replicated = node.getConnection().getPeer().storageLayer().get(key);
+			Assert.assertNotNull(replicated);
+			Assert.assertArrayEquals(content, replicated.toBytes());
+		}
+
+		// the replicas are in sync, nothing is transferred anymore
+		Assert.assertFalse(replications.get(0).replicate());
+		// the first round of the other replica only learns its replica set
+		replications.get(1).replicate();
+		awaitIdle();
+		Assert.assertFalse(replications.get(1).replicate());
+	}
+
+	@Test
+	public void testVersionsAreCompared() throws Exception {
+		Number160 locationKey = Number160.createHash(randomString());
+		Number160 contentKey = Number160.createHash(randomString());
+		Number640 first = new Number640(locationKey, Number160.ZERO, contentKey, new Number160(1));
+		Number640 second = new Number640(locationKey, Number160.ZERO, contentKey, new Number160(2));
+
+		for (NetworkManager node : network) {
+			node.getConnection().getPeer().storageLayer()
+					.put(first, new Data(generateFixedContent(100)), null, false, false, false);
+		}
+		replications.get(1).replicate();
+		awaitIdle();
+		Assert.assertFalse(replications.get(1).replicate());
+
+		// a new version on a single replica
+		network.get(1).getConnection().getPeer().storageLayer()
+				.put(second, new Data(generateFixedContent(100)).addBasedOn(first.versionKey()), null, false, false, false);
+		Assert.assertTrue(replications.get(1).replicate());
+		awaitIdle();
+		Assert.assertNotNull(network.get(2).getConnection().getPeer().storageLayer().get(second));
+	}
+
+	@Test
+	public void testRefreshedTTLIsRepaired() throws Exception {
+		Number640 key = new Number640(Number160.createHash(randomString()), Number160.ZERO,
+				Number160.createHash(randomString()), Number160.ZERO);
+		byte[] content = generateFixedContent(100);
+		for (NetworkManager node : network) {
+			node.getConnection().getPeer().storageLayer()
+					.put(key, new Data(content).ttlSeconds(1000), null, false, false, false);
+		}
+		replications.get(1).replicate();
+		replications.get(2).replicate();
+		awaitIdle();
+		Assert.assertFalse(replications.get(1).replicate());
+
+		// the time-to-live is refreshed on a single replica
+		network.get(1).getConnection().getPeer().storageLayer()
+				.put(key, new Data(content).ttlSeconds(100000), null, false, false, false);
+
+		// an outdated replica does not replace it
+		replications.get(2).replicate();
+		awaitIdle();
+		Assert.assertEquals(100000, network.get(1).getConnection().getPeer().storageLayer().get(key).ttlSeconds());
+
+		// but it repairs the outdated replicas
+		Assert.assertTrue(replications.get(1).replicate());
+		awaitIdle();
+		for (NetworkManager node : network) {
+			Assert.assertEquals(100000, node.getConnection().getPeer().storageLayer().get(key).ttlSeconds());
+		}
+	}
+
+	@Test
+	public void testRequestsDoNotCreateDigest() throws Exception {
+		DigestReplication replica = new DigestReplication(network.get(1).getConnection().getPeer(),
+				new FSTSerializer(), NETWORK_SIZE);
+		network.get(1).getConnection().getMessageReplyHandler().setDigestReplication(replica);
+		PeerDHT source = network.get(0).getConnection().getPeer();
+		Number640 key = new Number640(Number160.createHash(randomString()), Number160.ZERO,
+				Number160.createHash(randomString()), Number160.ZERO);
+		source.storageLayer().put(key, new Data(generateFixedContent(100)), null, false, false, false);
+
+		// the replica is not running, thus it neither answers with a digest nor stores the pushed entry
+		replications.get(0).replicate();
+		awaitIdle();
+		Assert.assertNull(network.get(1).getConnection().getPeer().storageLayer().get(key));
+		Assert.assertNotNull(network.get(2).getConnection().getPeer().storageLayer().get(key));
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		for (DigestReplication replication : replications) {
+			Assert.assertTrue(replication.awaitIdle(10000));
+		}
+	}
+
+	@After
+	public void shutdownNetwork() {
+		for (DigestReplication replication : replications) {
+			replication.shutdown();
+		}
+		NetworkTestUtil.shutdownNetwork(network);
+	}
+
+	@AfterClass
+	public static void endTest() {
+		afterClass();
+	}
+}
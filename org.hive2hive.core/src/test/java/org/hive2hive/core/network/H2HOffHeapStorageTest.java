@@ -0,0 +1,158 @@
+package org.hive2hive.core.network;
+
+import java.util.NavigableMap;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HJUnitTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link H2HOffHeapStorage} and its {@link SlabAllocator}.
+ */
+public class H2HOffHeapStorageTest extends H2HJUnitTest {
+
+	private static final int SEGMENT_SIZE = 64 * 1024;
+	private static final int MAX_SLOT_SIZE = 16 * 1024;
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = H2HOffHeapStorageTest.class;
+		beforeClass();
+	}
+
+	@AfterClass
+	public static void endTest() {
+		afterClass();
+	}
+
+	@Test
+	public void testPutGet() throws Exception {
+		H2HOffHeapStorage storage = createStorage(1024 * 1024);
+		Number640 key = randomKey();
+		Number160 basedOn = Number160.createHash(randomString());
+		byte[] content = generateFixedContent(1000);
+
+		Data data = new Data(content).ttlSeconds(1000).addBasedOn(basedOn).prepareFlag();
+		Assert.assertNull(storage.put(key, data));
+
+		Data stored = storage.get(key);
+		Assert.assertArrayEquals(content, stored.toBytes());
+		Assert.assertEquals(1000, stored.ttlSeconds());
+		Assert.assertTrue(stored.basedOnSet().contains(basedOn));
+		Assert.assertTrue(stored.hasPrepareFlag());
+		Assert.assertTrue(storage.contains(key));
+		Assert.assertEquals(content.length, storage.getStoredBytes());
+	}
+
+	@Test
+	public void testOverwriteAndRemoveReleaseSlots() {
+		H2HOffHeapStorage storage = createStorage(1024 * 1024);
+		Number640 key = randomKey();
+		byte[] first = generateFixedContent(1000);
+		byte[] second = generateFixedContent(2000);
+
+		storage.put(key, new Data(first));
+		// the replaced payload is not copied back onto the heap
+		Assert.assertNull(storage.put(key, new Data(second)));
+		Assert.assertArrayEquals(second, storage.get(key).toBytes());
+		Assert.assertEquals(second.length, storage.getStoredBytes());
+
+		Data removed = storage.remove(key, true);
+		Assert.assertArrayEquals(second, removed.toBytes());
+		Assert.assertNull(storage.get(key));
+		Assert.assertEquals(0, storage.getStoredBytes());
+	}
+
+	@Test
+	public void testSubMap() {
+		H2HOffHeapStorage storage = createStorage(1024 * 1024);
+		Number160 location = Number160.createHash(randomString());
+		for (int i = 1; i <= 5; i++) {
+			Number640 key = new Number640(location, Number160.ZERO, Number160.ZERO, new Number160(i));
+			storage.put(key, new Data(new byte[] { (byte) i }));
+		}
+
+		Number640 from = new Number640(location, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+		Number640 to = new Number640(location, Number160.ZERO, Number160.ZERO, Number160.MAX_VALUE);
+		Assert.assertEquals(5, storage.subMap(from, to, -1, true).size());
+
+		// the latest two entries
+		NavigableMap<Number640, Data> latest = storage.subMap(from, to, 2, false);
+		Assert.assertEquals(2, latest.size());
+		Assert.assertEquals(new Number160(5), latest.firstKey().versionKey());
+		Assert.assertEquals(new Number160(4), latest.lastKey().versionKey());
+
+		storage.remove(from, to, false);
+		Assert.assertEquals(0, storage.size());
+		Assert.assertEquals(0, storage.getStoredBytes());
+	}
+
+	@Test
+	public void testCapacity() {
+		// two segments of the smallest size class
+		SlabAllocator allocator = new SlabAllocator(2 * SEGMENT_SIZE, SEGMENT_SIZE, MAX_SLOT_SIZE);
+		H2HOffHeapStorage storage = new H2HOffHeapStorage(allocator);
+
+		int slots = 0;
+		Data data = new Data(generateFixedContent(200));
+		while (storage.canStore(randomKey(), data)) {
+			storage.put(randomKey(), data);
+			slots++;
+		}
+		Assert.assertEquals(2 * SEGMENT_SIZE / 256, slots);
+		Assert.assertEquals(2 * SEGMENT_SIZE, allocator.getReservedBytes());
+
+		// the capacity is exhausted, also for payloads larger than a slot
+		Data large = new Data(generateFixedContent(MAX_SLOT_SIZE + 1));
+		Assert.assertFalse(storage.canStore(randomKey(), large));
+		Number640 largeKey = randomKey();
+		storage.put(largeKey, large);
+		Assert.assertNull(storage.get(largeKey));
+		Assert.assertEquals(2 * SEGMENT_SIZE, allocator.getReservedBytes());
+	}
+
+	@Test
+	public void testPayloadLargerThanSlot() {
+		H2HOffHeapStorage storage = createStorage(1024 * 1024);
+		Number640 key = randomKey();
+		byte[] content = generateFixedContent(2 * MAX_SLOT_SIZE + 100);
+
+		Assert.assertTrue(storage.canStore(key, new Data(content)));
+		storage.put(key, new Data(content));
+		Assert.assertArrayEquals(content, storage.get(key).toBytes());
+		// every byte is counted
+		Assert.assertEquals(content.length, storage.getStoredBytes());
+
+		storage.remove(key, false);
+		Assert.assertEquals(0, storage.getStoredBytes());
+	}
+
+	@Test
+	public void testSlotReuse() {
+		SlabAllocator allocator = new SlabAllocator(SEGMENT_SIZE, SEGMENT_SIZE, MAX_SLOT_SIZE);
+		byte[] content = generateFixedContent(1000);
+
+		long handle = allocator.allocate(content);
+		Assert.assertTrue(handle >= 0);
+		Assert.assertArrayEquals(content, allocator.read(handle, content.length));
+
+		allocator.free(handle, content.length);
+		Assert.assertEquals(0, allocator.getUsedBytes());
+		Assert.assertEquals(handle, allocator.allocate(content));
+		// only one segment has been allocated
+		Assert.assertTrue(allocator.getReservedBytes() <= SEGMENT_SIZE);
+
+		// too large
+		Assert.assertEquals(-1, allocator.allocate(new byte[MAX_SLOT_SIZE + 1]));
+	}
+
+	private static H2HOffHeapStorage createStorage(long capacity) {
+		return new H2HOffHeapStorage(new SlabAllocator(capacity, SEGMENT_SIZE, MAX_SLOT_SIZE));
+	}
+}
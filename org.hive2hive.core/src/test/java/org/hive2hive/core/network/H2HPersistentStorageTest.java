@@ -0,0 +1,197 @@
+package org.hive2hive.core.network;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.H2HJUnitTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link H2HPersistentStorage}, especially the recovery after a restart.
+ */
+public class H2HPersistentStorageTest extends H2HJUnitTest {
+
+	private static final long CAPACITY = 1024 * 1024;
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = H2HPersistentStorageTest.class;
+		beforeClass();
+	}
+
+	@AfterClass
+	public static void endTest() {
+		afterClass();
+	}
+
+	@Test
+	public void testRecoverDataAndMetadata() throws IOException {
+		File directory = tempFolder.newFolder();
+		Number640 key = randomKey();
+		Number160 basedOn = Number160.createHash(randomString());
+		byte[] content = generateFixedContent(1000);
+		KeyPair protectionKeys = generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+
+		H2HPersistentStorage storage = new H2HPersistentStorage(directory, CAPACITY);
+		Data data = new Data(content).ttlSeconds(1000).addBasedOn(basedOn).prepareFlag();
+		data.publicKey(protectionKeys.getPublic());
+		storage.put(key, data);
+		storage.protectEntry(key.locationAndDomainAndContentKey(), protectionKeys.getPublic());
+		storage.close();
+
+		// restart
+		H2HPersistentStorage restarted = new H2HPersistentStorage(directory, CAPACITY);
+		Data recovered = restarted.get(key);
+		Assert.assertNotNull(recovered);
+		Assert.assertArrayEquals(content, recovered.toBytes());
+		Assert.assertEquals(1000, recovered.ttlSeconds());
+		Assert.assertTrue(recovered.basedOnSet().contains(basedOn));
+		Assert.assertTrue(recovered.hasPrepareFlag());
+		Assert.assertEquals(protectionKeys.getPublic(), recovered.publicKey());
+		Assert.assertTrue(restarted.isEntryProtectedByOthers(key.locationAndDomainAndContentKey(),
+				generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION).getPublic()));
+		Assert.assertEquals(content.length, restarted.getStoredBytes());
+		restarted.close();
+	}
+
+	@Test
+	public void testRecoverRemoval() throws IOException {
+		File directory = tempFolder.newFolder();
+		Number640 removedKey = randomKey();
+		Number640 keptKey = randomKey();
+
+		H2HPersistentStorage storage = new H2HPersistentStorage(directory, CAPACITY);
+		storage.put(removedKey, new Data(generateFixedContent(100)));
+		storage.put(keptKey, new Data(generateFixedContent(100)));
+		storage.remove(removedKey, false);
+		storage.close();
+
+		H2HPersistentStorage restarted = new H2HPersistentStorage(directory, CAPACITY);
+		Assert.assertNull(restarted.get(removedKey));
+		Assert.assertNotNull(restarted.get(keptKey));
+		Assert.assertEquals(100, restarted.getStoredBytes());
+		restarted.close();
+	}
+
+	@Test
+	public void testSkipExpiredData() throws IOException, InterruptedException {
+		File directory = tempFolder.newFolder();
+		Number640 key = randomKey();
+
+		H2HPersistentStorage storage = new H2HPersistentStorage(directory, CAPACITY);
+		storage.put(key, new Data(generateFixedContent(100)).ttlSeconds(1));
+		storage.close();
+
+		// wait until the data expired
+		Thread.sleep(1500);
+
+		H2HPersistentStorage restarted = new H2HPersistentStorage(directory, CAPACITY);
+		Assert.assertNull(restarted.get(key));
+		restarted.close();
+	}
+
+	@Test
+	public void testCutOffTornWrite() throws IOException {
+		File directory = tempFolder.newFolder();
+		Number640 key = randomKey();
+
+		H2HPersistentStorage storage = new H2HPersistentStorage(directory, CAPACITY);
+		storage.put(key, new Data(generateFixedContent(100)));
+		long validBytes = storage.getLogBytes();
+		storage.close();
+
+		// simulate a crash while writing a record
+		FileOutputStream out = new FileOutputStream(new File(directory, "h2h-storage.log"), true);
+		out.write(new byte[] { 0, 0, 1, 0, 42, 42 });
+		out.close();
+
+		H2HPersistentStorage restarted = new H2HPersistentStorage(directory, CAPACITY);
+		Assert.assertNotNull(restarted.get(key));
+		Assert.assertEquals(validBytes, restarted.getLogBytes());
+
+		// new records are still readable after the next restart
+		Number640 otherKey = randomKey();
+		restarted.put(otherKey, new Data(generateFixedContent(100)));
+		restarted.close();
+
+		H2HPersistentStorage restartedAgain = new H2HPersistentStorage(directory, CAPACITY);
+		Assert.assertNotNull(restartedAgain.get(key));
+		Assert.assertNotNull(restartedAgain.get(otherKey));
+		restartedAgain.close();
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		File directory = tempFolder.newFolder();
+		Number640 key = randomKey();
+		byte[] latest = generateFixedContent(100);
+
+		H2HPersistentStorage storage = new H2HPersistentStorage(directory, CAPACITY);
+		for (int i = 0; i < 10; i++) {
+			storage.put(key, new Data(generateFixedContent(100)));
+		}
+		storage.put(key, new Data(latest));
+		long beforeCompaction = storage.getLogBytes();
+
+		storage.compact();
+		Assert.assertTrue(storage.getLogBytes() < beforeCompaction);
+		// the payloads are read from the compacted log
+		Assert.assertArrayEquals(latest, storage.get(key).toBytes());
+
+		// appended after the compacted records
+		Number640 otherKey = randomKey();
+		byte[] other = generateFixedContent(100);
+		storage.put(otherKey, new Data(other));
+		Assert.assertArrayEquals(other, storage.get(otherKey).toBytes());
+		storage.close();
+
+		H2HPersistentStorage restarted = new H2HPersistentStorage(directory, CAPACITY);
+		Assert.assertArrayEquals(latest, restarted.get(key).toBytes());
+		Assert.assertArrayEquals(other, restarted.get(otherKey).toBytes());
+		restarted.close();
+	}
+
+	@Test
+	public void testCutOffCorruptLength() throws IOException {
+		File directory = tempFolder.newFolder();
+		Number640 key = randomKey();
+
+		H2HPersistentStorage storage = new H2HPersistentStorage(directory, CAPACITY);
+		storage.put(key, new Data(generateFixedContent(100)));
+		long validBytes = storage.getLogBytes();
+		storage.close();
+
+		// a length field far beyond the end of the log must not be allocated
+		FileOutputStream out = new FileOutputStream(new File(directory, "h2h-storage.log"), true);
+		out.write(new byte[] { 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0, 1, 2, 3 });
+		out.close();
+
+		H2HPersistentStorage restarted = new H2HPersistentStorage(directory, CAPACITY);
+		Assert.assertNotNull(restarted.get(key));
+		Assert.assertEquals(validBytes, restarted.getLogBytes());
+		restarted.close();
+	}
+
+	@Test
+	public void testCapacity() throws IOException {
+		H2HPersistentStorage storage = new H2HPersistentStorage(tempFolder.newFolder(), 150);
+		Number640 key = randomKey();
+
+		Assert.assertTrue(storage.canStore(key, new Data(generateFixedContent(100))));
+		storage.put(key, new Data(generateFixedContent(100)));
+		Assert.assertFalse(storage.canStore(randomKey(), new Data(generateFixedContent(100))));
+		// replacing the existing entry is allowed
+		Assert.assertTrue(storage.canStore(key, new Data(generateFixedContent(150))));
+		storage.close();
+	}
+}
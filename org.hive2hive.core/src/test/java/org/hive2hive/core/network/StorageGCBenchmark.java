@@ -0,0 +1,131 @@
+package org.hive2hive.core.network;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import net.tomp2p.dht.Storage;
+import net.tomp2p.dht.StorageMemory;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.hive2hive.core.H2HConstants;
+
+/**
+ * Compares the garbage collection pauses of a peer holding a large resident data set on the heap
+ * ({@link StorageMemory}) and outside of the heap ({@link H2HOffHeapStorage}). This is not a unit test, run
+ * it manually with a heap and direct memory large enough for the data set, e.g.
+ * <code>-Xmx6g -XX:MaxDirectMemorySize=6g</code>.<br>
+ * Arguments: <code>[resident MB] [duration s]</code>
+ */
+public class StorageGCBenchmark {
+
+	private static final int CHUNK_SIZE = H2HConstants.DEFAULT_CHUNK_SIZE;
+
+	public static void main(String[] args) throws InterruptedException {
+		int residentMB = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+		int durationSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+		System.out.println(String.format("Resident data set: %s MB, duration: %s s", residentMB, durationSeconds));
+		run("on-heap", new StorageMemory(), residentMB, durationSeconds);
+		System.gc();
+		run("off-heap", new H2HOffHeapStorage(residentMB * 1024L * 1024L * 2), residentMB, durationSeconds);
+	}
+
+	private static void run(String name, Storage storage, int residentMB, int durationSeconds)
+			throws InterruptedException {
+		Random random = new Random(42);
+		int chunks = residentMB * 1024 * 1024 / CHUNK_SIZE;
+		Number640[] keys = new Number640[chunks];
+		for (int i = 0; i < chunks; i++) {
+			keys[i] = new Number640(new Number160(random), Number160.ZERO,
+					Number160.createHash(H2HConstants.FILE_CHUNK), Number160.ZERO);
+			storage.put(keys[i], new Data(randomChunk(random)));
+		}
+
+		PauseDetector detector = new PauseDetector();
+		Thread detectorThread = new Thread(detector);
+		detectorThread.setDaemon(true);
+		long gcCountBefore = gcCount();
+		long gcTimeBefore = gcTime();
+		detectorThread.start();
+
+		// churn: read chunks (as downloads do) and replace some of them (as new uploads do)
+		long operations = 0;
+		long end = System.currentTimeMillis() + durationSeconds * 1000L;
+		while (System.currentTimeMillis() < end) {
+			Number640 key = keys[random.nextInt(chunks)];
+			if (random.nextInt(10) == 0) {
+				storage.remove(key, false);
+				storage.put(key, new Data(randomChunk(random)));
+			} else {
+				storage.get(key).toBytes();
+			}
+			operations++;
+		}
+
+		detector.stop();
+		detectorThread.join();
+		System.out.println(String.format(
+				"%s: %s operations, %s collections, %s ms total GC time, %s ms max pause (detected)", name,
+				operations, gcCount() - gcCountBefore, gcTime() - gcTimeBefore, detector.getMaxPauseMillis()));
+	}
+
+	private static byte[] randomChunk(Random random) {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		random.nextBytes(chunk);
+		return chunk;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * Detects stop-the-world pauses by measuring how much a short sleep overshoots.
+	 */
+	private static class PauseDetector implements Runnable {
+
+		private static final long INTERVAL_MS = 1;
+
+		private volatile boolean running = true;
+		private volatile long maxPauseMillis = 0;
+
+		@Override
+		public void run() {
+			while (running) {
+				long start = System.nanoTime();
+				try {
+					Thread.sleep(INTERVAL_MS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				long pause = (System.nanoTime() - start) / 1000000 - INTERVAL_MS;
+				if (pause > maxPauseMillis) {
+					maxPauseMillis = pause;
+				}
+			}
+		}
+
+		public void stop() {
+			running = false;
+		}
+
+		public long getMaxPauseMillis() {
+			return maxPauseMillis;
+		}
+	}
+}
@@ -53,6 +53,26 @@ public class DataManagerTest extends H2HJUnitTest {
 		Assert.assertNull(NetworkTestUtil.getRandomNode(network).getDataManager().get(parameters));
 	}
 
+	@Test
+	public void testGetWithReadConsistency() throws Exception {
+		String data = randomString();
+		Parameters parameters = new Parameters().setLocationKey(randomString()).setContentKey(randomString())
+				.setNetworkContent(new H2HTestData(data));
+		Assert.assertEquals(H2HPutStatus.OK, NetworkTestUtil.getRandomNode(network).getDataManager().put(parameters));
+
+		DataManager dataManager = NetworkTestUtil.getRandomNode(network).getDataManager();
+		ReadConsistency initial = dataManager.getReadConsistency();
+		try {
+			for (ReadConsistency readConsistency : ReadConsistency.values()) {
+				dataManager.setReadConsistency(readConsistency);
+				Assert.assertEquals(data, ((H2HTestData) dataManager.get(parameters)).getTestString());
+				Assert.assertFalse(dataManager.getDigestLatest(parameters).isEmpty());
+			}
+		} finally {
+			dataManager.setReadConsistency(initial);
+		}
+	}
+
 	@Test
 	public void testPutGetRemoveOneLocationKeyMultipleContentKeys() throws Exception {
 		String locationKey = randomString();
@@ -0,0 +1,125 @@
+package org.hive2hive.core.network.data;
+
+import java.io.IOException;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.utils.helper.TestFileAgent;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ImmutableContentCache}.
+ */
+public class ImmutableContentCacheTest extends H2HJUnitTest {
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = ImmutableContentCacheTest.class;
+		beforeClass();
+	}
+
+	@AfterClass
+	public static void endTest() {
+		afterClass();
+	}
+
+	@Test
+	public void testImmutableContentKeys() {
+		Assert.assertTrue(ImmutableContentCache.isImmutable(H2HConstants.FILE_CHUNK, false));
+		Assert.assertTrue(ImmutableContentCache.isImmutable(H2HConstants.USER_PUBLIC_KEY, false));
+		Assert.assertTrue(ImmutableContentCache.isImmutable(H2HConstants.META_FILE, true));
+		Assert.assertFalse(ImmutableContentCache.isImmutable(H2HConstants.META_FILE, false));
+		Assert.assertFalse(ImmutableContentCache.isImmutable(H2HConstants.USER_PROFILE, true));
+		Assert.assertFalse(ImmutableContentCache.isImmutable(null, true));
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		ImmutableContentCache cache = new ImmutableContentCache(1000, 0);
+		Number640 key = randomKey();
+
+		Assert.assertNull(cache.get(key));
+		cache.put(key, new byte[100]);
+		Assert.assertNotNull(cache.get(key));
+
+		Assert.assertEquals(1, cache.getMemoryHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(0.5, cache.getHitRate(), 0.0001);
+		Assert.assertEquals(100, cache.getMemoryBytes());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		ImmutableContentCache cache = new ImmutableContentCache(300, 0);
+		Number640 first = randomKey();
+		Number640 second = randomKey();
+		Number640 third = randomKey();
+		Number640 fourth = randomKey();
+
+		cache.put(first, new byte[100]);
+		cache.put(second, new byte[100]);
+		cache.put(third, new byte[100]);
+
+		// access the first one such that the second is the least recently used
+		Assert.assertNotNull(cache.get(first));
+		cache.put(fourth, new byte[100]);
+
+		Assert.assertNotNull(cache.get(first));
+		Assert.assertNull(cache.get(second));
+		Assert.assertNotNull(cache.get(third));
+		Assert.assertNotNull(cache.get(fourth));
+		Assert.assertEquals(1, cache.getEvictions());
+		Assert.assertTrue(cache.getMemoryBytes() <= 300);
+	}
+
+	@Test
+	public void testIgnoreTooLargeContent() {
+		ImmutableContentCache cache = new ImmutableContentCache(100, 0);
+		Number640 key = randomKey();
+		cache.put(key, new byte[101]);
+		Assert.assertNull(cache.get(key));
+		Assert.assertEquals(0, cache.getMemoryBytes());
+	}
+
+	@Test
+	public void testInvalidateAllVersions() {
+		ImmutableContentCache cache = new ImmutableContentCache(1000, 0);
+		Number640 key = randomKey();
+		Number640 otherVersion = new Number640(key.locationKey(), key.domainKey(), key.contentKey(), Number160.ONE);
+		cache.put(key, new byte[10]);
+		cache.put(otherVersion, new byte[10]);
+
+		cache.invalidate(key.locationKey(), key.domainKey(), key.contentKey());
+
+		Assert.assertNull(cache.get(key));
+		Assert.assertNull(cache.get(otherVersion));
+		Assert.assertEquals(0, cache.getMemoryBytes());
+	}
+
+	@Test
+	public void testSpillToFileAgent() throws IOException {
+		ImmutableContentCache cache = new ImmutableContentCache(100, 1000);
+		cache.setFileAgent(new TestFileAgent());
+
+		Number640 first = randomKey();
+		Number640 second = randomKey();
+		byte[] content = generateFixedContent(100);
+		cache.put(first, content);
+		cache.put(second, new byte[100]);
+
+		// the first has been spilled to the disk
+		Assert.assertEquals(100, cache.getSpilledBytes());
+		Assert.assertArrayEquals(content, cache.get(first));
+		Assert.assertEquals(1, cache.getDiskHits());
+
+		// invalidating removes it from the disk as well
+		cache.invalidate(first.locationKey(), first.domainKey(), first.contentKey());
+		Assert.assertNull(cache.get(first));
+	}
+}
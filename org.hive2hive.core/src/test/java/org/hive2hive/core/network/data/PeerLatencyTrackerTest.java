@@ -0,0 +1,95 @@
+package org.hive2hive.core.network.data;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.H2HJUnitTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the classification of the {@link PeerLatencyTracker} and the {@link H2HSlowPeerFilter} using it.
+ */
+public class PeerLatencyTrackerTest extends H2HJUnitTest {
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = PeerLatencyTrackerTest.class;
+		beforeClass();
+	}
+
+	@AfterClass
+	public static void endTest() {
+		afterClass();
+	}
+
+	@Test
+	public void testFastPeer() {
+		PeerLatencyTracker tracker = new PeerLatencyTracker();
+		PeerAddress peer = randomPeer();
+		for (int i = 0; i < 20; i++) {
+			tracker.recordSuccess(peer, 50);
+		}
+		Assert.assertFalse(tracker.isSlow(peer));
+		Assert.assertEquals(50, tracker.getAverageRtt(peer), 0.001);
+		Assert.assertEquals(0, tracker.getFailureRate(peer), 0.001);
+	}
+
+	@Test
+	public void testMinimumSamples() {
+		PeerLatencyTracker tracker = new PeerLatencyTracker();
+		PeerAddress peer = randomPeer();
+		for (int i = 0; i < H2HConstants.SLOW_PEER_MIN_SAMPLES - 1; i++) {
+			tracker.recordFailure(peer);
+		}
+		Assert.assertFalse(tracker.isSlow(peer));
+		tracker.recordFailure(peer);
+		Assert.assertTrue(tracker.isSlow(peer));
+	}
+
+	@Test
+	public void testHysteresis() {
+		PeerLatencyTracker tracker = new PeerLatencyTracker();
+		PeerAddress peer = randomPeer();
+		for (int i = 0; i < 20; i++) {
+			tracker.recordSuccess(peer, H2HConstants.SLOW_PEER_RTT_MS * 2);
+		}
+		Assert.assertTrue(tracker.isSlow(peer));
+
+		// just below the limit is not enough to recover
+		for (int i = 0; i < 50; i++) {
+			tracker.recordSuccess(peer, H2HConstants.SLOW_PEER_RTT_MS - 1);
+		}
+		Assert.assertTrue(tracker.isSlow(peer));
+
+		// fast answers let the peer recover
+		for (int i = 0; i < 50; i++) {
+			tracker.recordSuccess(peer, 10);
+		}
+		Assert.assertFalse(tracker.isSlow(peer));
+	}
+
+	@Test
+	public void testFilterRejectsSlowPeers() {
+		PeerLatencyTracker tracker = new PeerLatencyTracker();
+		H2HSlowPeerFilter filter = new H2HSlowPeerFilter(tracker);
+		PeerAddress slowPeer = randomPeer();
+		PeerAddress fastPeer = randomPeer();
+		for (int i = 0; i < 20; i++) {
+			tracker.recordFailure(slowPeer);
+			tracker.recordSuccess(fastPeer, 10);
+		}
+
+		Assert.assertTrue(filter.rejectDirectHit(slowPeer));
+		Assert.assertTrue(filter.rejectPotentialHit(slowPeer));
+		Assert.assertFalse(filter.rejectDirectHit(fastPeer));
+		Assert.assertFalse(filter.rejectPotentialHit(fastPeer));
+	}
+
+	private static PeerAddress randomPeer() {
+		return new PeerAddress(Number160.createHash(randomString()));
+	}
+}
@@ -0,0 +1,129 @@
+package org.hive2hive.core.network.data;
+
+import java.io.File;
+import java.util.List;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.TimeToLiveStore;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.network.NetworkManager;
+import org.hive2hive.core.security.UserCredentials;
+import org.hive2hive.core.utils.FileTestUtil;
+import org.hive2hive.core.utils.NetworkTestUtil;
+import org.hive2hive.core.utils.UseCaseTestUtil;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TTLRefreshManager}.
+ */
+public class TTLRefreshManagerTest extends H2HJUnitTest {
+
+	private static List<NetworkManager> network;
+	private static UserCredentials userCredentials;
+	private static File root;
+	private static NetworkManager client;
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = TTLRefreshManagerTest.class;
+		beforeClass();
+
+		network = NetworkTestUtil.createNetwork(DEFAULT_NETWORK_SIZE);
+		userCredentials = generateRandomCredentials();
+		root = tempFolder.newFolder();
+		client = network.get(0);
+		UseCaseTestUtil.registerAndLogin(userCredentials, client, root);
+	}
+
+	@Test
+	public void testRefreshFile() throws Exception {
+		File file = FileTestUtil.createFileRandomContent(3, root);
+		UseCaseTestUtil.uploadNewFile(client, file);
+
+		TTLRefreshManager refreshManager = client.getSession().getTTLRefreshManager();
+		FileIndex fileIndex = (FileIndex) UseCaseTestUtil.getUserProfile(client, userCredentials).getFileByPath(file,
+				root);
+
+		// has just been uploaded, thus is not due yet
+		Assert.assertEquals(0, refreshManager.refreshFile(fileIndex, false));
+
+		// the meta file and all chunks are refreshed
+		int refreshed = refreshManager.refreshFile(fileIndex, true);
+		Assert.assertTrue(refreshed > 1);
+		Assert.assertFalse(refreshManager.getExpiringFiles().containsKey(fileIndex.getFullPath()));
+		Assert.assertTrue(refreshManager.getRefreshTimes().containsKey(fileIndex.getFilePublicKey()));
+
+		// the file is still readable
+		Assert.assertNotNull(UseCaseTestUtil.getMetaFile(client, fileIndex.getFileKeys()));
+		Assert.assertTrue(file.delete());
+		File downloaded = UseCaseTestUtil.downloadFile(client, fileIndex.getFilePublicKey());
+		Assert.assertTrue(downloaded.exists());
+	}
+
+	@Test
+	public void testAgedFileBecomesDue() throws Exception {
+		File file = FileTestUtil.createFileRandomContent(2, root);
+		UseCaseTestUtil.uploadNewFile(client, file);
+
+		TTLRefreshManager refreshManager = new TTLRefreshManager(null, client.getDataManager());
+		FileIndex fileIndex = (FileIndex) UseCaseTestUtil.getUserProfile(client, userCredentials).getFileByPath(file,
+				root);
+		Assert.assertEquals(0, refreshManager.refreshFile(fileIndex, false));
+
+		// let more than the refresh fraction of the time-to-live elapse
+		TimeToLiveStore ttls = TimeToLiveStore.getInstance();
+		int metaTTL = ttls.getMetaFile();
+		int chunkTTL = ttls.getChunk();
+		try {
+			ttls.setMetaDocument(4);
+			ttls.setChunk(4);
+			Thread.sleep(2500);
+			Assert.assertTrue(refreshManager.refreshFile(fileIndex, false) > 1);
+
+			// just refreshed, thus not due anymore
+			Assert.assertEquals(0, refreshManager.refreshFile(fileIndex, false));
+		} finally {
+			ttls.setMetaDocument(metaTTL);
+			ttls.setChunk(chunkTTL);
+		}
+
+		// extend the time-to-live again
+		Assert.assertTrue(refreshManager.refreshFile(fileIndex, true) > 1);
+	}
+
+	@Test
+	public void testRefreshTimesArePersisted() throws Exception {
+		File file = FileTestUtil.createFileRandomContent(1, root);
+		UseCaseTestUtil.uploadNewFile(client, file);
+		FileIndex fileIndex = (FileIndex) UseCaseTestUtil.getUserProfile(client, userCredentials).getFileByPath(file,
+				root);
+
+		TTLRefreshManager refreshManager = new TTLRefreshManager(null, client.getDataManager());
+		Assert.assertTrue(refreshManager.refreshFile(fileIndex, true) > 1);
+
+		TTLRefreshManager restarted = new TTLRefreshManager(null, client.getDataManager());
+		restarted.setRefreshTimes(refreshManager.getRefreshTimes());
+		Assert.assertEquals(refreshManager.getRefreshTimes(), restarted.getRefreshTimes());
+	}
+
+	@Test
+	public void testReportMissingFile() {
+		TTLRefreshManager refreshManager = new TTLRefreshManager(null, client.getDataManager());
+		FolderIndex rootIndex = new FolderIndex(generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION));
+		FileIndex missing = new FileIndex(rootIndex, generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION), randomString(), null);
+
+		Assert.assertEquals(-1, refreshManager.refreshFile(missing, true));
+		Assert.assertTrue(refreshManager.getExpiringFiles().containsKey(missing.getFullPath()));
+	}
+
+	@AfterClass
+	public static void endTest() {
+		NetworkTestUtil.shutdownNetwork(network);
+		afterClass();
+	}
+}
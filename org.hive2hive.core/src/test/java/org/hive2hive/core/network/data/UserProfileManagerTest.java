@@ -5,10 +5,13 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.hive2hive.core.H2HConstants;
@@ -38,6 +41,7 @@ import org.hive2hive.processframework.exceptions.InvalidProcessStateException;
 import org.hive2hive.processframework.exceptions.ProcessExecutionException;
 import org.hive2hive.processframework.interfaces.IProcessComponent;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -246,6 +250,156 @@ public class UserProfileManagerTest extends H2HJUnitTest {
 		}
 	}
 
+	@Test
+	public void testGroupCommit() throws InterruptedException, GetFailedException {
+		final UserProfileManager profileManager = new UserProfileManager(client.getDataManager(), userCredentials);
+		final int modifications = 20;
+		final CountDownLatch done = new CountDownLatch(modifications);
+		final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> aborted = Collections.synchronizedList(new ArrayList<String>());
+
+		for (int i = 0; i < modifications; i++) {
+			final String folderName = randomString();
+			// every fifth modification changes the profile and aborts afterwards
+			final boolean abort = i % 5 == 0;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						profileManager.modifyUserProfile(UUID.randomUUID().toString(), new IUserProfileModification() {
+
+							@Override
+							public void modifyUserProfile(UserProfile userProfile) throws AbortModifyException {
+								new FolderIndex(userProfile.getRoot(), null, folderName);
+								if (abort) {
+									throw new AbortModifyException("Test abort");
+								}
+							}
+						});
+						applied.add(folderName);
+					} catch (AbortModifyException e) {
+						aborted.add(folderName);
+					} catch (GetFailedException | PutFailedException e) {
+						// verified below
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+
+		Assert.assertTrue(done.await(H2HConstants.AWAIT_NETWORK_OPERATION_MS, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(modifications - modifications / 5, applied.size());
+		Assert.assertEquals(modifications / 5, aborted.size());
+		profileManager.stopQueueWorker();
+
+		// fetch the profile with a fresh manager to verify the state in the network
+		UserProfileManager verifier = new UserProfileManager(client.getDataManager(), userCredentials);
+		UserProfile userProfile = verifier.readUserProfile();
+		verifier.stopQueueWorker();
+		for (String folderName : applied) {
+			Assert.assertNotNull(userProfile.getRoot().getChildByName(folderName));
+		}
+		for (String folderName : aborted) {
+			Assert.assertNull(userProfile.getRoot().getChildByName(folderName));
+		}
+	}
+
+	@Test
+	public void testStaleRead() throws GetFailedException, PutFailedException, AbortModifyException {
+		UserProfileManager profileManager = new UserProfileManager(client.getDataManager(), userCredentials);
+		UserProfile userProfile = profileManager.readUserProfile();
+		Assert.assertSame(userProfile, profileManager.readUserProfile(true));
+
+		// another client of the same user modifies the profile
+		final String folderName = randomString();
+		UserProfileManager otherClient = new UserProfileManager(client.getDataManager(), userCredentials);
+		otherClient.modifyUserProfile(UUID.randomUUID().toString(), new IUserProfileModification() {
+
+			@Override
+			public void modifyUserProfile(UserProfile userProfile) {
+				new FolderIndex(userProfile.getRoot(), null, folderName);
+			}
+		});
+		otherClient.stopQueueWorker();
+
+		// the last known version is still returned
+		Assert.assertNull(profileManager.readUserProfile(true).getRoot().getChildByName(folderName));
+
+		// until it gets invalidated
+		profileManager.invalidate();
+		Assert.assertNotNull(profileManager.readUserProfile(true).getRoot().getChildByName(folderName));
+		profileManager.stopQueueWorker();
+	}
+
+	@Test
+	public void testSnapshotRead() throws GetFailedException, PutFailedException, AbortModifyException {
+		UserProfileManager profileManager = new UserProfileManager(client.getDataManager(), userCredentials);
+		UserProfile snapshot = profileManager.readUserProfile();
+		int children = snapshot.getRoot().getChildren().size();
+
+		final String folderName = randomString();
+		profileManager.modifyUserProfile(UUID.randomUUID().toString(), new IUserProfileModification() {
+
+			@Override
+			public void modifyUserProfile(UserProfile userProfile) {
+				new FolderIndex(userProfile.getRoot(), null, folderName);
+			}
+		});
+
+		// an aborted modification does not leave any trace either
+		final String abortedName = randomString();
+		try {
+			profileManager.modifyUserProfile(UUID.randomUUID().toString(), new IUserProfileModification() {
+
+				@Override
+				public void modifyUserProfile(UserProfile userProfile) throws AbortModifyException {
+					new FolderIndex(userProfile.getRoot(), null, abortedName);
+					throw new AbortModifyException("Abort on purpose");
+				}
+			});
+			Assert.fail();
+		} catch (AbortModifyException e) {
+			// expected
+		}
+
+		// the snapshot read before has not been changed
+		Assert.assertNull(snapshot.getRoot().getChildByName(folderName));
+		Assert.assertEquals(children, snapshot.getRoot().getChildren().size());
+
+		UserProfile latest = profileManager.readUserProfile();
+		Assert.assertNotSame(snapshot, latest);
+		Assert.assertNotNull(latest.getRoot().getChildByName(folderName));
+		Assert.assertNull(latest.getRoot().getChildByName(abortedName));
+		profileManager.stopQueueWorker();
+	}
+
+	@Test
+	public void testReentrantModification() throws GetFailedException, PutFailedException {
+		final UserProfileManager profileManager = new UserProfileManager(client.getDataManager(), userCredentials);
+		try {
+			profileManager.modifyUserProfile(UUID.randomUUID().toString(), new IUserProfileModification() {
+
+				@Override
+				public void modifyUserProfile(UserProfile userProfile) throws AbortModifyException {
+					try {
+						// would wait for the queue worker, which is the calling thread
+						profileManager.readUserProfile();
+					} catch (GetFailedException e) {
+						Assert.fail();
+					}
+				}
+			});
+			Assert.fail();
+		} catch (AbortModifyException e) {
+			// expected, fails fast instead of a deadlock
+		}
+
+		// the manager is still usable
+		Assert.assertNotNull(profileManager.readUserProfile());
+		profileManager.stopQueueWorker();
+	}
+
 	public static List<FolderIndex> getIndexList(Index node) {
 		List<FolderIndex> digest = new ArrayList<FolderIndex>();
 		if (node.isFolder()) {
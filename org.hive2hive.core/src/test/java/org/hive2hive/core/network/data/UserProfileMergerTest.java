@@ -0,0 +1,142 @@
+package org.hive2hive.core.network.data;
+
+import java.security.KeyPair;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.PermissionType;
+import org.hive2hive.core.model.UserPermission;
+import org.hive2hive.core.model.versioned.UserProfile;
+import org.hive2hive.core.serializer.FSTSerializer;
+import org.hive2hive.core.serializer.IH2HSerialize;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the three-way merge of the {@link UserProfileMerger}.
+ */
+public class UserProfileMergerTest extends H2HJUnitTest {
+
+	private static IH2HSerialize serializer;
+	private static KeyPair protectionKeys;
+
+	private final UserProfileMerger merger = new UserProfileMerger();
+	private UserProfile base;
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = UserProfileMergerTest.class;
+		beforeClass();
+		serializer = new FSTSerializer();
+		protectionKeys = generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+	}
+
+	@Before
+	public void createBase() {
+		base = new UserProfile(randomString(), generateRSAKeyPair(H2HConstants.KEYLENGTH_USER_KEYS), protectionKeys);
+		FolderIndex folder = new FolderIndex(base.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE),
+				"folder");
+		new FileIndex(base.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "file", randomString()
+				.getBytes());
+		new FileIndex(folder, generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "inner", randomString().getBytes());
+	}
+
+	@Test
+	public void testDisjointChanges() throws Exception {
+		UserProfile ours = copy(base);
+		new FileIndex(ours.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "ourFile", randomString()
+				.getBytes());
+		byte[] newHash = randomString().getBytes();
+		((FileIndex) ours.getRoot().getChildByName("file")).setHash(newHash);
+
+		UserProfile theirs = copy(base);
+		FolderIndex theirFolder = new FolderIndex(theirs.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE),
+				"theirFolder");
+		new FileIndex(theirFolder, generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "theirFile", randomString()
+				.getBytes());
+		FolderIndex sharedFolder = (FolderIndex) theirs.getRoot().getChildByName("folder");
+		sharedFolder.share(generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION));
+		sharedFolder.addUserPermissions(new UserPermission("friend", PermissionType.WRITE));
+		sharedFolder.setName("renamed");
+
+		UserProfile merged = merger.merge(base, ours, theirs);
+		Assert.assertNotNull(merged);
+
+		FolderIndex root = merged.getRoot();
+		Assert.assertEquals(4, root.getChildren().size());
+		Assert.assertNotNull(root.getChildByName("ourFile"));
+		Assert.assertArrayEquals(newHash, ((FileIndex) root.getChildByName("file")).getHash());
+		Assert.assertNotNull(((FolderIndex) root.getChildByName("theirFolder")).getChildByName("theirFile"));
+
+		FolderIndex renamed = (FolderIndex) root.getChildByName("renamed");
+		Assert.assertNotNull(renamed);
+		Assert.assertNotNull(renamed.getChildByName("inner"));
+		Assert.assertTrue(renamed.getSharedFlag());
+		Assert.assertTrue(renamed.getUserPermissions().contains(new UserPermission("friend", PermissionType.WRITE)));
+	}
+
+	@Test
+	public void testDelete() throws Exception {
+		UserProfile ours = copy(base);
+		new FileIndex(ours.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "ourFile", randomString()
+				.getBytes());
+
+		UserProfile theirs = copy(base);
+		theirs.getRoot().removeChild(theirs.getRoot().getChildByName("file"));
+
+		UserProfile merged = merger.merge(base, ours, theirs);
+		Assert.assertNotNull(merged);
+		Assert.assertNull(merged.getRoot().getChildByName("file"));
+		Assert.assertNotNull(merged.getRoot().getChildByName("ourFile"));
+	}
+
+	@Test
+	public void testConcurrentUpdateConflicts() throws Exception {
+		UserProfile ours = copy(base);
+		((FileIndex) ours.getRoot().getChildByName("file")).setHash(randomString().getBytes());
+
+		UserProfile theirs = copy(base);
+		((FileIndex) theirs.getRoot().getChildByName("file")).setHash(randomString().getBytes());
+
+		Assert.assertNull(merger.merge(base, ours, theirs));
+	}
+
+	@Test
+	public void testDeleteModifiedConflicts() throws Exception {
+		UserProfile ours = copy(base);
+		FolderIndex folder = (FolderIndex) ours.getRoot().getChildByName("folder");
+		new FileIndex(folder, generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "ourFile", randomString().getBytes());
+
+		UserProfile theirs = copy(base);
+		theirs.getRoot().removeChild(theirs.getRoot().getChildByName("folder"));
+
+		Assert.assertNull(merger.merge(base, ours, theirs));
+	}
+
+	@Test
+	public void testNameClashConflicts() throws Exception {
+		UserProfile ours = copy(base);
+		new FileIndex(ours.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "same", randomString()
+				.getBytes());
+
+		UserProfile theirs = copy(base);
+		new FileIndex(theirs.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "same", randomString()
+				.getBytes());
+
+		Assert.assertNull(merger.merge(base, ours, theirs));
+	}
+
+	private static UserProfile copy(UserProfile userProfile) throws Exception {
+		return (UserProfile) serializer.deserialize(serializer.serialize(userProfile));
+	}
+
+	@AfterClass
+	public static void cleanAfterClass() {
+		afterClass();
+	}
+}
@@ -0,0 +1,152 @@
+package org.hive2hive.core.network.data.vdht;
+
+import java.security.KeyPair;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import net.tomp2p.peers.Number160;
+
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.file.FileUtil;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.versioned.UserProfile;
+import org.hive2hive.core.model.versioned.UserProfileShard;
+import org.hive2hive.core.network.NetworkManager;
+import org.hive2hive.core.network.data.DataManager;
+import org.hive2hive.core.security.EncryptionUtil.AES_KEYLENGTH;
+import org.hive2hive.core.security.PasswordUtil;
+import org.hive2hive.core.utils.NetworkTestUtil;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ShardedUserProfileVersionManager}.
+ */
+public class ShardedUserProfileVersionManagerTest extends H2HJUnitTest {
+
+	private static List<NetworkManager> network;
+
+	private static SecretKey encryptionKey = PasswordUtil.generateAESKeyFromPassword(randomString(), randomString(),
+			AES_KEYLENGTH.BIT_256);
+	private static KeyPair protectionKeys = generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+	private static KeyPair fileKeys = generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE);
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = ShardedUserProfileVersionManagerTest.class;
+		beforeClass();
+		network = NetworkTestUtil.createNetwork(DEFAULT_NETWORK_SIZE);
+	}
+
+	@Test
+	public void testPutGet() throws Exception {
+		String locationKey = randomString();
+		ShardedUserProfileVersionManager writer = new ShardedUserProfileVersionManager(NetworkTestUtil.getRandomNode(
+				network).getDataManager(), encryptionKey, locationKey);
+
+		UserProfile userProfile = new UserProfile(randomString(), generateRSAKeyPair(H2HConstants.KEYLENGTH_USER_KEYS),
+				protectionKeys);
+		FolderIndex folderA = new FolderIndex(userProfile.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE),
+				"folderA");
+		new FolderIndex(userProfile.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE), "folderB");
+		new FileIndex(userProfile.getRoot(), fileKeys, "file", randomString().getBytes());
+		new FileIndex(folderA, fileKeys, "fileA", randomString().getBytes());
+
+		writer.put(userProfile, protectionKeys);
+		Assert.assertEquals(2, userProfile.getShards().size());
+
+		// get with another client
+		ShardedUserProfileVersionManager reader = new ShardedUserProfileVersionManager(NetworkTestUtil.getRandomNode(
+				network).getDataManager(), encryptionKey, locationKey);
+		UserProfile fetched = reader.get();
+		Assert.assertEquals(3, fetched.getRoot().getChildren().size());
+		FolderIndex fetchedA = (FolderIndex) fetched.getRoot().getChildByName("folderA");
+		FolderIndex fetchedB = (FolderIndex) fetched.getRoot().getChildByName("folderB");
+		// the subtrees are only loaded when accessed
+		Assert.assertFalse(fetchedA.isLoaded());
+		Assert.assertFalse(fetchedB.isLoaded());
+		Assert.assertNotNull(fetchedA.getChildByName("fileA"));
+		Assert.assertTrue(fetchedA.isLoaded());
+		Assert.assertFalse(fetchedB.isLoaded());
+		Assert.assertEquals(fetched.getRoot(), fetchedA.getParent());
+		Assert.assertEquals("folderA" + FileUtil.getFileSep() + "fileA", fetchedA.getChildByName("fileA").getFullPath());
+
+		// modify a single folder
+		Map<String, Number160> versionsBefore = getShardVersions(fetched);
+		new FileIndex(fetchedA, fileKeys, "fileA2", randomString().getBytes());
+		reader.put(fetched, protectionKeys);
+
+		// only the shard of folder A has been put again
+		Map<String, Number160> versionsAfter = getShardVersions(fetched);
+		int changed = 0;
+		for (String shardId : versionsBefore.keySet()) {
+			if (!versionsBefore.get(shardId).equals(versionsAfter.get(shardId))) {
+				changed++;
+			}
+		}
+		Assert.assertEquals(1, changed);
+
+		// the first client sees the modification
+		UserProfile updated = writer.get();
+		Assert.assertEquals(3, updated.getRoot().getChildren().size());
+		FolderIndex updatedA = (FolderIndex) updated.getRoot().getChildByName("folderA");
+		Assert.assertNotNull(updatedA.getChildByName("fileA2"));
+		Assert.assertNotNull(updated.getRoot().getChildByName("folderB"));
+	}
+
+	@Test
+	public void testShardHashIsVerified() throws Exception {
+		String locationKey = randomString();
+		DataManager dataManager = NetworkTestUtil.getRandomNode(network).getDataManager();
+		ShardedUserProfileVersionManager writer = new ShardedUserProfileVersionManager(dataManager, encryptionKey,
+				locationKey);
+
+		UserProfile userProfile = new UserProfile(randomString(), generateRSAKeyPair(H2HConstants.KEYLENGTH_USER_KEYS),
+				protectionKeys);
+		FolderIndex folder = new FolderIndex(userProfile.getRoot(), generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE),
+				"folder");
+		new FileIndex(folder, fileKeys, "file", randomString().getBytes());
+		writer.put(userProfile, protectionKeys);
+
+		// replace the hash of the reference, bypassing the sharding
+		AESEncryptedVersionManager<UserProfile> plain = new AESEncryptedVersionManager<UserProfile>(dataManager,
+				encryptionKey, locationKey, H2HConstants.USER_PROFILE);
+		plain.get();
+		UserProfile stored = plain.getLatestCopy();
+		for (Map.Entry<String, UserProfileShard.Reference> entry : stored.getShards().entrySet()) {
+			entry.setValue(new UserProfileShard.Reference(entry.getValue().getVersionKey(), new byte[20]));
+		}
+		plain.put(stored, protectionKeys);
+
+		ShardedUserProfileVersionManager reader = new ShardedUserProfileVersionManager(NetworkTestUtil.getRandomNode(
+				network).getDataManager(), encryptionKey, locationKey);
+		FolderIndex fetched = (FolderIndex) reader.get().getRoot().getChildByName("folder");
+		try {
+			fetched.getChildren();
+			Assert.fail("The shard does not match its reference");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static Map<String, Number160> getShardVersions(UserProfile userProfile) {
+		Map<String, Number160> versions = new HashMap<String, Number160>();
+		for (Map.Entry<String, UserProfileShard.Reference> entry : userProfile.getShards().entrySet()) {
+			versions.put(entry.getKey(), entry.getValue().getVersionKey());
+		}
+		return versions;
+	}
+
+	@AfterClass
+	public static void cleanAfterClass() {
+		NetworkTestUtil.shutdownNetwork(network);
+		afterClass();
+	}
+}
@@ -0,0 +1,159 @@
+package org.hive2hive.core.network.data.vdht;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import javax.crypto.SecretKey;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.model.BaseNetworkContent;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.versioned.EncryptedNetworkContent;
+import org.hive2hive.core.model.versioned.UserProfile;
+import org.hive2hive.core.network.NetworkManager;
+import org.hive2hive.core.network.data.DataManager;
+import org.hive2hive.core.network.data.DataManager.H2HPutStatus;
+import org.hive2hive.core.network.data.parameters.IParameters;
+import org.hive2hive.core.network.data.parameters.Parameters;
+import org.hive2hive.core.security.EncryptionUtil;
+import org.hive2hive.core.security.EncryptionUtil.AES_KEYLENGTH;
+import org.hive2hive.core.security.HashUtil;
+import org.hive2hive.core.security.IH2HEncryption;
+import org.hive2hive.core.serializer.CompressionUtil;
+import org.hive2hive.core.serializer.IH2HSerialize;
+import org.hive2hive.core.utils.NetworkTestUtil;
+
+/**
+ * Compares the size of the user profile and the latency of putting and getting it, once stored plain and
+ * once compressed (see {@link H2HConstants#USER_PROFILE_COMPRESSION}), for profiles with 10k, 50k and 100k
+ * files. The put and get latencies include the encryption, respectively the decryption (and the
+ * (de)compression). This is not a unit test, run it manually with a heap large enough for the largest
+ * profile, e.g. <code>-Xmx4g</code>.<br>
+ * Arguments: <code>[repetitions] [files...]</code>
+ */
+public class UserProfileCompressionBenchmark {
+
+	private static final String PROVIDER = BouncyCastleProvider.PROVIDER_NAME;
+	private static final int NETWORK_SIZE = 5;
+	private static final int FILES_PER_FOLDER = 100;
+	// generating a key pair per file would take hours. The pooled key pairs are copied, and a key pair repeats
+	// only after far more than the 32 KB window of the deflater, thus the pool does not improve the compression.
+	private static final int KEY_POOL_SIZE = 1000;
+
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int[] fileCounts = { 10000, 50000, 100000 };
+		if (args.length > 1) {
+			fileCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				fileCounts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		Security.addProvider(new BouncyCastleProvider());
+		System.out.println(String.format("Generating %s key pairs.", KEY_POOL_SIZE));
+		KeyPair[] keyPool = new KeyPair[KEY_POOL_SIZE];
+		for (int i = 0; i < keyPool.length; i++) {
+			keyPool[i] = EncryptionUtil.generateRSAKeyPair(H2HConstants.KEYLENGTH_META_FILE, PROVIDER);
+		}
+		SecretKey encryptionKey = EncryptionUtil.generateAESKey(AES_KEYLENGTH.BIT_256, PROVIDER);
+		KeyPair protectionKeys = EncryptionUtil.generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION, PROVIDER);
+
+		List<NetworkManager> network = NetworkTestUtil.createNetwork(NETWORK_SIZE);
+		try {
+			DataManager dataManager = network.get(0).getDataManager();
+			for (int files : fileCounts) {
+				UserProfile userProfile = createUserProfile(files, keyPool);
+				System.out.println(String.format("%s files: %s bytes serialized", files, dataManager.getSerializer()
+						.serialize(userProfile).length));
+				for (int round = 0; round < 2; round++) {
+					// the first round warms up
+					boolean print = round > 0;
+					measure("plain", userProfile, false, repetitions, dataManager, encryptionKey, protectionKeys, print);
+					measure("compressed", userProfile, true, repetitions, dataManager, encryptionKey, protectionKeys,
+							print);
+				}
+			}
+		} finally {
+			NetworkTestUtil.shutdownNetwork(network);
+		}
+	}
+
+	private static UserProfile createUserProfile(int files, KeyPair[] keyPool) throws GeneralSecurityException {
+		KeyFactory keyFactory = KeyFactory.getInstance("RSA", PROVIDER);
+		UserProfile userProfile = new UserProfile(UUID.randomUUID().toString(), copy(keyPool[0], keyFactory), copy(
+				keyPool[1], keyFactory));
+		FolderIndex folder = null;
+		for (int i = 0; i < files; i++) {
+			if (i % FILES_PER_FOLDER == 0) {
+				folder = new FolderIndex(userProfile.getRoot(), copy(keyPool[i % keyPool.length], keyFactory), "folder"
+						+ i);
+			}
+			String name = String.format("file-%s-%s.txt", i, UUID.randomUUID());
+			new FileIndex(folder, copy(keyPool[(i + 1) % keyPool.length], keyFactory), name, HashUtil.hash(name
+					.getBytes()));
+		}
+		return userProfile;
+	}
+
+	private static KeyPair copy(KeyPair keyPair, KeyFactory keyFactory) throws GeneralSecurityException {
+		// an own instance, else the serializer would only store a reference to the shared key pair
+		return new KeyPair(keyFactory.generatePublic(new X509EncodedKeySpec(keyPair.getPublic().getEncoded())),
+				keyFactory.generatePrivate(new PKCS8EncodedKeySpec(keyPair.getPrivate().getEncoded())));
+	}
+
+	private static void measure(String name, UserProfile userProfile, boolean compress, int repetitions,
+			DataManager dataManager, SecretKey encryptionKey, KeyPair protectionKeys, boolean print) throws Exception {
+		IH2HSerialize serializer = dataManager.getSerializer();
+		IH2HEncryption encryption = dataManager.getEncryption();
+		long[] putTimes = new long[repetitions];
+		long[] getTimes = new long[repetitions];
+		int storedSize = 0;
+
+		for (int i = 0; i < repetitions; i++) {
+			// a new location for every put, such that no versions accumulate
+			IParameters parameters = new Parameters().setLocationKey(UUID.randomUUID().toString())
+					.setContentKey(H2HConstants.USER_PROFILE).setProtectionKeys(protectionKeys)
+					.setTTL(userProfile.getTimeToLive());
+
+			long start = System.nanoTime();
+			BaseNetworkContent content = compress ? CompressionUtil.compress(userProfile, serializer) : userProfile;
+			EncryptedNetworkContent encrypted = encryption.encryptAES(content, encryptionKey);
+			parameters.setNetworkContent(encrypted);
+			if (dataManager.put(parameters) != H2HPutStatus.OK) {
+				throw new IllegalStateException("Put of the user profile failed.");
+			}
+			putTimes[i] = System.nanoTime() - start;
+			storedSize = serializer.serialize(encrypted).length;
+
+			start = System.nanoTime();
+			BaseNetworkContent fetched = dataManager.get(parameters);
+			if (!(fetched instanceof EncryptedNetworkContent)) {
+				throw new IllegalStateException("Get of the user profile failed.");
+			}
+			CompressionUtil.decompress(encryption.decryptAES((EncryptedNetworkContent) fetched, encryptionKey),
+					serializer);
+			getTimes[i] = System.nanoTime() - start;
+		}
+
+		if (print) {
+			System.out.println(String.format("  %-12s %12s bytes stored %10.1f ms put %10.1f ms get", name, storedSize,
+					median(putTimes) / 1e6, median(getTimes) / 1e6));
+		}
+	}
+
+	private static long median(long[] times) {
+		long[] sorted = Arrays.copyOf(times, times.length);
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
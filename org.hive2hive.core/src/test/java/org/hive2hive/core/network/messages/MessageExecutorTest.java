@@ -0,0 +1,162 @@
+package org.hive2hive.core.network.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hive2hive.core.H2HJUnitTest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the bounds and the fair order of the {@link MessageExecutor}.
+ */
+public class MessageExecutorTest extends H2HJUnitTest {
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = MessageExecutorTest.class;
+		beforeClass();
+	}
+
+	@Test
+	public void testFairOrder() throws InterruptedException {
+		MessageExecutor executor = new MessageExecutor(1, 10, 100, 1, 10);
+		CountDownLatch release = block(executor);
+
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(4);
+		assertTrue(executor.execute("a", new Record("a1", order, done)));
+		assertTrue(executor.execute("a", new Record("a2", order, done)));
+		assertTrue(executor.execute("a", new Record("a3", order, done)));
+		assertTrue(executor.execute("b", new Record("b1", order, done)));
+		assertEquals(4, executor.getQueued());
+		assertEquals(2, executor.getQueuedSenders());
+
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		// b does not have to wait for all messages of a
+		assertEquals(Arrays.asList("a1", "b1", "a2", "a3"), order);
+		assertEquals(0, executor.getQueued());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testBounds() throws InterruptedException {
+		MessageExecutor executor = new MessageExecutor(1, 2, 3, 1, 1);
+		CountDownLatch release = block(executor);
+
+		CountDownLatch done = new CountDownLatch(3);
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		assertTrue(executor.execute("a", new Record("a1", order, done)));
+		assertTrue(executor.execute("a", new Record("a2", order, done)));
+		// too many of the same sender
+		assertFalse(executor.execute("a", new Record("a3", order, done)));
+		assertTrue(executor.execute("b", new Record("b1", order, done)));
+		// too many in total
+		assertFalse(executor.execute("c", new Record("c1", order, done)));
+		assertEquals(3, executor.getQueued());
+
+		// responses are handled independently of the queued messages
+		final CountDownLatch responseStarted = new CountDownLatch(1);
+		final CountDownLatch responseRelease = new CountDownLatch(1);
+		assertTrue(executor.executeResponse(new Runnable() {
+			@Override
+			public void run() {
+				responseStarted.countDown();
+				try {
+					responseRelease.await();
+				} catch (InterruptedException e) {
+					// shut down
+				}
+			}
+		}));
+		assertTrue(responseStarted.await(10, TimeUnit.SECONDS));
+
+		// but their queue is bounded as well
+		final CountDownLatch response = new CountDownLatch(1);
+		Runnable countDown = new Runnable() {
+			@Override
+			public void run() {
+				response.countDown();
+			}
+		};
+		assertTrue(executor.executeResponse(countDown));
+		assertFalse(executor.executeResponse(countDown));
+
+		responseRelease.countDown();
+		assertTrue(response.await(10, TimeUnit.SECONDS));
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(3, order.size());
+		assertEquals(0, executor.getQueued());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testShutdown() throws InterruptedException {
+		MessageExecutor executor = new MessageExecutor(1, 10, 100, 1, 10);
+		block(executor);
+		executor.shutdown();
+
+		// nothing is handled anymore
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		assertFalse(executor.execute("a", new Record("a1", order, new CountDownLatch(1))));
+		assertFalse(executor.executeResponse(new Record("r1", order, new CountDownLatch(1))));
+		assertTrue(order.isEmpty());
+	}
+
+	/**
+	 * Occupies the only worker until the returned latch is released.
+	 */
+	private static CountDownLatch block(MessageExecutor executor) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		assertTrue(executor.execute("blocker", new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// shut down
+				}
+			}
+		}));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		assertEquals(1, executor.getRunning());
+		return release;
+	}
+
+	private static class Record implements Runnable {
+
+		private final String name;
+		private final List<String> order;
+		private final CountDownLatch done;
+
+		public Record(String name, List<String> order, CountDownLatch done) {
+			this.name = name;
+			this.order = order;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			order.add(name);
+			done.countDown();
+		}
+	}
+
+	@AfterClass
+	public static void cleanAfterClass() {
+		afterClass();
+	}
+}
@@ -0,0 +1,137 @@
+package org.hive2hive.core.network.messages;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+import net.tomp2p.peers.Number160;
+
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.security.EncryptionUtil;
+import org.hive2hive.core.security.EncryptionUtil.AES_KEYLENGTH;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the caching, expiry and renewal of message sessions.
+ */
+public class MessageSessionManagerTest extends H2HJUnitTest {
+
+	private static Number160 receiverId;
+	private static Number160 otherDeviceId;
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = MessageSessionManagerTest.class;
+		beforeClass();
+		receiverId = Number160.createHash(randomString());
+		otherDeviceId = Number160.createHash(randomString());
+	}
+
+	@Test
+	public void testEstablish() {
+		MessageSessionManager sender = new MessageSessionManager(60000, 1000);
+		MessageSessionManager receiver = new MessageSessionManager(60000, 1000);
+		assertNull(sender.getOutgoing(receiverId));
+
+		MessageSessionOffer offer = sender.createOffer(generateKey());
+		// not used before the receiver accepted it
+		assertNull(sender.getOutgoing(receiverId));
+
+		receiver.accept("sender", offer);
+		sender.confirm(receiverId, offer);
+		MessageSession outgoing = sender.getOutgoing(receiverId);
+		assertNotNull(outgoing);
+		MessageSession incoming = receiver.getIncoming(outgoing.getId());
+		assertNotNull(incoming);
+		assertEquals("sender", incoming.getUserId());
+		assertArrayEquals(outgoing.getKey().getEncoded(), incoming.getKey().getEncoded());
+		// another peer (e.g. another device of the same user) does not know the session
+		assertNull(sender.getOutgoing(otherDeviceId));
+
+		// confirming twice does not reset the nonces
+		byte[] nonce = outgoing.nextNonce();
+		sender.confirm(receiverId, offer);
+		assertSame(outgoing, sender.getOutgoing(receiverId));
+		assertFalse(Arrays.equals(nonce, outgoing.nextNonce()));
+
+		sender.invalidate(receiverId);
+		assertNull(sender.getOutgoing(receiverId));
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		// renewed after a number of messages
+		MessageSessionManager sender = new MessageSessionManager(60000, 2);
+		sender.confirm(receiverId, sender.createOffer(generateKey()));
+		MessageSession session = sender.getOutgoing(receiverId);
+		session.nextNonce();
+		session.nextNonce();
+		assertNull(sender.getOutgoing(receiverId));
+
+		// renewed after some time
+		MessageSessionManager shortLived = new MessageSessionManager(50, 1000);
+		MessageSessionOffer offer = shortLived.createOffer(generateKey());
+		shortLived.confirm(receiverId, offer);
+		shortLived.accept("sender", offer);
+		Thread.sleep(150);
+		assertNull(shortLived.getOutgoing(receiverId));
+		assertNull(shortLived.getIncoming(offer.getSessionId()));
+	}
+
+	@Test
+	public void testNoTakeover() {
+		MessageSessionManager receiver = new MessageSessionManager(60000, 1000);
+		MessageSessionOffer offer = new MessageSessionOffer("id", generateKey());
+		receiver.accept("sender", offer);
+
+		// another user cannot replace an existing session
+		receiver.accept("attacker", new MessageSessionOffer("id", generateKey()));
+		MessageSession incoming = receiver.getIncoming("id");
+		assertEquals("sender", incoming.getUserId());
+		assertArrayEquals(offer.getKey().getEncoded(), incoming.getKey().getEncoded());
+	}
+
+	@Test
+	public void testReplayIsRejected() {
+		MessageSession sender = new MessageSession("id", generateKey(), null, Long.MAX_VALUE, 1000);
+		MessageSession receiver = new MessageSession("id", sender.getKey(), "sender", Long.MAX_VALUE, 1000);
+		byte[][] nonces = new byte[100][];
+		for (int i = 0; i < nonces.length; i++) {
+			nonces[i] = sender.nextNonce();
+		}
+
+		assertTrue(receiver.markReceived(nonces[0]));
+		assertFalse(receiver.markReceived(nonces[0]));
+
+		// reordered messages are accepted once
+		assertTrue(receiver.markReceived(nonces[10]));
+		assertTrue(receiver.markReceived(nonces[5]));
+		assertFalse(receiver.markReceived(nonces[5]));
+		assertFalse(receiver.markReceived(nonces[10]));
+
+		// too old to tell whether it has been received
+		assertTrue(receiver.markReceived(nonces[99]));
+		assertFalse(receiver.markReceived(nonces[20]));
+		assertTrue(receiver.markReceived(nonces[40]));
+		assertFalse(receiver.markReceived(nonces[40]));
+	}
+
+	private static SecretKey generateKey() {
+		return EncryptionUtil.generateAESKey(AES_KEYLENGTH.BIT_128, "BC");
+	}
+
+	@AfterClass
+	public static void cleanAfterClass() {
+		afterClass();
+	}
+}
@@ -1,18 +1,25 @@
 package org.hive2hive.core.network.messages;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.security.PublicKey;
 import java.util.List;
 
+import net.tomp2p.peers.Number160;
+
 import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HJUnitTest;
 import org.hive2hive.core.exceptions.NoPeerConnectionException;
 import org.hive2hive.core.exceptions.NoSessionException;
 import org.hive2hive.core.network.NetworkManager;
 import org.hive2hive.core.network.messages.testmessages.TestSignedMessage;
+import org.hive2hive.core.security.EncryptionUtil;
 import org.hive2hive.core.utils.NetworkTestUtil;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -98,6 +105,34 @@ public class MessageSignatureTest extends H2HJUnitTest {
 		assertFalse(sender.getMessageManager().send(message, getPublicKey(receiver)));
 	}
 
+	@Test
+	public void testMessageSession() throws NoPeerConnectionException, NoSessionException {
+		NetworkTestUtil.setDifferentSessions(network);
+		NetworkManager sender = network.get(0);
+		NetworkManager receiver = network.get(1);
+		receiver.getSession().getKeyManager().putPublicKey(sender.getUserId(), getPublicKey(sender));
+		MessageSessionManager sessions = sender.getSession().getMessageSessionManager();
+		// routed messages are sent to the peer responsible for the target key
+		Number160 receiverId = Number160.createHash(receiver.getNodeId());
+
+		// the first message establishes the session
+		assertNull(sessions.getOutgoing(receiverId));
+		assertTrue(sender.getMessageManager().send(new TestSignedMessage(receiver.getNodeId()), getPublicKey(receiver)));
+		MessageSession session = sessions.getOutgoing(receiverId);
+		assertNotNull(session);
+
+		// the next ones use it
+		assertTrue(sender.getMessageManager().send(new TestSignedMessage(receiver.getNodeId()), getPublicKey(receiver)));
+		assertSame(session, sessions.getOutgoing(receiverId));
+
+		// a session unknown to the receiver falls back to the signed message and is replaced
+		sessions.confirm(receiverId, sessions.createOffer(EncryptionUtil.generateAESKey(
+				H2HConstants.KEYLENGTH_MESSAGE_SESSION, sender.getEncryption().getSecurityProvider())));
+		MessageSession unknown = sessions.getOutgoing(receiverId);
+		assertTrue(sender.getMessageManager().send(new TestSignedMessage(receiver.getNodeId()), getPublicKey(receiver)));
+		assertNotSame(unknown, sessions.getOutgoing(receiverId));
+	}
+
 	private PublicKey getPublicKey(NetworkManager networkManager) {
 		try {
 			return networkManager.getSession().getKeyPair().getPublic();
@@ -0,0 +1,142 @@
+package org.hive2hive.core.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.Signature;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hive2hive.core.H2HConstants;
+import org.hive2hive.core.security.EncryptionUtil.AES_KEYLENGTH;
+import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+
+/**
+ * Measures the throughput of the AES encryption of chunks and the signing of messages, once with new cipher
+ * and signature instances per operation (as {@link EncryptionUtil} did before it reused them) and once through
+ * {@link EncryptionUtil}. Furthermore, it compares the messages per second that can be signed and verified
+ * with the supported signature schemes. This is not a unit test, run it manually.<br>
+ * Arguments: <code>[duration per measurement s]</code>
+ */
+public class EncryptionBenchmark {
+
+	private static final String PROVIDER = BouncyCastleProvider.PROVIDER_NAME;
+	private static final IStrongAESEncryption STRONG_AES = new BCStrongAESEncryption();
+	private static final int MESSAGE_SIZE = 1024;
+
+	public static void main(String[] args) throws GeneralSecurityException {
+		int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		Security.addProvider(new BouncyCastleProvider());
+
+		Random random = new Random(42);
+		final byte[] chunk = new byte[H2HConstants.DEFAULT_CHUNK_SIZE];
+		random.nextBytes(chunk);
+		final byte[] message = new byte[MESSAGE_SIZE];
+		random.nextBytes(message);
+		final SecretKey aesKey = EncryptionUtil.generateAESKey(AES_KEYLENGTH.BIT_128, PROVIDER);
+		final byte[] initVector = EncryptionUtil.generateIV();
+		final KeyPair keyPair = EncryptionUtil.generateRSAKeyPair(RSA_KEYLENGTH.BIT_1024, PROVIDER);
+		KeyPair userKeyPair = EncryptionUtil.generateRSAKeyPair(RSA_KEYLENGTH.BIT_2048, PROVIDER);
+		KeyPair ecKeyPair = EncryptionUtil.generateECKeyPair(PROVIDER);
+
+		final ByteBuffer input = ByteBuffer.allocateDirect(chunk.length);
+		input.put(chunk).flip();
+		final ByteBuffer output = ByteBuffer.allocateDirect(EncryptionUtil.getAESEncryptedSize(chunk.length));
+
+		for (int round = 0; round < 2; round++) {
+			// the first round warms up
+			boolean print = round > 0;
+			measure("chunk, new cipher", durationSeconds, chunk.length, print, new Operation() {
+				@Override
+				public void run() throws GeneralSecurityException {
+					encryptWithNewCipher(chunk, aesKey, initVector);
+				}
+			});
+			measure("chunk, reused cipher", durationSeconds, chunk.length, print, new Operation() {
+				@Override
+				public void run() throws GeneralSecurityException {
+					EncryptionUtil.encryptAES(chunk, aesKey, initVector, PROVIDER, STRONG_AES);
+				}
+			});
+			measure("chunk, buffer to buffer", durationSeconds, chunk.length, print, new Operation() {
+				@Override
+				public void run() throws GeneralSecurityException {
+					input.rewind();
+					output.clear();
+					EncryptionUtil.encryptAES(input, output, aesKey, initVector, PROVIDER, STRONG_AES);
+				}
+			});
+			measure("message, new signature", durationSeconds, message.length, print, new Operation() {
+				@Override
+				public void run() throws GeneralSecurityException {
+					Signature signature = Signature.getInstance("SHA1withRSA", PROVIDER);
+					signature.initSign(keyPair.getPrivate());
+					signature.update(message);
+					signature.sign();
+				}
+			});
+			measure("message, reused signature", durationSeconds, message.length, print, new Operation() {
+				@Override
+				public void run() throws GeneralSecurityException {
+					EncryptionUtil.sign(message, keyPair.getPrivate(), PROVIDER);
+				}
+			});
+		}
+	}
+
+	private static byte[] encryptWithNewCipher(byte[] data, SecretKey key, byte[] initVector)
+			throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding", PROVIDER);
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getEncoded(), "AES"), new IvParameterSpec(initVector));
+		byte[] output = new byte[cipher.getOutputSize(data.length)];
+		int processed = cipher.update(data, 0, data.length, output, 0);
+		processed += cipher.doFinal(output, processed);
+		byte[] result = new byte[processed];
+		System.arraycopy(output, 0, result, 0, processed);
+		return result;
+	}
+
+	private static void measureScheme(String name, final KeyPair keyPair, final byte[] message, int durationSeconds,
+			boolean print) throws GeneralSecurityException {
+		final byte[] signature = EncryptionUtil.sign(message, keyPair.getPrivate(), PROVIDER);
+		measure(name + ", sign", durationSeconds, message.length, print, new Operation() {
+			@Override
+			public void run() throws GeneralSecurityException {
+				EncryptionUtil.sign(message, keyPair.getPrivate(), PROVIDER);
+			}
+		});
+		measure(name + ", verify", durationSeconds, message.length, print, new Operation() {
+			@Override
+			public void run() throws GeneralSecurityException {
+				EncryptionUtil.verify(message, signature, keyPair.getPublic(), PROVIDER);
+			}
+		});
+	}
+
+	private static void measure(String name, int durationSeconds, int size, boolean print, Operation operation)
+			throws GeneralSecurityException {
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + durationSeconds * 1000000000L;
+		while (System.nanoTime() < end) {
+			operation.run();
+			operations++;
+		}
+
+		if (print) {
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("%-28s %10.1f ops/s %10.1f MB/s", name, operations / seconds,
+					operations * (double) size / seconds / (1024 * 1024)));
+		}
+	}
+
+	private interface Operation {
+		void run() throws GeneralSecurityException;
+	}
+}
@@ -1,5 +1,6 @@
 package org.hive2hive.core.security;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
@@ -7,6 +8,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -33,10 +35,12 @@ import org.bouncycastle.crypto.engines.RSAEngine;
 import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
 import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.H2HJUnitTest;
 import org.hive2hive.core.model.versioned.HybridEncryptedContent;
 import org.hive2hive.core.security.EncryptionUtil.AES_KEYLENGTH;
 import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.hive2hive.core.security.EncryptionUtil.SIGNATURE_SCHEME;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -144,6 +148,75 @@ public class EncryptionUtilTest extends H2HJUnitTest {
 		}
 	}
 
+	@Test
+	public void encryptionAESBufferTest() throws GeneralSecurityException {
+		for (AES_KEYLENGTH keylength : AES_KEYLENGTH.values()) {
+			byte[] data = generateRandomContent(2097152);
+			SecretKey aesKey = EncryptionUtil.generateAESKey(keylength, SECURITY_PROVIDER);
+			byte[] initVector = EncryptionUtil.generateIV();
+
+			// direct buffers as used for chunks
+			ByteBuffer input = ByteBuffer.allocateDirect(data.length);
+			input.put(data).flip();
+			ByteBuffer encrypted = ByteBuffer.allocateDirect(EncryptionUtil.getAESEncryptedSize(data.length));
+			int encryptedLength = EncryptionUtil.encryptAES(input, encrypted, aesKey, initVector, SECURITY_PROVIDER,
+					STRONG_AES);
+			assertEquals(EncryptionUtil.getAESEncryptedSize(data.length), encryptedLength);
+			encrypted.flip();
+
+			// same result as the array variant
+			byte[] encryptedData = new byte[encryptedLength];
+			encrypted.duplicate().get(encryptedData);
+			assertTrue(Arrays.equals(EncryptionUtil.encryptAES(data, aesKey, initVector, SECURITY_PROVIDER, STRONG_AES),
+					encryptedData));
+
+			ByteBuffer decrypted = ByteBuffer.allocate(encryptedLength);
+			int decryptedLength = EncryptionUtil.decryptAES(encrypted, decrypted, aesKey, initVector, SECURITY_PROVIDER,
+					STRONG_AES);
+			assertEquals(data.length, decryptedLength);
+			assertTrue(Arrays.equals(data, Arrays.copyOf(decrypted.array(), decryptedLength)));
+		}
+	}
+
+	@Test
+	public void encryptionAESGCMTest() throws GeneralSecurityException {
+		for (AES_KEYLENGTH keylength : AES_KEYLENGTH.values()) {
+			byte[] data = generateRandomContent(2097152);
+			SecretKey aesKey = EncryptionUtil.generateAESKey(keylength, SECURITY_PROVIDER);
+			byte[] nonce = EncryptionUtil.generateGCMNonce(7);
+
+			byte[] encryptedData = EncryptionUtil.encryptAESGCM(data, aesKey, nonce, SECURITY_PROVIDER, STRONG_AES);
+			// the tag is appended
+			assertEquals(data.length + 16, encryptedData.length);
+			assertTrue(Arrays.equals(data,
+					EncryptionUtil.decryptAESGCM(encryptedData, aesKey, nonce, SECURITY_PROVIDER, STRONG_AES)));
+
+			// single pass between direct buffers
+			ByteBuffer input = ByteBuffer.allocateDirect(encryptedData.length);
+			input.put(encryptedData).flip();
+			ByteBuffer output = ByteBuffer.allocateDirect(data.length);
+			assertEquals(data.length,
+					EncryptionUtil.decryptAESGCM(input, output, aesKey, nonce, SECURITY_PROVIDER, STRONG_AES));
+
+			// modifications are detected
+			encryptedData[encryptedData.length / 2] ^= 1;
+			try {
+				EncryptionUtil.decryptAESGCM(encryptedData, aesKey, nonce, SECURITY_PROVIDER, STRONG_AES);
+				Assert.fail("Modified data has been decrypted");
+			} catch (GeneralSecurityException e) {
+				// expected
+			}
+		}
+
+		// the nonces of different positions never collide
+		assertFalse(Arrays.equals(Arrays.copyOfRange(EncryptionUtil.generateGCMNonce(1), 4, 12),
+				Arrays.copyOfRange(EncryptionUtil.generateGCMNonce(2), 4, 12)));
+
+		// the position can be recovered to check the order of the parts
+		assertEquals(7, EncryptionUtil.getGCMNoncePosition(EncryptionUtil.generateGCMNonce(7)));
+		assertEquals(-1, EncryptionUtil.getGCMNoncePosition(new byte[16]));
+	}
+
 	@Test
 	public void encryptionRSATest() {
 
@@ -294,6 +367,41 @@ public class EncryptionUtilTest extends H2HJUnitTest {
 		}
 	}
 
+	@Test
+	public void signatureECDSATest() throws GeneralSecurityException, IOException {
+		KeyPair ecKeyPair = EncryptionUtil.generateECKeyPair(SECURITY_PROVIDER);
+		assertNotNull(ecKeyPair);
+		assertEquals(SIGNATURE_SCHEME.ECDSA_P256, SIGNATURE_SCHEME.of(ecKeyPair.getPublic()));
+
+		byte[] data = generateRandomContent(100);
+		byte[] signature = EncryptionUtil.sign(data, ecKeyPair.getPrivate(), SECURITY_PROVIDER);
+		assertTrue(EncryptionUtil.verify(data, signature, ecKeyPair.getPublic(), SECURITY_PROVIDER));
+		data[0]++;
+		assertFalse(EncryptionUtil.verify(data, signature, ecKeyPair.getPublic(), SECURITY_PROVIDER));
+
+		// content protection with mixed schemes, using the fixed size encoding
+		H2HSignatureFactory factory = new H2HSignatureFactory();
+		KeyPair rsaKeyPair = generateRSAKeyPair(H2HConstants.KEYLENGTH_PROTECTION);
+		for (KeyPair keyPair : new KeyPair[] { ecKeyPair, rsaKeyPair }) {
+			ByteBuffer[] content = new ByteBuffer[] { ByteBuffer.wrap(data) };
+			H2HSignatureCodec codec = (H2HSignatureCodec) factory.sign(keyPair.getPrivate(), content);
+			assertEquals(H2HSignatureCodec.SIGNATURE_SIZE, codec.encode().length);
+
+			// the public key and the signature as received by another peer
+			H2HSignatureCodec received = new H2HSignatureCodec(codec.encode());
+			content[0].rewind();
+			assertTrue(factory.verify(factory.decodePublicKey(keyPair.getPublic().getEncoded()), content, received));
+		}
+
+		// an ECDSA signature with a modified padding is rejected
+		ByteBuffer[] content = new ByteBuffer[] { ByteBuffer.wrap(data) };
+		byte[] encoded = ((H2HSignatureCodec) factory.sign(ecKeyPair.getPrivate(), content)).encode();
+		encoded[encoded.length - 1] = 1;
+		content[0].rewind();
+		assertFalse(factory.verify(factory.decodePublicKey(ecKeyPair.getPublic().getEncoded()), content,
+				new H2HSignatureCodec(encoded)));
+	}
+
 	@Test
 	public void testIVGeneration() {
 		for (int i = 0; i < 100000; i++)
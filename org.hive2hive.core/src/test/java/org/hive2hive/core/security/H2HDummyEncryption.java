@@ -9,6 +9,7 @@ import java.security.Security;
 import javax.crypto.SecretKey;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hive2hive.core.H2HConstants;
 import org.hive2hive.core.model.BaseNetworkContent;
 import org.hive2hive.core.model.versioned.EncryptedNetworkContent;
 import org.hive2hive.core.model.versioned.HybridEncryptedContent;
@@ -53,6 +54,28 @@ public class H2HDummyEncryption implements IH2HEncryption {
 		return (BaseNetworkContent) serializer.deserialize(content.getCipherContent());
 	}
 
+	@Override
+	public EncryptedNetworkContent encryptAESGCM(BaseNetworkContent content, SecretKey aesKey, byte[] nonce)
+			throws IOException {
+		return new EncryptedNetworkContent(serializer.serialize(content), nonce);
+	}
+
+	@Override
+	public BaseNetworkContent decryptAESGCM(EncryptedNetworkContent content, SecretKey aesKey) throws IOException,
+			ClassNotFoundException {
+		return (BaseNetworkContent) serializer.deserialize(content.getCipherContent());
+	}
+
+	@Override
+	public byte[] encryptAESGCM(byte[] content, SecretKey aesKey, byte[] nonce) {
+		return content;
+	}
+
+	@Override
+	public byte[] decryptAESGCM(byte[] content, SecretKey aesKey, byte[] nonce) {
+		return content;
+	}
+
 	@Override
 	public HybridEncryptedContent encryptHybrid(BaseNetworkContent content, PublicKey publicKey) throws IOException {
 		return new HybridEncryptedContent(new byte[] {}, serializer.serialize(content));
@@ -79,4 +102,15 @@ public class H2HDummyEncryption implements IH2HEncryption {
 	public KeyPair generateRSAKeyPair(RSA_KEYLENGTH length) {
 		return EncryptionUtil.generateRSAKeyPair(length, SECURITY_PROVIDER);
 	}
+
+	@Override
+	public KeyPair generateProtectionKeyPair() {
+		return EncryptionUtil.generateSignatureKeyPair(H2HConstants.PROTECTION_SIGNATURE_SCHEME,
+				H2HConstants.KEYLENGTH_PROTECTION, SECURITY_PROVIDER);
+	}
+
+	@Override
+	public void shutdown() {
+		// nothing is running in the background
+	}
 }
@@ -0,0 +1,66 @@
+package org.hive2hive.core.security;
+
+import java.security.KeyPair;
+
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.model.DerivedKeyPair;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.hive2hive.core.serializer.FSTSerializer;
+import org.hive2hive.core.serializer.IH2HSerialize;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the derivation of key pairs from a seed.
+ */
+public class KeyDerivationUtilTest extends H2HJUnitTest {
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = KeyDerivationUtilTest.class;
+		beforeClass();
+	}
+
+	@Test
+	public void testDeterministic() throws Exception {
+		byte[] seed = KeyDerivationUtil.generateSeed();
+		KeyPair keys1 = KeyDerivationUtil.deriveRSAKeyPair(seed, RSA_KEYLENGTH.BIT_512);
+		// a copy of the seed, such that the cache is not involved
+		KeyPair keys2 = KeyDerivationUtil.deriveRSAKeyPair(seed.clone(), RSA_KEYLENGTH.BIT_512);
+		Assert.assertEquals(keys1.getPublic(), keys2.getPublic());
+		Assert.assertEquals(keys1.getPrivate(), keys2.getPrivate());
+
+		KeyPair other = KeyDerivationUtil.deriveRSAKeyPair(KeyDerivationUtil.generateSeed(), RSA_KEYLENGTH.BIT_512);
+		Assert.assertNotEquals(keys1.getPublic(), other.getPublic());
+
+		// the derived keys work as usual
+		byte[] data = randomString().getBytes();
+		byte[] signature = EncryptionUtil.sign(data, keys1.getPrivate(), "BC");
+		Assert.assertTrue(EncryptionUtil.verify(data, signature, keys2.getPublic(), "BC"));
+	}
+
+	@Test
+	public void testDerivedIndex() throws Exception {
+		IH2HSerialize serializer = new FSTSerializer();
+		FolderIndex root = new FolderIndex(generateRSAKeyPair(RSA_KEYLENGTH.BIT_512));
+		DerivedKeyPair derivedKeys = DerivedKeyPair.create(RSA_KEYLENGTH.BIT_512);
+		FileIndex file = new FileIndex(root, derivedKeys, "file", randomString().getBytes());
+
+		FolderIndex copy = (FolderIndex) serializer.deserialize(serializer.serialize(root));
+		FileIndex copiedFile = (FileIndex) copy.getChildByName("file");
+		Assert.assertEquals(file.getFilePublicKey(), copiedFile.getFilePublicKey());
+		Assert.assertNotNull(copiedFile.getDerivedFileKeys());
+
+		// the private key is derived again
+		Assert.assertEquals(derivedKeys.getKeyPair().getPrivate(), copiedFile.getFileKeys().getPrivate());
+	}
+
+	@AfterClass
+	public static void cleanAfterClass() {
+		afterClass();
+	}
+}
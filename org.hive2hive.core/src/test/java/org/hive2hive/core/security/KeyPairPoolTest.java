@@ -0,0 +1,83 @@
+package org.hive2hive.core.security;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the background generation of RSA key pairs.
+ */
+public class KeyPairPoolTest extends H2HJUnitTest {
+
+	@BeforeClass
+	public static void initTest() throws Exception {
+		testClass = KeyPairPoolTest.class;
+		beforeClass();
+
+		if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+	}
+
+	@Test
+	public void testTakeAndRefill() throws InterruptedException {
+		KeyPairPool pool = new KeyPairPool(BouncyCastleProvider.PROVIDER_NAME, 4, 60000);
+		Assert.assertEquals(0, pool.getAvailable(RSA_KEYLENGTH.BIT_512));
+
+		Set<KeyPair> taken = new HashSet<KeyPair>();
+		for (int i = 0; i < 10; i++) {
+			KeyPair keyPair = pool.take(RSA_KEYLENGTH.BIT_512);
+			Assert.assertNotNull(keyPair);
+			// never the same key pair twice
+			Assert.assertTrue(taken.add(keyPair));
+		}
+
+		// the depth grew because the pool ran empty, but not beyond the maximum
+		int depth = pool.getDepth(RSA_KEYLENGTH.BIT_512);
+		Assert.assertTrue(depth > 1);
+		Assert.assertTrue(depth <= 4);
+
+		// refilled in the background
+		long deadline = System.currentTimeMillis() + 30000;
+		while (pool.getAvailable(RSA_KEYLENGTH.BIT_512) < depth && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals(depth, pool.getAvailable(RSA_KEYLENGTH.BIT_512));
+
+		// other key lengths are not pooled
+		Assert.assertEquals(0, pool.getAvailable(RSA_KEYLENGTH.BIT_1024));
+		pool.shutdown();
+	}
+
+	@Test
+	public void testDisabled() {
+		KeyPairPool pool = new KeyPairPool(BouncyCastleProvider.PROVIDER_NAME, 0, 60000);
+		Assert.assertNotNull(pool.take(RSA_KEYLENGTH.BIT_512));
+		Assert.assertEquals(0, pool.getAvailable(RSA_KEYLENGTH.BIT_512));
+		pool.shutdown();
+	}
+
+	@Test
+	public void testTakeAfterShutdown() {
+		KeyPairPool pool = new KeyPairPool(BouncyCastleProvider.PROVIDER_NAME, 4, 60000);
+		pool.shutdown();
+
+		// generated on demand, nothing is pre-generated anymore
+		Assert.assertNotNull(pool.take(RSA_KEYLENGTH.BIT_512));
+		Assert.assertEquals(0, pool.getAvailable(RSA_KEYLENGTH.BIT_512));
+	}
+
+	@AfterClass
+	public static void cleanAfterClass() {
+		afterClass();
+	}
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -14,7 +15,12 @@ import java.util.Collection;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.hive2hive.core.H2HJUnitTest;
+import org.hive2hive.core.model.CompressedContent;
+import org.hive2hive.core.model.FileIndex;
+import org.hive2hive.core.model.FolderIndex;
+import org.hive2hive.core.model.versioned.UserProfile;
 import org.hive2hive.core.security.EncryptionUtil.RSA_KEYLENGTH;
+import org.hive2hive.core.serializer.CompressionUtil;
 import org.hive2hive.core.serializer.FSTSerializer;
 import org.hive2hive.core.serializer.IH2HSerialize;
 import org.hive2hive.core.serializer.JavaSerializer;
@@ -98,6 +104,33 @@ public class SerializerTest extends H2HJUnitTest {
 		assertEquals(bigInteger, decoded);
 	}
 
+	@Test
+	public void testCompression() throws IOException, ClassNotFoundException {
+		KeyPair keys = generateRSAKeyPair(RSA_KEYLENGTH.BIT_512);
+		UserProfile userProfile = new UserProfile(randomString(), keys, keys);
+		for (int i = 0; i < 100; i++) {
+			FolderIndex folder = new FolderIndex(userProfile.getRoot(), generateRSAKeyPair(RSA_KEYLENGTH.BIT_512), "folder"
+					+ i);
+			new FileIndex(folder, keys, "file" + i, randomString().getBytes());
+		}
+
+		CompressedContent compressed = CompressionUtil.compress(userProfile, serializer);
+		int serializedSize = serializer.serialize(userProfile).length;
+		logger.debug("Compressed the user profile from {} to {} bytes.", serializedSize, compressed.getData().length);
+		assertTrue(compressed.getData().length < serializedSize);
+		assertEquals(userProfile.getTimeToLive(), compressed.getTimeToLive());
+
+		// survives the serialization (as the plain text of the encryption)
+		CompressedContent deserialized = (CompressedContent) serializer.deserialize(serializer.serialize(compressed));
+		UserProfile decompressed = (UserProfile) CompressionUtil.decompress(deserialized, serializer);
+		assertEquals(100, decompressed.getRoot().getChildren().size());
+		FolderIndex folder = (FolderIndex) decompressed.getRoot().getChildByName("folder7");
+		assertNotNull(folder.getChildByName("file7"));
+
+		// uncompressed content is returned as it is
+		assertEquals(userProfile, CompressionUtil.decompress(userProfile, serializer));
+	}
+
 	@AfterClass
 	public static void endTest() throws Exception {
 		afterClass();